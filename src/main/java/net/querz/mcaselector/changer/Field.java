@@ -62,4 +62,9 @@ public abstract class Field<T> {
 	public abstract void change(ChunkData root);
 
 	public abstract void force(ChunkData root);
+
+	// whether this field can be changed in multiple chunks of the same region at once, see JobHandler.forEachChunk()
+	public boolean parallel() {
+		return true;
+	}
 }
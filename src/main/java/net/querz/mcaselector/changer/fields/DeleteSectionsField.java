@@ -5,9 +5,7 @@ import net.querz.mcaselector.changer.FieldType;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.range.Range;
 import net.querz.mcaselector.range.RangeParser;
-import net.querz.mcaselector.version.ChunkFilter;
 import net.querz.mcaselector.version.EntityFilter;
-import net.querz.mcaselector.version.HeightmapCalculator;
 import net.querz.mcaselector.version.VersionController;
 import java.util.List;
 import java.util.StringJoiner;
@@ -38,17 +36,8 @@ public class DeleteSectionsField extends Field<List<Range>> {
 
 	@Override
 	public void change(ChunkData data) {
-		if (data.region() != null && data.region().getData() != null) {
-			int dataVersion = data.region().getData().getIntOrDefault("DataVersion", 0);
-			ChunkFilter chunkFilter = VersionController.getChunkFilter(dataVersion);
-			chunkFilter.deleteSections(data.region().getData(), getNewValue());
-
-			// fix heightmaps
-			HeightmapCalculator heightmapCalculator = VersionController.getHeightmapCalculator(dataVersion);
-			heightmapCalculator.worldSurface(data.region().getData());
-			heightmapCalculator.oceanFloor(data.region().getData());
-			heightmapCalculator.motionBlocking(data.region().getData());
-			heightmapCalculator.motionBlockingNoLeaves(data.region().getData());
+		if (data.region() != null && !data.region().isEmpty()) {
+			data.region().deleteSections(getNewValue());
 		}
 		// delete entities and poi as well
 		if (data.entities() != null && data.entities().getData() != null) {
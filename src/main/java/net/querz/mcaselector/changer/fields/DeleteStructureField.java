@@ -2,12 +2,16 @@ package net.querz.mcaselector.changer.fields;
 
 import net.querz.mcaselector.changer.Field;
 import net.querz.mcaselector.changer.FieldType;
+import net.querz.mcaselector.io.StructureIndex;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.io.registry.StructureRegistry;
+import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.version.ChunkFilter;
 import net.querz.mcaselector.version.VersionController;
 import net.querz.nbt.CompoundTag;
+import net.querz.nbt.LongArrayTag;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.StringJoiner;
 
@@ -57,8 +61,12 @@ public class DeleteStructureField extends Field<List<String>> {
 		CompoundTag starts = chunkFilter.getStructureStarts(data.region().getData());
 		for (String structure : getNewValue()) {
 			for (String alt : StructureRegistry.getAlts(structure)) {
-				references.remove(alt);
-				starts.remove(alt);
+				if (references != null) {
+					references.remove(alt);
+				}
+				if (starts != null) {
+					starts.remove(alt);
+				}
 			}
 		}
 	}
@@ -68,6 +76,33 @@ public class DeleteStructureField extends Field<List<String>> {
 		change(data);
 	}
 
+	// deletes these structures from a chunk outside of the selection. other structures of the same type can still
+	// reference this chunk, so only the starts of these structures are removed from the references, and their starts
+	// are only removed from the chunk they start in.
+	public static void deleteStructures(ChunkData data, Point2i location, List<StructureIndex.Structure> structures) {
+		if (data.region() == null || data.region().getData() == null) {
+			return;
+		}
+		ChunkFilter chunkFilter = VersionController.getChunkFilter(data.region().getData().getIntOrDefault("DataVersion", 0));
+		CompoundTag references = chunkFilter.getStructureReferences(data.region().getData());
+		CompoundTag starts = chunkFilter.getStructureStarts(data.region().getData());
+		for (StructureIndex.Structure structure : structures) {
+			if (references != null && references.get(structure.getName()) instanceof LongArrayTag reference) {
+				long[] remaining = Arrays.stream(reference.getValue())
+					.filter(s -> (int) s != structure.getStart().getX() || (int) (s >> 32) != structure.getStart().getZ())
+					.toArray();
+				if (remaining.length == 0) {
+					references.remove(structure.getName());
+				} else {
+					reference.setValue(remaining);
+				}
+			}
+			if (starts != null && structure.getStart().equals(location)) {
+				starts.remove(structure.getName());
+			}
+		}
+	}
+
 	@Override
 	public String toString() {
 		StringJoiner sj = new StringJoiner(", ");
@@ -29,10 +29,7 @@ public class FixHeightmapsField extends Field<Boolean> {
 	@Override
 	public void change(ChunkData data) {
 		HeightmapCalculator heightmapCalculator = VersionController.getHeightmapCalculator(data.region().getData().getIntOrDefault("DataVersion", 0));
-		heightmapCalculator.worldSurface(data.region().getData());
-		heightmapCalculator.oceanFloor(data.region().getData());
-		heightmapCalculator.motionBlocking(data.region().getData());
-		heightmapCalculator.motionBlockingNoLeaves(data.region().getData());
+		heightmapCalculator.allHeightmaps(data.region().getData());
 	}
 
 	@Override
@@ -3,6 +3,7 @@ package net.querz.mcaselector.changer.fields;
 import net.querz.mcaselector.changer.Field;
 import net.querz.mcaselector.changer.FieldType;
 import net.querz.mcaselector.io.mca.ChunkData;
+import net.querz.mcaselector.io.registry.BlockRegistry;
 import net.querz.mcaselector.version.ChunkFilter;
 import net.querz.mcaselector.version.HeightmapCalculator;
 import net.querz.mcaselector.version.VersionController;
@@ -14,11 +15,13 @@ import org.apache.logging.log4j.Logger;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 public class ReplaceBlocksField extends Field<Map<String, ChunkFilter.BlockReplaceData>> {
 
@@ -26,6 +29,8 @@ public class ReplaceBlocksField extends Field<Map<String, ChunkFilter.BlockRepla
 
 	private static final Set<String> validNames = new HashSet<>();
 
+	private ReplacedBlocks replaced;
+
 	static {
 		try (BufferedReader bis = new BufferedReader(
 				new InputStreamReader(Objects.requireNonNull(ReplaceBlocksField.class.getClassLoader().getResourceAsStream("mapping/all_block_names.txt"))))) {
@@ -181,15 +186,18 @@ public class ReplaceBlocksField extends Field<Map<String, ChunkFilter.BlockRepla
 
 	@Override
 	public void change(ChunkData data) {
+		// skip chunks that don't contain any of the blocks that should be replaced
+		BitSet blocks = data.view().getBlockIDs();
+		if (blocks != null && !containsAnyBlock(blocks)) {
+			return;
+		}
+
 		int dataVersion = data.region().getData().getIntOrDefault("DataVersion", 0);
 		ChunkFilter chunkFilter = VersionController.getChunkFilter(dataVersion);
 		chunkFilter.replaceBlocks(data.region().getData(), getNewValue());
 
 		HeightmapCalculator heightmapCalculator = VersionController.getHeightmapCalculator(dataVersion);
-		heightmapCalculator.worldSurface(data.region().getData());
-		heightmapCalculator.oceanFloor(data.region().getData());
-		heightmapCalculator.motionBlocking(data.region().getData());
-		heightmapCalculator.motionBlockingNoLeaves(data.region().getData());
+		heightmapCalculator.allHeightmaps(data.region().getData());
 	}
 
 	@Override
@@ -197,6 +205,58 @@ public class ReplaceBlocksField extends Field<Map<String, ChunkFilter.BlockRepla
 		change(data);
 	}
 
+	private boolean containsAnyBlock(BitSet blocks) {
+		Map<String, ChunkFilter.BlockReplaceData> value = getNewValue();
+		ReplacedBlocks replaced = this.replaced;
+		if (replaced == null || replaced.value != value) {
+			replaced = new ReplacedBlocks(value);
+			this.replaced = replaced;
+		}
+		if (blocks.intersects(replaced.ids)) {
+			return true;
+		}
+		// blocks that were added to the registry after the ids were matched
+		for (int id = blocks.nextSetBit(replaced.registrySize); id >= 0; id = blocks.nextSetBit(id + 1)) {
+			if (replaced.matches(BlockRegistry.getName(id))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// the BlockRegistry ids of all blocks that match any of the names to replace
+	private static class ReplacedBlocks {
+
+		private final Map<String, ChunkFilter.BlockReplaceData> value;
+		private final Pattern[] patterns;
+		private final BitSet ids = new BitSet();
+		private final int registrySize;
+
+		private ReplacedBlocks(Map<String, ChunkFilter.BlockReplaceData> value) {
+			this.value = value;
+			patterns = new Pattern[value.size()];
+			int i = 0;
+			for (String from : value.keySet()) {
+				patterns[i++] = Pattern.compile(from);
+			}
+			registrySize = BlockRegistry.size();
+			for (int id = 0; id < registrySize; id++) {
+				if (matches(BlockRegistry.getName(id))) {
+					ids.set(id);
+				}
+			}
+		}
+
+		private boolean matches(String name) {
+			for (Pattern pattern : patterns) {
+				if (pattern.matcher(name).matches()) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
 	@Override
 	public String toString() {
 		return getType().toString() + " = \"" + valueToString() + "\"";
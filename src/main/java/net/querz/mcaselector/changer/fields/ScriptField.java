@@ -2,7 +2,7 @@ package net.querz.mcaselector.changer.fields;
 
 import net.querz.mcaselector.changer.Field;
 import net.querz.mcaselector.changer.FieldType;
-import net.querz.mcaselector.io.GroovyScriptEngine;
+import net.querz.mcaselector.io.GroovyScript;
 import net.querz.mcaselector.io.mca.ChunkData;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -13,7 +13,7 @@ public class ScriptField extends Field<String> {
 
 	private static final Logger LOGGER = LogManager.getLogger(ScriptField.class);
 
-	private final GroovyScriptEngine engine = new GroovyScriptEngine();
+	private GroovyScript.Function before, apply, after;
 
 	public ScriptField() {
 		super(FieldType.SCRIPT);
@@ -27,35 +27,54 @@ public class ScriptField extends Field<String> {
 	@Override
 	public boolean parseNewValue(String s) {
 		try {
-			engine.eval(s);
+			GroovyScript script = GroovyScript.compile(s);
+			before = script.function("before");
+			apply = script.function("apply", ChunkData.class);
+			after = script.function("after");
 			setNewValue(s);
 			return true;
 		} catch (ScriptException e) {
+			apply = null;
 			return super.parseNewValue(s);
 		}
 	}
 
 	@Override
 	public void change(ChunkData root) {
+		if (apply == null) {
+			return;
+		}
 		try {
-			engine.run("apply", root);
-		} catch (ScriptException | NoSuchMethodException e) {
-			LOGGER.warn("failed to invoke apply function in custom script");
+			apply.call(root);
+		} catch (Exception ex) {
+			LOGGER.warn("failed to invoke apply function in custom script", ex);
 		}
 	}
 
+	// scripts often count or collect chunks in variables, which they expect to be changed by one chunk at a time
+	@Override
+	public boolean parallel() {
+		return false;
+	}
+
 	public void before() {
+		if (apply == null) {
+			return;
+		}
 		try {
-			engine.run("before");
-		} catch (ScriptException | NoSuchMethodException ex) {
+			before.callMain();
+		} catch (Exception ex) {
 			LOGGER.warn("failed to invoke before function in custom script", ex);
 		}
 	}
 
 	public void after() {
+		if (apply == null) {
+			return;
+		}
 		try {
-			engine.run("after");
-		} catch (ScriptException | NoSuchMethodException ex) {
+			after.callMain();
+		} catch (Exception ex) {
 			LOGGER.warn("failed to invoke after function in custom script", ex);
 		}
 	}
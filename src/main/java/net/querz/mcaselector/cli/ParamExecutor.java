@@ -18,7 +18,11 @@ import net.querz.mcaselector.property.DataProperty;
 import net.querz.mcaselector.range.Range;
 import net.querz.mcaselector.range.RangeParser;
 import net.querz.mcaselector.selection.Selection;
+import net.querz.mcaselector.selection.SelectionCombiner;
 import net.querz.mcaselector.selection.SelectionData;
+import net.querz.mcaselector.selection.SelectionExpression;
+import net.querz.mcaselector.selection.SelectionExpressionParser;
+import net.querz.mcaselector.selection.SelectionFormat;
 import net.querz.mcaselector.tile.OverlayPool;
 import org.apache.commons.cli.*;
 import org.apache.logging.log4j.LogManager;
@@ -37,6 +41,8 @@ public final class ParamExecutor {
 	private static final Options options = new Options();
 	private static final Options helpOptions = new Options();
 
+	private static final int EXPLAIN_SAMPLE_REGIONS = 64;
+
 	static {
 		options.addOption(Option.builder("h")
 			.longOpt("help")
@@ -51,13 +57,14 @@ public final class ParamExecutor {
 			.longOpt("mode")
 			.desc("""
 				The mode to run. Available modes are:
-				select    Create a selection from a filter query and save it as a CSV file
+				select    Create a selection from a filter query and save it as a .csv or binary .sel file
 				export    Export chunks based on a filter query and/or a selection
 				import    Import chunks with an optional offset
 				delete    Delete chunks based on a filter query and/or a selection
 				change    Change NBT values in an entire world or only in chunks based on a selection
 				cache     Generate the cache images for an entire world
 				image     Generate a single image based on a selection
+				combine   Combine selection files with a set expression and save the result as a .csv or binary .sel file
 				""")
 			.hasArg()
 			.build());
@@ -109,6 +116,10 @@ public final class ParamExecutor {
 			.longOpt("force")
 			.desc("Whether to force NBT tags during NBT change")
 			.build());
+		options.addOption(Option.builder()
+			.longOpt("cleanup-structures")
+			.desc("Whether to also remove deleted structures from chunks outside of the selection during NBT change")
+			.build());
 		options.addOption(Option.builder()
 			.longOpt("sections")
 			.desc("One or a range of section indices to import into the target world during chunk import")
@@ -172,6 +183,20 @@ public final class ParamExecutor {
 			.desc("The fields to change")
 			.hasArg()
 			.build());
+		options.addOption(Option.builder()
+			.longOpt("expression")
+			.desc("The set expression to combine selections in combine mode, e.g. \"(a | b) - c & ~d\". Operators in order of precedence: ~ (complement), - (difference), & (intersection), ^ (xor), | (union)")
+			.hasArg()
+			.build());
+		options.addOption(Option.builder()
+			.longOpt("operand")
+			.desc("Assigns a selection file to an operand of the expression in combine mode, e.g. a=keep.csv. Can be specified multiple times")
+			.hasArgs()
+			.build());
+		options.addOption(Option.builder()
+			.longOpt("explain")
+			.desc("Print the compiled query plan with the selectivity and cost of each condition, measured on a sample of up to " + EXPLAIN_SAMPLE_REGIONS + " regions, instead of selecting chunks in select mode")
+			.build());
 		options.addOption(Option.builder()
 			.longOpt("zoom-level")
 			.desc("The zoom level for the cache to be generated. When not specified, all zoom levels will be generated")
@@ -252,7 +277,12 @@ public final class ParamExecutor {
 			.build());
 		options.addOption(Option.builder()
 			.longOpt("write-threads")
-			.desc("Set the number threads to use for writing files")
+			.desc("Deprecated, files are written on virtual threads that are limited by --io-threads")
+			.hasArg()
+			.build());
+		options.addOption(Option.builder()
+			.longOpt("io-threads")
+			.desc("Set the maximum number of files that are read or written at the same time per device")
 			.hasArg()
 			.build());
 
@@ -339,6 +369,7 @@ public final class ParamExecutor {
 				case "change" -> change(future);
 				case "cache" -> cache(future);
 				case "image" -> image(future);
+				case "combine" -> combine(future);
 
 				// for updating and debugging translations
 				case "printMissingTranslations" -> Translations.printMissingTranslations(future);
@@ -365,11 +396,11 @@ public final class ParamExecutor {
 	private void printHelp() {
 		String[] helpOrder = new String[]{
 			"help", "version", "mode", "output", "query", "selection", "source-selection", "radius", "x-offset",
-			"y-offset", "z-offset", "overwrite", "force", "sections", "render-height", "render-caves", "render-layer-only",
+			"y-offset", "z-offset", "overwrite", "force", "cleanup-structures", "sections", "render-height", "render-caves", "render-layer-only",
 			"render-shade", "render-water-shade", "overlay-type", "overlay-min-value", "overlay-max-value",
-			"overlay-data", "overlay-min-hue", "overlay-max-hue", "fields", "zoom-level", "world", "region", "poi", "entities",
+			"overlay-data", "overlay-min-hue", "overlay-max-hue", "fields", "expression", "operand", "explain", "zoom-level", "world", "region", "poi", "entities",
 			"source-world", "source-region", "source-poi", "source-entities", "output-world", "output-region",
-			"output-poi", "output-entities", "debug", "process-threads", "write-threads"
+			"output-poi", "output-entities", "debug", "process-threads", "write-threads", "io-threads"
 		};
 		Map<String, Integer> helpOptionOrderLookup = new HashMap<>();
 		for (int i = 0; i < helpOrder.length; i++) {
@@ -394,7 +425,10 @@ public final class ParamExecutor {
 		ConfigProvider.GLOBAL = new GlobalConfig();
 		ConfigProvider.GLOBAL.setDebug(line.hasOption("debug"));
 		ConfigProvider.GLOBAL.setProcessThreads(parseInt("process-threads", GlobalConfig.DEFAULT_PROCESS_THREADS, 1, 128));
-		ConfigProvider.GLOBAL.setProcessThreads(parseInt("write-threads", GlobalConfig.DEFAULT_WRITE_THREADS, 1, 128));
+		if (line.hasOption("write-threads")) {
+			LOGGER.warn("--write-threads is deprecated and ignored, files are written on virtual threads that are limited by --io-threads");
+		}
+		ConfigProvider.GLOBAL.setIoThreads(parseInt("io-threads", GlobalConfig.DEFAULT_IO_THREADS, 1, 1024));
 	}
 
 	private void printError(String msg, Object... params) {
@@ -579,13 +613,13 @@ public final class ParamExecutor {
 		return dir;
 	}
 
-	private File parseFileAndCreateParentDirectories(String key, String fileEnding) throws ParseException {
+	private File parseFileAndCreateParentDirectories(String key, String... fileEndings) throws ParseException {
 		if (!line.hasOption(key)) {
 			throw new ParseException(String.format("missing mandatory %s parameter", key));
 		}
 		String fileString = line.getOptionValue(key);
-		if (!fileString.toLowerCase().endsWith("." + fileEnding))  {
-			throw new ParseException(String.format("output file has invalid format, .%s required", fileEnding));
+		if (Arrays.stream(fileEndings).noneMatch(e -> fileString.toLowerCase().endsWith("." + e)))  {
+			throw new ParseException(String.format("output file has invalid format, .%s required", String.join(" or .", fileEndings)));
 		}
 		File output = new File(fileString);
 		File parent = output.getParentFile();
@@ -618,11 +652,11 @@ public final class ParamExecutor {
 			}
 			return null;
 		}
-		String fileString = line.getOptionValue(name);
-		if (!fileString.toLowerCase().endsWith(".csv"))  {
-			throw new ParseException(String.format("%s file has invalid format, .csv required", name));
+		// the format of the selection file is detected by its content
+		File file = new File(line.getOptionValue(name));
+		if (!file.isFile()) {
+			throw new ParseException(String.format("%s file %s does not exist", name, file));
 		}
-		File file = new File(fileString);
 		try {
 			return Selection.readFromFile(file);
 		} catch (Exception ex) {
@@ -695,9 +729,21 @@ public final class ParamExecutor {
 	private void select(FutureTask<Boolean> future) throws ParseException {
 		ConfigProvider.WORLD = new WorldConfig();
 		ConfigProvider.WORLD.setWorldDirs(parseWorldDirectories(""));
-		File output = parseFileAndCreateParentDirectories("output", "csv");
 		GroupFilter query = parseQuery(true);
 		Selection selectionData = loadSelection(false, false);
+
+		if (line.hasOption("explain")) {
+			GroupFilter plan = query.compile(true);
+			CLIProgress progress = new CLIProgress("sampling chunks");
+			progress.onDone(() -> {
+				System.out.print(plan.getPlan().explain());
+				future.run();
+			});
+			ChunkFilterSelector.explainFilter(plan, selectionData, EXPLAIN_SAMPLE_REGIONS, progress, true);
+			return;
+		}
+
+		File output = parseFileAndCreateParentDirectories("output", SelectionFormat.CSV.getFileEnding(), SelectionFormat.BINARY.getFileEnding());
 		int radius = parseInt("radius", 0, 0, 128);
 
 		Selection selection = new Selection();
@@ -783,12 +829,13 @@ public final class ParamExecutor {
 		ConfigProvider.WORLD.setWorldDirs(parseWorldDirectories(""));
 		Selection selection = loadSelection(false, false);
 		boolean force = line.hasOption("force");
+		boolean cleanupStructures = line.hasOption("cleanup-structures");
 		List<Field<?>> fields = parseFields(true);
 
 		CLIProgress progress = new CLIProgress("changing fields");
 		progress.onDone(future);
 
-		FieldChanger.changeNBTFields(fields, force, selection, progress, true);
+		FieldChanger.changeNBTFields(fields, force, cleanupStructures, selection, progress, true);
 	}
 
 	private void cache(FutureTask<Boolean> future) throws ParseException, ExecutionException, InterruptedException {
@@ -886,6 +933,51 @@ public final class ParamExecutor {
 		pixels.set(SelectionImageExporter.exportSelectionImage(data, overlayPool, generateProgress));
 	}
 
+	private void combine(FutureTask<Boolean> future) throws ParseException {
+		if (!line.hasOption("expression")) {
+			throw new ParseException("missing mandatory expression parameter");
+		}
+		SelectionExpressionParser parser = new SelectionExpressionParser(line.getOptionValue("expression"));
+		SelectionExpression expression;
+		try {
+			expression = parser.parse();
+		} catch (Exception ex) {
+			throw new ParseException(String.format("failed to parse expression: %s", ex.getMessage()));
+		}
+
+		Map<String, File> operandFiles = new HashMap<>();
+		String[] operands = line.getOptionValues("operand");
+		if (operands != null) {
+			for (String operand : operands) {
+				int separator = operand.indexOf('=');
+				if (separator <= 0) {
+					throw new ParseException(String.format("invalid operand %s, expected <name>=<file>", operand));
+				}
+				operandFiles.put(operand.substring(0, separator).trim(), new File(operand.substring(separator + 1).trim()));
+			}
+		}
+
+		// operands without an assigned file are interpreted as file paths
+		List<String> names = parser.getOperands();
+		File[] files = new File[names.size()];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = operandFiles.getOrDefault(names.get(i), new File(names.get(i)));
+			if (!files[i].isFile()) {
+				throw new ParseException(String.format("selection file %s for operand %s does not exist", files[i], names.get(i)));
+			}
+		}
+
+		File output = parseFileAndCreateParentDirectories("output", SelectionFormat.CSV.getFileEnding(), SelectionFormat.BINARY.getFileEnding());
+
+		try {
+			int regions = SelectionCombiner.combine(expression, files, output, SelectionFormat.fromFileName(output.getName()));
+			LOGGER.info("combined {} selections into {} regions", files.length, regions);
+		} catch (IOException ex) {
+			throw new ParseException(String.format("failed to combine selections: %s", ex.getMessage()));
+		}
+		future.run();
+	}
+
 	private String parsedArgsToString() {
 		StringBuilder sb = new StringBuilder("{");
 		for (int o = 0; o < line.getOptions().length; o++) {
@@ -33,7 +33,7 @@ public class GlobalConfig extends Config {
 	public static final Color DEFAULT_PASTE_CHUNKS_COLOR = new Color(0, 1, 0, 0.8);
 	public static final Locale DEFAULT_LOCALE = Locale.UK;
 	public static final int DEFAULT_PROCESS_THREADS = Math.min(Math.max(Runtime.getRuntime().availableProcessors() - 2, 1), 4);
-	public static final int DEFAULT_WRITE_THREADS = Math.min(Math.max(Runtime.getRuntime().availableProcessors(), 1), 4);
+	public static final int DEFAULT_IO_THREADS = 16;
 	public static final int DEFAULT_MAX_LOADED_FILES = (int) Math.min(Math.max(Math.ceil(Runtime.getRuntime().maxMemory() / 1_000_000_000D) * 2, 1), 16);
 	public static final boolean DEFAULT_DEBUG = false;
 	public static final String DEFAULT_MC_SAVES_DIR = FileHelper.getMCSavesDir();
@@ -44,7 +44,7 @@ public class GlobalConfig extends Config {
 	private Color chunkSelectionColor = DEFAULT_CHUNK_SELECTION_COLOR;
 	private Color pasteChunksColor = DEFAULT_PASTE_CHUNKS_COLOR;
 	private int processThreads = DEFAULT_PROCESS_THREADS;
-	private int writeThreads = DEFAULT_WRITE_THREADS;
+	private int ioThreads = DEFAULT_IO_THREADS;
 	private int maxLoadedFiles = DEFAULT_MAX_LOADED_FILES;
 	private String mcSavesDir = DEFAULT_MC_SAVES_DIR;
 	private boolean debug = DEFAULT_DEBUG;
@@ -91,12 +91,13 @@ public class GlobalConfig extends Config {
 		this.processThreads = processThreads;
 	}
 
-	public int getWriteThreads() {
-		return writeThreads;
+	// the maximum number of files that are read or written at the same time on the same device
+	public int getIoThreads() {
+		return ioThreads;
 	}
 
-	public void setWriteThreads(int writeThreads) {
-		this.writeThreads = writeThreads;
+	public void setIoThreads(int ioThreads) {
+		this.ioThreads = ioThreads;
 	}
 
 	public int getMaxLoadedFiles() {
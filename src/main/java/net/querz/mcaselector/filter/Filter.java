@@ -62,6 +62,11 @@ public abstract class Filter<T> implements Serializable {
 		return false;
 	}
 
+	// whether this filter can be evaluated for multiple chunks of the same region at once, see JobHandler.forEachChunk()
+	public boolean parallel() {
+		return true;
+	}
+
 	public abstract T getFilterValue();
 
 	public abstract void setFilterValue(String raw);
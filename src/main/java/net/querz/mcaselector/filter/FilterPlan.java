@@ -0,0 +1,249 @@
+package net.querz.mcaselector.filter;
+
+import net.querz.mcaselector.filter.filters.GroupFilter;
+import net.querz.mcaselector.io.mca.ChunkData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// the executable form of a GroupFilter.
+// a group is compiled into a list of terms that are OR-ed, each term being a list of conditions that are AND-ed.
+// conditions in a term and the terms themselves are ordered cheapest-first, nested groups that only consist of
+// a single term are merged into the parent term and identical conditions are only evaluated once per chunk.
+public final class FilterPlan {
+
+	private static final byte UNKNOWN = 0, FALSE = 1, TRUE = 2;
+
+	private final Group root;
+	private final int conditions;
+	private final boolean statistics;
+
+	private FilterPlan(Group root, int conditions, boolean statistics) {
+		this.root = root;
+		this.conditions = conditions;
+		this.statistics = statistics;
+	}
+
+	// if statistics is true, the plan counts evaluations, matches and time per node, which is shown by explain()
+	public static FilterPlan compile(GroupFilter filter, boolean statistics) {
+		Map<String, Integer> slots = new HashMap<>();
+		Group root = compileGroup(filter, slots, statistics);
+		return new FilterPlan(root, slots.size(), statistics);
+	}
+
+	private static Group compileGroup(GroupFilter filter, Map<String, Integer> slots, boolean statistics) {
+		List<List<Node>> terms = new ArrayList<>();
+		List<Node> term = new ArrayList<>();
+		terms.add(term);
+		List<Filter<?>> children = filter.getFilterValue();
+		for (int i = 0; i < children.size(); i++) {
+			Filter<?> child = children.get(i);
+			if (i != 0 && child.getOperator() == Operator.OR) {
+				term = new ArrayList<>();
+				terms.add(term);
+			}
+			if (child instanceof GroupFilter group) {
+				Group compiled = compileGroup(group, slots, statistics);
+				if (!compiled.negated && compiled.terms.length == 1) {
+					// (a AND b) is the same as a AND b
+					for (Node node : compiled.terms[0]) {
+						term.add(node);
+					}
+				} else {
+					term.add(compiled);
+				}
+			} else {
+				String key = child.getType() + ":" + child;
+				int slot = slots.computeIfAbsent(key, k -> slots.size());
+				term.add(new Condition(child, slot, cost(child), statistics));
+			}
+		}
+
+		Node[][] compiledTerms = new Node[terms.size()][];
+		for (int i = 0; i < terms.size(); i++) {
+			List<Node> t = terms.get(i);
+			t.sort((a, b) -> Integer.compare(a.cost, b.cost));
+			compiledTerms[i] = t.toArray(new Node[0]);
+		}
+		Arrays.sort(compiledTerms, (a, b) -> Integer.compare(cost(a), cost(b)));
+		return new Group(compiledTerms, filter.isNegated(), statistics);
+	}
+
+	private static int cost(Node[] term) {
+		int cost = 0;
+		for (Node node : term) {
+			cost += node.cost;
+		}
+		return cost;
+	}
+
+	// estimated relative cost of evaluating a filter for a single chunk
+	public static int cost(Filter<?> filter) {
+		if (filter instanceof GroupFilter group) {
+			int cost = 0;
+			for (Filter<?> child : group.getFilterValue()) {
+				cost += cost(child);
+			}
+			return cost;
+		}
+		return switch (filter.getType()) {
+			// only need the location of the chunk
+			case X_POS, Z_POS, CIRCLE, SELECTION -> 1;
+			// single values in the region header or the root of the chunk
+			case DATA_VERSION, Y_POS, TIMESTAMP, LAST_UPDATE, INHABITED_TIME, LIGHT_POPULATED, STATUS -> 2;
+			// lookups and list sizes
+			case PLAYER_DATA, PLAYER_SPAWN, STRUCTURES, TILE_ENTITY_AMOUNT, ENTITY_AMOUNT, PROTO_ENTITY_AMOUNT -> 3;
+			// scans of all sections or entities
+			case PALETTE, BIOME, ENTITIES -> 8;
+			// reads the headers of neighbouring regions
+			case BORDER -> 16;
+			case CUSTOM, SCRIPT -> 32;
+			default -> 4;
+		};
+	}
+
+	public boolean matches(ChunkData data) {
+		return root.evaluate(data, new byte[conditions]);
+	}
+
+	public int getCost() {
+		return root.cost;
+	}
+
+	public String explain() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("plan with %d conditions, estimated cost %d", conditions, root.cost));
+		if (statistics) {
+			sb.append(String.format(", %d chunks evaluated", root.evaluations.sum()));
+		}
+		sb.append('\n');
+		root.explain(sb, 0, statistics);
+		return sb.toString();
+	}
+
+	private abstract static class Node {
+
+		final int cost;
+		final boolean statistics;
+		final LongAdder evaluations = new LongAdder();
+		final LongAdder matches = new LongAdder();
+		final LongAdder nanos = new LongAdder();
+
+		Node(int cost, boolean statistics) {
+			this.cost = cost;
+			this.statistics = statistics;
+		}
+
+		boolean evaluate(ChunkData data, byte[] results) {
+			if (!statistics) {
+				return test(data, results);
+			}
+			long start = System.nanoTime();
+			boolean result = test(data, results);
+			nanos.add(System.nanoTime() - start);
+			evaluations.increment();
+			if (result) {
+				matches.increment();
+			}
+			return result;
+		}
+
+		abstract boolean test(ChunkData data, byte[] results);
+
+		abstract void explain(StringBuilder sb, int depth, boolean statistics);
+
+		void appendLine(StringBuilder sb, int depth, String description, boolean statistics) {
+			sb.append("  ".repeat(depth)).append(description).append(" [cost ").append(cost);
+			if (statistics) {
+				long e = evaluations.sum();
+				sb.append(", evaluated ").append(e);
+				if (e > 0) {
+					sb.append(String.format(", selectivity %.1f%%, avg %.1fus", matches.sum() * 100D / e, nanos.sum() / 1000D / e));
+				}
+			}
+			sb.append("]\n");
+		}
+	}
+
+	private static class Condition extends Node {
+
+		final Filter<?> filter;
+		final int slot;
+
+		Condition(Filter<?> filter, int slot, int cost, boolean statistics) {
+			super(cost, statistics);
+			this.filter = filter;
+			this.slot = slot;
+		}
+
+		@Override
+		boolean test(ChunkData data, byte[] results) {
+			if (results[slot] != UNKNOWN) {
+				return results[slot] == TRUE;
+			}
+			boolean result = filter.matches(data);
+			results[slot] = result ? TRUE : FALSE;
+			return result;
+		}
+
+		@Override
+		void explain(StringBuilder sb, int depth, boolean statistics) {
+			appendLine(sb, depth, filter.toString(), statistics);
+		}
+	}
+
+	private static class Group extends Node {
+
+		final Node[][] terms;
+		final boolean negated;
+
+		Group(Node[][] terms, boolean negated, boolean statistics) {
+			super(totalCost(terms), statistics);
+			this.terms = terms;
+			this.negated = negated;
+		}
+
+		private static int totalCost(Node[][] terms) {
+			int cost = 0;
+			for (Node[] term : terms) {
+				cost += FilterPlan.cost(term);
+			}
+			return cost;
+		}
+
+		@Override
+		boolean test(ChunkData data, byte[] results) {
+			termLoop:
+			for (Node[] term : terms) {
+				for (Node node : term) {
+					if (!node.evaluate(data, results)) {
+						continue termLoop;
+					}
+				}
+				return !negated;
+			}
+			return negated;
+		}
+
+		@Override
+		void explain(StringBuilder sb, int depth, boolean statistics) {
+			String operator = terms.length > 1 ? "OR" : "AND";
+			appendLine(sb, depth, negated ? "NOT " + operator : operator, statistics);
+			for (Node[] term : terms) {
+				if (terms.length > 1 && term.length > 1) {
+					sb.append("  ".repeat(depth + 1)).append("AND [cost ").append(FilterPlan.cost(term)).append("]\n");
+					for (Node node : term) {
+						node.explain(sb, depth + 2, statistics);
+					}
+				} else {
+					for (Node node : term) {
+						node.explain(sb, depth + 1, statistics);
+					}
+				}
+			}
+		}
+	}
+}
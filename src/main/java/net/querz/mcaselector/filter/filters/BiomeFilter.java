@@ -4,7 +4,6 @@ import net.querz.mcaselector.filter.*;
 import net.querz.mcaselector.filter.Comparator;
 import net.querz.mcaselector.io.registry.BiomeRegistry;
 import net.querz.mcaselector.io.mca.ChunkData;
-import net.querz.mcaselector.version.VersionController;
 import java.util.*;
 
 public class BiomeFilter extends TextFilter<List<BiomeRegistry.BiomeIdentifier>> {
@@ -38,8 +37,7 @@ public class BiomeFilter extends TextFilter<List<BiomeRegistry.BiomeIdentifier>>
 		if (data.region() == null) {
 			return false;
 		}
-		return VersionController.getChunkFilter(data.region().getData().getIntOrDefault("DataVersion", 0))
-				.matchBiomes(data.region().getData(), value);
+		return data.view().containsAllBiomes(value);
 	}
 
 	@Override
@@ -52,8 +50,7 @@ public class BiomeFilter extends TextFilter<List<BiomeRegistry.BiomeIdentifier>>
 		if (data.region() == null) {
 			return false;
 		}
-		return VersionController.getChunkFilter(data.region().getData().getIntOrDefault("DataVersion", 0))
-				.matchAnyBiome(data.region().getData(), value);
+		return data.view().containsAnyBiome(value);
 	}
 
 	@Override
@@ -1,14 +1,11 @@
 package net.querz.mcaselector.filter.filters;
 
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import net.querz.mcaselector.filter.Comparator;
 import net.querz.mcaselector.filter.FilterType;
 import net.querz.mcaselector.filter.Operator;
 import net.querz.mcaselector.filter.TextFilter;
 import net.querz.mcaselector.io.mca.ChunkData;
-import net.querz.mcaselector.version.VersionController;
-import net.querz.nbt.CompoundTag;
-import net.querz.nbt.ListTag;
-import net.querz.nbt.Tag;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import java.io.BufferedReader;
@@ -53,27 +50,14 @@ public class EntityFilter extends TextFilter<List<String>> {
 
 	@Override
 	public boolean contains(List<String> value, ChunkData data) {
-		int dataVersion;
-		if (data.region() != null && data.region().getData() != null) {
-			dataVersion = data.region().getData().getIntOrDefault("DataVersion", 0);
-		} else if (data.entities() != null && data.entities().getData() != null) {
-			dataVersion = data.entities().getData().getIntOrDefault("DataVersion", 0);
-		} else {
-			return false;
-		}
-		ListTag entities = VersionController.getEntityFilter(dataVersion).getEntities(data);
-		if (entities == null || entities.getType() == Tag.Type.LONG_ARRAY) {
+		Object2IntMap<String> entities = data.view().getEntityCounts();
+		if (entities.isEmpty()) {
 			return false;
 		}
-		nameLoop:
 		for (String name : getFilterValue()) {
-			for (CompoundTag entity : entities.iterateType(CompoundTag.class)) {
-				String id = entity.getString("id");
-				if (name.equals(id)) {
-					continue nameLoop;
-				}
+			if (!entities.containsKey(name)) {
+				return false;
 			}
-			return false;
 		}
 		return true;
 	}
@@ -83,16 +67,10 @@ public class EntityFilter extends TextFilter<List<String>> {
 		if (data.region() == null || data.region().getData() == null) {
 			return false;
 		}
-		ListTag entities = VersionController.getEntityFilter(data.region().getData().getIntOrDefault("DataVersion", 0)).getEntities(data);
-		if (entities == null || entities.getType() == Tag.Type.LONG_ARRAY) {
-			return false;
-		}
+		Object2IntMap<String> entities = data.view().getEntityCounts();
 		for (String name : getFilterValue()) {
-			for (CompoundTag entity : entities.iterateType(CompoundTag.class)) {
-				String id = entity.getString("id");
-				if (name.equals(id)) {
-					return true;
-				}
+			if (entities.containsKey(name)) {
+				return true;
 			}
 		}
 		return false;
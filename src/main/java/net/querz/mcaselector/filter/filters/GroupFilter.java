@@ -10,6 +10,7 @@ public class GroupFilter extends Filter<List<Filter<?>>> {
 
 	private List<Filter<?>> children = new ArrayList<>();
 	private boolean negated = false;
+	private transient FilterPlan plan;
 
 	public GroupFilter() {
 		super(FilterType.GROUP);
@@ -29,6 +30,7 @@ public class GroupFilter extends Filter<List<Filter<?>>> {
 	}
 
 	public int addFilter(Filter<?> filter) {
+		plan = null;
 		filter.setParent(this);
 		children.add(filter);
 		return children.size() - 1;
@@ -40,6 +42,7 @@ public class GroupFilter extends Filter<List<Filter<?>>> {
 	}
 
 	public void setNegated(boolean negated) {
+		plan = null;
 		this.negated = negated;
 	}
 
@@ -49,6 +52,7 @@ public class GroupFilter extends Filter<List<Filter<?>>> {
 
 	// returns index of where this filter was added
 	public int addFilterAfter(Filter<?> filter, Filter<?> after) {
+		plan = null;
 		filter.setParent(this);
 		int i = children.indexOf(after);
 		if (i >= 0) {
@@ -60,6 +64,7 @@ public class GroupFilter extends Filter<List<Filter<?>>> {
 	}
 
 	public void removeFilter(Filter<?> filter) {
+		plan = null;
 		children.remove(filter);
 	}
 
@@ -86,8 +91,23 @@ public class GroupFilter extends Filter<List<Filter<?>>> {
 	@Override
 	public void setComparator(Comparator comparator) {}
 
+	// returns a copy of this filter that evaluates chunks with a compiled FilterPlan.
+	// the copy must not be modified.
+	public GroupFilter compile(boolean statistics) {
+		GroupFilter clone = clone();
+		clone.plan = FilterPlan.compile(clone, statistics);
+		return clone;
+	}
+
+	public FilterPlan getPlan() {
+		return plan;
+	}
+
 	@Override
 	public boolean matches(ChunkData data) {
+		if (plan != null) {
+			return plan.matches(data);
+		}
 		boolean currentResult = true;
 		for (int i = 0; i < children.size(); i++) {
 			// skip all condition in this AND block if it is already false
@@ -239,4 +259,14 @@ public class GroupFilter extends Filter<List<Filter<?>>> {
 		}
 		return false;
 	}
+
+	@Override
+	public boolean parallel() {
+		for (Filter<?> child : children) {
+			if (!child.parallel()) {
+				return false;
+			}
+		}
+		return true;
+	}
 }
@@ -5,10 +5,12 @@ import net.querz.mcaselector.filter.FilterType;
 import net.querz.mcaselector.filter.Operator;
 import net.querz.mcaselector.filter.TextFilter;
 import net.querz.mcaselector.io.mca.ChunkData;
+import net.querz.mcaselector.io.registry.BlockRegistry;
 import net.querz.mcaselector.text.TextHelper;
 import net.querz.mcaselector.version.VersionController;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 
 public class PaletteFilter extends TextFilter<List<String>> {
@@ -21,6 +23,8 @@ public class PaletteFilter extends TextFilter<List<String>> {
 		Comparator.NOT_EQUAL
 	};
 
+	private transient BlockIDs blockIDs;
+
 	public PaletteFilter() {
 		this(Operator.AND, Comparator.CONTAINS, null);
 	}
@@ -52,6 +56,21 @@ public class PaletteFilter extends TextFilter<List<String>> {
 		if (data.region() == null || data.region().getData() == null) {
 			return false;
 		}
+		BitSet blocks = data.view().getBlockIDs();
+		if (blocks != null) {
+			BlockIDs blockIDs = getBlockIDs(value);
+			// a block that no chunk contained so far can't be in this one
+			if (!blockIDs.complete()) {
+				return false;
+			}
+			BitSet ids = blockIDs.ids();
+			for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+				if (!blocks.get(id)) {
+					return false;
+				}
+			}
+			return true;
+		}
 		return VersionController.getChunkFilter(data.region().getData().getIntOrDefault("DataVersion", 0))
 				.matchBlockNames(data.region().getData(), value);
 	}
@@ -66,6 +85,10 @@ public class PaletteFilter extends TextFilter<List<String>> {
 		if (data.region() == null || data.region().getData() == null) {
 			return false;
 		}
+		BitSet blocks = data.view().getBlockIDs();
+		if (blocks != null) {
+			return blocks.intersects(getBlockIDs(value).ids());
+		}
 		return VersionController.getChunkFilter(data.region().getData().getIntOrDefault("DataVersion", 0))
 				.matchAnyBlockName(data.region().getData(), value);
 	}
@@ -74,6 +97,11 @@ public class PaletteFilter extends TextFilter<List<String>> {
 		if (data.region() == null || data.region().getData() == null) {
 			return false;
 		}
+		BitSet blocks = data.view().getBlockIDs();
+		if (blocks != null) {
+			BlockIDs blockIDs = getBlockIDs(value);
+			return blockIDs.complete() && blockIDs.ids().cardinality() == value.size() && blocks.equals(blockIDs.ids());
+		}
 		return VersionController.getChunkFilter(data.region().getData().getIntOrDefault("DataVersion", 0))
 			.paletteEquals(data.region().getData(), value);
 	}
@@ -82,6 +110,31 @@ public class PaletteFilter extends TextFilter<List<String>> {
 		return !equals(values, data);
 	}
 
+	// only looks up names, so that filter values with typos don't add names to the BlockRegistry
+	private BlockIDs getBlockIDs(List<String> value) {
+		BlockIDs blockIDs = this.blockIDs;
+		// unknown names might have been added by chunks parsed since the last lookup
+		if (blockIDs == null || blockIDs.value != value || !blockIDs.complete() && blockIDs.registrySize != BlockRegistry.size()) {
+			int registrySize = BlockRegistry.size();
+			BitSet ids = new BitSet();
+			boolean complete = true;
+			for (String name : value) {
+				int id = BlockRegistry.findID(name);
+				if (id == -1) {
+					complete = false;
+				} else {
+					ids.set(id);
+				}
+			}
+			blockIDs = new BlockIDs(value, ids, complete, registrySize);
+			this.blockIDs = blockIDs;
+		}
+		return blockIDs;
+	}
+
+	// the BlockRegistry ids of a filter value. complete is false if some of the names are not in the BlockRegistry.
+	private record BlockIDs(List<String> value, BitSet ids, boolean complete, int registrySize) {}
+
 	@Override
 	public void setFilterValue(String raw) {
 		String[] blockNames = TextHelper.parseBlockNames(raw);
@@ -1,27 +1,21 @@
 package net.querz.mcaselector.filter.filters;
 
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import net.querz.mcaselector.filter.*;
+import net.querz.mcaselector.io.PlayerIndex;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.point.Point2i;
-import net.querz.mcaselector.property.DataProperty;
 import net.querz.mcaselector.version.ChunkFilter;
 import net.querz.mcaselector.version.VersionController;
-import net.querz.nbt.CompoundTag;
 import net.querz.nbt.IntTag;
-import net.querz.nbt.ListTag;
-import net.querz.nbt.NBTUtil;
-import net.querz.nbt.StringTag;
-import net.querz.nbt.Tag;
 import java.io.File;
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class PlayerLocationFilter extends TextFilter<PlayerLocationFilter.PlayerLocationFilterDefinition> implements RegionMatcher {
 
-	protected LongOpenHashSet playerChunks = new LongOpenHashSet();
-	protected LongOpenHashSet playerRegions = new LongOpenHashSet();
+	// shared with clones, so that the player locations are only looked up once per query
+	protected AtomicReference<PlayerIndex.Locations> locations = new AtomicReference<>();
 	protected final Object lock;
-	protected DataProperty<Boolean> loaded = new DataProperty<>(false);
 
 	private static final Comparator[] comparators = {
 			Comparator.CONTAINS,
@@ -55,6 +49,19 @@ public class PlayerLocationFilter extends TextFilter<PlayerLocationFilter.Player
 			setValue(null);
 			return;
 		}
+		// an optional radius can be appended to the dimension with another separator
+		int radius = 0;
+		int radiusSeparator = separated[1].lastIndexOf(File.pathSeparator);
+		if (radiusSeparator != -1 && separated[1].substring(radiusSeparator + 1).matches("^[0-9]+$")) {
+			try {
+				radius = Integer.parseInt(separated[1].substring(radiusSeparator + 1));
+			} catch (NumberFormatException ex) {
+				setValid(false);
+				setValue(null);
+				return;
+			}
+			separated[1] = separated[1].substring(0, radiusSeparator);
+		}
 		File file = new File(separated[0]);
 		if (!file.exists() || !file.isDirectory()) {
 			setValid(false);
@@ -75,22 +82,20 @@ public class PlayerLocationFilter extends TextFilter<PlayerLocationFilter.Player
 		}
 
 		setValid(true);
-		setValue(new PlayerLocationFilterDefinition(file, dimension));
+		setValue(new PlayerLocationFilterDefinition(file, dimension, radius));
 		setRawValue(raw);
 	}
 
 	@Override
 	public PlayerLocationFilter clone() {
 		PlayerLocationFilter clone = new PlayerLocationFilter(getType(), getOperator(), getComparator(), getFilterValue() == null ? null : getFilterValue().clone(), lock);
-		clone.playerChunks = playerChunks;
-		clone.playerRegions = playerRegions;
-		clone.loaded = loaded;
+		clone.locations = locations;
 		return clone;
 	}
 
 	@Override
 	public String getFormatText() {
-		return "<directory>" + File.pathSeparator + "<dimension>";
+		return "<directory>" + File.pathSeparator + "<dimension>[" + File.pathSeparator + "<radius>]";
 	}
 
 	@Override
@@ -99,13 +104,7 @@ public class PlayerLocationFilter extends TextFilter<PlayerLocationFilter.Player
 			return false;
 		}
 
-		if (!loaded.get()) {
-			synchronized (lock) {
-				if (playerChunks.isEmpty()) {
-					loadPlayerData(value);
-				}
-			}
-		}
+		PlayerIndex.Locations locations = getLocations(value);
 
 		ChunkFilter chunkFilter = VersionController.getChunkFilter(data.region().getData().getIntOrDefault("DataVersion", 0));
 		IntTag xPos = chunkFilter.getXPos(data.region().getData());
@@ -113,7 +112,7 @@ public class PlayerLocationFilter extends TextFilter<PlayerLocationFilter.Player
 		if (xPos == null || zPos == null) {
 			return false;
 		}
-		return playerChunks.contains(new Point2i(xPos.asInt(), zPos.asInt()).asLong());
+		return locations.isWithinRadius(new Point2i(xPos.asInt(), zPos.asInt()), value.radius);
 	}
 
 	@Override
@@ -128,79 +127,56 @@ public class PlayerLocationFilter extends TextFilter<PlayerLocationFilter.Player
 
 	@Override
 	public boolean matchesRegion(Point2i region) {
-		if (!loaded.get()) {
-			synchronized (lock) {
-				if (playerRegions.isEmpty()) {
-					loadPlayerData(value);
-				}
-			}
+		if (value == null) {
+			return false;
 		}
-
 		return switch (getComparator()) {
-			case CONTAINS -> playerRegions.contains(region.asLong());
-			case CONTAINS_NOT -> !playerRegions.contains(region.asLong());
+			case CONTAINS -> getLocations(value).isRegionWithinRadius(region, value.radius);
+			// a region with players can still contain chunks without players
+			case CONTAINS_NOT -> true;
 			default -> false;
 		};
 	}
 
+	protected PlayerIndex.Locations getLocations(PlayerLocationFilterDefinition value) {
+		PlayerIndex.Locations l = locations.get();
+		if (l == null) {
+			synchronized (lock) {
+				l = locations.get();
+				if (l == null) {
+					l = loadPlayerData(value);
+					locations.set(l);
+				}
+			}
+		}
+		return l;
+	}
+
 	public static class PlayerLocationFilterDefinition implements Serializable {
 
 		File directory;
 		Object dimension; // can be Integer or String
+		int radius;
 
-		public PlayerLocationFilterDefinition(File directory, Object dimension) {
+		public PlayerLocationFilterDefinition(File directory, Object dimension, int radius) {
 			this.directory = directory;
 			this.dimension = dimension;
+			this.radius = radius;
 		}
 
 		@Override
 		public String toString() {
-			return directory + File.pathSeparator + dimension;
+			return directory + File.pathSeparator + dimension + (radius > 0 ? File.pathSeparator + radius : "");
 		}
 
 		@Override
 		public PlayerLocationFilterDefinition clone() {
-			return new PlayerLocationFilterDefinition(directory, dimension);
+			return new PlayerLocationFilterDefinition(directory, dimension, radius);
 		}
 	}
 
-	protected void loadPlayerData(PlayerLocationFilterDefinition value) {
-		playerChunks.clear();
-		playerRegions.clear();
-
-		File[] playerFiles = value.directory.listFiles((d, f) -> f.matches("^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}\\.dat$"));
-		if (playerFiles == null || playerFiles.length == 0) {
-			return;
-		}
-
-		for (File playerFile : playerFiles) {
-			try {
-				CompoundTag root = (CompoundTag) NBTUtil.read(playerFile);
-				ListTag pos = root.getListTag("Pos");
-				if (pos.size() != 3) {
-					continue;
-				}
-				Tag dimTag = root.get("Dimension");
-
-				Object dim = null;
-				if (dimTag instanceof IntTag) {
-					dim = root.getInt("Dimension");
-				} else if (dimTag instanceof StringTag) {
-					dim = root.getString("Dimension");
-				}
-
-				if (!value.dimension.equals(dim)) {
-					continue;
-				}
-
-				Point2i playerLocation = new Point2i(pos.getInt(0), pos.getInt(2));
-				playerChunks.add(playerLocation.blockToChunk().asLong());
-				playerRegions.add(playerLocation.blockToRegion().asLong());
-			} catch (Exception ex) {
-				ex.printStackTrace();
-			}
-		}
-		loaded.set(true);
+	protected PlayerIndex.Locations loadPlayerData(PlayerLocationFilterDefinition value) {
+		return PlayerIndex.getLocations(value.directory, value.dimension, false);
 	}
 
 	@Override
@@ -211,9 +187,7 @@ public class PlayerLocationFilter extends TextFilter<PlayerLocationFilter.Player
 	@Override
 	public void resetTempData() {
 		synchronized (lock) {
-			playerChunks.clear();
-			playerRegions.clear();
-			loaded.set(false);
+			locations.set(null);
 		}
 	}
 }
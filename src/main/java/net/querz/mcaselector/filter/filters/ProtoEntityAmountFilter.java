@@ -5,7 +5,6 @@ import net.querz.mcaselector.filter.FilterType;
 import net.querz.mcaselector.filter.IntFilter;
 import net.querz.mcaselector.filter.Operator;
 import net.querz.mcaselector.io.mca.ChunkData;
-import net.querz.nbt.ListTag;
 
 public class ProtoEntityAmountFilter extends IntFilter {
 
@@ -19,14 +18,7 @@ public class ProtoEntityAmountFilter extends IntFilter {
 
 	@Override
 	protected Integer getNumber(ChunkData data) {
-		if (data.region() == null || data.region().getData() == null) {
-			return 0;
-		}
-		ListTag protoEntities = data.region().getData().getList("entities");
-		if (protoEntities == null) {
-			return 0;
-		}
-		return protoEntities.size();
+		return data.view().getProtoEntityAmount();
 	}
 
 	@Override
@@ -1,28 +1,32 @@
 package net.querz.mcaselector.filter.filters;
 
 import net.querz.mcaselector.filter.*;
-import net.querz.mcaselector.io.GroovyScriptEngine;
+import net.querz.mcaselector.io.GroovyScript;
 import net.querz.mcaselector.io.mca.ChunkData;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import javax.script.*;
+import javax.script.ScriptException;
 
 public class ScriptFilter extends TextFilter<String> {
 
 	private static final Logger LOGGER = LogManager.getLogger(ScriptFilter.class);
 
-	private final GroovyScriptEngine engine = new GroovyScriptEngine();
+	// shared with clones, so that before() and after() run on the same script as the clones used to filter the chunks
+	private Functions functions;
+
+	private record Functions(GroovyScript.Function before, GroovyScript.Function filter, GroovyScript.Function after) {}
 
 	private static final Comparator[] comparators = {
 			Comparator.EQUAL,
 	};
 
 	public ScriptFilter() {
-		this(Operator.AND, Comparator.EQUAL, null);
+		this(Operator.AND, Comparator.EQUAL, null, null);
 	}
 
-	private ScriptFilter(Operator operator, Comparator comparator, String value) {
+	private ScriptFilter(Operator operator, Comparator comparator, String value, Functions functions) {
 		super(FilterType.SCRIPT, operator, comparator, value);
+		this.functions = functions;
 	}
 
 	@Override
@@ -33,11 +37,13 @@ public class ScriptFilter extends TextFilter<String> {
 	@Override
 	public void setFilterValue(String raw) {
 		try {
-			engine.eval(raw);
+			GroovyScript script = GroovyScript.compile(raw);
+			functions = new Functions(script.function("before"), script.function("filter", ChunkData.class), script.function("after"));
 			setValue(raw);
 			setRawValue(raw);
 			setValid(true);
 		} catch (ScriptException e) {
+			functions = null;
 			setValue(null);
 			setValid(false);
 		}
@@ -45,7 +51,7 @@ public class ScriptFilter extends TextFilter<String> {
 
 	@Override
 	public Filter<String> clone() {
-		return new ScriptFilter(getOperator(), getComparator(), value);
+		return new ScriptFilter(getOperator(), getComparator(), value, functions);
 	}
 
 	@Override
@@ -55,26 +61,41 @@ public class ScriptFilter extends TextFilter<String> {
 
 	@Override
 	public boolean matches(ChunkData data) {
+		if (functions == null) {
+			return false;
+		}
 		try {
-			return engine.test("filter", data);
-		} catch (ScriptException | NoSuchMethodException ex) {
+			return functions.filter().call(data) instanceof Boolean b && b;
+		} catch (Exception ex) {
 			LOGGER.warn("failed to invoke filter function in custom script", ex);
 		}
 		return false;
 	}
 
+	// scripts often count or collect chunks in variables, which they expect to be changed by one chunk at a time
+	@Override
+	public boolean parallel() {
+		return false;
+	}
+
 	public void before() {
+		if (functions == null) {
+			return;
+		}
 		try {
-			engine.run("before");
-		} catch (ScriptException | NoSuchMethodException ex) {
+			functions.before().callMain();
+		} catch (Exception ex) {
 			LOGGER.warn("failed to invoke before function in custom script", ex);
 		}
 	}
 
 	public void after() {
+		if (functions == null) {
+			return;
+		}
 		try {
-			engine.run("after");
-		} catch (ScriptException | NoSuchMethodException ex) {
+			functions.after().callMain();
+		} catch (Exception ex) {
 			LOGGER.warn("failed to invoke after function in custom script", ex);
 		}
 	}
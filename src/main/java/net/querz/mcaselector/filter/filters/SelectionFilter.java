@@ -5,6 +5,7 @@ import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.property.DataProperty;
 import net.querz.mcaselector.selection.Selection;
+import net.querz.mcaselector.selection.SelectionFormat;
 import net.querz.mcaselector.version.ChunkFilter;
 import net.querz.mcaselector.version.VersionController;
 import net.querz.nbt.IntTag;
@@ -39,7 +40,7 @@ public class SelectionFilter extends TextFilter<File> implements RegionMatcher {
 	@Override
 	public void setFilterValue(String raw) {
 		File file = new File(raw.trim());
-		if (file.exists() && file.isFile() && raw.endsWith(".csv")) {
+		if (file.exists() && file.isFile() && SelectionFormat.fromFileName(raw.trim()) != null) {
 			setValid(true);
 			setValue(file);
 			setRawValue(raw);
@@ -110,7 +111,7 @@ public class SelectionFilter extends TextFilter<File> implements RegionMatcher {
 
 	@Override
 	public String getFormatText() {
-		return "<.csv selection file>";
+		return "<.csv or .sel selection file>";
 	}
 
 	protected void loadSelection(File value) {
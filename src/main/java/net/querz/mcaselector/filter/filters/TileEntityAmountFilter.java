@@ -5,9 +5,6 @@ import net.querz.mcaselector.filter.FilterType;
 import net.querz.mcaselector.filter.IntFilter;
 import net.querz.mcaselector.filter.Operator;
 import net.querz.mcaselector.io.mca.ChunkData;
-import net.querz.mcaselector.version.ChunkFilter;
-import net.querz.mcaselector.version.VersionController;
-import net.querz.nbt.ListTag;
 
 public class TileEntityAmountFilter extends IntFilter {
 
@@ -24,9 +21,7 @@ public class TileEntityAmountFilter extends IntFilter {
 		if (data.region() == null || data.region().getData() == null) {
 			return 0;
 		}
-		ChunkFilter chunkFilter = VersionController.getChunkFilter(data.region().getData().getIntOrDefault("DataVersion", 0));
-		ListTag tileEntities = chunkFilter.getTileEntities(data.region().getData());
-		return tileEntities == null ? 0 : tileEntities.size();
+		return data.view().getTileEntityAmount();
 	}
 
 	@Override
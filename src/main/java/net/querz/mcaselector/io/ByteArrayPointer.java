@@ -12,6 +12,11 @@ public class ByteArrayPointer extends InputStream {
 		this.data = data;
 	}
 
+	// returns a new pointer to the same data, so that the data can be read at different positions by multiple threads
+	public ByteArrayPointer duplicate() {
+		return new ByteArrayPointer(data);
+	}
+
 	public void seek(long pointer) {
 		this.pointer = (int) pointer;
 	}
@@ -49,6 +49,11 @@ public final class CacheHelper {
 		for (File cacheDir : ConfigProvider.WORLD.getCacheDirs()) {
 			FileHelper.deleteDirectory(cacheDir);
 		}
+		FileHelper.deleteDirectory(FilterCache.getDirectory(ConfigProvider.WORLD.getCacheDir()));
+		FileHelper.deleteDirectory(PlayerIndex.getDirectory(ConfigProvider.WORLD.getCacheDir()));
+		FileHelper.deleteDirectory(EntityIndex.getDirectory(ConfigProvider.WORLD.getCacheDir()));
+		FileHelper.deleteDirectory(MetadataIndex.getDirectory(ConfigProvider.WORLD.getCacheDir()));
+		FileHelper.deleteDirectory(StructureIndex.getDirectory(ConfigProvider.WORLD.getCacheDir()));
 		RegionImageGenerator.invalidateCachedMCAFiles();
 		updateVersionFile();
 		ConfigProvider.WORLD.save();
@@ -64,6 +69,11 @@ public final class CacheHelper {
 			for (File cacheDir : ConfigProvider.WORLD.getCacheDirs()) {
 				FileHelper.deleteDirectory(cacheDir);
 			}
+			FileHelper.deleteDirectory(FilterCache.getDirectory(ConfigProvider.WORLD.getCacheDir()));
+			FileHelper.deleteDirectory(PlayerIndex.getDirectory(ConfigProvider.WORLD.getCacheDir()));
+			FileHelper.deleteDirectory(EntityIndex.getDirectory(ConfigProvider.WORLD.getCacheDir()));
+			FileHelper.deleteDirectory(MetadataIndex.getDirectory(ConfigProvider.WORLD.getCacheDir()));
+			FileHelper.deleteDirectory(StructureIndex.getDirectory(ConfigProvider.WORLD.getCacheDir()));
 			updateVersionFile();
 			ConfigProvider.WORLD.save();
 
@@ -0,0 +1,63 @@
+package net.querz.mcaselector.io;
+
+import net.querz.mcaselector.config.ConfigProvider;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+// limits the number of files that are read or written at the same time per device.
+// file io runs on virtual threads, so the number of threads doesn't limit it anymore.
+public final class DeviceLimiter {
+
+	private static final Logger LOGGER = LogManager.getLogger(DeviceLimiter.class);
+
+	private static final Map<FileStore, Semaphore> devices = new ConcurrentHashMap<>();
+	// looking up the file store of a file is expensive, so it is only done once per directory
+	private static final Map<File, Semaphore> directories = new ConcurrentHashMap<>();
+	private static volatile Semaphore unknownDevice = new Semaphore(ConfigProvider.GLOBAL.getIoThreads());
+
+	private DeviceLimiter() {}
+
+	@FunctionalInterface
+	public interface IOAction<T> {
+		T run() throws IOException;
+	}
+
+	public static <T> T run(File file, IOAction<T> action) throws IOException {
+		Semaphore semaphore = getSemaphore(file);
+		semaphore.acquireUninterruptibly();
+		try {
+			return action.run();
+		} finally {
+			semaphore.release();
+		}
+	}
+
+	// called when the number of io threads changes
+	public static void reset() {
+		devices.clear();
+		directories.clear();
+		unknownDevice = new Semaphore(ConfigProvider.GLOBAL.getIoThreads());
+	}
+
+	private static Semaphore getSemaphore(File file) {
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory == null) {
+			return unknownDevice;
+		}
+		return directories.computeIfAbsent(directory, d -> {
+			try {
+				return devices.computeIfAbsent(Files.getFileStore(d.toPath()), s -> new Semaphore(ConfigProvider.GLOBAL.getIoThreads()));
+			} catch (IOException ex) {
+				LOGGER.debug("failed to get file store of {}", d, ex);
+				return unknownDevice;
+			}
+		});
+	}
+}
@@ -0,0 +1,200 @@
+package net.querz.mcaselector.io;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.querz.mcaselector.filter.Filter;
+import net.querz.mcaselector.filter.filters.GroupFilter;
+import net.querz.mcaselector.io.mca.EntitiesChunk;
+import net.querz.mcaselector.io.mca.EntityHistogram;
+import net.querz.mcaselector.io.mca.EntityScanner;
+import net.querz.mcaselector.io.mca.RegionChunk;
+import net.querz.mcaselector.point.Point2i;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.function.Supplier;
+
+// caches the entity histograms of all chunks of a region on disk.
+// the histograms are created by scanning the raw nbt data of the region and entities files,
+// so filters and overlays that only need entity ids and amounts don't need to load the entities file at all.
+// a region's histograms are discarded as soon as the region or entities file changes.
+public final class EntityIndex {
+
+	private static final Logger LOGGER = LogManager.getLogger(EntityIndex.class);
+
+	private static final int VERSION = 1;
+
+	private final File directory;
+
+	public EntityIndex(File cacheDir) {
+		this.directory = getDirectory(cacheDir);
+	}
+
+	public static File getDirectory(File cacheDir) {
+		return new File(cacheDir, "entities");
+	}
+
+	// returns the entity histograms of all 1024 chunks of this region.
+	// the data of the region and entities files is only requested if the cached histograms are outdated.
+	public EntityHistogram[] load(RegionDirectories dirs, Supplier<byte[]> regionData, Supplier<byte[]> entitiesData) {
+		long[] fingerprint = fingerprint(dirs);
+		File file = createFilePath(dirs.getLocation());
+		EntityHistogram[] histograms = read(file, fingerprint);
+		if (histograms == null) {
+			histograms = create(dirs.getLocation(), regionData.get(), entitiesData.get());
+			write(file, fingerprint, histograms);
+		}
+		return histograms;
+	}
+
+	private static EntityHistogram[] create(Point2i location, byte[] regionData, byte[] entitiesData) {
+		EntityScanner.Result[] region = EntityScanner.scan(regionData, location, RegionChunk::new);
+		EntityScanner.Result[] entities = EntityScanner.scan(entitiesData, location, EntitiesChunk::new);
+		EntityHistogram[] histograms = new EntityHistogram[1024];
+		for (int i = 0; i < 1024; i++) {
+			histograms[i] = resolve(region[i], entities[i]);
+		}
+		return histograms;
+	}
+
+	// picks the same entity list as the EntityFilter of the chunk's version would
+	private static EntityHistogram resolve(EntityScanner.Result region, EntityScanner.Result entities) {
+		if (region == null && entities == null) {
+			return EntityHistogram.EMPTY;
+		}
+		int dataVersion = region != null ? region.getDataVersion() : entities.getDataVersion();
+		EntityHistogram histogram;
+		if (dataVersion < 2687) {
+			histogram = region == null ? null : region.getLevelEntities();
+		} else if (entities == null) {
+			histogram = null;
+		} else if (dataVersion < 2825 || entities.getDataVersion() > 2843) {
+			histogram = entities.getEntities();
+		} else {
+			histogram = entities.getLevelEntities();
+		}
+		int protoAmount = region == null ? 0 : region.getProtoAmount();
+		if (histogram == null) {
+			return protoAmount == 0 ? EntityHistogram.EMPTY : new EntityHistogram(EntityHistogram.EMPTY.counts(), 0, protoAmount);
+		}
+		return new EntityHistogram(histogram.counts(), histogram.amount(), protoAmount);
+	}
+
+	private EntityHistogram[] read(File file, long[] fingerprint) {
+		if (!file.exists()) {
+			return null;
+		}
+		try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (dis.readInt() != VERSION) {
+				return null;
+			}
+			for (long f : fingerprint) {
+				if (dis.readLong() != f) {
+					return null;
+				}
+			}
+			EntityHistogram[] histograms = new EntityHistogram[1024];
+			for (int i = 0; i < 1024; i++) {
+				int amount = dis.readInt();
+				int protoAmount = dis.readInt();
+				int ids = dis.readInt();
+				if (amount == 0 && protoAmount == 0 && ids == 0) {
+					histograms[i] = EntityHistogram.EMPTY;
+					continue;
+				}
+				Object2IntMap<String> counts = new Object2IntOpenHashMap<>(ids);
+				for (int j = 0; j < ids; j++) {
+					counts.put(dis.readUTF(), dis.readInt());
+				}
+				histograms[i] = new EntityHistogram(counts, amount, protoAmount);
+			}
+			return histograms;
+		} catch (IOException ex) {
+			LOGGER.debug("failed to read entity index file {}: {}", file, ex.getMessage());
+			return null;
+		}
+	}
+
+	private void write(File file, long[] fingerprint, EntityHistogram[] histograms) {
+		if (!directory.exists() && !directory.mkdirs()) {
+			LOGGER.warn("failed to create entity index directory {}", directory);
+			return;
+		}
+		try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			dos.writeInt(VERSION);
+			for (long f : fingerprint) {
+				dos.writeLong(f);
+			}
+			for (EntityHistogram histogram : histograms) {
+				dos.writeInt(histogram.amount());
+				dos.writeInt(histogram.protoAmount());
+				dos.writeInt(histogram.counts().size());
+				for (Object2IntMap.Entry<String> entry : histogram.counts().object2IntEntrySet()) {
+					dos.writeUTF(entry.getKey());
+					dos.writeInt(entry.getIntValue());
+				}
+			}
+		} catch (IOException ex) {
+			LOGGER.warn("failed to write entity index file {}", file, ex);
+			file.delete();
+		}
+	}
+
+	private File createFilePath(Point2i region) {
+		return new File(directory, String.format("r.%d.%d.ent", region.getX(), region.getZ()));
+	}
+
+	private static long[] fingerprint(RegionDirectories dirs) {
+		long[] fingerprint = new long[4];
+		File[] files = {dirs.getRegion(), dirs.getEntities()};
+		for (int i = 0; i < files.length; i++) {
+			if (files[i] != null && files[i].exists()) {
+				fingerprint[i * 2] = files[i].lastModified();
+				fingerprint[i * 2 + 1] = files[i].length();
+			}
+		}
+		return fingerprint;
+	}
+
+	// returns true if the filter needs entity ids or amounts, but doesn't need any other data of the entities
+	public static boolean canServe(Filter<?> filter) {
+		return usesEntities(filter) && !needsEntityData(filter);
+	}
+
+	private static boolean usesEntities(Filter<?> filter) {
+		if (filter instanceof GroupFilter group) {
+			for (Filter<?> child : group.getFilterValue()) {
+				if (usesEntities(child)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		return switch (filter.getType()) {
+			case ENTITIES, ENTITY_AMOUNT, PROTO_ENTITY_AMOUNT -> true;
+			default -> false;
+		};
+	}
+
+	private static boolean needsEntityData(Filter<?> filter) {
+		if (filter instanceof GroupFilter group) {
+			for (Filter<?> child : group.getFilterValue()) {
+				if (needsEntityData(child)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		return switch (filter.getType()) {
+			case CUSTOM, SCRIPT -> true;
+			default -> false;
+		};
+	}
+}
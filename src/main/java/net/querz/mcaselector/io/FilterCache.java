@@ -0,0 +1,290 @@
+package net.querz.mcaselector.io;
+
+import net.querz.mcaselector.filter.Filter;
+import net.querz.mcaselector.filter.FilterPlan;
+import net.querz.mcaselector.filter.Operator;
+import net.querz.mcaselector.filter.filters.GroupFilter;
+import net.querz.mcaselector.point.Point2i;
+import net.querz.mcaselector.selection.ChunkSet;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// caches the results of filter queries per region on disk.
+// results are stored for every cacheable filter subtree separately, keyed by its query string,
+// so that a query that only adds a clause to a previous query only needs to evaluate the new clause.
+// a region's results are discarded as soon as the region, poi or entities file changes.
+public final class FilterCache {
+
+	private static final Logger LOGGER = LogManager.getLogger(FilterCache.class);
+
+	private static final int VERSION = 2;
+	private static final int MAX_RESULTS = 32;
+
+	private final File directory;
+
+	public FilterCache(File cacheDir) {
+		this.directory = getDirectory(cacheDir);
+	}
+
+	public static File getDirectory(File cacheDir) {
+		return new File(cacheDir, "filter");
+	}
+
+	// returns the cached results of this region, or an empty set of results if the region changed
+	public RegionResults load(RegionDirectories dirs) {
+		long[] fingerprint = fingerprint(dirs);
+		RegionResults results = new RegionResults(dirs.getLocation(), fingerprint);
+		File file = createFilePath(dirs.getLocation());
+		if (!file.exists()) {
+			return results;
+		}
+
+		try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (dis.readInt() != VERSION) {
+				return results;
+			}
+			for (long f : fingerprint) {
+				if (dis.readLong() != f) {
+					return results;
+				}
+			}
+			int count = dis.readInt();
+			for (int i = 0; i < count; i++) {
+				byte[] key = new byte[dis.readInt()];
+				dis.readFully(key);
+				Result result = new Result();
+				readChunkSet(dis, result.evaluated);
+				readChunkSet(dis, result.matched);
+				results.results.put(new String(key, StandardCharsets.UTF_8), result);
+			}
+		} catch (IOException ex) {
+			LOGGER.debug("failed to read filter cache file {}: {}", file, ex.getMessage());
+			results.results.clear();
+		}
+		return results;
+	}
+
+	public void save(RegionResults results) {
+		if (!results.modified) {
+			return;
+		}
+		File file = createFilePath(results.location);
+		if (!directory.exists() && !directory.mkdirs()) {
+			LOGGER.warn("failed to create filter cache directory {}", directory);
+			return;
+		}
+
+		try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			dos.writeInt(VERSION);
+			for (long f : results.fingerprint) {
+				dos.writeLong(f);
+			}
+			dos.writeInt(results.results.size());
+			for (Map.Entry<String, Result> entry : results.results.entrySet()) {
+				byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+				dos.writeInt(key.length);
+				dos.write(key);
+				writeChunkSet(dos, entry.getValue().evaluated);
+				writeChunkSet(dos, entry.getValue().matched);
+			}
+		} catch (IOException ex) {
+			LOGGER.warn("failed to write filter cache file {}", file, ex);
+			file.delete();
+		}
+	}
+
+	private File createFilePath(Point2i region) {
+		return new File(directory, String.format("r.%d.%d.flt", region.getX(), region.getZ()));
+	}
+
+	private static long[] fingerprint(RegionDirectories dirs) {
+		long[] fingerprint = new long[6];
+		File[] files = {dirs.getRegion(), dirs.getPoi(), dirs.getEntities()};
+		for (int i = 0; i < files.length; i++) {
+			if (files[i] != null && files[i].exists()) {
+				fingerprint[i * 2] = files[i].lastModified();
+				fingerprint[i * 2 + 1] = files[i].length();
+			}
+		}
+		return fingerprint;
+	}
+
+	private static void readChunkSet(DataInputStream dis, ChunkSet chunks) throws IOException {
+		for (int z = 0; z < 32; z++) {
+			chunks.orRow(z, dis.readInt());
+		}
+	}
+
+	private static void writeChunkSet(DataOutputStream dos, ChunkSet chunks) throws IOException {
+		for (int z = 0; z < 32; z++) {
+			dos.writeInt(chunks.getRow(z));
+		}
+	}
+
+	// filters that depend on anything else than the data of the chunk itself
+	// can't be cached, because we can't tell when their result changes.
+	static boolean isCacheable(Filter<?> filter) {
+		if (filter instanceof GroupFilter group) {
+			for (Filter<?> child : group.getFilterValue()) {
+				if (!isCacheable(child)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return switch (filter.getType()) {
+			case PLAYER_DATA, PLAYER_SPAWN, SELECTION, BORDER, CUSTOM, SCRIPT -> false;
+			default -> true;
+		};
+	}
+
+	// the query string of a filter, which describes its result completely
+	static String key(Filter<?> filter) {
+		return filter.getType() + ":" + filter;
+	}
+
+	@FunctionalInterface
+	public interface ChunkEvaluator {
+
+		// returns the chunks of the given set that match the filter.
+		// chunks for which the filter failed are added to failed, so their results are not cached.
+		ChunkSet evaluate(Filter<?> filter, ChunkSet chunks, ChunkSet failed);
+	}
+
+	private static class Result {
+
+		private final ChunkSet evaluated = new ChunkSet();
+		private final ChunkSet matched = new ChunkSet();
+	}
+
+	public static class RegionResults {
+
+		private final Point2i location;
+		private final long[] fingerprint;
+		private final Map<String, Result> results = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+				return size() > MAX_RESULTS;
+			}
+		};
+		private boolean modified = false;
+
+		private RegionResults(Point2i location, long[] fingerprint) {
+			this.location = location;
+			this.fingerprint = fingerprint;
+		}
+
+		// evaluates the filter for all chunks in the given set, using cached results where possible.
+		// if evaluator is null, this returns null if any chunk still needs to be evaluated.
+		public ChunkSet evaluate(Filter<?> filter, ChunkSet chunks, ChunkEvaluator evaluator) {
+			return evaluate(filter, chunks, evaluator, new ChunkSet());
+		}
+
+		private ChunkSet evaluate(Filter<?> filter, ChunkSet chunks, ChunkEvaluator evaluator, ChunkSet failed) {
+			if (chunks.isEmpty()) {
+				return new ChunkSet();
+			}
+
+			Result result = null;
+			String key = null;
+			boolean cacheable = isCacheable(filter);
+			ChunkSet missing = chunks;
+			if (cacheable) {
+				key = key(filter);
+				result = results.get(key);
+				if (result != null) {
+					missing = chunks.clone();
+					missing.andNot(result.evaluated);
+				}
+			}
+
+			ChunkSet matched = new ChunkSet();
+			if (!missing.isEmpty()) {
+				if (filter instanceof GroupFilter group) {
+					matched = evaluateGroup(group, missing, evaluator, failed);
+				} else if (evaluator != null) {
+					matched = evaluator.evaluate(filter, missing, failed);
+				} else {
+					return null;
+				}
+				if (matched == null) {
+					return null;
+				}
+				if (cacheable) {
+					if (result == null) {
+						result = new Result();
+						results.put(key, result);
+					}
+					ChunkSet evaluated = missing.clone();
+					evaluated.andNot(failed);
+					result.evaluated.or(evaluated);
+					evaluated.and(matched);
+					result.matched.or(evaluated);
+					modified = true;
+				}
+			}
+
+			if (result == null) {
+				return matched;
+			}
+			ChunkSet out = result.matched.clone();
+			out.and(chunks);
+			// chunks that failed are not part of the cached result
+			out.or(matched);
+			return out;
+		}
+
+		// same semantics as GroupFilter.matches(), only that every child is evaluated
+		// for all chunks for which its result is still relevant at once.
+		// conditions that are AND-ed are evaluated cheapest-first, like in a FilterPlan.
+		private ChunkSet evaluateGroup(GroupFilter group, ChunkSet chunks, ChunkEvaluator evaluator, ChunkSet failed) {
+			List<List<Filter<?>>> terms = new ArrayList<>();
+			for (int i = 0; i < group.getFilterValue().size(); i++) {
+				Filter<?> child = group.getFilterValue().get(i);
+				if (i == 0 || child.getOperator() == Operator.OR) {
+					terms.add(new ArrayList<>());
+				}
+				terms.get(terms.size() - 1).add(child);
+			}
+
+			ChunkSet matched = new ChunkSet();
+			ChunkSet term = chunks;
+			for (int i = 0; i < terms.size(); i++) {
+				if (i != 0) {
+					// chunks that already matched don't need to be checked again
+					matched.or(term);
+					term = chunks.clone();
+					term.andNot(matched);
+				}
+				List<Filter<?>> conditions = terms.get(i);
+				conditions.sort((a, b) -> Integer.compare(FilterPlan.cost(a), FilterPlan.cost(b)));
+				for (Filter<?> condition : conditions) {
+					term = evaluate(condition, term, evaluator, failed);
+					if (term == null) {
+						return null;
+					}
+				}
+			}
+			matched.or(term);
+			if (group.isNegated()) {
+				ChunkSet negated = chunks.clone();
+				negated.andNot(matched);
+				return negated;
+			}
+			return matched;
+		}
+	}
+}
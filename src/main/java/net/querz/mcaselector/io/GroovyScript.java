@@ -0,0 +1,147 @@
+package net.querz.mcaselector.io;
+
+import groovy.lang.Binding;
+import groovy.lang.Closure;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.MissingMethodException;
+import groovy.lang.Script;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import javax.script.ScriptException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+
+// a groovy script that is compiled once and whose functions are called directly from the threads that process chunks.
+// the body of the script, before() and after() run on a main instance, and every thread that calls a function of
+// the script gets its own instance, so that fields (@Field) of the script are never used by two threads at once.
+// all instances share a synchronized binding, so variables that are assigned without a declaration are shared.
+// the functions are looked up once when compiling, so scripts can declare them with or without types,
+// e.g. "def filter(data)" or "boolean filter(ChunkData data)".
+public final class GroovyScript {
+
+	private static final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+	private final Class<? extends Script> type;
+	private final Binding binding;
+	private final Script main;
+	private final ThreadLocal<Script> instances;
+
+	private GroovyScript(Class<? extends Script> type, Binding binding, Script main) {
+		this.type = type;
+		this.binding = binding;
+		this.main = main;
+		instances = ThreadLocal.withInitial(() -> InvokerHelper.createScript(type, binding));
+	}
+
+	// compiles the script and runs its body once
+	public static GroovyScript compile(String source) throws ScriptException {
+		// every script gets its own class loader, so that its classes can be unloaded when it isn't used anymore
+		GroovyClassLoader loader = new GroovyClassLoader(GroovyScript.class.getClassLoader());
+		Class<? extends Script> type;
+		Binding binding = new Binding(Collections.synchronizedMap(new LinkedHashMap<>()));
+		Script main;
+		try {
+			Class<?> parsed = loader.parseClass(source);
+			if (!Script.class.isAssignableFrom(parsed)) {
+				throw new ScriptException("not a script: " + parsed.getName());
+			}
+			type = parsed.asSubclass(Script.class);
+			main = InvokerHelper.createScript(type, binding);
+		} catch (CompilationFailedException ex) {
+			throw new ScriptException(ex.getMessage());
+		}
+		try {
+			main.run();
+		} catch (RuntimeException ex) {
+			throw new ScriptException(ex);
+		}
+		return new GroovyScript(type, binding, main);
+	}
+
+	// returns a function of the script that takes arguments of the given types, or null if the script doesn't declare it
+	public Function function(String name, Class<?>... argTypes) {
+		for (Method method : type.getDeclaredMethods()) {
+			if (!method.getName().equals(name)
+					|| method.isSynthetic()
+					|| Modifier.isStatic(method.getModifiers())
+					|| !Modifier.isPublic(method.getModifiers())
+					|| !accepts(method.getParameterTypes(), argTypes)) {
+				continue;
+			}
+			try {
+				MethodHandle handle = lookup.unreflect(method);
+				// the return value is boxed, void returns null
+				return new Function(name, handle.asType(MethodType.genericMethodType(argTypes.length).insertParameterTypes(0, Script.class)));
+			} catch (IllegalAccessException ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+		return new Function(name, null);
+	}
+
+	private static boolean accepts(Class<?>[] parameterTypes, Class<?>[] argTypes) {
+		if (parameterTypes.length != argTypes.length) {
+			return false;
+		}
+		for (int i = 0; i < argTypes.length; i++) {
+			if (!parameterTypes[i].isAssignableFrom(argTypes[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public final class Function {
+
+		private final String name;
+		private final MethodHandle handle;
+
+		private Function(String name, MethodHandle handle) {
+			this.name = name;
+			this.handle = handle;
+		}
+
+		// calls the function on the instance of the current thread
+		public Object call(Object arg) {
+			Script script = instances.get();
+			if (handle == null) {
+				return callClosure(script, arg);
+			}
+			try {
+				return (Object) handle.invokeExact(script, arg);
+			} catch (RuntimeException | Error ex) {
+				throw ex;
+			} catch (Throwable t) {
+				throw new RuntimeException(t);
+			}
+		}
+
+		// calls the function without arguments on the main instance
+		public Object callMain() {
+			if (handle == null) {
+				return callClosure(main);
+			}
+			try {
+				return (Object) handle.invokeExact(main);
+			} catch (RuntimeException | Error ex) {
+				throw ex;
+			} catch (Throwable t) {
+				throw new RuntimeException(t);
+			}
+		}
+
+		// like the script engine, a closure that was assigned to a variable with the name of the function can be called
+		// instead of a function
+		private Object callClosure(Script script, Object... args) {
+			if (binding.hasVariable(name) && binding.getVariable(name) instanceof Closure<?> closure) {
+				return closure.call(args);
+			}
+			throw new MissingMethodException(name, script.getClass(), args);
+		}
+	}
+}
@@ -9,10 +9,14 @@ import net.querz.mcaselector.property.DataProperty;
 import net.querz.mcaselector.validation.ShutdownHooks;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import java.io.IOException;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
 import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 public final class JobHandler {
 
@@ -20,10 +24,30 @@ public final class JobHandler {
 
 	private static PausableThreadPoolExecutor processExecutor;
 
-	private static PausableThreadPoolExecutor saveExecutor;
+	private static ExecutorService saveExecutor;
 
 	private static ThreadPoolExecutor parseExecutor;
 
+	// reads the files of process jobs ahead of time, one virtual thread per job
+	private static ExecutorService readExecutor;
+	// the read ahead jobs that wait for read ahead budget. like the process queue, it is ordered by priority,
+	// so that the files of the jobs that will be processed first are also read first.
+	private static DynamicPriorityBlockingQueue<WrapperJob> readQueue;
+	// takes the jobs from the read queue one at a time and acquires their read ahead budget before they are read
+	private static Thread readAheadThread;
+	// the read ahead jobs that haven't been added to the process queue yet
+	private static final Set<WrapperJob> readJobs = ConcurrentHashMap.newKeySet();
+
+	// limits the amount of file data that has been read ahead but not processed yet, one permit per KiB.
+	// only the read ahead thread acquires permits, so the order in which jobs are read is the order of the read queue.
+	private static final int READ_AHEAD_PERMITS = (int) Math.min(Runtime.getRuntime().maxMemory() / 8 / 1024, Integer.MAX_VALUE);
+	private static final Semaphore readAheadBudget = new Semaphore(READ_AHEAD_PERMITS);
+
+	private static final ThreadLocal<Boolean> processThread = ThreadLocal.withInitial(() -> false);
+
+	// used to process the chunks of a single region in parallel, see forEachChunk()
+	private static ForkJoinPool chunkExecutor;
+
 	private static final AtomicInteger allTasks = new AtomicInteger(0);
 
 	private static final AtomicInteger runningTasks = new AtomicInteger(0);
@@ -40,6 +64,9 @@ public final class JobHandler {
 		ShutdownHooks.addShutdownHook(() -> processExecutor.shutdownNow());
 		ShutdownHooks.addShutdownHook(() -> saveExecutor.shutdownNow());
 		ShutdownHooks.addShutdownHook(() -> parseExecutor.shutdownNow());
+		ShutdownHooks.addShutdownHook(() -> readExecutor.shutdownNow());
+		ShutdownHooks.addShutdownHook(() -> readAheadThread.interrupt());
+		ShutdownHooks.addShutdownHook(() -> chunkExecutor.shutdownNow());
 	}
 
 	public static void init() {
@@ -56,12 +83,25 @@ public final class JobHandler {
 		if (parseExecutor != null) {
 			parseExecutor.shutdownNow();
 		}
+		if (readExecutor != null) {
+			readExecutor.shutdownNow();
+		}
+		if (readAheadThread != null) {
+			readAheadThread.interrupt();
+		}
+		if (chunkExecutor != null) {
+			chunkExecutor.shutdownNow();
+		}
 
+		NamedThreadFactory processThreadFactory = new NamedThreadFactory("processPool");
 		processExecutor = new PausableThreadPoolExecutor(
 			ConfigProvider.GLOBAL.getProcessThreads(), ConfigProvider.GLOBAL.getProcessThreads(),
 			0L, TimeUnit.MILLISECONDS,
 			new DynamicPriorityBlockingQueue<>(),
-			new NamedThreadFactory("processPool"),
+			r -> processThreadFactory.newThread(() -> {
+				processThread.set(true);
+				r.run();
+			}),
 			job -> {
 				int i;
 				if ((i = runningTasks.incrementAndGet()) > ConfigProvider.GLOBAL.getProcessThreads() && !trimSaveData) {
@@ -70,6 +110,9 @@ public final class JobHandler {
 				LOGGER.debug("+ active jobs: {} ({} queued)", i, processExecutor.getQueue().size());
 			},
 			job -> {
+				if (job instanceof ProcessDataJob processJob) {
+					readAheadBudget.release(processJob.releaseReadAhead());
+				}
 				if (job.isDone()) {
 					int i = runningTasks.decrementAndGet();
 					LOGGER.debug("- active jobs: {} ({} queued)", i, processExecutor.getQueue().size());
@@ -80,19 +123,11 @@ public final class JobHandler {
 
 		LOGGER.debug("created data processor ThreadPoolExecutor with {} threads", ConfigProvider.GLOBAL.getProcessThreads());
 
-		saveExecutor = new PausableThreadPoolExecutor(
-			ConfigProvider.GLOBAL.getWriteThreads(), ConfigProvider.GLOBAL.getWriteThreads(),
-			0L, TimeUnit.MILLISECONDS,
-			new LinkedBlockingDeque<>(),
-			new NamedThreadFactory("savePool"),
-			job -> {
-				int i = runningTasks.decrementAndGet();
-				LOGGER.debug("- active jobs: {} ({} queued)", i, processExecutor.getQueue().size());
-				processExecutor.resume("freed up a task after saving");
-			},
-			job -> {});
-
-		LOGGER.debug("created data save ThreadPoolExecutor with {} threads", ConfigProvider.GLOBAL.getWriteThreads());
+		// reading and writing files runs on a virtual thread per job, so that waiting for the disk doesn't block any platform threads.
+		// how many files are read or written at the same time is only limited per device by DeviceLimiter.
+		DeviceLimiter.reset();
+		saveExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("savePool-thread-", 0).factory());
+		LOGGER.debug("created data save executor with virtual threads");
 
 		parseExecutor = new ThreadPoolExecutor(
 			1, 1,
@@ -100,20 +135,113 @@ public final class JobHandler {
 			new DynamicPriorityBlockingQueue<>(),
 			new NamedThreadFactory("parsePool"));
 		LOGGER.debug("created data parser ThreadPoolExecutor with {} threads", 1);
+
+		readExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("readPool-thread-", 0).factory());
+		LOGGER.debug("created data reader executor with virtual threads");
+
+		ExecutorService executor = readExecutor;
+		DynamicPriorityBlockingQueue<WrapperJob> queue = readQueue = new DynamicPriorityBlockingQueue<>();
+		readAheadThread = Thread.ofPlatform().name("readAhead").daemon().start(() -> readAhead(queue, executor));
+
+		chunkExecutor = new ForkJoinPool(ConfigProvider.GLOBAL.getProcessThreads());
+		LOGGER.debug("created chunk ForkJoinPool with {} threads", ConfigProvider.GLOBAL.getProcessThreads());
+	}
+
+	// calls action for the indices of all 1024 chunks of a region.
+	// if there are fewer regions left to process than there are process threads, e.g. when only a few
+	// regions are selected, the chunks are processed in parallel, so that the threads that would otherwise
+	// be idle help with the regions that are left. action has to be safe to be called concurrently for different chunks.
+	// when called from a virtual thread, e.g. to compress chunks before saving them, the chunks are processed
+	// on the platform threads of the chunk pool, so that cpu bound work doesn't occupy the carriers of the virtual threads.
+	public static void forEachChunk(IntConsumer action) {
+		forEachChunk(action, true);
+	}
+
+	// like forEachChunk(IntConsumer), but if parallel is false, the chunks are always processed one after another
+	public static void forEachChunk(IntConsumer action, boolean parallel) {
+		if (parallel && readJobs.size() + processExecutor.getQueue().size() + processExecutor.getActiveCount() < ConfigProvider.GLOBAL.getProcessThreads()) {
+			chunkExecutor.submit(() -> IntStream.range(0, 1024).parallel().forEach(action)).join();
+		} else if (Thread.currentThread().isVirtual()) {
+			chunkExecutor.submit(() -> {
+				for (int i = 0; i < 1024; i++) {
+					action.accept(i);
+				}
+			}).join();
+		} else {
+			for (int i = 0; i < 1024; i++) {
+				action.accept(i);
+			}
+		}
+	}
+
+	// runs io of a process job that wasn't read ahead. while a process thread waits for it, the process pool gets
+	// an additional thread, so that waiting for the disk doesn't keep the pool from processing other jobs.
+	public static <T> T runBlocking(DeviceLimiter.IOAction<T> action) throws IOException {
+		if (!processThread.get()) {
+			return action.run();
+		}
+		ThreadPoolExecutor executor = processExecutor;
+		synchronized (executor) {
+			executor.setMaximumPoolSize(executor.getMaximumPoolSize() + 1);
+			executor.setCorePoolSize(executor.getCorePoolSize() + 1);
+		}
+		try {
+			return action.run();
+		} finally {
+			synchronized (executor) {
+				executor.setCorePoolSize(executor.getCorePoolSize() - 1);
+				executor.setMaximumPoolSize(executor.getMaximumPoolSize() - 1);
+			}
+		}
 	}
 
 	public static void addJob(ProcessDataJob job) {
 		LOGGER.debug("adding job {} for {} to executor queue", job.getClass().getSimpleName(), job.getRegionDirectories().getLocation());
-		processExecutor.execute(new WrapperJob(job));
+		if (job.canReadAhead()) {
+			WrapperJob readJob = new WrapperJob(new ReadAheadJob(job));
+			readJobs.add(readJob);
+			readQueue.offer(readJob);
+		} else {
+			processExecutor.execute(new WrapperJob(job));
+		}
+	}
+
+	// takes the read ahead job with the highest priority, waits until there is enough read ahead budget for it and then
+	// reads its files on a virtual thread. waiting for the budget in a single thread keeps jobs with a lower
+	// priority from taking the budget that is freed up first.
+	private static void readAhead(DynamicPriorityBlockingQueue<WrapperJob> queue, ExecutorService executor) {
+		while (!executor.isShutdown()) {
+			WrapperJob readJob;
+			try {
+				readJob = queue.take();
+			} catch (InterruptedException ex) {
+				continue;
+			}
+			if (!((ReadAheadJob) readJob.job).acquireBudget()) {
+				continue;
+			}
+			try {
+				executor.execute(() -> {
+					try {
+						readJob.run();
+					} finally {
+						readJobs.remove(readJob);
+					}
+				});
+			} catch (RejectedExecutionException ex) {
+				readAheadBudget.release(((ReadAheadJob) readJob.job).permits);
+				return;
+			}
+		}
 	}
 
 	public static void executeSaveData(SaveDataJob<?> job) {
 		if (runningTasks.get() <= ConfigProvider.GLOBAL.getProcessThreads() + 1) {
-			saveExecutor.execute(new WrapperJob(job));
+			executeSave(job);
 		} else {
 			if (!trimSaveData) {
 				processExecutor.pause("waiting for save data");
-				saveExecutor.execute(new WrapperJob(job));
+				executeSave(job);
 			} else {
 				int i;
 				if ((i = runningTasks.decrementAndGet()) <= ConfigProvider.GLOBAL.getProcessThreads() + 1) {
@@ -127,11 +255,34 @@ public final class JobHandler {
 		}
 	}
 
+	// save jobs start right away and wait for their device in DeviceLimiter. they count as running tasks until
+	// they are done, so that the process pool is paused while too many of them are waiting.
+	private static void executeSave(SaveDataJob<?> job) {
+		WrapperJob saveJob = new WrapperJob(job);
+		saveExecutor.execute(() -> {
+			try {
+				saveJob.run();
+			} finally {
+				int i = runningTasks.decrementAndGet();
+				LOGGER.debug("- active jobs: {} ({} queued)", i, processExecutor.getQueue().size());
+				processExecutor.resume("freed up a task after saving");
+			}
+		});
+	}
+
 	public static void executeParseData(ParseDataJob job) {
 		parseExecutor.execute(new WrapperJob(job));
 	}
 
 	public static void validateJobs(Predicate<ProcessDataJob> p) {
+		readJobs.removeIf(r -> {
+			if (p.test(((ReadAheadJob) r.job).job)) {
+				readQueue.remove(r);
+				r.cancel();
+				return true;
+			}
+			return false;
+		});
 		processExecutor.getQueue().removeIf(r -> {
 			if (p.test((ProcessDataJob) ((WrapperJob) r).job)) {
 				((WrapperJob) r).cancel();
@@ -149,15 +300,28 @@ public final class JobHandler {
 	}
 
 	public static void clearQueues() {
+		// read jobs are cancelled before the process queue is cleared, see ReadAheadJob.run()
+		int cancelledReadJobs = cancelReadJobs();
 		int cancelledProcessJobs = cancelExecutorQueue(processExecutor);
-		int cancelledSaveJobs = cancelExecutorQueue(saveExecutor);
 		int cancelledParseJobs = cancelExecutorQueue(parseExecutor);
 
+		LOGGER.debug("cancelled {} jobs in read queue", cancelledReadJobs);
 		LOGGER.debug("cancelled {} jobs in process queue", cancelledProcessJobs);
-		LOGGER.debug("cancelled {} jobs in save queue", cancelledSaveJobs);
 		LOGGER.debug("cancelled {} jobs in parser queue", cancelledParseJobs);
 	}
 
+	private static int cancelReadJobs() {
+		int cancelled = 0;
+		for (WrapperJob job : readJobs) {
+			if (readJobs.remove(job)) {
+				readQueue.remove(job);
+				job.cancel();
+				cancelled++;
+			}
+		}
+		return cancelled;
+	}
+
 	public static void cancelParserQueue() {
 		if (parseExecutor != null) {
 			synchronized (parseExecutor.getQueue()) {
@@ -212,6 +376,85 @@ public final class JobHandler {
 
 	private static final AtomicLong jobIDCounter = new AtomicLong(0);
 
+	// reads the files of a process job and then adds it to the process queue.
+	// if too much data has been read ahead that hasn't been processed yet, the read ahead thread waits in acquireBudget()
+	// until process jobs are done with it.
+	private static class ReadAheadJob extends Job {
+
+		private final ProcessDataJob job;
+		private boolean cancelled;
+		// the thread that is waiting for the read ahead budget
+		private Thread waiting;
+		private int permits;
+
+		private ReadAheadJob(ProcessDataJob job) {
+			super(job.getRegionDirectories(), job.getBasePriority());
+			this.job = job;
+		}
+
+		// returns false if the job was cancelled before it got its budget
+		private boolean acquireBudget() {
+			// a single job that is larger than the whole budget can still be read, but only on its own
+			permits = (int) Math.min((job.getReadAheadSize() + 1023) / 1024, READ_AHEAD_PERMITS);
+			synchronized (this) {
+				if (cancelled) {
+					return false;
+				}
+				waiting = Thread.currentThread();
+			}
+			try {
+				readAheadBudget.acquire(permits);
+			} catch (InterruptedException ex) {
+				return false;
+			} finally {
+				synchronized (this) {
+					waiting = null;
+				}
+				// clear an interrupt from cancel() that came after the permits were acquired
+				Thread.interrupted();
+			}
+			if (isCancelled()) {
+				readAheadBudget.release(permits);
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public void run() {
+			job.readAhead(permits);
+			// clearQueues() cancels all read jobs before it clears the process queue while holding its lock,
+			// so the job is either cleared from the queue or never added to it
+			synchronized (processExecutor.getQueue()) {
+				if (!isCancelled()) {
+					processExecutor.execute(new WrapperJob(job));
+					return;
+				}
+			}
+			readAheadBudget.release(job.releaseReadAhead());
+		}
+
+		private synchronized boolean isCancelled() {
+			return cancelled;
+		}
+
+		@Override
+		public void cancel() {
+			synchronized (this) {
+				cancelled = true;
+				if (waiting != null) {
+					waiting.interrupt();
+				}
+			}
+			job.cancel();
+		}
+
+		@Override
+		public int getPriority() {
+			return job.getPriority();
+		}
+	}
+
 	static class WrapperJob implements Runnable, Comparable<WrapperJob> {
 
 		Job job;
@@ -242,6 +485,9 @@ public final class JobHandler {
 		public void cancel() {
 			try {
 				job.cancel();
+				if (job instanceof ProcessDataJob processJob) {
+					readAheadBudget.release(processJob.releaseReadAhead());
+				}
 			} finally {
 				synchronized (lock) {
 					if (!done) {
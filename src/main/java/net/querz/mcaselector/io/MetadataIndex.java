@@ -0,0 +1,560 @@
+package net.querz.mcaselector.io;
+
+import net.querz.mcaselector.filter.Comparator;
+import net.querz.mcaselector.filter.Filter;
+import net.querz.mcaselector.filter.Operator;
+import net.querz.mcaselector.filter.filters.GroupFilter;
+import net.querz.mcaselector.filter.filters.StatusFilter;
+import net.querz.mcaselector.filter.filters.StructureFilter;
+import net.querz.mcaselector.io.mca.ChunkView;
+import net.querz.mcaselector.io.mca.EntityHistogram;
+import net.querz.mcaselector.io.mca.RegionChunk;
+import net.querz.mcaselector.io.registry.StatusRegistry;
+import net.querz.mcaselector.point.Point2i;
+import net.querz.mcaselector.selection.ChunkSet;
+import net.querz.mcaselector.version.ChunkFilter;
+import net.querz.mcaselector.version.VersionController;
+import net.querz.nbt.ByteTag;
+import net.querz.nbt.CompoundTag;
+import net.querz.nbt.IntTag;
+import net.querz.nbt.LongTag;
+import net.querz.nbt.StringTag;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+// stores scalar values of all chunks of a region in one column per value, so that filters that only need these values
+// can be evaluated without loading the region. when the region file changed, only chunks whose timestamp or checksum
+// of their compressed data changed are parsed again. the header alone is not enough, because MCAFile.save() keeps the
+// timestamps of the chunks it changes and often writes them to the same offsets.
+public final class MetadataIndex {
+
+	private static final Logger LOGGER = LogManager.getLogger(MetadataIndex.class);
+
+	private static final int VERSION = 2;
+
+	private static final byte HAS_X_POS = 1, HAS_Y_POS = 2, HAS_Z_POS = 4, HAS_DATA_VERSION = 8;
+
+	// regions are locked by stripe, so that no lock needs to be created or removed per region
+	private static final Object[] locks = new Object[64];
+	static {
+		Arrays.setAll(locks, i -> new Object());
+	}
+
+	private static final ExecutorService indexer = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "metadata-indexer");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	});
+	private static final AtomicInteger indexerGeneration = new AtomicInteger();
+
+	private final File directory;
+
+	public MetadataIndex(File cacheDir) {
+		this.directory = getDirectory(cacheDir);
+	}
+
+	public static File getDirectory(File cacheDir) {
+		return new File(cacheDir, "metadata");
+	}
+
+	// indexes all regions of a world in a background thread.
+	// indexing a previous world is stopped after its current region.
+	public static void indexInBackground(WorldDirectories worldDirs, File cacheDir) {
+		int generation = indexerGeneration.incrementAndGet();
+		if (worldDirs == null || cacheDir == null) {
+			return;
+		}
+		indexer.execute(() -> {
+			RegionDirectories[] regions = worldDirs.listRegions(null);
+			if (regions == null) {
+				return;
+			}
+			MetadataIndex index = new MetadataIndex(cacheDir);
+			for (RegionDirectories region : regions) {
+				if (indexerGeneration.get() != generation) {
+					return;
+				}
+				// regions that didn't change since they were indexed are skipped without reading their metadata
+				if (!index.isUpToDate(region)) {
+					index.load(region);
+				}
+			}
+			LOGGER.debug("indexed metadata of {} regions", regions.length);
+		});
+	}
+
+	// returns true if all filters only need values that are stored in the index
+	public static boolean covers(Filter<?> filter) {
+		if (filter instanceof GroupFilter group) {
+			for (Filter<?> child : group.getFilterValue()) {
+				if (!covers(child)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return switch (filter.getType()) {
+			case DATA_VERSION, INHABITED_TIME, LAST_UPDATE, STATUS, X_POS, Y_POS, Z_POS, LIGHT_POPULATED, TILE_ENTITY_AMOUNT, TIMESTAMP, ENTITY_AMOUNT, STRUCTURES -> true;
+			default -> false;
+		};
+	}
+
+	// returns the up-to-date metadata of this region
+	public RegionMetadata load(RegionDirectories dirs) {
+		Point2i location = dirs.getLocation();
+		synchronized (lock(location)) {
+			File file = createFilePath(location);
+			RegionMetadata metadata = read(file);
+			File regionFile = dirs.getRegion();
+			long lastModified = 0, length = 0;
+			if (regionFile != null && regionFile.exists()) {
+				lastModified = regionFile.lastModified();
+				length = regionFile.length();
+			}
+			if (metadata != null && metadata.lastModified == lastModified && metadata.length == length) {
+				return metadata;
+			}
+			if (metadata == null) {
+				metadata = new RegionMetadata();
+			}
+			metadata.lastModified = lastModified;
+			metadata.length = length;
+			update(metadata, regionFile, location);
+			write(file, metadata);
+			return metadata;
+		}
+	}
+
+	// compares the header of the metadata file with the region file
+	private boolean isUpToDate(RegionDirectories dirs) {
+		File file = createFilePath(dirs.getLocation());
+		File regionFile = dirs.getRegion();
+		if (!file.exists() || regionFile == null || !regionFile.exists()) {
+			return false;
+		}
+		try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 20))) {
+			return dis.readInt() == VERSION
+				&& dis.readLong() == regionFile.lastModified()
+				&& dis.readLong() == regionFile.length();
+		} catch (IOException ex) {
+			return false;
+		}
+	}
+
+	private static Object lock(Point2i location) {
+		return locks[(int) (location.asLong() * 0x9E3779B97F4A7C15L >>> 58)];
+	}
+
+	// reads all chunks that changed according to the header of the region file
+	private static void update(RegionMetadata metadata, File regionFile, Point2i location) {
+		if (regionFile == null || !regionFile.exists() || regionFile.length() < FileHelper.HEADER_SIZE) {
+			for (int i = 0; i < 1024; i++) {
+				metadata.offsets[i] = 0;
+				metadata.timestamps[i] = 0;
+				metadata.checksums[i] = 0;
+				metadata.clearRow(i);
+			}
+			return;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(regionFile, "r")) {
+			int[] offsets = new int[1024];
+			int[] timestamps = new int[1024];
+			for (int i = 0; i < 1024; i++) {
+				offsets[i] = raf.readInt();
+			}
+			for (int i = 0; i < 1024; i++) {
+				timestamps[i] = raf.readInt();
+			}
+
+			Point2i origin = location.regionToChunk();
+			CRC32 crc = new CRC32();
+			int updated = 0;
+			for (short i = 0; i < 1024; i++) {
+				boolean existed = metadata.offsets[i] >>> 8 != 0;
+				if (offsets[i] >>> 8 == 0) {
+					if (existed || timestamps[i] != metadata.timestamps[i]) {
+						metadata.offsets[i] = offsets[i];
+						metadata.timestamps[i] = timestamps[i];
+						metadata.checksums[i] = 0;
+						metadata.clearRow(i);
+					}
+					continue;
+				}
+				RegionChunk chunk = new RegionChunk(origin.add(new Point2i(i)));
+				try {
+					byte[] compressed = readChunk(raf, offsets[i] >>> 8);
+					crc.reset();
+					crc.update(compressed);
+					int checksum = (int) crc.getValue();
+					// the data of external chunks is in their own file, which isn't covered by the checksum
+					boolean external = compressed.length > 4 && compressed[4] < 0;
+					if (existed && !external && timestamps[i] == metadata.timestamps[i] && checksum == metadata.checksums[i]) {
+						metadata.offsets[i] = offsets[i];
+						continue;
+					}
+					metadata.offsets[i] = offsets[i];
+					metadata.timestamps[i] = timestamps[i];
+					metadata.checksums[i] = checksum;
+					metadata.clearRow(i);
+					chunk.setTimestamp(timestamps[i]);
+					chunk.load(new ByteArrayPointer(compressed));
+					metadata.setRow(i, chunk);
+				} catch (Exception ex) {
+					LOGGER.debug("failed to index chunk at {}", chunk.getAbsoluteLocation(), ex);
+					metadata.offsets[i] = offsets[i];
+					metadata.timestamps[i] = timestamps[i];
+					metadata.checksums[i] = 0;
+					metadata.clearRow(i);
+				}
+				updated++;
+			}
+			LOGGER.debug("indexed {} chunks of {}", updated, regionFile);
+		} catch (IOException ex) {
+			LOGGER.warn("failed to index region {}", regionFile, ex);
+		}
+	}
+
+	// reads the length, compression type and compressed data of the chunk at this sector
+	private static byte[] readChunk(RandomAccessFile raf, int sector) throws IOException {
+		raf.seek(sector * 4096L);
+		int length = raf.readInt();
+		if (length <= 0 || length > raf.length() - raf.getFilePointer()) {
+			throw new IOException("invalid chunk length " + length);
+		}
+		byte[] compressed = new byte[length + 4];
+		compressed[0] = (byte) (length >>> 24);
+		compressed[1] = (byte) (length >>> 16);
+		compressed[2] = (byte) (length >>> 8);
+		compressed[3] = (byte) length;
+		raf.readFully(compressed, 4, length);
+		return compressed;
+	}
+
+	private File createFilePath(Point2i region) {
+		return new File(directory, String.format("r.%d.%d.meta", region.getX(), region.getZ()));
+	}
+
+	private RegionMetadata read(File file) {
+		if (!file.exists()) {
+			return null;
+		}
+		try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (dis.readInt() != VERSION) {
+				return null;
+			}
+			RegionMetadata metadata = new RegionMetadata();
+			metadata.lastModified = dis.readLong();
+			metadata.length = dis.readLong();
+			for (int z = 0; z < 32; z++) {
+				metadata.present.orRow(z, dis.readInt());
+			}
+			readColumn(dis, metadata.offsets);
+			readColumn(dis, metadata.timestamps);
+			readColumn(dis, metadata.checksums);
+			readColumn(dis, metadata.dataVersions);
+			readColumn(dis, metadata.inhabitedTimes);
+			readColumn(dis, metadata.lastUpdates);
+			readColumn(dis, metadata.xPos);
+			readColumn(dis, metadata.yPos);
+			readColumn(dis, metadata.zPos);
+			dis.readFully(metadata.positions);
+			dis.readFully(metadata.lightPopulated);
+			readColumn(dis, metadata.tileEntityAmounts);
+			for (int i = 0; i < 1024; i++) {
+				metadata.statuses[i] = dis.readBoolean() ? dis.readUTF() : null;
+			}
+			return metadata;
+		} catch (IOException ex) {
+			LOGGER.debug("failed to read metadata file {}: {}", file, ex.getMessage());
+			return null;
+		}
+	}
+
+	private void write(File file, RegionMetadata metadata) {
+		if (!directory.exists() && !directory.mkdirs()) {
+			LOGGER.warn("failed to create metadata directory {}", directory);
+			return;
+		}
+		try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			dos.writeInt(VERSION);
+			dos.writeLong(metadata.lastModified);
+			dos.writeLong(metadata.length);
+			for (int z = 0; z < 32; z++) {
+				dos.writeInt(metadata.present.getRow(z));
+			}
+			writeColumn(dos, metadata.offsets);
+			writeColumn(dos, metadata.timestamps);
+			writeColumn(dos, metadata.checksums);
+			writeColumn(dos, metadata.dataVersions);
+			writeColumn(dos, metadata.inhabitedTimes);
+			writeColumn(dos, metadata.lastUpdates);
+			writeColumn(dos, metadata.xPos);
+			writeColumn(dos, metadata.yPos);
+			writeColumn(dos, metadata.zPos);
+			dos.write(metadata.positions);
+			dos.write(metadata.lightPopulated);
+			writeColumn(dos, metadata.tileEntityAmounts);
+			for (String status : metadata.statuses) {
+				dos.writeBoolean(status != null);
+				if (status != null) {
+					dos.writeUTF(status);
+				}
+			}
+		} catch (IOException ex) {
+			LOGGER.warn("failed to write metadata file {}", file, ex);
+			file.delete();
+		}
+	}
+
+	private static void readColumn(DataInputStream dis, int[] column) throws IOException {
+		for (int i = 0; i < column.length; i++) {
+			column[i] = dis.readInt();
+		}
+	}
+
+	private static void readColumn(DataInputStream dis, long[] column) throws IOException {
+		for (int i = 0; i < column.length; i++) {
+			column[i] = dis.readLong();
+		}
+	}
+
+	private static void writeColumn(DataOutputStream dos, int[] column) throws IOException {
+		for (int value : column) {
+			dos.writeInt(value);
+		}
+	}
+
+	private static void writeColumn(DataOutputStream dos, long[] column) throws IOException {
+		for (long value : column) {
+			dos.writeLong(value);
+		}
+	}
+
+	// the values of all chunks of a region. chunks that don't exist in the region file have the same values
+	// the filters would see for a chunk without data, so that filters evaluated from here match the same chunks.
+	public static class RegionMetadata {
+
+		private long lastModified;
+		private long length;
+		private final ChunkSet present = new ChunkSet();
+		private final int[] offsets = new int[1024];
+		private final int[] timestamps = new int[1024];
+		// crc32 of the compressed data of each chunk
+		private final int[] checksums = new int[1024];
+		private final int[] dataVersions = new int[1024];
+		private final long[] inhabitedTimes = new long[1024];
+		private final long[] lastUpdates = new long[1024];
+		private final int[] xPos = new int[1024];
+		private final int[] yPos = new int[1024];
+		private final int[] zPos = new int[1024];
+		private final byte[] positions = new byte[1024];
+		private final byte[] lightPopulated = new byte[1024];
+		private final int[] tileEntityAmounts = new int[1024];
+		private final String[] statuses = new String[1024];
+		private int[] entityAmounts;
+		private StructureIndex.RegionStructures structures;
+
+		private void clearRow(int i) {
+			present.clear(i);
+			dataVersions[i] = 0;
+			inhabitedTimes[i] = 0;
+			lastUpdates[i] = 0;
+			xPos[i] = yPos[i] = zPos[i] = 0;
+			positions[i] = 0;
+			lightPopulated[i] = 0;
+			tileEntityAmounts[i] = 0;
+			statuses[i] = null;
+		}
+
+		private void setRow(int i, RegionChunk chunk) {
+			CompoundTag data = chunk.getData();
+			if (data == null) {
+				return;
+			}
+			present.set(i);
+			int dataVersion = data.getIntOrDefault("DataVersion", 0);
+			ChunkFilter chunkFilter = VersionController.getChunkFilter(dataVersion);
+			dataVersions[i] = dataVersion;
+			LongTag inhabitedTime = chunkFilter.getInhabitedTime(data);
+			inhabitedTimes[i] = inhabitedTime == null ? 0 : inhabitedTime.asLong();
+			LongTag lastUpdate = chunkFilter.getLastUpdate(data);
+			lastUpdates[i] = lastUpdate == null ? 0 : lastUpdate.asLong();
+			IntTag x = chunkFilter.getXPos(data);
+			IntTag y = chunkFilter.getYPos(data);
+			IntTag z = chunkFilter.getZPos(data);
+			positions[i] = (byte) ((x == null ? 0 : HAS_X_POS) | (y == null ? 0 : HAS_Y_POS) | (z == null ? 0 : HAS_Z_POS)
+				| (data.containsKey("DataVersion") ? HAS_DATA_VERSION : 0));
+			xPos[i] = x == null ? 0 : x.asInt();
+			yPos[i] = y == null ? 0 : y.asInt();
+			zPos[i] = z == null ? 0 : z.asInt();
+			ByteTag light = chunkFilter.getLightPopulated(data);
+			lightPopulated[i] = light == null ? 0 : light.asByte();
+			tileEntityAmounts[i] = new ChunkView(chunk, null, null).getTileEntityAmount();
+			StringTag status = chunkFilter.getStatus(data);
+			statuses[i] = status == null ? null : status.getValue();
+		}
+
+		// the entity amounts are not stored in the index, they are taken from an EntityIndex
+		public void setEntityHistograms(EntityHistogram[] histograms) {
+			entityAmounts = new int[1024];
+			for (int i = 0; i < 1024; i++) {
+				entityAmounts[i] = histograms[i].amount();
+			}
+		}
+
+		// the structures are not stored in the index, they are taken from a StructureIndex
+		public void setStructures(StructureIndex.RegionStructures structures) {
+			this.structures = structures;
+		}
+
+		// returns the chunks of the given set that match the filter
+		public ChunkSet evaluate(Filter<?> filter, ChunkSet chunks) {
+			if (filter instanceof GroupFilter group) {
+				return evaluateGroup(group, chunks);
+			}
+			Comparator comparator = filter.getComparator();
+			return switch (filter.getType()) {
+				case DATA_VERSION -> scan(dataVersions, dataVersionDefined(), comparator, intValue(filter), chunks);
+				case INHABITED_TIME -> scan(inhabitedTimes, comparator, longValue(filter), chunks);
+				case LAST_UPDATE -> scan(lastUpdates, comparator, longValue(filter), chunks);
+				case X_POS -> scan(xPos, positionsWith(HAS_X_POS), comparator, intValue(filter), chunks);
+				case Y_POS -> scan(yPos, positionsWith(HAS_Y_POS), comparator, intValue(filter), chunks);
+				case Z_POS -> scan(zPos, positionsWith(HAS_Z_POS), comparator, intValue(filter), chunks);
+				case LIGHT_POPULATED -> scan(lightPopulated, comparator, intValue(filter), chunks);
+				case TILE_ENTITY_AMOUNT -> scan(tileEntityAmounts, null, comparator, intValue(filter), chunks);
+				case TIMESTAMP -> scan(timestamps, present, comparator, intValue(filter), chunks);
+				case ENTITY_AMOUNT -> scan(entityAmounts, null, comparator, intValue(filter), chunks);
+				case STATUS -> scanStatus(((StatusFilter) filter).getFilterValue(), comparator, chunks);
+				case STRUCTURES -> structures.evaluate(((StructureFilter) filter).getFilterValue(), comparator, chunks);
+				default -> throw new IllegalArgumentException("filter " + filter.getType() + " is not covered by the metadata index");
+			};
+		}
+
+		// same semantics as GroupFilter.matches()
+		private ChunkSet evaluateGroup(GroupFilter group, ChunkSet chunks) {
+			ChunkSet matched = new ChunkSet();
+			ChunkSet term = chunks;
+			List<Filter<?>> children = group.getFilterValue();
+			for (int i = 0; i < children.size(); i++) {
+				Filter<?> child = children.get(i);
+				if (i != 0 && child.getOperator() == Operator.OR) {
+					matched.or(term);
+					term = chunks.clone();
+					term.andNot(matched);
+				}
+				term = evaluate(child, term);
+			}
+			matched.or(term);
+			if (group.isNegated()) {
+				ChunkSet negated = chunks.clone();
+				negated.andNot(matched);
+				return negated;
+			}
+			return matched;
+		}
+
+		private ChunkSet positionsWith(byte flag) {
+			ChunkSet chunks = new ChunkSet();
+			for (int i = 0; i < 1024; i++) {
+				if ((positions[i] & flag) != 0) {
+					chunks.set(i);
+				}
+			}
+			return chunks;
+		}
+
+		// chunks without data have a DataVersion of 0, but chunks with data and without a DataVersion never match
+		private ChunkSet dataVersionDefined() {
+			ChunkSet chunks = positionsWith(HAS_DATA_VERSION);
+			chunks.or(present.flip());
+			return chunks;
+		}
+
+		private static int intValue(Filter<?> filter) {
+			return ((Number) filter.getFilterValue()).intValue();
+		}
+
+		private static long longValue(Filter<?> filter) {
+			return ((Number) filter.getFilterValue()).longValue();
+		}
+
+		// each comparator has its own loop, so that there is no branch on the comparator per chunk.
+		// if defined is not null, chunks that are not in it never match, because the filter can't read a value for them.
+		private static ChunkSet scan(int[] column, ChunkSet defined, Comparator comparator, int value, ChunkSet chunks) {
+			boolean[] matches = new boolean[1024];
+			switch (comparator) {
+				case EQUAL -> { for (int i = 0; i < 1024; i++) matches[i] = column[i] == value; }
+				case NOT_EQUAL -> { for (int i = 0; i < 1024; i++) matches[i] = column[i] != value; }
+				case LARGER -> { for (int i = 0; i < 1024; i++) matches[i] = column[i] > value; }
+				case SMALLER -> { for (int i = 0; i < 1024; i++) matches[i] = column[i] < value; }
+				case LARGER_EQUAL -> { for (int i = 0; i < 1024; i++) matches[i] = column[i] >= value; }
+				case SMALLER_EQUAL -> { for (int i = 0; i < 1024; i++) matches[i] = column[i] <= value; }
+				default -> {}
+			}
+			return toChunkSet(matches, defined, chunks);
+		}
+
+		private static ChunkSet scan(long[] column, Comparator comparator, long value, ChunkSet chunks) {
+			boolean[] matches = new boolean[1024];
+			switch (comparator) {
+				case EQUAL -> { for (int i = 0; i < 1024; i++) matches[i] = column[i] == value; }
+				case NOT_EQUAL -> { for (int i = 0; i < 1024; i++) matches[i] = column[i] != value; }
+				case LARGER -> { for (int i = 0; i < 1024; i++) matches[i] = column[i] > value; }
+				case SMALLER -> { for (int i = 0; i < 1024; i++) matches[i] = column[i] < value; }
+				case LARGER_EQUAL -> { for (int i = 0; i < 1024; i++) matches[i] = column[i] >= value; }
+				case SMALLER_EQUAL -> { for (int i = 0; i < 1024; i++) matches[i] = column[i] <= value; }
+				default -> {}
+			}
+			return toChunkSet(matches, null, chunks);
+		}
+
+		private static ChunkSet scan(byte[] column, Comparator comparator, int value, ChunkSet chunks) {
+			boolean[] matches = new boolean[1024];
+			switch (comparator) {
+				case EQUAL -> { for (int i = 0; i < 1024; i++) matches[i] = column[i] == value; }
+				case NOT_EQUAL -> { for (int i = 0; i < 1024; i++) matches[i] = column[i] != value; }
+				case LARGER -> { for (int i = 0; i < 1024; i++) matches[i] = column[i] > value; }
+				case SMALLER -> { for (int i = 0; i < 1024; i++) matches[i] = column[i] < value; }
+				case LARGER_EQUAL -> { for (int i = 0; i < 1024; i++) matches[i] = column[i] >= value; }
+				case SMALLER_EQUAL -> { for (int i = 0; i < 1024; i++) matches[i] = column[i] <= value; }
+				default -> {}
+			}
+			return toChunkSet(matches, null, chunks);
+		}
+
+		private ChunkSet scanStatus(StatusRegistry.StatusIdentifier value, Comparator comparator, ChunkSet chunks) {
+			boolean[] matches = new boolean[1024];
+			for (int i = 0; i < 1024; i++) {
+				boolean equal = value.equals(statuses[i]);
+				matches[i] = comparator == Comparator.EQUAL ? equal : comparator == Comparator.NOT_EQUAL && !equal;
+			}
+			return toChunkSet(matches, null, chunks);
+		}
+
+		private static ChunkSet toChunkSet(boolean[] matches, ChunkSet defined, ChunkSet chunks) {
+			ChunkSet result = new ChunkSet();
+			chunks.forEach(i -> {
+				if (matches[i] && (defined == null || defined.get(i))) {
+					result.set(i);
+				}
+			});
+			return result;
+		}
+	}
+}
@@ -0,0 +1,303 @@
+package net.querz.mcaselector.io;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.querz.mcaselector.config.ConfigProvider;
+import net.querz.mcaselector.point.Point2i;
+import net.querz.nbt.CompoundTag;
+import net.querz.nbt.IntTag;
+import net.querz.nbt.ListTag;
+import net.querz.nbt.NBTUtil;
+import net.querz.nbt.StringTag;
+import net.querz.nbt.Tag;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// the positions and spawn points of all players of a playerdata directory.
+// the index is stored in the cache directory together with the last modification time and size of every player file,
+// so that only player files that changed since the index was built need to be read again.
+public final class PlayerIndex {
+
+	private static final Logger LOGGER = LogManager.getLogger(PlayerIndex.class);
+
+	private static final int VERSION = 1;
+	private static final Pattern playerFilePattern = Pattern.compile("^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}\\.dat$");
+
+	private static final Map<File, PlayerIndex> indices = new HashMap<>();
+
+	private final File directory;
+	private Map<String, Player> players = new HashMap<>();
+
+	private PlayerIndex(File directory) {
+		this.directory = directory;
+	}
+
+	public static File getDirectory(File cacheDir) {
+		return new File(cacheDir, "players");
+	}
+
+	// returns the locations of all players in this dimension.
+	// if spawn is true, this returns the spawn points of all players instead of their positions.
+	public static Locations getLocations(File directory, Object dimension, boolean spawn) {
+		PlayerIndex index;
+		synchronized (indices) {
+			index = indices.computeIfAbsent(directory.getAbsoluteFile(), PlayerIndex::new);
+		}
+		synchronized (index) {
+			index.update();
+			Locations locations = new Locations();
+			for (Player player : index.players.values()) {
+				if (spawn && player.hasSpawn() && dimension.equals(player.spawnDimension())) {
+					locations.add(new Point2i(player.spawnX(), player.spawnZ()).blockToChunk());
+				} else if (!spawn && player.hasPos() && dimension.equals(player.dimension())) {
+					locations.add(new Point2i(player.x(), player.z()).blockToChunk());
+				}
+			}
+			return locations;
+		}
+	}
+
+	private void update() {
+		File[] playerFiles = directory.listFiles((d, f) -> playerFilePattern.matcher(f).matches());
+		if (playerFiles == null) {
+			playerFiles = new File[0];
+		}
+
+		File cacheFile = createFilePath();
+		if (players.isEmpty() && cacheFile != null) {
+			load(cacheFile);
+		}
+
+		Map<String, Player> updated = new HashMap<>(playerFiles.length);
+		boolean modified = playerFiles.length != players.size();
+		for (File playerFile : playerFiles) {
+			long lastModified = playerFile.lastModified();
+			long length = playerFile.length();
+			Player player = players.get(playerFile.getName());
+			if (player == null || player.lastModified() != lastModified || player.length() != length) {
+				player = readPlayer(playerFile, lastModified, length);
+				modified = true;
+			}
+			updated.put(playerFile.getName(), player);
+		}
+		players = updated;
+
+		if (modified && cacheFile != null) {
+			save(cacheFile);
+		}
+	}
+
+	private static Player readPlayer(File playerFile, long lastModified, long length) {
+		try {
+			CompoundTag root = (CompoundTag) NBTUtil.read(playerFile);
+
+			ListTag pos = root.getListTag("Pos");
+			boolean hasPos = pos != null && pos.size() == 3;
+			Object dimension = getDimension(root.get("Dimension"));
+
+			IntTag spawnX = root.getIntTag("SpawnX");
+			IntTag spawnZ = root.getIntTag("SpawnZ");
+			boolean hasSpawn = spawnX != null && spawnZ != null;
+			Object spawnDimension = getDimension(root.get("SpawnDimension"));
+
+			return new Player(lastModified, length,
+				hasPos, dimension, hasPos ? pos.getInt(0) : 0, hasPos ? pos.getInt(2) : 0,
+				hasSpawn, spawnDimension, hasSpawn ? spawnX.asInt() : 0, hasSpawn ? spawnZ.asInt() : 0);
+		} catch (Exception ex) {
+			LOGGER.warn("failed to read player file {}", playerFile, ex);
+			return new Player(lastModified, length, false, null, 0, 0, false, null, 0, 0);
+		}
+	}
+
+	// the dimension can be an IntTag (before 1.16) or a StringTag
+	private static Object getDimension(Tag tag) {
+		if (tag instanceof IntTag intTag) {
+			return intTag.asInt();
+		} else if (tag instanceof StringTag stringTag) {
+			return stringTag.getValue();
+		}
+		return null;
+	}
+
+	private File createFilePath() {
+		File cacheDir = ConfigProvider.WORLD.getCacheDir();
+		if (cacheDir == null) {
+			return null;
+		}
+		// 64-bit FNV-1a hash of the path of the playerdata directory
+		String path = directory.getAbsolutePath();
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < path.length(); i++) {
+			hash ^= path.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return new File(getDirectory(cacheDir), String.format("%016x.idx", hash));
+	}
+
+	private void load(File file) {
+		if (!file.exists()) {
+			return;
+		}
+		try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (dis.readInt() != VERSION || !dis.readUTF().equals(directory.getAbsolutePath())) {
+				return;
+			}
+			int count = dis.readInt();
+			Map<String, Player> loaded = new HashMap<>(count);
+			for (int i = 0; i < count; i++) {
+				String name = dis.readUTF();
+				loaded.put(name, new Player(dis.readLong(), dis.readLong(),
+					dis.readBoolean(), readDimension(dis), dis.readInt(), dis.readInt(),
+					dis.readBoolean(), readDimension(dis), dis.readInt(), dis.readInt()));
+			}
+			players = loaded;
+		} catch (IOException ex) {
+			LOGGER.debug("failed to read player index {}: {}", file, ex.getMessage());
+		}
+	}
+
+	private void save(File file) {
+		File dir = file.getParentFile();
+		if (!dir.exists() && !dir.mkdirs()) {
+			LOGGER.warn("failed to create player index directory {}", dir);
+			return;
+		}
+		try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			dos.writeInt(VERSION);
+			dos.writeUTF(directory.getAbsolutePath());
+			dos.writeInt(players.size());
+			for (Map.Entry<String, Player> entry : players.entrySet()) {
+				Player player = entry.getValue();
+				dos.writeUTF(entry.getKey());
+				dos.writeLong(player.lastModified());
+				dos.writeLong(player.length());
+				dos.writeBoolean(player.hasPos());
+				writeDimension(dos, player.dimension());
+				dos.writeInt(player.x());
+				dos.writeInt(player.z());
+				dos.writeBoolean(player.hasSpawn());
+				writeDimension(dos, player.spawnDimension());
+				dos.writeInt(player.spawnX());
+				dos.writeInt(player.spawnZ());
+			}
+		} catch (IOException ex) {
+			LOGGER.warn("failed to write player index {}", file, ex);
+			file.delete();
+		}
+	}
+
+	private static Object readDimension(DataInputStream dis) throws IOException {
+		return switch (dis.readByte()) {
+			case 1 -> dis.readInt();
+			case 2 -> dis.readUTF();
+			default -> null;
+		};
+	}
+
+	private static void writeDimension(DataOutputStream dos, Object dimension) throws IOException {
+		if (dimension instanceof Integer i) {
+			dos.writeByte(1);
+			dos.writeInt(i);
+		} else if (dimension instanceof String s) {
+			dos.writeByte(2);
+			dos.writeUTF(s);
+		} else {
+			dos.writeByte(0);
+		}
+	}
+
+	private record Player(long lastModified, long length,
+						  boolean hasPos, Object dimension, int x, int z,
+						  boolean hasSpawn, Object spawnDimension, int spawnX, int spawnZ) {}
+
+	// the chunks that contain a player, grouped by region
+	public static class Locations {
+
+		private final Long2ObjectMap<LongSet> regions = new Long2ObjectOpenHashMap<>();
+
+		private void add(Point2i chunk) {
+			regions.computeIfAbsent(chunk.chunkToRegion().asLong(), k -> new LongOpenHashSet()).add(chunk.asLong());
+		}
+
+		public boolean isEmpty() {
+			return regions.isEmpty();
+		}
+
+		public boolean containsChunk(Point2i chunk) {
+			LongSet chunks = regions.get(chunk.chunkToRegion().asLong());
+			return chunks != null && chunks.contains(chunk.asLong());
+		}
+
+		public boolean containsRegion(Point2i region) {
+			return regions.containsKey(region.asLong());
+		}
+
+		// returns true if any player is within the radius of this chunk.
+		// the radius is a circle, the same as the one used to select chunks around the results of a filter.
+		public boolean isWithinRadius(Point2i chunk, int radius) {
+			if (radius <= 0) {
+				return containsChunk(chunk);
+			}
+			double radiusSquared = ((double) radius + 0.3) * ((double) radius + 0.3);
+			Point2i min = chunk.sub(radius).chunkToRegion();
+			Point2i max = chunk.add(radius).chunkToRegion();
+			for (int x = min.getX(); x <= max.getX(); x++) {
+				for (int z = min.getZ(); z <= max.getZ(); z++) {
+					LongSet chunks = regions.get(new Point2i(x, z).asLong());
+					if (chunks == null) {
+						continue;
+					}
+					for (long c : chunks) {
+						Point2i p = new Point2i(c);
+						long dx = p.getX() - chunk.getX();
+						long dz = p.getZ() - chunk.getZ();
+						if (dx * dx + dz * dz <= radiusSquared) {
+							return true;
+						}
+					}
+				}
+			}
+			return false;
+		}
+
+		// returns true if any player is within the radius of any chunk of this region
+		public boolean isRegionWithinRadius(Point2i region, int radius) {
+			if (radius <= 0) {
+				return containsRegion(region);
+			}
+			Point2i min = region.regionToChunk().sub(radius);
+			Point2i max = region.regionToChunk().add(31 + radius);
+			Point2i minRegion = min.chunkToRegion();
+			Point2i maxRegion = max.chunkToRegion();
+			for (int x = minRegion.getX(); x <= maxRegion.getX(); x++) {
+				for (int z = minRegion.getZ(); z <= maxRegion.getZ(); z++) {
+					LongSet chunks = regions.get(new Point2i(x, z).asLong());
+					if (chunks == null) {
+						continue;
+					}
+					for (long c : chunks) {
+						Point2i p = new Point2i(c);
+						// the square around the region is enough to know that we need to look at the chunks of this region
+						if (p.getX() >= min.getX() && p.getX() <= max.getX() && p.getZ() >= min.getZ() && p.getZ() <= max.getZ()) {
+							return true;
+						}
+					}
+				}
+			}
+			return false;
+		}
+	}
+}
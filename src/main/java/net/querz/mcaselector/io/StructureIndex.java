@@ -0,0 +1,444 @@
+package net.querz.mcaselector.io;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.querz.mcaselector.config.ConfigProvider;
+import net.querz.mcaselector.filter.Comparator;
+import net.querz.mcaselector.filter.Filter;
+import net.querz.mcaselector.filter.FilterType;
+import net.querz.mcaselector.filter.filters.GroupFilter;
+import net.querz.mcaselector.io.mca.StructureScanner;
+import net.querz.mcaselector.io.mca.StructureScanner.Reference;
+import net.querz.mcaselector.io.mca.StructureScanner.Result;
+import net.querz.mcaselector.io.mca.StructureScanner.Start;
+import net.querz.mcaselector.io.registry.StructureRegistry;
+import net.querz.mcaselector.point.Point2i;
+import net.querz.mcaselector.selection.ChunkSet;
+import net.querz.mcaselector.selection.Selection;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+// stores the structure references and starts of all chunks of a region in the cache directory.
+// the regions of a world can be combined into a Structures index that knows the bounding box and all chunks of each structure,
+// so that queries for structures and the deletion of structures across chunks don't need to read the chunks again.
+// a region's structures are discarded as soon as the region file changes. without a cache directory, nothing is stored
+// and the regions are scanned every time.
+public final class StructureIndex {
+
+	private static final Logger LOGGER = LogManager.getLogger(StructureIndex.class);
+
+	private static final int VERSION = 1;
+
+	// regions are locked by stripe, so that no lock needs to be created or removed per region
+	private static final Object[] locks = new Object[64];
+	static {
+		Arrays.setAll(locks, i -> new Object());
+	}
+
+	private final File directory;
+
+	public StructureIndex(File cacheDir) {
+		this.directory = cacheDir == null ? null : getDirectory(cacheDir);
+	}
+
+	public static File getDirectory(File cacheDir) {
+		return new File(cacheDir, "structures");
+	}
+
+	// returns the structures of all 1024 chunks of this region.
+	// the data of the region file is only requested if the cached structures are outdated.
+	public RegionStructures load(RegionDirectories dirs, Supplier<byte[]> regionData) {
+		Point2i location = dirs.getLocation();
+		synchronized (locks[(int) (location.asLong() * 0x9E3779B97F4A7C15L >>> 58)]) {
+			if (directory == null) {
+				return new RegionStructures(location, StructureScanner.scan(regionData.get(), location));
+			}
+			long[] fingerprint = fingerprint(dirs.getRegion());
+			File file = createFilePath(location);
+			Result[] chunks = read(file, fingerprint);
+			if (chunks == null) {
+				chunks = StructureScanner.scan(regionData.get(), location);
+				write(file, fingerprint, chunks);
+			}
+			return new RegionStructures(location, chunks);
+		}
+	}
+
+	public RegionStructures load(RegionDirectories dirs) {
+		return load(dirs, () -> readRegion(dirs.getRegion()));
+	}
+
+	// loads the structures of all regions in parallel and combines them
+	public Structures build(RegionDirectories[] regions) {
+		Structures structures = new Structures();
+		ForkJoinPool threadPool = new ForkJoinPool(ConfigProvider.GLOBAL.getProcessThreads());
+		try {
+			List<RegionStructures> loaded = threadPool.submit(() -> Arrays.stream(regions).parallel()
+					.map(this::load)
+					.toList()).get();
+			loaded.forEach(structures::add);
+			LOGGER.debug("indexed {} structures in {} regions", structures.size(), regions.length);
+		} catch (InterruptedException | ExecutionException ex) {
+			LOGGER.warn("failed to index structures", ex);
+		} finally {
+			threadPool.shutdown();
+		}
+		return structures;
+	}
+
+	private static byte[] readRegion(File file) {
+		if (file == null || !file.exists()) {
+			return null;
+		}
+		try {
+			return Files.readAllBytes(file.toPath());
+		} catch (IOException ex) {
+			LOGGER.warn("failed to read data from {}", file, ex);
+			return null;
+		}
+	}
+
+	private Result[] read(File file, long[] fingerprint) {
+		if (!file.exists()) {
+			return null;
+		}
+		try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (dis.readInt() != VERSION) {
+				return null;
+			}
+			for (long f : fingerprint) {
+				if (dis.readLong() != f) {
+					return null;
+				}
+			}
+			Result[] chunks = new Result[1024];
+			for (int i = 0; i < 1024; i++) {
+				int references = dis.readInt();
+				if (references < 0) {
+					continue;
+				}
+				int starts = dis.readInt();
+				if (references == 0 && starts == 0) {
+					chunks[i] = Result.EMPTY;
+					continue;
+				}
+				Reference[] r = new Reference[references];
+				for (int j = 0; j < references; j++) {
+					String name = dis.readUTF();
+					long[] s = new long[dis.readInt()];
+					for (int k = 0; k < s.length; k++) {
+						s[k] = dis.readLong();
+					}
+					r[j] = new Reference(name, s);
+				}
+				Start[] s = new Start[starts];
+				for (int j = 0; j < starts; j++) {
+					String name = dis.readUTF();
+					String id = dis.readBoolean() ? dis.readUTF() : null;
+					int[] boundingBox = null;
+					if (dis.readBoolean()) {
+						boundingBox = new int[6];
+						for (int k = 0; k < 6; k++) {
+							boundingBox[k] = dis.readInt();
+						}
+					}
+					s[j] = new Start(name, id, boundingBox);
+				}
+				chunks[i] = new Result(r, s);
+			}
+			return chunks;
+		} catch (IOException ex) {
+			LOGGER.debug("failed to read structure index file {}: {}", file, ex.getMessage());
+			return null;
+		}
+	}
+
+	private void write(File file, long[] fingerprint, Result[] chunks) {
+		if (!directory.exists() && !directory.mkdirs()) {
+			LOGGER.warn("failed to create structure index directory {}", directory);
+			return;
+		}
+		try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			dos.writeInt(VERSION);
+			for (long f : fingerprint) {
+				dos.writeLong(f);
+			}
+			for (Result chunk : chunks) {
+				// chunks that don't exist are stored as -1
+				if (chunk == null) {
+					dos.writeInt(-1);
+					continue;
+				}
+				dos.writeInt(chunk.references().length);
+				dos.writeInt(chunk.starts().length);
+				for (Reference reference : chunk.references()) {
+					dos.writeUTF(reference.name());
+					dos.writeInt(reference.starts().length);
+					for (long start : reference.starts()) {
+						dos.writeLong(start);
+					}
+				}
+				for (Start start : chunk.starts()) {
+					dos.writeUTF(start.name());
+					dos.writeBoolean(start.id() != null);
+					if (start.id() != null) {
+						dos.writeUTF(start.id());
+					}
+					dos.writeBoolean(start.boundingBox() != null);
+					if (start.boundingBox() != null) {
+						for (int b : start.boundingBox()) {
+							dos.writeInt(b);
+						}
+					}
+				}
+			}
+		} catch (IOException ex) {
+			LOGGER.warn("failed to write structure index file {}", file, ex);
+			file.delete();
+		}
+	}
+
+	private File createFilePath(Point2i region) {
+		return new File(directory, String.format("r.%d.%d.str", region.getX(), region.getZ()));
+	}
+
+	private static long[] fingerprint(File region) {
+		if (region == null || !region.exists()) {
+			return new long[2];
+		}
+		return new long[]{region.lastModified(), region.length()};
+	}
+
+	// returns true if the filter looks for structures
+	public static boolean usesStructures(Filter<?> filter) {
+		if (filter instanceof GroupFilter group) {
+			for (Filter<?> child : group.getFilterValue()) {
+				if (usesStructures(child)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		return filter.getType() == FilterType.STRUCTURES;
+	}
+
+	// the structures of all chunks of a region. chunks that don't exist are null.
+	public static class RegionStructures {
+
+		private final Point2i location;
+		private final Result[] chunks;
+
+		private RegionStructures(Point2i location, Result[] chunks) {
+			this.location = location;
+			this.chunks = chunks;
+		}
+
+		// returns the chunks of the given set that match a StructureFilter with these structure names.
+		// same semantics as StructureFilter, which only looks at the references of a chunk.
+		public ChunkSet evaluate(List<String> names, Comparator comparator, ChunkSet chunks) {
+			List<Set<String>> alts = new ArrayList<>(names.size());
+			for (String name : names) {
+				alts.add(StructureRegistry.getAlts(name));
+			}
+			ChunkSet result = new ChunkSet();
+			chunks.forEach(i -> {
+				boolean matches = switch (comparator) {
+					case CONTAINS -> containsAll(this.chunks[i], alts);
+					case CONTAINS_NOT -> !containsAll(this.chunks[i], alts);
+					case INTERSECTS -> containsAny(this.chunks[i], alts);
+					default -> false;
+				};
+				if (matches) {
+					result.set(i);
+				}
+			});
+			return result;
+		}
+
+		private static boolean containsAll(Result chunk, List<Set<String>> alts) {
+			if (chunk == null) {
+				return false;
+			}
+			for (Set<String> alt : alts) {
+				if (!references(chunk, alt)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static boolean containsAny(Result chunk, List<Set<String>> alts) {
+			if (chunk == null) {
+				return false;
+			}
+			for (Set<String> alt : alts) {
+				if (references(chunk, alt)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static boolean references(Result chunk, Set<String> names) {
+			for (Reference reference : chunk.references()) {
+				if (names.contains(reference.name())) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	// all structures of a set of regions, identified by their name and the chunk of their start
+	public static class Structures {
+
+		private final Map<String, Long2ObjectMap<Structure>> structures = new HashMap<>();
+
+		private Structure get(String name, Point2i start) {
+			return structures.computeIfAbsent(name, k -> new Long2ObjectOpenHashMap<>())
+				.computeIfAbsent(start.asLong(), k -> new Structure(name, start));
+		}
+
+		private void add(RegionStructures region) {
+			Point2i origin = region.location.regionToChunk();
+			for (int i = 0; i < 1024; i++) {
+				Result chunk = region.chunks[i];
+				if (chunk == null) {
+					continue;
+				}
+				Point2i location = origin.add(new Point2i(i));
+				for (Reference reference : chunk.references()) {
+					for (int j = 0; j < reference.starts().length; j++) {
+						get(reference.name(), reference.getStart(j)).chunks.add(location.asLong());
+					}
+				}
+				for (Start start : chunk.starts()) {
+					Structure structure = get(start.name(), location);
+					structure.id = start.id();
+					structure.boundingBox = start.boundingBox();
+					structure.chunks.add(location.asLong());
+				}
+			}
+		}
+
+		public int size() {
+			int size = 0;
+			for (Long2ObjectMap<Structure> s : structures.values()) {
+				size += s.size();
+			}
+			return size;
+		}
+
+		// returns all structures with this name or any of its alternative names
+		public List<Structure> getStructures(String name) {
+			List<Structure> result = new ArrayList<>();
+			for (String alt : StructureRegistry.getAlts(name)) {
+				Long2ObjectMap<Structure> s = structures.get(alt);
+				if (s != null) {
+					result.addAll(s.values());
+				}
+			}
+			return result;
+		}
+
+		// returns all chunks that belong to any structure with one of these names
+		public Selection getChunks(Collection<String> names) {
+			Selection selection = new Selection();
+			for (String name : names) {
+				for (Structure structure : getStructures(name)) {
+					structure.chunks.forEach(selection::addChunk);
+				}
+			}
+			return selection;
+		}
+
+		// returns the structures with one of these names which start in or are referenced by a selected chunk,
+		// for each chunk outside of the selection that belongs to them
+		public Long2ObjectMap<List<Structure>> getUnselectedChunks(Collection<String> names, Selection selection) {
+			Long2ObjectMap<List<Structure>> result = new Long2ObjectOpenHashMap<>();
+			Set<Structure> visited = new HashSet<>();
+			for (String name : names) {
+				for (Structure structure : getStructures(name)) {
+					if (!visited.add(structure) || !structure.isInSelection(selection)) {
+						continue;
+					}
+					for (long chunk : structure.chunks) {
+						if (!selection.isChunkSelected(new Point2i(chunk))) {
+							result.computeIfAbsent(chunk, k -> new ArrayList<>()).add(structure);
+						}
+					}
+				}
+			}
+			return result;
+		}
+	}
+
+	public static final class Structure {
+
+		private final String name;
+		private final Point2i start;
+		private final LongSet chunks = new LongOpenHashSet();
+		private String id;
+		private int[] boundingBox;
+
+		private Structure(String name, Point2i start) {
+			this.name = name;
+			this.start = start;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		// the chunk that contains the start of this structure
+		public Point2i getStart() {
+			return start;
+		}
+
+		// the id of the start, or null if the chunk of the start is not part of the index
+		public String getID() {
+			return id;
+		}
+
+		// {minX, minY, minZ, maxX, maxY, maxZ} in blocks, or null if it is unknown
+		public int[] getBoundingBox() {
+			return boundingBox;
+		}
+
+		// the chunk of the start and all chunks that reference this structure
+		public LongSet getChunks() {
+			return chunks;
+		}
+
+		private boolean isInSelection(Selection selection) {
+			for (long chunk : chunks) {
+				if (selection.isChunkSelected(new Point2i(chunk))) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
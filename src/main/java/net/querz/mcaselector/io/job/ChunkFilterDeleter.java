@@ -39,8 +39,10 @@ public final class ChunkFilterDeleter {
 
 		Consumer<Throwable> errorHandler = t -> progressChannel.incrementProgress("error");
 
+		GroupFilter plan = filter.compile(false);
+
 		for (RegionDirectories r : rd) {
-			MCADeleteFilterProcessJob job = new MCADeleteFilterProcessJob(r, filter, selection, progressChannel);
+			MCADeleteFilterProcessJob job = new MCADeleteFilterProcessJob(r, plan, selection, progressChannel);
 			job.errorHandler = errorHandler;
 			JobHandler.addJob(job);
 		}
@@ -59,6 +61,12 @@ public final class ChunkFilterDeleter {
 			this.progressChannel = progressChannel;
 		}
 
+		@Override
+		public boolean canReadAhead() {
+			Point2i location = getRegionDirectories().getLocation();
+			return filter.appliesToRegion(location) && (selection == null || selection.isAnyChunkInRegionSelected(location));
+		}
+
 		@Override
 		public boolean execute() {
 			// load all files
@@ -41,8 +41,10 @@ public final class ChunkFilterExporter {
 
 		Consumer<Throwable> errorHandler = t -> progressChannel.incrementProgress("error");
 
+		GroupFilter plan = filter.compile(false);
+
 		for (RegionDirectories r : rd) {
-			MCAExportFilterProcessJob job = new MCAExportFilterProcessJob(r, filter, selection, destination, progressChannel);
+			MCAExportFilterProcessJob job = new MCAExportFilterProcessJob(r, plan, selection, destination, progressChannel);
 			job.errorHandler = errorHandler;
 			JobHandler.addJob(job);
 		}
@@ -63,6 +65,12 @@ public final class ChunkFilterExporter {
 			this.progressChannel = progressChannel;
 		}
 
+		@Override
+		public boolean canReadAhead() {
+			Point2i location = getRegionDirectories().getLocation();
+			return filter.appliesToRegion(location) && (selection == null || selection.isAnyChunkInRegionSelected(location));
+		}
+
 		@Override
 		public boolean execute() {
 			Point2i location = getRegionDirectories().getLocation();
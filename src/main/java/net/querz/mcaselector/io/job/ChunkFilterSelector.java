@@ -2,9 +2,14 @@ package net.querz.mcaselector.io.job;
 
 import net.querz.mcaselector.config.ConfigProvider;
 import net.querz.mcaselector.filter.filters.GroupFilter;
+import net.querz.mcaselector.io.EntityIndex;
+import net.querz.mcaselector.io.FilterCache;
 import net.querz.mcaselector.io.JobHandler;
+import net.querz.mcaselector.io.MetadataIndex;
 import net.querz.mcaselector.io.RegionDirectories;
+import net.querz.mcaselector.io.StructureIndex;
 import net.querz.mcaselector.io.WorldDirectories;
+import net.querz.mcaselector.io.mca.EntityHistogram;
 import net.querz.mcaselector.io.mca.Region;
 import net.querz.mcaselector.selection.ChunkSet;
 import net.querz.mcaselector.selection.Selection;
@@ -15,6 +20,7 @@ import net.querz.mcaselector.progress.Timer;
 import net.querz.mcaselector.text.Translation;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 public final class ChunkFilterSelector {
@@ -40,10 +46,62 @@ public final class ChunkFilterSelector {
 		progressChannel.setMax(rd.length);
 		progressChannel.updateProgress(rd[0].getLocationAsFileName(), 0);
 
-		Consumer<Throwable> errorHandler = t -> progressChannel.incrementProgress("error");
+		// the radius is applied to multiple regions at once instead of for each region separately
+		RadiusBatch radiusBatch = radius > 0 ? new RadiusBatch(rd.length, radius, selection, callback) : null;
+
+		GroupFilter plan = filter.compile(false);
+
+		// results of previous queries are reused for regions that didn't change since then
+		FilterCache filterCache = ConfigProvider.WORLD.getCacheDir() == null ? null : new FilterCache(ConfigProvider.WORLD.getCacheDir());
+
+		// if the filter only needs entity ids and amounts, the entities files don't need to be loaded
+		EntityIndex entityIndex = ConfigProvider.WORLD.getCacheDir() == null || !EntityIndex.canServe(plan) ? null : new EntityIndex(ConfigProvider.WORLD.getCacheDir());
+
+		// if the filter only needs scalar values of chunks, it is evaluated from the metadata index without loading the region
+		MetadataIndex metadataIndex = ConfigProvider.WORLD.getCacheDir() == null || !MetadataIndex.covers(plan) ? null : new MetadataIndex(ConfigProvider.WORLD.getCacheDir());
+
+		// structures are taken from the structure index when the filter is evaluated from the metadata index
+		StructureIndex structureIndex = metadataIndex == null || !StructureIndex.usesStructures(plan) ? null : new StructureIndex(ConfigProvider.WORLD.getCacheDir());
+
+		Consumer<Throwable> errorHandler = t -> {
+			if (radiusBatch != null) {
+				radiusBatch.regionDone();
+			}
+			progressChannel.incrementProgress("error");
+		};
 
 		for (RegionDirectories r : rd) {
-			MCASelectFilterProcessJob job = new MCASelectFilterProcessJob(r, filter, selection, callback, radius, progressChannel);
+			MCASelectFilterProcessJob job = new MCASelectFilterProcessJob(r, plan, selection, filterCache, entityIndex, metadataIndex, structureIndex, callback, radiusBatch, progressChannel);
+			job.errorHandler = errorHandler;
+			JobHandler.addJob(job);
+		}
+	}
+
+	// runs a filter that has been compiled with statistics on an evenly distributed sample of regions,
+	// without caching and without selecting anything, so that its plan can be explained afterwards.
+	public static void explainFilter(GroupFilter compiledFilter, Selection selection, int sampleRegions, Progress progressChannel, boolean cli) {
+		WorldDirectories wd = ConfigProvider.WORLD.getWorldDirs();
+		RegionDirectories[] rd = wd.listRegions(selection);
+		if (rd == null || rd.length == 0) {
+			if (cli) {
+				progressChannel.done("no files");
+			} else {
+				progressChannel.done(Translation.DIALOG_PROGRESS_NO_FILES.toString());
+			}
+			return;
+		}
+
+		JobHandler.clearQueues();
+
+		int samples = Math.min(sampleRegions, rd.length);
+		progressChannel.setMax(samples);
+		progressChannel.updateProgress(rd[0].getLocationAsFileName(), 0);
+
+		Consumer<Throwable> errorHandler = t -> progressChannel.incrementProgress("error");
+
+		for (int i = 0; i < samples; i++) {
+			RegionDirectories r = rd[(int) ((long) i * rd.length / samples)];
+			MCASelectFilterProcessJob job = new MCASelectFilterProcessJob(r, compiledFilter, selection, null, null, null, null, s -> {}, null, progressChannel);
 			job.errorHandler = errorHandler;
 			JobHandler.addJob(job);
 		}
@@ -54,16 +112,24 @@ public final class ChunkFilterSelector {
 		private final Progress progressChannel;
 		private final GroupFilter filter;
 		private final Selection selection;
+		private final FilterCache filterCache;
+		private final EntityIndex entityIndex;
+		private final MetadataIndex metadataIndex;
+		private final StructureIndex structureIndex;
 		private final Consumer<Selection> callback;
-		private final int radius;
+		private final RadiusBatch radiusBatch;
 
-		private MCASelectFilterProcessJob(RegionDirectories dirs, GroupFilter filter, Selection selection, Consumer<Selection> callback, int radius,  Progress progressChannel) {
+		private MCASelectFilterProcessJob(RegionDirectories dirs, GroupFilter filter, Selection selection, FilterCache filterCache, EntityIndex entityIndex, MetadataIndex metadataIndex, StructureIndex structureIndex, Consumer<Selection> callback, RadiusBatch radiusBatch, Progress progressChannel) {
 			super(dirs, PRIORITY_LOW);
 			this.filter = filter;
 			this.selection = selection;
+			this.filterCache = filterCache;
+			this.entityIndex = entityIndex;
+			this.metadataIndex = metadataIndex;
+			this.structureIndex = structureIndex;
 			this.callback = callback;
 			this.progressChannel = progressChannel;
-			this.radius = radius;
+			this.radiusBatch = radiusBatch;
 		}
 
 		@Override
@@ -73,17 +139,64 @@ public final class ChunkFilterSelector {
 
 			if (!filter.appliesToRegion(location)) {
 				LOGGER.debug("filter does not apply to region {}", getRegionDirectories().getLocation());
-				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
+				regionDone();
+				return true;
+			}
+
+			FilterCache.RegionResults cached = null;
+			ChunkSet candidates = null;
+			if (filterCache != null) {
+				cached = filterCache.load(getRegionDirectories());
+				candidates = getCandidates(location);
+
+				// if everything is cached, we don't need to load the region at all
+				ChunkSet chunks = cached.evaluate(filter, candidates, null);
+				if (chunks != null) {
+					LOGGER.debug("using cached filter results for {}", getRegionDirectories().getLocationAsFileName());
+					selectChunks(location, chunks);
+					filterCache.save(cached);
+					regionDone();
+					return true;
+				}
+			}
+
+			if (metadataIndex != null) {
+				if (candidates == null) {
+					candidates = getCandidates(location);
+				}
+				MetadataIndex.RegionMetadata metadata = metadataIndex.load(getRegionDirectories());
+				if (entityIndex != null) {
+					metadata.setEntityHistograms(entityIndex.load(getRegionDirectories(), this::loadRegion, this::loadEntities));
+				}
+				if (structureIndex != null) {
+					metadata.setStructures(structureIndex.load(getRegionDirectories(), this::loadRegion));
+				}
+				ChunkSet chunks;
+				if (cached != null) {
+					chunks = cached.evaluate(filter, candidates, (f, c, failed) -> metadata.evaluate(f, c));
+					filterCache.save(cached);
+				} else {
+					chunks = metadata.evaluate(filter, candidates);
+				}
+				LOGGER.debug("using metadata index for {}", getRegionDirectories().getLocationAsFileName());
+				selectChunks(location, chunks);
+				regionDone();
 				return true;
 			}
 
 			byte[] regionData = loadRegion();
 			byte[] poiData = loadPoi();
-			byte[] entitiesData = loadEntities();
+			byte[] entitiesData = null;
+			EntityHistogram[] entityHistograms = null;
+			if (entityIndex != null) {
+				entityHistograms = entityIndex.load(getRegionDirectories(), () -> regionData, this::loadEntities);
+			} else {
+				entitiesData = loadEntities();
+			}
 
-			if (regionData == null && poiData == null && entitiesData == null) {
+			if (regionData == null && poiData == null && entitiesData == null && entityHistograms == null) {
 				LOGGER.warn("failed to load any data from {}", getRegionDirectories().getLocationAsFileName());
-				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
+				regionDone();
 				return true;
 			}
 
@@ -91,25 +204,114 @@ public final class ChunkFilterSelector {
 			Timer t = new Timer();
 			try {
 				Region region = Region.loadRegion(getRegionDirectories(), regionData, poiData, entitiesData);
+				region.setEntityHistograms(entityHistograms);
 
-				ChunkSet chunks = region.getFilteredChunks(filter, this.selection);
-				if (chunks.size() > 0) {
-					if (chunks.size() == Tile.CHUNKS) {
-						chunks = null;
-					}
-					Selection selection = new Selection();
-					selection.addAll(location, chunks);
-
-					selection.addRadius(radius, this.selection);
-
-					callback.accept(selection);
+				ChunkSet chunks;
+				if (cached != null) {
+					chunks = cached.evaluate(filter, candidates, (f, c, failed) -> region.getFilteredChunks(f, this.selection, c, failed));
+					filterCache.save(cached);
+				} else {
+					chunks = region.getFilteredChunks(filter, this.selection);
 				}
+				selectChunks(location, chunks);
 				LOGGER.debug("took {} to select chunks in {}", t, getRegionDirectories().getLocationAsFileName());
 			} catch (Exception ex) {
 				LOGGER.warn("error selecting chunks in {}", getRegionDirectories().getLocationAsFileName(), ex);
 			}
-			progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
+			regionDone();
 			return true;
 		}
+
+		// returns the chunks of this region that are within the bounds of the selection
+		private ChunkSet getCandidates(Point2i location) {
+			ChunkSet candidates = new ChunkSet();
+			ChunkSet bounds = selection == null ? null : selection.getSelectedChunks(location);
+			if (bounds == null) {
+				candidates.fill();
+			} else {
+				candidates.or(bounds);
+			}
+			return candidates;
+		}
+
+		private void selectChunks(Point2i location, ChunkSet chunks) {
+			if (chunks.size() > 0) {
+				if (chunks.size() == Tile.CHUNKS) {
+					chunks = null;
+				}
+				if (radiusBatch != null) {
+					radiusBatch.add(location, chunks);
+				} else {
+					Selection selection = new Selection();
+					selection.addAll(location, chunks);
+					callback.accept(selection);
+				}
+			}
+		}
+
+		private void regionDone() {
+			// the last batch needs to be passed to the callback before the progress is done
+			if (radiusBatch != null) {
+				radiusBatch.regionDone();
+			}
+			progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
+		}
+	}
+
+	// collects the selected chunks of multiple regions and applies the radius to all of them at once,
+	// because applying the radius to a batch of regions is much faster than applying it to each region on its own.
+	private static class RadiusBatch {
+
+		private static final int BATCH_SIZE = 64;
+
+		private final AtomicInteger remainingRegions;
+		private final int radius;
+		private final Selection bounds;
+		private final Consumer<Selection> callback;
+		private Selection pending = new Selection();
+		private int pendingRegions = 0;
+
+		private RadiusBatch(int regions, int radius, Selection bounds, Consumer<Selection> callback) {
+			this.remainingRegions = new AtomicInteger(regions);
+			this.radius = radius;
+			this.bounds = bounds;
+			this.callback = callback;
+		}
+
+		private void add(Point2i region, ChunkSet chunks) {
+			Selection batch = null;
+			synchronized (this) {
+				pending.addAll(region, chunks);
+				if (++pendingRegions >= BATCH_SIZE) {
+					batch = pending;
+					pending = new Selection();
+					pendingRegions = 0;
+				}
+			}
+			if (batch != null) {
+				apply(batch);
+			}
+		}
+
+		private void regionDone() {
+			if (remainingRegions.decrementAndGet() == 0) {
+				Selection batch;
+				synchronized (this) {
+					batch = pending;
+					pending = new Selection();
+					pendingRegions = 0;
+				}
+				if (!batch.isEmpty()) {
+					apply(batch);
+				}
+			}
+		}
+
+		private void apply(Selection batch) {
+			Timer t = new Timer();
+			batch.addRadius(radius, bounds);
+			LOGGER.debug("took {} to apply radius {} to {} regions", t, radius, batch.size());
+			callback.accept(batch);
+		}
 	}
 }
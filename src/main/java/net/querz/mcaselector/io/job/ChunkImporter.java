@@ -1,7 +1,10 @@
 package net.querz.mcaselector.io.job;
 
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrays;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import net.querz.mcaselector.config.ConfigProvider;
@@ -11,6 +14,7 @@ import net.querz.mcaselector.io.JobHandler;
 import net.querz.mcaselector.io.RegionDirectories;
 import net.querz.mcaselector.io.WorldDirectories;
 import net.querz.mcaselector.io.mca.EntitiesMCAFile;
+import net.querz.mcaselector.io.mca.MCAFile;
 import net.querz.mcaselector.io.mca.PoiMCAFile;
 import net.querz.mcaselector.io.mca.Region;
 import net.querz.mcaselector.io.mca.RegionMCAFile;
@@ -27,16 +31,21 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.file.Files;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public final class ChunkImporter {
 
 	private static final Logger LOGGER = LogManager.getLogger(ChunkImporter.class);
 
+	private static final int STRIP_WIDTH = 8;
+
 	private ChunkImporter() {}
 
 	public static void importChunks(WorldDirectories source, Progress progressChannel, boolean cli, boolean overwrite, Selection sourceSelection, Selection targetSelection, List<Range> ranges, Point3i offset, DataProperty<Map<Point2i, RegionDirectories>> tempFiles) {
@@ -60,12 +69,8 @@ public final class ChunkImporter {
 				progressChannel.setMessage(Translation.DIALOG_PROGRESS_COLLECTING_DATA.toString());
 			}
 
-			// if source world and target world is the same, we need to create temp files of all source files
-			Map<Point2i, RegionDirectories> tempFilesMap = null;
-			if (source.sharesDirectories(ConfigProvider.WORLD.getWorldDirs())) {
-				tempFilesMap = new HashMap<>();
-			}
-			tempFiles.set(tempFilesMap);
+			// source files are never copied to temp files, see ReadDependencies
+			tempFiles.set(null);
 
 
 			// map all target regions to the source regions they will need to get data from for the import
@@ -77,10 +82,26 @@ public final class ChunkImporter {
 
 			Consumer<Throwable> errorHandler = t -> progressChannel.incrementProgress("error");
 
-			for (Long2ObjectMap.Entry<LongSet> entry : targetMapping.long2ObjectEntrySet()) {
-				Point2i target = new Point2i(entry.getLongKey());
+			// source regions that are needed by multiple target regions are only loaded once
+			SourceCache sourceCache = new SourceCache(targetMapping);
+
+			// if source world and target world are the same, a target region can only be overwritten
+			// after all other target regions that need it as a source have read it
+			ReadDependencies readDependencies = null;
+			long[] targets;
+			if (source.sharesDirectories(ConfigProvider.WORLD.getWorldDirs())) {
+				readDependencies = new ReadDependencies(targetMapping);
+				targets = sortByDependencies(targetMapping.keySet(), offset.toPoint2i());
+			} else {
+				targets = sortBySourceLocality(targetMapping.keySet());
+			}
+
+			// jobs with the same priority are processed in the order they are added,
+			// so target regions that share source regions are processed close to each other
+			for (long t : targets) {
+				Point2i target = new Point2i(t);
 				RegionDirectories targetDirs = FileHelper.createRegionDirectories(target);
-				MCAChunkImporterProcessJob job = new MCAChunkImporterProcessJob(targetDirs, source, target, entry.getValue(), offset, progressChannel, overwrite, sourceSelection, targetSelection, ranges, tempFilesMap);
+				MCAChunkImporterProcessJob job = new MCAChunkImporterProcessJob(targetDirs, source, target, targetMapping.get(t), offset, progressChannel, overwrite, sourceSelection, targetSelection, ranges, sourceCache, readDependencies);
 				job.errorHandler = errorHandler;
 				JobHandler.addJob(job);
 			}
@@ -128,6 +149,43 @@ public final class ChunkImporter {
 		return targetSourceMapping;
 	}
 
+	// sorts the target regions in strips of STRIP_WIDTH regions, row by row inside each strip.
+	// neighbouring target regions share their source regions, so only the source regions of about two rows of a strip
+	// need to be kept in memory at the same time, no matter how large the world is.
+	private static long[] sortBySourceLocality(LongSet targets) {
+		long[] sorted = targets.toLongArray();
+		LongArrays.quickSort(sorted, (a, b) -> {
+			Point2i p = new Point2i(a), q = new Point2i(b);
+			int strip = Integer.compare(Math.floorDiv(p.getX(), STRIP_WIDTH), Math.floorDiv(q.getX(), STRIP_WIDTH));
+			if (strip != 0) {
+				return strip;
+			}
+			int row = Integer.compare(p.getZ(), q.getZ());
+			return row != 0 ? row : Integer.compare(p.getX(), q.getX());
+		});
+		return sorted;
+	}
+
+	// sorts the target regions so that every region is processed after all regions that need it as a source.
+	// a region is only a source for itself and for the regions next to it in the direction of the offset,
+	// so the regions are processed from the end the offset points to, against the direction of the offset.
+	// because jobs are started in this order, a job only ever waits for jobs that have already been started.
+	private static long[] sortByDependencies(LongSet targets, Point2i offset) {
+		int signX = Integer.signum(offset.getX());
+		int signZ = Integer.signum(offset.getZ());
+		long[] sorted = targets.toLongArray();
+		LongArrays.quickSort(sorted, (a, b) -> {
+			Point2i p = new Point2i(a), q = new Point2i(b);
+			int order = Long.compare((long) q.getX() * signX + (long) q.getZ() * signZ, (long) p.getX() * signX + (long) p.getZ() * signZ);
+			if (order != 0) {
+				return order;
+			}
+			order = Integer.compare(p.getZ(), q.getZ());
+			return order != 0 ? order : Integer.compare(p.getX(), q.getX());
+		});
+		return sorted;
+	}
+
 	private static LongSet getTargetRegions(Point2i source, Point2i offset, Selection selection) {
 		LongOpenHashSet result = new LongOpenHashSet(5, 0.9f);
 		Point2i sourceChunk = source.regionToChunk().add(offset);
@@ -155,9 +213,12 @@ public final class ChunkImporter {
 		private final Selection sourceSelection;
 		private final Selection targetSelection;
 		private final List<Range> ranges;
-		private final Map<Point2i, RegionDirectories> tempFilesMap;
+		private final SourceCache sourceCache;
+		private final ReadDependencies readDependencies;
+		private boolean sourcesRead;
+		private boolean sourcesReleased;
 
-		private MCAChunkImporterProcessJob(RegionDirectories targetDirs, WorldDirectories sourceDirs, Point2i target, LongSet sourceRegions, Point3i offset, Progress progressChannel, boolean overwrite, Selection sourceSelection, Selection targetSelection, List<Range> ranges, Map<Point2i, RegionDirectories> tempFilesMap) {
+		private MCAChunkImporterProcessJob(RegionDirectories targetDirs, WorldDirectories sourceDirs, Point2i target, LongSet sourceRegions, Point3i offset, Progress progressChannel, boolean overwrite, Selection sourceSelection, Selection targetSelection, List<Range> ranges, SourceCache sourceCache, ReadDependencies readDependencies) {
 			super(targetDirs, PRIORITY_LOW);
 			this.sourceDirs = sourceDirs;
 			this.sourceRegions = sourceRegions;
@@ -168,11 +229,52 @@ public final class ChunkImporter {
 			this.sourceSelection = sourceSelection;
 			this.targetSelection = targetSelection;
 			this.ranges = ranges;
-			this.tempFilesMap = tempFilesMap;
+			this.sourceCache = sourceCache;
+			this.readDependencies = readDependencies;
 		}
 
 		@Override
 		public boolean execute() {
+			try {
+				return importChunks();
+			} finally {
+				// the source regions are also released if this target failed, otherwise they would stay in the cache
+				// and the target regions waiting for this job to read them would wait forever
+				releaseSources();
+			}
+		}
+
+		@Override
+		public void cancel() {
+			releaseSources();
+		}
+
+		private void sourcesRead() {
+			if (sourcesRead) {
+				return;
+			}
+			sourcesRead = true;
+			if (readDependencies != null) {
+				for (long source : sourceRegions) {
+					if (source != target.asLong()) {
+						readDependencies.read(source);
+					}
+				}
+			}
+		}
+
+		private void releaseSources() {
+			sourcesRead();
+			if (sourcesReleased) {
+				return;
+			}
+			sourcesReleased = true;
+			for (long source : sourceRegions) {
+				sourceCache.release(source);
+			}
+		}
+
+		private boolean importChunks() {
 			// try to copy files directly if there is no offset, no selection and the target file does not exist
 			if (offset.getX() == 0 && offset.getY() == 0 && offset.getZ() == 0 && targetSelection == null && sourceSelection == null && !getRegionDirectories().exists()) {
 				boolean allCopied = true;
@@ -225,73 +327,28 @@ public final class ChunkImporter {
 
 			// ---------------------------------------------------------------------------------------------------------
 
-			// LOAD SOURCE DATA
-			Map<Point2i, byte[]> sourceDataMappingRegion = new HashMap<>();
-			Map<Point2i, byte[]> sourceDataMappingPoi = new HashMap<>();
-			Map<Point2i, byte[]> sourceDataMappingEntities = new HashMap<>();
-
-			for (long source : sourceRegions) {
-				Point2i s = new Point2i(source);
-				RegionDirectories sourceDirs;
-				if (tempFilesMap != null && tempFilesMap.containsKey(s)) {
-					sourceDirs = tempFilesMap.get(s);
-				} else {
-					sourceDirs = new RegionDirectories();
-				}
-
-				File sourceFile;
-				byte[] sourceData;
-
-				// region
-				if (sourceDirs.getRegion() != null) {
-					sourceFile = sourceDirs.getRegion();
-				} else {
-					sourceFile = new File(this.sourceDirs.getRegion(), FileHelper.createMCAFileName(s));
-				}
-				if (sourceFile.exists()) {
-					sourceData = load(sourceFile);
-					if (sourceData == null) {
-						LOGGER.warn("failed to load source mca file {}", sourceFile);
-					} else {
-						sourceDataMappingRegion.put(s, sourceData);
-					}
-				}
+			// without an offset and without ranges, the chunks are not changed at all,
+			// so their compressed data is copied into the target files without decoding it
+			if (offset.getX() == 0 && offset.getY() == 0 && offset.getZ() == 0 && ranges == null) {
+				return transplantChunks();
+			}
 
-				// poi
-				if (sourceDirs.getPoi() != null) {
-					sourceFile = sourceDirs.getPoi();
-				} else {
-					sourceFile = new File(this.sourceDirs.getPoi(), FileHelper.createMCAFileName(s));
-				}
-				if (sourceFile.exists()) {
-					sourceData = load(sourceFile);
-					if (sourceData == null) {
-						LOGGER.warn("failed to load source mca file {}", sourceFile);
-					} else {
-						sourceDataMappingPoi.put(s, sourceData);
-					}
-				}
+			// ---------------------------------------------------------------------------------------------------------
 
-				// entities
-				if (sourceDirs.getEntities() != null) {
-					sourceFile = sourceDirs.getEntities();
-				} else {
-					sourceFile = new File(this.sourceDirs.getEntities(), FileHelper.createMCAFileName(s));
-				}
-				if (sourceFile.exists()) {
-					sourceData = load(sourceFile);
-					if (sourceData == null) {
-						LOGGER.warn("failed to load source mca file {}", sourceFile);
-					} else {
-						sourceDataMappingEntities.put(s, sourceData);
-					}
+			// LOAD SOURCE DATA
+			List<SourceRegion> sources = new ArrayList<>(sourceRegions.size());
+			for (long source : sourceRegions) {
+				SourceRegion sourceRegion = sourceCache.get(source, () -> loadSource(new Point2i(source)));
+				if (!sourceRegion.isEmpty()) {
+					sources.add(sourceRegion);
 				}
 			}
+			sourcesRead();
 
 			// ---------------------------------------------------------------------------------------------------------
 
 			// check if we need to do anything
-			if (sourceDataMappingRegion.isEmpty() && sourceDataMappingPoi.isEmpty() && sourceDataMappingEntities.isEmpty()) {
+			if (sources.isEmpty()) {
 				LOGGER.warn("did not load any source mca files to merge into {}", getRegionDirectories().getLocationAsFileName());
 				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
 				return true;
@@ -340,65 +397,54 @@ public final class ChunkImporter {
 					targetChunks = targetSelection.getSelectedChunks(target);
 				}
 
-				for (Map.Entry<Point2i, byte[]> sourceData : sourceDataMappingRegion.entrySet()) {
-					RegionMCAFile source = new RegionMCAFile(new File(sourceDirs.getRegion(), FileHelper.createMCAFileName(sourceData.getKey())));
-					source.load(new ByteArrayPointer(sourceData.getValue()));
-
-					LOGGER.debug("merging region chunks from {} into {}", sourceData.getKey(), target);
-
-					if (targetRegion.getRegion() == null) {
-						targetRegion.setRegion(new RegionMCAFile(getRegionDirectories().getRegion()));
-					}
-
+				for (SourceRegion source : sources) {
 					ChunkSet sourceChunks = null;
 					if (sourceSelection != null) {
-						sourceChunks = sourceSelection.getSelectedChunks(sourceData.getKey());
+						sourceChunks = sourceSelection.getSelectedChunks(source.location());
 					}
 
-					source.mergeChunksInto(targetRegion.getRegion(), offset, overwrite, sourceChunks, targetChunks, ranges);
-				}
-
-				for (Map.Entry<Point2i, byte[]> sourceData : sourceDataMappingPoi.entrySet()) {
-					PoiMCAFile source = new PoiMCAFile(new File(sourceDirs.getPoi(), FileHelper.createMCAFileName(sourceData.getKey())));
-					source.load(new ByteArrayPointer(sourceData.getValue()));
+					if (source.region() != null) {
+						LOGGER.debug("merging region chunks from {} into {}", source.location(), target);
 
-					LOGGER.debug("merging poi chunks from {} into {}", sourceData.getKey(), target);
+						if (targetRegion.getRegion() == null) {
+							targetRegion.setRegion(new RegionMCAFile(getRegionDirectories().getRegion()));
+						}
 
-					if (targetRegion.getPoi() == null) {
-						targetRegion.setPoi(new PoiMCAFile(getRegionDirectories().getPoi()));
+						source.region().mergeChunksInto(targetRegion.getRegion(), offset, overwrite, sourceChunks, targetChunks, ranges);
 					}
 
-					ChunkSet sourceChunks = null;
-					if (sourceSelection != null) {
-						sourceChunks = sourceSelection.getSelectedChunks(sourceData.getKey());
-					}
+					if (source.poi() != null) {
+						LOGGER.debug("merging poi chunks from {} into {}", source.location(), target);
 
-					source.mergeChunksInto(targetRegion.getPoi(), offset, overwrite, sourceChunks, targetChunks, ranges);
-				}
+						if (targetRegion.getPoi() == null) {
+							targetRegion.setPoi(new PoiMCAFile(getRegionDirectories().getPoi()));
+						}
 
-				for (Map.Entry<Point2i, byte[]> sourceData : sourceDataMappingEntities.entrySet()) {
-					EntitiesMCAFile source = new EntitiesMCAFile(new File(sourceDirs.getEntities(), FileHelper.createMCAFileName(sourceData.getKey())));
-					source.load(new ByteArrayPointer(sourceData.getValue()));
+						source.poi().mergeChunksInto(targetRegion.getPoi(), offset, overwrite, sourceChunks, targetChunks, ranges);
+					}
 
-					LOGGER.debug("merging entities chunks from {} into {}", sourceData.getKey(), target);
+					if (source.entities() != null) {
+						LOGGER.debug("merging entities chunks from {} into {}", source.location(), target);
 
-					if (targetRegion.getEntities() == null) {
-						targetRegion.setEntities(new EntitiesMCAFile(getRegionDirectories().getEntities()));
-					}
+						if (targetRegion.getEntities() == null) {
+							targetRegion.setEntities(new EntitiesMCAFile(getRegionDirectories().getEntities()));
+						}
 
-					ChunkSet sourceChunks = null;
-					if (sourceSelection != null) {
-						sourceChunks = sourceSelection.getSelectedChunks(sourceData.getKey());
+						source.entities().mergeChunksInto(targetRegion.getEntities(), offset, overwrite, sourceChunks, targetChunks, ranges);
 					}
-
-					source.mergeChunksInto(targetRegion.getEntities(), offset, overwrite, sourceChunks, targetChunks, ranges);
 				}
 
 				// -----------------------------------------------------------------------------------------------------
 
 				MCAChunkImporterSaveJob job = new MCAChunkImporterSaveJob(getRegionDirectories(), targetRegion, progressChannel);
 				job.errorHandler = errorHandler;
-				JobHandler.executeSaveData(job);
+				if (readDependencies != null) {
+					// the target region is also a source region of other target regions, so it can't be overwritten before they have read it.
+					// instead of blocking this thread, the save job is submitted by the last of them.
+					readDependencies.saveAfterReaders(target.asLong(), job);
+				} else {
+					JobHandler.executeSaveData(job);
+				}
 				LOGGER.debug("took {} to merge chunks into {} with offset {}", t, getRegionDirectories().getLocation(), offset);
 				return false;
 
@@ -409,6 +455,255 @@ public final class ChunkImporter {
 
 			return true;
 		}
+
+		private boolean transplantChunks() {
+			// source and target region are the same without an offset
+			ChunkSet chunks = null;
+			if (sourceSelection != null) {
+				chunks = new ChunkSet();
+				ChunkSet sourceChunks = sourceSelection.getSelectedChunks(target);
+				if (sourceChunks == null) {
+					chunks.fill();
+				} else {
+					chunks.or(sourceChunks);
+				}
+			}
+			if (targetSelection != null) {
+				ChunkSet targetChunks = targetSelection.getSelectedChunks(target);
+				if (targetChunks != null) {
+					if (chunks == null) {
+						chunks = new ChunkSet();
+						chunks.fill();
+					}
+					chunks.and(targetChunks);
+				}
+			}
+
+			Timer t = new Timer();
+			try {
+				int transplanted = transplant(sourceDirs.getRegion(), RegionMCAFile::new, getRegionDirectories().getRegion(), chunks);
+				transplanted += transplant(sourceDirs.getPoi(), PoiMCAFile::new, getRegionDirectories().getPoi(), chunks);
+				transplanted += transplant(sourceDirs.getEntities(), EntitiesMCAFile::new, getRegionDirectories().getEntities(), chunks);
+				LOGGER.debug("took {} to transplant {} chunks into {}", t, transplanted, getRegionDirectories().getLocationAsFileName());
+			} catch (Exception ex) {
+				LOGGER.warn("failed to transplant chunks into {}", getRegionDirectories().getLocationAsFileName(), ex);
+			}
+			progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
+			return true;
+		}
+
+		private int transplant(File sourceDirectory, Function<File, MCAFile<?>> mcaFileConstructor, File dest, ChunkSet chunks) throws IOException {
+			File sourceFile = new File(sourceDirectory, FileHelper.createMCAFileName(target));
+			if (!sourceFile.exists() || sourceFile.length() < FileHelper.HEADER_SIZE) {
+				return 0;
+			}
+			MCAFile<?> source = mcaFileConstructor.apply(sourceFile);
+			try (RandomAccessFile raf = new RandomAccessFile(sourceFile, "r")) {
+				source.loadHeader(raf);
+			}
+			return source.transplantChunks(dest, chunks, overwrite);
+		}
+
+		// loads and parses the region, poi and entities file of a source region
+		private SourceRegion loadSource(Point2i s) {
+			Timer t = new Timer();
+			long size = 0;
+			File sourceFile;
+			byte[] sourceData;
+
+			// region
+			RegionMCAFile region = null;
+			sourceFile = new File(sourceDirs.getRegion(), FileHelper.createMCAFileName(s));
+			if (sourceFile.exists()) {
+				sourceData = load(sourceFile);
+				if (sourceData == null) {
+					LOGGER.warn("failed to load source mca file {}", sourceFile);
+				} else {
+					region = new RegionMCAFile(sourceFile);
+					try {
+						// chunks that are only moved horizontally are relocated without reading them into tags
+						if (offset.getY() == 0 && ranges == null) {
+							region.loadRaw(new ByteArrayPointer(sourceData));
+						} else {
+							region.load(new ByteArrayPointer(sourceData));
+						}
+						size += sourceData.length;
+					} catch (IOException ex) {
+						LOGGER.warn("failed to read source mca file {}", sourceFile, ex);
+						region = null;
+					}
+				}
+			}
+
+			// poi
+			PoiMCAFile poi = null;
+			sourceFile = new File(sourceDirs.getPoi(), FileHelper.createMCAFileName(s));
+			if (sourceFile.exists()) {
+				sourceData = load(sourceFile);
+				if (sourceData == null) {
+					LOGGER.warn("failed to load source mca file {}", sourceFile);
+				} else {
+					poi = new PoiMCAFile(sourceFile);
+					try {
+						poi.load(new ByteArrayPointer(sourceData));
+						size += sourceData.length;
+					} catch (IOException ex) {
+						LOGGER.warn("failed to read source mca file {}", sourceFile, ex);
+						poi = null;
+					}
+				}
+			}
+
+			// entities
+			EntitiesMCAFile entities = null;
+			sourceFile = new File(sourceDirs.getEntities(), FileHelper.createMCAFileName(s));
+			if (sourceFile.exists()) {
+				sourceData = load(sourceFile);
+				if (sourceData == null) {
+					LOGGER.warn("failed to load source mca file {}", sourceFile);
+				} else {
+					entities = new EntitiesMCAFile(sourceFile);
+					try {
+						entities.load(new ByteArrayPointer(sourceData));
+						size += sourceData.length;
+					} catch (IOException ex) {
+						LOGGER.warn("failed to read source mca file {}", sourceFile, ex);
+						entities = null;
+					}
+				}
+			}
+
+			LOGGER.debug("took {} to load source region {}", t, s);
+			return new SourceRegion(s, region, poi, entities, size);
+		}
+	}
+
+	// the parsed files of a source region. size is the size of the compressed files.
+	private record SourceRegion(Point2i location, RegionMCAFile region, PoiMCAFile poi, EntitiesMCAFile entities, long size) {
+
+		boolean isEmpty() {
+			return region == null && poi == null && entities == null;
+		}
+	}
+
+	// keeps parsed source regions in memory until all target regions that need them have been processed.
+	// the chunks of a source region are only ever merged into a single target chunk, so the target regions
+	// can share the same parsed source region without copying it.
+	// a source region that doesn't fit into the cache anymore is not kept and loaded again by the next target that needs it.
+	private static class SourceCache {
+
+		// parsed chunks need about ten times the memory of the compressed mca files
+		private static final long MAX_SIZE = Runtime.getRuntime().maxMemory() / 4 / 10;
+
+		private final Long2IntMap references = new Long2IntOpenHashMap();
+		private final Long2ObjectMap<CacheEntry> entries = new Long2ObjectOpenHashMap<>();
+		private long size;
+
+		private SourceCache(Long2ObjectMap<LongSet> targetMapping) {
+			for (LongSet sources : targetMapping.values()) {
+				for (long source : sources) {
+					references.mergeInt(source, 1, Integer::sum);
+				}
+			}
+		}
+
+		private SourceRegion get(long source, Supplier<SourceRegion> loader) {
+			CacheEntry entry;
+			synchronized (this) {
+				entry = entries.get(source);
+				if (entry == null) {
+					// a source region that is only needed by a single target is not cached
+					if (references.get(source) <= 1) {
+						entry = null;
+					} else {
+						entry = new CacheEntry();
+						entries.put(source, entry);
+					}
+				}
+			}
+			if (entry == null) {
+				return loader.get();
+			}
+			synchronized (entry) {
+				if (entry.sourceRegion != null) {
+					return entry.sourceRegion;
+				}
+				SourceRegion sourceRegion = loader.get();
+				synchronized (this) {
+					if (size + sourceRegion.size() <= MAX_SIZE && entries.get(source) == entry) {
+						entry.sourceRegion = sourceRegion;
+						size += sourceRegion.size();
+					}
+				}
+				return sourceRegion;
+			}
+		}
+
+		private synchronized void release(long source) {
+			int remaining = references.get(source) - 1;
+			if (remaining > 0) {
+				references.put(source, remaining);
+				return;
+			}
+			references.remove(source);
+			CacheEntry entry = entries.remove(source);
+			if (entry != null && entry.sourceRegion != null) {
+				size -= entry.sourceRegion.size();
+			}
+		}
+
+		private static class CacheEntry {
+			private SourceRegion sourceRegion;
+		}
+	}
+
+	// when importing chunks into the same world, target regions are also source regions of other target regions.
+	// instead of copying all source files to temp files first, a target region waits with overwriting its files
+	// until all other target regions that need it as a source have read it. its save job is kept until then and
+	// submitted by the last of them, so no thread is blocked while waiting.
+	// with an offset, a target region only reads source regions in the direction opposite to the offset,
+	// so there are never any circular dependencies.
+	private static class ReadDependencies {
+
+		private final Long2IntOpenHashMap readers = new Long2IntOpenHashMap();
+		private final Long2ObjectMap<SaveDataJob<?>> pending = new Long2ObjectOpenHashMap<>();
+
+		private ReadDependencies(Long2ObjectMap<LongSet> targetMapping) {
+			Long2IntMap counts = new Long2IntOpenHashMap();
+			for (Long2ObjectMap.Entry<LongSet> entry : targetMapping.long2ObjectEntrySet()) {
+				for (long source : entry.getValue()) {
+					// a target region that reads itself already did that before it is saved
+					if (source != entry.getLongKey() && targetMapping.containsKey(source)) {
+						counts.mergeInt(source, 1, Integer::sum);
+					}
+				}
+			}
+			readers.putAll(counts);
+		}
+
+		private void read(long source) {
+			SaveDataJob<?> job;
+			synchronized (this) {
+				if (!readers.containsKey(source) || readers.addTo(source, -1) > 1) {
+					return;
+				}
+				readers.remove(source);
+				job = pending.remove(source);
+			}
+			if (job != null) {
+				JobHandler.executeSaveData(job);
+			}
+		}
+
+		private void saveAfterReaders(long target, SaveDataJob<?> job) {
+			synchronized (this) {
+				if (readers.containsKey(target)) {
+					pending.put(target, job);
+					return;
+				}
+			}
+			JobHandler.executeSaveData(job);
+		}
 	}
 
 	private static class MCAChunkImporterSaveJob extends SaveDataJob<Region> {
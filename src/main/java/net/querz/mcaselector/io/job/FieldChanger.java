@@ -1,9 +1,13 @@
 package net.querz.mcaselector.io.job;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import net.querz.mcaselector.changer.Field;
+import net.querz.mcaselector.changer.fields.DeleteSectionsField;
+import net.querz.mcaselector.changer.fields.DeleteStructureField;
 import net.querz.mcaselector.config.ConfigProvider;
 import net.querz.mcaselector.io.JobHandler;
 import net.querz.mcaselector.io.RegionDirectories;
+import net.querz.mcaselector.io.StructureIndex;
 import net.querz.mcaselector.io.WorldDirectories;
 import net.querz.mcaselector.io.mca.Region;
 import net.querz.mcaselector.point.Point2i;
@@ -13,7 +17,10 @@ import net.querz.mcaselector.selection.Selection;
 import net.querz.mcaselector.text.Translation;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 public final class FieldChanger {
@@ -22,9 +29,22 @@ public final class FieldChanger {
 
 	private FieldChanger() {}
 
-	public static void changeNBTFields(List<Field<?>> fields, boolean force, Selection selection, Progress progressChannel, boolean headless) {
+	public static void changeNBTFields(List<Field<?>> fields, boolean force, boolean cleanupStructures, Selection selection, Progress progressChannel, boolean headless) {
 		WorldDirectories wd = ConfigProvider.WORLD.getWorldDirs();
 		RegionDirectories[] rd = wd.listRegions(selection);
+
+		// if requested, structures that are deleted in the selection are also deleted in all other chunks that belong
+		// to them, so that chunks outside of the selection don't keep references to structures that don't exist anymore
+		Long2ObjectMap<List<StructureIndex.Structure>> structureChunks = null;
+		Selection structureRegions = null;
+		List<Field<?>> structureFields = cleanupStructures ? getDeleteStructureFields(fields) : List.of();
+		if (selection != null && !structureFields.isEmpty() && rd != null) {
+			structureChunks = getStructureChunks(wd, selection, structureFields);
+			structureRegions = new Selection();
+			structureChunks.keySet().forEach(structureRegions::addChunk);
+			rd = union(rd, wd.listRegions(structureRegions));
+		}
+
 		if (rd == null || rd.length == 0) {
 			if (headless) {
 				progressChannel.done("no files");
@@ -42,32 +62,115 @@ public final class FieldChanger {
 		Consumer<Throwable> errorHandler = t -> progressChannel.incrementProgress("error");
 
 		for (RegionDirectories r : rd) {
-			MCAFieldChangeProcessJob job = new MCAFieldChangeProcessJob(r, fields, force, selection, progressChannel);
+			MCAFieldChangeProcessJob job = new MCAFieldChangeProcessJob(r, fields, force, selection, structureChunks, structureRegions, progressChannel);
 			job.errorHandler = errorHandler;
 			JobHandler.addJob(job);
 		}
 	}
 
+	private static List<Field<?>> getDeleteStructureFields(List<Field<?>> fields) {
+		List<Field<?>> structureFields = new ArrayList<>(1);
+		for (Field<?> field : fields) {
+			if (field instanceof DeleteStructureField && field.needsChange()) {
+				structureFields.add(field);
+			}
+		}
+		return structureFields;
+	}
+
+	// returns the structures that are deleted in the selection for each chunk outside of the selection that belongs to them
+	private static Long2ObjectMap<List<StructureIndex.Structure>> getStructureChunks(WorldDirectories wd, Selection selection, List<Field<?>> structureFields) {
+		List<String> structures = new ArrayList<>();
+		for (Field<?> field : structureFields) {
+			structures.addAll(((DeleteStructureField) field).getNewValue());
+		}
+
+		// structures can reach into the neighbouring regions of the selection
+		RegionDirectories[] all = wd.listRegions(null);
+		List<RegionDirectories> regions = new ArrayList<>();
+		for (RegionDirectories r : all) {
+			if (isNextToSelection(r.getLocation(), selection)) {
+				regions.add(r);
+			}
+		}
+
+		Timer t = new Timer();
+		StructureIndex index = new StructureIndex(ConfigProvider.WORLD.getCacheDir());
+		Long2ObjectMap<List<StructureIndex.Structure>> structureChunks = index.build(regions.toArray(new RegionDirectories[0])).getUnselectedChunks(structures, selection);
+		LOGGER.debug("took {} to find {} chunks of structures to delete", t, structureChunks.size());
+		return structureChunks;
+	}
+
+	private static boolean isNextToSelection(Point2i region, Selection selection) {
+		for (int x = -1; x <= 1; x++) {
+			for (int z = -1; z <= 1; z++) {
+				if (selection.isAnyChunkInRegionSelected(region.add(x, z))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static RegionDirectories[] union(RegionDirectories[] a, RegionDirectories[] b) {
+		Map<Point2i, RegionDirectories> regions = new LinkedHashMap<>();
+		for (RegionDirectories r : a) {
+			regions.put(r.getLocation(), r);
+		}
+		for (RegionDirectories r : b) {
+			regions.putIfAbsent(r.getLocation(), r);
+		}
+		return regions.values().toArray(new RegionDirectories[0]);
+	}
+
 	public static class MCAFieldChangeProcessJob extends ProcessDataJob {
 
 		private final Progress progressChannel;
 		private final List<Field<?>> fields;
 		private final boolean force;
 		private final Selection selection;
+		private final Long2ObjectMap<List<StructureIndex.Structure>> structureChunks;
+		private final Selection structureRegions;
+		private final boolean onlyDeleteSections;
 
-		private MCAFieldChangeProcessJob(RegionDirectories dirs, List<Field<?>> fields, boolean force, Selection selection, Progress progressChannel) {
+		private MCAFieldChangeProcessJob(RegionDirectories dirs, List<Field<?>> fields, boolean force, Selection selection, Long2ObjectMap<List<StructureIndex.Structure>> structureChunks, Selection structureRegions, Progress progressChannel) {
 			super(dirs, PRIORITY_LOW);
 			this.fields = fields;
 			this.force = force;
 			this.selection = selection;
+			this.structureChunks = structureChunks;
+			this.structureRegions = structureRegions;
 			this.progressChannel = progressChannel;
+			this.onlyDeleteSections = onlyDeletesSections(fields);
+		}
+
+		// when trimming a world, only the sections, block entities and ticks of region chunks are changed,
+		// so the chunks don't have to be read into tags, see RegionChunk.deleteSections()
+		private static boolean onlyDeletesSections(List<Field<?>> fields) {
+			boolean deleteSections = false;
+			for (Field<?> field : fields) {
+				if (!field.needsChange()) {
+					continue;
+				}
+				if (!(field instanceof DeleteSectionsField)) {
+					return false;
+				}
+				deleteSections = true;
+			}
+			return deleteSections;
+		}
+
+		@Override
+		public boolean canReadAhead() {
+			Point2i location = getRegionDirectories().getLocation();
+			return selection == null || selection.isAnyChunkInRegionSelected(location) || structureRegions != null && structureRegions.isAnyChunkInRegionSelected(location);
 		}
 
 		@Override
 		public boolean execute() {
 			if (selection != null) {
 				Point2i location = getRegionDirectories().getLocation();
-				if (!selection.isAnyChunkInRegionSelected(location)) {
+				if (!selection.isAnyChunkInRegionSelected(location) && (structureRegions == null || !structureRegions.isAnyChunkInRegionSelected(location))) {
 					LOGGER.debug("will not apply nbt changes to {}", getRegionDirectories().getLocationAsFileName());
 					progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
 					return true;
@@ -86,9 +189,18 @@ public final class FieldChanger {
 
 			//load MCAFile
 			try {
-				Region region = Region.loadRegion(getRegionDirectories(), regionData, poiData, entitiesData);
+				Timer t = new Timer();
+				Region region = Region.loadRegion(getRegionDirectories(), regionData, poiData, entitiesData, onlyDeleteSections);
 
 				region.applyFieldChanges(fields, force, selection);
+				if (structureChunks != null) {
+					region.deleteStructures(structureChunks, selection);
+				}
+
+				if (onlyDeleteSections && regionData != null) {
+					LOGGER.debug("took {} to delete sections in {}, {} MiB/s", t, getRegionDirectories().getLocationAsFileName(),
+						String.format("%.2f", regionData.length / 1048576D / Math.max(t.getNano(), 1) * 1_000_000_000D));
+				}
 
 				MCAFieldChangeSaveJob job = new MCAFieldChangeSaveJob(getRegionDirectories(), region, progressChannel);
 				job.errorHandler = errorHandler;
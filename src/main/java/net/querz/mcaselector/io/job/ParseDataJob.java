@@ -1,15 +1,19 @@
 package net.querz.mcaselector.io.job;
 
+import net.querz.mcaselector.config.ConfigProvider;
 import net.querz.mcaselector.io.ByteArrayPointer;
+import net.querz.mcaselector.io.EntityIndex;
 import net.querz.mcaselector.io.RegionDirectories;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.io.mca.EntitiesMCAFile;
+import net.querz.mcaselector.io.mca.EntityHistogram;
 import net.querz.mcaselector.io.mca.PoiMCAFile;
 import net.querz.mcaselector.io.mca.RegionMCAFile;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.progress.Timer;
 import net.querz.mcaselector.tile.Tile;
 import net.querz.mcaselector.overlay.Overlay;
+import net.querz.mcaselector.overlay.OverlayType;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import java.io.IOException;
@@ -85,11 +89,15 @@ public class ParseDataJob extends ProcessDataJob {
 	public boolean execute() {
 		Timer t = new Timer();
 
+		// the amount of entities can be read from the entity index without loading the entities file
+		boolean useEntityIndex = entities == null && parser.getType() == OverlayType.ENTITY_AMOUNT && ConfigProvider.WORLD.getCacheDir() != null;
+		byte[] regionData = null;
+
 		RegionMCAFile regionMCAFile = null;
 		if (region != null) {
 			regionMCAFile = region;
 		} else if (getRegionDirectories().getRegion() != null && getRegionDirectories().getRegion().exists() && getRegionDirectories().getRegion().length() > 0) {
-			byte[] regionData = loadRegion();
+			regionData = loadRegion();
 			regionMCAFile = new RegionMCAFile(getRegionDirectories().getRegion());
 			if (regionData != null) {
 				// load EntitiesMCAFile
@@ -102,10 +110,16 @@ public class ParseDataJob extends ProcessDataJob {
 			}
 		}
 
+		EntityHistogram[] entityHistograms = null;
+		if (useEntityIndex) {
+			byte[] data = regionData;
+			entityHistograms = new EntityIndex(ConfigProvider.WORLD.getCacheDir()).load(getRegionDirectories(), () -> data != null ? data : loadRegion(), this::loadEntities);
+		}
+
 		EntitiesMCAFile entitiesMCAFile = null;
 		if (entities != null) {
 			entitiesMCAFile = entities;
-		} else if (getRegionDirectories().getEntities() != null && getRegionDirectories().getEntities().exists() && getRegionDirectories().getEntities().length() > 0) {
+		} else if (!useEntityIndex && getRegionDirectories().getEntities() != null && getRegionDirectories().getEntities().exists() && getRegionDirectories().getEntities().length() > 0) {
 			byte[] entitiesData = loadEntities();
 			entitiesMCAFile = new EntitiesMCAFile(getRegionDirectories().getEntities());
 			if (entitiesData != null) {
@@ -136,7 +150,7 @@ public class ParseDataJob extends ProcessDataJob {
 			}
 		}
 
-		if (regionMCAFile == null && poiMCAFile == null && entitiesMCAFile == null) {
+		if (regionMCAFile == null && poiMCAFile == null && entitiesMCAFile == null && entityHistograms == null) {
 			dataCallback.accept(null, world);
 			LOGGER.warn("no data to load and parse for region {}", getRegionDirectories().getLocation());
 			setLoading(tile, false);
@@ -150,6 +164,9 @@ public class ParseDataJob extends ProcessDataJob {
 					poiMCAFile == null ? null : poiMCAFile.getChunk(i),
 					entitiesMCAFile == null ? null : entitiesMCAFile.getChunk(i),
 					false);
+			if (entityHistograms != null) {
+				chunkData.view().setEntityHistogram(entityHistograms[i]);
+			}
 			try {
 				data[i] = chunkData.parseData(parser);
 			} catch (Exception ex) {
@@ -1,7 +1,9 @@
 package net.querz.mcaselector.io.job;
 
+import net.querz.mcaselector.io.DeviceLimiter;
 import net.querz.mcaselector.io.FileHelper;
 import net.querz.mcaselector.io.Job;
+import net.querz.mcaselector.io.JobHandler;
 import net.querz.mcaselector.io.RegionDirectories;
 import net.querz.mcaselector.progress.Timer;
 import org.apache.logging.log4j.LogManager;
@@ -11,6 +13,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.function.Consumer;
 
 public abstract class ProcessDataJob extends Job {
@@ -19,10 +23,55 @@ public abstract class ProcessDataJob extends Job {
 
 	protected Consumer<Throwable> errorHandler;
 
+	// the files of this job that were read by JobHandler before this job was processed
+	private Map<File, byte[]> readAheadData;
+	private int readAheadPermits;
+
 	public ProcessDataJob(RegionDirectories dirs, int priority) {
 		super(dirs, priority);
 	}
 
+	// can be overwritten to let JobHandler read the region, poi and entities file of this job before it is processed,
+	// so that the process threads don't have to wait for the disk. should only return true if the job will load these files.
+	public boolean canReadAhead() {
+		return false;
+	}
+
+	public long getReadAheadSize() {
+		long size = 0;
+		for (File file : getReadAheadFiles()) {
+			if (file != null) {
+				size += file.length();
+			}
+		}
+		return size;
+	}
+
+	// permits is the amount of the read ahead budget of JobHandler this job uses until releaseReadAhead() is called
+	public void readAhead(int permits) {
+		readAheadPermits = permits;
+		Map<File, byte[]> data = new HashMap<>(4);
+		for (File file : getReadAheadFiles()) {
+			byte[] fileData = load(file);
+			if (fileData != null) {
+				data.put(file, fileData);
+			}
+		}
+		readAheadData = data;
+	}
+
+	// frees the data that was read ahead and returns the permits that were used for it
+	public int releaseReadAhead() {
+		readAheadData = null;
+		int permits = readAheadPermits;
+		readAheadPermits = 0;
+		return permits;
+	}
+
+	private File[] getReadAheadFiles() {
+		return new File[]{getRegionDirectories().getRegion(), getRegionDirectories().getPoi(), getRegionDirectories().getEntities()};
+	}
+
 	public byte[] loadPoi() {
 		return load(getRegionDirectories().getPoi());
 	}
@@ -51,6 +100,12 @@ public abstract class ProcessDataJob extends Job {
 		if (file == null) {
 			return null;
 		}
+		if (readAheadData != null) {
+			byte[] data = readAheadData.remove(file);
+			if (data != null) {
+				return data;
+			}
+		}
 		long length = file.length();
 		if (length > 0) {
 			return load(file, (int) length);
@@ -65,8 +120,12 @@ public abstract class ProcessDataJob extends Job {
 		Timer t = new Timer();
 		int read;
 		byte[] data = new byte[length];
-		try (InputStream is = Files.newInputStream(file.toPath(), StandardOpenOption.READ)) {
-			read = is.read(data);
+		try {
+			read = JobHandler.runBlocking(() -> DeviceLimiter.run(file, () -> {
+				try (InputStream is = Files.newInputStream(file.toPath(), StandardOpenOption.READ)) {
+					return is.read(data);
+				}
+			}));
 		} catch (IOException ex) {
 			LOGGER.warn("failed to read data from {}", file, ex);
 			return null;
@@ -15,6 +15,7 @@ import net.querz.nbt.CompoundTag;
 import java.io.*;
 import java.util.List;
 import java.util.function.Function;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -25,20 +26,57 @@ public abstract class Chunk {
 
 	protected int timestamp;
 	protected CompoundTag data;
+	// the uncompressed nbt data of a chunk that was loaded with loadRaw() and hasn't been read into data yet
+	protected byte[] rawData;
+	protected int rawDataVersion;
 	protected CompressionType compressionType;
 	protected final Point2i absoluteLocation;
 
+	// zlib streams allocate native memory that is only freed when they are closed or garbage collected,
+	// so every thread reuses the same Deflater and Inflater instead of creating new ones for every chunk
+	private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(Deflater::new);
+	private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
 	public Chunk(Point2i absoluteLocation) {
 		this.absoluteLocation = absoluteLocation;
 	}
 
 	public void load(ByteArrayPointer ptr) throws IOException {
+		DataInputStream nbtIn = openNBTStream(ptr);
+
+		Tag tag = new NBTReader().read(nbtIn);
+
+		if (tag instanceof CompoundTag) {
+			data = (CompoundTag) tag;
+		} else {
+			throw new IOException("unexpected chunk data tag type " + tag.getType() + ", expected " + Tag.Type.COMPOUND);
+		}
+	}
+
+	// only decompresses the nbt data of this chunk. it is read into a CompoundTag when it is accessed with getData().
+	public void loadRaw(ByteArrayPointer ptr) throws IOException {
+		// the stream is fully read here, so the Inflater of this thread can be used
+		Inflater inflater = inflaters.get();
+		inflater.reset();
+		DataInputStream nbtIn = openNBTStream(ptr, inflater);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		rawDataVersion = NBTStreams.copyRoot(nbtIn, new DataOutputStream(baos));
+		rawData = baos.toByteArray();
+		data = null;
+	}
+
+	// reads the header of this chunk at the current position of ptr and returns a stream of its uncompressed nbt data
+	public DataInputStream openNBTStream(ByteArrayPointer ptr) throws IOException {
+		return openNBTStream(ptr, new Inflater());
+	}
+
+	private DataInputStream openNBTStream(ByteArrayPointer ptr, Inflater inflater) throws IOException {
 		int length = ptr.readInt();
 		compressionType = CompressionType.fromByte(ptr.readByte());
 
-		DataInputStream nbtIn = switch (compressionType) {
+		return switch (compressionType) {
 			case GZIP -> new DataInputStream(new BufferedInputStream(new GZIPInputStream(ptr, length)));
-			case ZLIB -> new DataInputStream(new BufferedInputStream(new InflaterInputStream(ptr, new Inflater(), length)));
+			case ZLIB -> new DataInputStream(new BufferedInputStream(new InflaterInputStream(ptr, inflater, length)));
 			case LZ4 -> new DataInputStream(new BufferedInputStream(new LZ4BlockInputStream(ptr)));
 			case NONE, UNCOMPRESSED -> new DataInputStream(ptr);
 			case GZIP_EXT -> new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(getMCCFile()))));
@@ -46,14 +84,6 @@ public abstract class Chunk {
 			case LZ4_EXT -> new DataInputStream(new BufferedInputStream(new LZ4BlockInputStream(new FileInputStream(getMCCFile()))));
 			case NONE_EXT, UNCOMPRESSED_EXT -> new DataInputStream(new BufferedInputStream(new FileInputStream(getMCCFile())));
 		};
-
-		Tag tag = new NBTReader().read(nbtIn);
-
-		if (tag instanceof CompoundTag) {
-			data = (CompoundTag) tag;
-		} else {
-			throw new IOException("unexpected chunk data tag type " + tag.getType() + ", expected " + Tag.Type.COMPOUND);
-		}
 	}
 
 	public void load(RandomAccessFile raf) throws IOException {
@@ -81,22 +111,36 @@ public abstract class Chunk {
 	}
 
 	public int save(RandomAccessFile raf) throws IOException {
+		return save(raf, compress());
+	}
+
+	// returns the compressed nbt data of this chunk, which can be written with save(RandomAccessFile, ExposedByteArrayOutputStream)
+	public ExposedByteArrayOutputStream compress() throws IOException {
 		ExposedByteArrayOutputStream baos = null;
 
+		Deflater deflater = deflaters.get();
+		deflater.reset();
 		DataOutputStream nbtOut = switch (compressionType) {
 			case GZIP, GZIP_EXT -> new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(baos = new ExposedByteArrayOutputStream())));
-			case ZLIB, ZLIB_EXT -> new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(baos = new ExposedByteArrayOutputStream())));
+			case ZLIB, ZLIB_EXT -> new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(baos = new ExposedByteArrayOutputStream(), deflater)));
 			case LZ4, LZ4_EXT -> new DataOutputStream(new BufferedOutputStream(new LZ4BlockOutputStream(baos = new ExposedByteArrayOutputStream())));
 			case NONE, NONE_EXT, UNCOMPRESSED, UNCOMPRESSED_EXT -> new DataOutputStream(new BufferedOutputStream(baos = new ExposedByteArrayOutputStream()));
 		};
 
-		new NBTWriter().write(nbtOut, data);
+		if (rawData != null) {
+			nbtOut.write(rawData);
+		} else {
+			new NBTWriter().write(nbtOut, data);
+		}
 		nbtOut.close();
+		return baos;
+	}
 
+	public int save(RandomAccessFile raf, ExposedByteArrayOutputStream baos) throws IOException {
 		// save mcc file if chunk doesn't fit in mca file
 		if (baos.size() > 1048576) {
 			// if the chunk's version is below 2203, we throw an exception instead
-			int dataVersion = data.getInt("DataVersion");
+			int dataVersion = rawData != null ? rawDataVersion : data.getInt("DataVersion");
 			if (dataVersion < 2203) {
 				throw new RuntimeException("chunk at " + absoluteLocation + " is oversized and can't be saved when DataVersion is below 2203");
 			}
@@ -122,15 +166,25 @@ public abstract class Chunk {
 	public abstract File getMCCFile();
 
 	public boolean isEmpty() {
-		return data == null;
+		return data == null && rawData == null;
 	}
 
 	public CompoundTag getData() {
+		if (rawData != null) {
+			try {
+				Tag tag = new NBTReader().read(new DataInputStream(new ByteArrayInputStream(rawData)));
+				data = (CompoundTag) tag;
+			} catch (IOException ex) {
+				throw new UncheckedIOException("failed to read raw data of chunk at " + absoluteLocation, ex);
+			}
+			rawData = null;
+		}
 		return data;
 	}
 
 	public void setData(CompoundTag data) {
 		this.data = data;
+		this.rawData = null;
 	}
 
 	public CompressionType getCompressionType() {
@@ -155,7 +209,7 @@ public abstract class Chunk {
 
 	@Override
 	public String toString() {
-		String s = NBTUtil.toSNBT(data);
+		String s = NBTUtil.toSNBT(getData());
 		return "<absoluteLocation=" + absoluteLocation + ", compressionType=" + compressionType + ", data=" + s + ">";
 	}
 
@@ -166,6 +220,9 @@ public abstract class Chunk {
 		if (data != null) {
 			clone.data = data.copy();
 		}
+		// raw data is never changed, only replaced
+		clone.rawData = rawData;
+		clone.rawDataVersion = rawDataVersion;
 		return clone;
 	}
 }
@@ -5,7 +5,11 @@ import net.querz.mcaselector.point.Point3i;
 import net.querz.mcaselector.overlay.Overlay;
 import java.util.List;
 
-public record ChunkData(RegionChunk region, PoiChunk poi, EntitiesChunk entities, boolean selected) {
+public record ChunkData(RegionChunk region, PoiChunk poi, EntitiesChunk entities, boolean selected, ChunkView view) {
+
+	public ChunkData(RegionChunk region, PoiChunk poi, EntitiesChunk entities, boolean selected) {
+		this(region, poi, entities, selected, new ChunkView(region, poi, entities));
+	}
 
 	public boolean relocate(Point3i offset) {
 		boolean result = true;
@@ -18,6 +22,7 @@ public record ChunkData(RegionChunk region, PoiChunk poi, EntitiesChunk entities
 		if (entities != null && entities.getData() != null && entities.getData().containsKey("DataVersion")) {
 			result = result && entities.relocate(offset);
 		}
+		view.invalidate();
 		return result;
 	}
 
@@ -29,6 +34,7 @@ public record ChunkData(RegionChunk region, PoiChunk poi, EntitiesChunk entities
 				field.change(this);
 			}
 		}
+		view.invalidate();
 	}
 
 	public int parseData(Overlay parser) {
@@ -0,0 +1,315 @@
+package net.querz.mcaselector.io.mca;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.querz.mcaselector.io.registry.BiomeRegistry;
+import net.querz.mcaselector.math.PackedArrayDecoder;
+import net.querz.mcaselector.version.ChunkFilter;
+import net.querz.mcaselector.version.VersionController;
+import net.querz.nbt.CompoundTag;
+import net.querz.nbt.ListTag;
+import net.querz.nbt.Tag;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+// data derived from the nbt of a chunk that is needed by more than one filter, overlay or field.
+// everything is computed lazily on first access and then reused until the chunk is changed,
+// so that a query like "palette contains X AND biome Y AND entities > 50" only walks the sections once.
+// a ChunkView is only ever used by the thread that loaded the chunk, so it is not synchronized.
+public final class ChunkView {
+
+	private final RegionChunk region;
+	private final PoiChunk poi;
+	private final EntitiesChunk entities;
+
+	private boolean blockSectionsLoaded;
+	private BlockSection[] blockSections;
+	private BitSet blockIDs;
+	private Int2IntMap blockAmounts;
+	private boolean biomesLoaded;
+	private BitSet biomeNameIDs;
+	// biome names that are not in the BiomeRegistry, e.g. from mods
+	private Set<String> unknownBiomeNames;
+	private IntSet biomeIDs;
+	private EntityHistogram entityHistogram;
+	private boolean entitiesLoaded;
+	private ListTag entityList;
+	private Object2IntMap<String> entityCounts;
+	private ListTag tileEntities;
+	private boolean tileEntitiesLoaded;
+	private Integer averageHeight;
+
+	public ChunkView(RegionChunk region, PoiChunk poi, EntitiesChunk entities) {
+		this.region = region;
+		this.poi = poi;
+		this.entities = entities;
+	}
+
+	// has to be called after the data of the chunk has been changed
+	public void invalidate() {
+		blockSectionsLoaded = false;
+		blockSections = null;
+		blockIDs = null;
+		blockAmounts = null;
+		biomesLoaded = false;
+		biomeNameIDs = null;
+		unknownBiomeNames = null;
+		biomeIDs = null;
+		entityHistogram = null;
+		entitiesLoaded = false;
+		entityList = null;
+		entityCounts = null;
+		tileEntities = null;
+		tileEntitiesLoaded = false;
+		averageHeight = null;
+	}
+
+	private CompoundTag getRegionData() {
+		return region == null ? null : region.getData();
+	}
+
+	private ChunkFilter getChunkFilter() {
+		return VersionController.getChunkFilter(getRegionData().getIntOrDefault("DataVersion", 0));
+	}
+
+	// returns the block palettes of all sections, or null if the chunk doesn't store blocks in palettes
+	public BlockSection[] getBlockSections() {
+		if (!blockSectionsLoaded) {
+			if (getRegionData() != null) {
+				blockSections = getChunkFilter().getBlockSections(getRegionData());
+			}
+			blockSectionsLoaded = true;
+		}
+		return blockSections;
+	}
+
+	// returns the BlockRegistry ids of all blocks in the palettes of this chunk, or null if the chunk doesn't store blocks in palettes
+	public BitSet getBlockIDs() {
+		if (blockIDs == null) {
+			BlockSection[] sections = getBlockSections();
+			if (sections == null) {
+				return null;
+			}
+			blockIDs = new BitSet();
+			for (BlockSection section : sections) {
+				for (int id : section.getPalette()) {
+					if (id >= 0) {
+						blockIDs.set(id);
+					}
+				}
+			}
+		}
+		return blockIDs;
+	}
+
+	// returns the amount of blocks per BlockRegistry id, or null if the chunk doesn't store blocks in palettes
+	public Int2IntMap getBlockAmounts() {
+		if (blockAmounts == null) {
+			BlockSection[] sections = getBlockSections();
+			if (sections == null) {
+				return null;
+			}
+			blockAmounts = new Int2IntOpenHashMap();
+			for (BlockSection section : sections) {
+				int[] palette = section.getPalette();
+				int[] counts = new int[palette.length];
+				for (int index : section.getIndices()) {
+					if (index < counts.length) {
+						counts[index]++;
+					}
+				}
+				for (int i = 0; i < palette.length; i++) {
+					if (palette[i] >= 0 && counts[i] > 0) {
+						blockAmounts.mergeInt(palette[i], counts[i], Integer::sum);
+					}
+				}
+			}
+		}
+		return blockAmounts;
+	}
+
+	private void loadBiomes() {
+		if (!biomesLoaded) {
+			if (getRegionData() != null) {
+				ChunkFilter chunkFilter = getChunkFilter();
+				Set<String> biomeNames = chunkFilter.getBiomeNames(getRegionData());
+				if (biomeNames != null) {
+					biomeNameIDs = new BitSet();
+					for (String name : biomeNames) {
+						int id = BiomeRegistry.findNameID(name);
+						if (id >= 0) {
+							biomeNameIDs.set(id);
+						} else {
+							if (unknownBiomeNames == null) {
+								unknownBiomeNames = new HashSet<>();
+							}
+							unknownBiomeNames.add(name);
+						}
+					}
+				} else {
+					biomeIDs = chunkFilter.getBiomeIDs(getRegionData());
+				}
+			}
+			biomesLoaded = true;
+		}
+	}
+
+	// returns true if ALL biomes are present
+	public boolean containsAllBiomes(Collection<BiomeRegistry.BiomeIdentifier> biomes) {
+		for (BiomeRegistry.BiomeIdentifier biome : biomes) {
+			if (!containsBiome(biome)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// returns true if AT LEAST ONE biome is present
+	public boolean containsAnyBiome(Collection<BiomeRegistry.BiomeIdentifier> biomes) {
+		for (BiomeRegistry.BiomeIdentifier biome : biomes) {
+			if (containsBiome(biome)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean containsBiome(BiomeRegistry.BiomeIdentifier biome) {
+		loadBiomes();
+		if (biomeNameIDs != null) {
+			if (biome.getNameID() >= 0) {
+				return biomeNameIDs.get(biome.getNameID());
+			}
+			return biome.getName() != null && unknownBiomeNames != null && unknownBiomeNames.contains(biome.getName());
+		} else if (biomeIDs != null) {
+			for (int id : biomeIDs) {
+				if (biome.matches(id)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	// uses the entity ids and amounts of an EntityIndex instead of the entities of the chunk
+	public void setEntityHistogram(EntityHistogram entityHistogram) {
+		this.entityHistogram = entityHistogram;
+	}
+
+	private void loadEntities() {
+		if (!entitiesLoaded) {
+			int dataVersion;
+			if (getRegionData() != null) {
+				dataVersion = getRegionData().getIntOrDefault("DataVersion", 0);
+			} else if (entities != null && entities.getData() != null) {
+				dataVersion = entities.getData().getIntOrDefault("DataVersion", 0);
+			} else {
+				entitiesLoaded = true;
+				return;
+			}
+			entityList = VersionController.getEntityFilter(dataVersion).getEntities(new ChunkData(region, poi, entities, false, this));
+			entitiesLoaded = true;
+		}
+	}
+
+	public int getEntityAmount() {
+		if (entityHistogram != null) {
+			return entityHistogram.amount();
+		}
+		loadEntities();
+		return entityList == null ? 0 : entityList.size();
+	}
+
+	// returns the amount of entities per entity id
+	public Object2IntMap<String> getEntityCounts() {
+		if (entityHistogram != null) {
+			return entityHistogram.counts();
+		}
+		if (entityCounts == null) {
+			loadEntities();
+			if (entityList == null || entityList.getType() == Tag.Type.LONG_ARRAY) {
+				entityCounts = new Object2IntOpenHashMap<>(0);
+				return entityCounts;
+			}
+			entityCounts = new Object2IntOpenHashMap<>();
+			for (CompoundTag entity : entityList.iterateType(CompoundTag.class)) {
+				String id = entity.getString("id");
+				if (id != null) {
+					entityCounts.mergeInt(id, 1, Integer::sum);
+				}
+			}
+		}
+		return entityCounts;
+	}
+
+	// the amount of entities of a proto-chunk, which are stored in the region file
+	public int getProtoEntityAmount() {
+		if (entityHistogram != null) {
+			return entityHistogram.protoAmount();
+		}
+		if (getRegionData() == null) {
+			return 0;
+		}
+		ListTag protoEntities = getRegionData().getList("entities");
+		return protoEntities == null ? 0 : protoEntities.size();
+	}
+
+	public int getTileEntityAmount() {
+		if (!tileEntitiesLoaded) {
+			if (getRegionData() != null) {
+				tileEntities = getChunkFilter().getTileEntities(getRegionData());
+			}
+			tileEntitiesLoaded = true;
+		}
+		return tileEntities == null ? 0 : tileEntities.size();
+	}
+
+	public int getAverageHeight() {
+		if (averageHeight == null) {
+			averageHeight = getRegionData() == null ? 0 : getChunkFilter().getAverageHeight(getRegionData());
+		}
+		return averageHeight;
+	}
+
+	// the block palette of a section. the block states are only decoded when they are needed.
+	public static final class BlockSection {
+
+		private static final short[] EMPTY_INDICES = new short[4096];
+
+		private final int[] palette;
+		private final long[] blockStates;
+		private final boolean spanning;
+		private short[] indices;
+
+		// spanning is true for block states of versions before 1.16, where an index can span across two longs
+		public BlockSection(int[] palette, long[] blockStates, boolean spanning) {
+			this.palette = palette;
+			this.blockStates = blockStates;
+			this.spanning = spanning;
+		}
+
+		// the BlockRegistry ids of the block names in the palette, entries without a name are -1
+		public int[] getPalette() {
+			return palette;
+		}
+
+		// the palette index of each of the 4096 blocks in this section
+		public short[] getIndices() {
+			if (indices == null) {
+				if (blockStates == null || palette.length == 1) {
+					indices = EMPTY_INDICES;
+				} else if (spanning) {
+					indices = PackedArrayDecoder.decodeSpanning(blockStates, PackedArrayDecoder.spanningBits(blockStates.length, 4096), new short[4096]);
+				} else {
+					indices = PackedArrayDecoder.decode(blockStates, PackedArrayDecoder.blockBits(palette.length, blockStates.length), new short[4096]);
+				}
+			}
+			return indices;
+		}
+	}
+}
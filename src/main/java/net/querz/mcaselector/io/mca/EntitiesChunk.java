@@ -19,12 +19,14 @@ public class EntitiesChunk extends Chunk implements Cloneable {
 
 	@Override
 	public boolean relocate(Point3i offset) {
+		CompoundTag data = getData();
 		ChunkRelocator relocator = VersionController.getEntityRelocator(data.getIntOrDefault("DataVersion", 0));
 		return relocator.relocate(data, offset);
 	}
 
 	@Override
 	public void merge(CompoundTag destination, List<Range> ranges, int yOffset) {
+		CompoundTag data = getData();
 		ChunkMerger merger = VersionController.getEntityMerger(data.getIntOrDefault("DataVersion", 0));
 		merger.mergeChunks(data, destination, ranges, yOffset);
 	}
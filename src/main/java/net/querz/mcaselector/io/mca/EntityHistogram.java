@@ -0,0 +1,10 @@
+package net.querz.mcaselector.io.mca;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMaps;
+
+// the amount of entities per entity id of a chunk, and the amount of all entities and proto-entities
+public record EntityHistogram(Object2IntMap<String> counts, int amount, int protoAmount) {
+
+	public static final EntityHistogram EMPTY = new EntityHistogram(Object2IntMaps.emptyMap(), 0, 0);
+}
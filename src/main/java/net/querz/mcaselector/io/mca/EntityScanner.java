@@ -0,0 +1,191 @@
+package net.querz.mcaselector.io.mca;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.querz.mcaselector.io.ByteArrayPointer;
+import net.querz.mcaselector.point.Point2i;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.function.Function;
+
+// reads the entity ids of all chunks of an mca file in a single pass over the raw nbt data, without creating any tags.
+// everything except the DataVersion, the entity lists and the ids of the entities is skipped.
+public final class EntityScanner {
+
+	private static final Logger LOGGER = LogManager.getLogger(EntityScanner.class);
+
+	private EntityScanner() {}
+
+	static final byte END = 0, BYTE = 1, SHORT = 2, INT = 3, LONG = 4, FLOAT = 5, DOUBLE = 6,
+		BYTE_ARRAY = 7, STRING = 8, LIST = 9, COMPOUND = 10, INT_ARRAY = 11, LONG_ARRAY = 12;
+
+	// the entity lists of a single chunk. lists that don't exist are null.
+	public static class Result {
+
+		private int dataVersion;
+		// "Entities" in the root, used by entities files
+		private EntityHistogram entities;
+		// "Level.Entities", used by region files before 1.17 and proto-chunks before 1.18
+		private EntityHistogram levelEntities;
+		// "entities" in the root, the proto-entities of region files since 1.18
+		private int protoAmount;
+
+		public int getDataVersion() {
+			return dataVersion;
+		}
+
+		public EntityHistogram getEntities() {
+			return entities;
+		}
+
+		public EntityHistogram getLevelEntities() {
+			return levelEntities;
+		}
+
+		public int getProtoAmount() {
+			return protoAmount;
+		}
+	}
+
+	// returns the scanned entity lists of all 1024 chunks of an mca file, chunks that don't exist are null
+	public static Result[] scan(byte[] data, Point2i region, Function<Point2i, ? extends Chunk> chunkConstructor) {
+		Result[] results = new Result[1024];
+		if (data == null) {
+			return results;
+		}
+		ByteArrayPointer ptr = new ByteArrayPointer(data);
+		int[] offsets = new int[1024];
+		try {
+			for (int i = 0; i < 1024; i++) {
+				offsets[i] = ptr.readInt() >>> 8;
+			}
+		} catch (ArrayIndexOutOfBoundsException ex) {
+			return results;
+		}
+
+		Point2i origin = region.regionToChunk();
+		for (short i = 0; i < 1024; i++) {
+			if (offsets[i] == 0) {
+				continue;
+			}
+			Point2i chunkLocation = origin.add(new Point2i(i));
+			try {
+				ptr.seek(offsets[i] * 4096L);
+				results[i] = scanChunk(chunkConstructor.apply(chunkLocation).openNBTStream(ptr));
+			} catch (Exception ex) {
+				LOGGER.debug("failed to scan entities of chunk at {}", chunkLocation, ex);
+			}
+		}
+		return results;
+	}
+
+	private static Result scanChunk(DataInput in) throws IOException {
+		Result result = new Result();
+		if (in.readByte() != COMPOUND) {
+			return result;
+		}
+		skipBytes(in, in.readUnsignedShort());
+		byte type;
+		while ((type = in.readByte()) != END) {
+			String name = in.readUTF();
+			if (type == INT && name.equals("DataVersion")) {
+				result.dataVersion = in.readInt();
+			} else if (type == LIST && name.equals("Entities")) {
+				result.entities = scanEntityList(in);
+			} else if (type == LIST && name.equals("entities")) {
+				result.protoAmount = scanEntityList(in).amount();
+			} else if (type == COMPOUND && name.equals("Level")) {
+				scanLevel(in, result);
+			} else {
+				skip(in, type);
+			}
+		}
+		return result;
+	}
+
+	private static void scanLevel(DataInput in, Result result) throws IOException {
+		byte type;
+		while ((type = in.readByte()) != END) {
+			String name = in.readUTF();
+			if (type == LIST && name.equals("Entities")) {
+				result.levelEntities = scanEntityList(in);
+			} else {
+				skip(in, type);
+			}
+		}
+	}
+
+	private static EntityHistogram scanEntityList(DataInput in) throws IOException {
+		byte elementType = in.readByte();
+		int length = in.readInt();
+		Object2IntOpenHashMap<String> counts = new Object2IntOpenHashMap<>();
+		if (elementType != COMPOUND) {
+			for (int i = 0; i < length; i++) {
+				skip(in, elementType);
+			}
+			return new EntityHistogram(counts, Math.max(length, 0), 0);
+		}
+		for (int i = 0; i < length; i++) {
+			byte type;
+			while ((type = in.readByte()) != END) {
+				String name = in.readUTF();
+				if (type == STRING && name.equals("id")) {
+					counts.mergeInt(in.readUTF(), 1, Integer::sum);
+				} else {
+					skip(in, type);
+				}
+			}
+		}
+		return new EntityHistogram(counts, length, 0);
+	}
+
+	static void skip(DataInput in, byte type) throws IOException {
+		switch (type) {
+			case BYTE -> skipBytes(in, 1);
+			case SHORT -> skipBytes(in, 2);
+			case INT, FLOAT -> skipBytes(in, 4);
+			case LONG, DOUBLE -> skipBytes(in, 8);
+			case BYTE_ARRAY -> skipBytes(in, in.readInt());
+			case STRING -> skipBytes(in, in.readUnsignedShort());
+			case LIST -> {
+				byte elementType = in.readByte();
+				int length = in.readInt();
+				switch (elementType) {
+					case END -> {}
+					case BYTE -> skipBytes(in, length);
+					case SHORT -> skipBytes(in, length * 2L);
+					case INT, FLOAT -> skipBytes(in, length * 4L);
+					case LONG, DOUBLE -> skipBytes(in, length * 8L);
+					default -> {
+						for (int i = 0; i < length; i++) {
+							skip(in, elementType);
+						}
+					}
+				}
+			}
+			case COMPOUND -> {
+				byte t;
+				while ((t = in.readByte()) != END) {
+					skipBytes(in, in.readUnsignedShort());
+					skip(in, t);
+				}
+			}
+			case INT_ARRAY -> skipBytes(in, in.readInt() * 4L);
+			case LONG_ARRAY -> skipBytes(in, in.readInt() * 8L);
+			default -> throw new IOException("invalid tag type " + type);
+		}
+	}
+
+	// DataInput.skipBytes() can skip less than requested, e.g. at the end of a buffer of a compressed stream
+	static void skipBytes(DataInput in, long n) throws IOException {
+		while (n > 0) {
+			int skipped = in.skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+			if (skipped <= 0) {
+				in.readByte();
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+}
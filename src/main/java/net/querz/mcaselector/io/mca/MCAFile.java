@@ -1,7 +1,10 @@
 package net.querz.mcaselector.io.mca;
 
+import net.querz.io.ExposedByteArrayOutputStream;
 import net.querz.mcaselector.io.ByteArrayPointer;
+import net.querz.mcaselector.io.DeviceLimiter;
 import net.querz.mcaselector.io.FileHelper;
+import net.querz.mcaselector.io.JobHandler;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.point.Point3i;
 import net.querz.mcaselector.range.Range;
@@ -17,6 +20,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.List;
@@ -73,11 +77,14 @@ public abstract class MCAFile<T extends Chunk> {
 
 	// returns false if no chunk was saved and the file only consists of the mca header
 	public boolean saveWithTempFile(File dest) throws IOException {
+		// only writing the file counts towards the io limit of the device, not compressing the chunks
+		ExposedByteArrayOutputStream[] compressed = compressChunks();
 		File tempFile = File.createTempFile(dest.getName(), null, null);
-		boolean result;
-		try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw")) {
-			result = save(raf);
-		}
+		boolean result = DeviceLimiter.run(dest, () -> {
+			try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw")) {
+				return save(raf, compressed);
+			}
+		});
 		if (!result) {
 			if (dest.exists()) {
 				if (dest.delete()) {
@@ -91,12 +98,36 @@ public abstract class MCAFile<T extends Chunk> {
 				LOGGER.warn("failed to delete temp file {}", tempFile);
 			}
 		} else {
-			Files.move(tempFile.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			DeviceLimiter.run(dest, () -> Files.move(tempFile.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING));
 		}
 		return result;
 	}
 
 	public boolean save(RandomAccessFile raf) throws IOException {
+		return save(raf, compressChunks());
+	}
+
+	// compressing the chunks is what takes the most time, so that is done before writing them to the file
+	private ExposedByteArrayOutputStream[] compressChunks() throws IOException {
+		ExposedByteArrayOutputStream[] compressed = new ExposedByteArrayOutputStream[1024];
+		try {
+			JobHandler.forEachChunk(i -> {
+				T chunk = chunks[i];
+				if (chunk != null && !chunk.isEmpty()) {
+					try {
+						compressed[i] = chunk.compress();
+					} catch (IOException ex) {
+						throw new UncheckedIOException(ex);
+					}
+				}
+			});
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+		return compressed;
+	}
+
+	private boolean save(RandomAccessFile raf, ExposedByteArrayOutputStream[] compressed) throws IOException {
 		int globalOffset = 2;
 		int lastWritten = 0;
 
@@ -109,7 +140,8 @@ public abstract class MCAFile<T extends Chunk> {
 				continue;
 			}
 
-			lastWritten = chunk.save(raf);
+			lastWritten = chunk.save(raf, compressed[i]);
+			compressed[i] = null;
 
 			int sectors = (lastWritten >> 12) + (lastWritten % 4096 == 0 ? 0 : 1);
 
@@ -207,6 +239,115 @@ public abstract class MCAFile<T extends Chunk> {
 		}
 	}
 
+	// copies the raw data of the selected chunks of this file into dest, sector by sector, without decompressing them.
+	// a chunk is only copied if it doesn't exist in dest or if overwrite is true, all other chunks of dest are kept.
+	// oversized chunks are copied together with their mcc file.
+	// loadHeader needs to be called before. returns the number of chunks that were copied.
+	public int transplantChunks(File dest, ChunkSet selection, boolean overwrite) throws IOException {
+		int[] destOffsets = new int[1024];
+		byte[] destSectors = new byte[1024];
+		int[] destTimestamps = new int[1024];
+		boolean destExists = dest.exists() && dest.length() >= FileHelper.HEADER_SIZE;
+
+		// the temp file is created next to dest, so that it can be moved without copying it to another file system
+		File destDir = dest.getAbsoluteFile().getParentFile();
+		if (!destDir.exists() && !destDir.mkdirs()) {
+			throw new IOException("failed to create directory " + destDir);
+		}
+		File tmpFile = File.createTempFile(dest.getName(), null, destDir);
+		int globalOffset = 2;
+		int transplanted = 0;
+		Point2i origin = location.regionToChunk();
+
+		try (RandomAccessFile rafTmp = new RandomAccessFile(tmpFile, "rw");
+		     RandomAccessFile source = new RandomAccessFile(file, "r");
+		     RandomAccessFile target = destExists ? new RandomAccessFile(dest, "r") : null) {
+
+			if (target != null) {
+				for (int i = 0; i < 1024; i++) {
+					int offset = target.read() << 16;
+					offset |= (target.read() & 0xFF) << 8;
+					destOffsets[i] = offset | target.read() & 0xFF;
+					destSectors[i] = target.readByte();
+				}
+				for (int i = 0; i < 1024; i++) {
+					destTimestamps[i] = target.readInt();
+				}
+			}
+
+			long sourceLength = source.length();
+			long targetLength = target == null ? 0 : target.length();
+			for (int i = 0; i < 1024; i++) {
+				// chunks that start beyond the end of their file are corrupt and ignored
+				boolean inSource = offsets[i] != 0 && sectors[i] != 0 && offsets[i] * 4096L + 5 <= sourceLength;
+				boolean inDest = destOffsets[i] != 0 && destSectors[i] != 0 && destOffsets[i] * 4096L + 5 <= targetLength;
+				boolean fromSource = inSource && (selection == null || selection.get(i)) && (overwrite || !inDest);
+
+				RandomAccessFile from;
+				int offset, sectors, timestamp;
+				if (fromSource) {
+					from = source;
+					offset = offsets[i];
+					sectors = this.sectors[i] & 0xFF;
+					timestamp = timestamps[i];
+				} else if (inDest) {
+					from = target;
+					offset = destOffsets[i];
+					sectors = destSectors[i] & 0xFF;
+					timestamp = destTimestamps[i];
+				} else {
+					continue;
+				}
+
+				// the last sector of a file is not always padded, the rest of it is filled with zeros
+				long available = Math.min(sectors * 4096L, (fromSource ? sourceLength : targetLength) - offset * 4096L);
+				byte[] data = new byte[sectors * 4096];
+				from.seek(offset * 4096L);
+				from.readFully(data, 0, (int) available);
+
+				rafTmp.seek(i * 4L);
+				rafTmp.writeByte(globalOffset >>> 16);
+				rafTmp.writeByte(globalOffset >> 8 & 0xFF);
+				rafTmp.writeByte(globalOffset & 0xFF);
+				rafTmp.writeByte(sectors);
+
+				rafTmp.seek(4096 + i * 4L);
+				rafTmp.writeInt(timestamp);
+
+				rafTmp.seek(globalOffset * 4096L);
+				rafTmp.write(data);
+				globalOffset += sectors;
+
+				if (fromSource) {
+					// external compression types are negative
+					transplantMCCFile(origin.add(new Point2i(i)), dest, data[4] < 0);
+					transplanted++;
+				}
+			}
+		}
+
+		if (globalOffset == 2) {
+			if (!tmpFile.delete()) {
+				LOGGER.warn("failed to delete tmpFile {}", tmpFile.getAbsolutePath());
+			}
+		} else {
+			LOGGER.debug("moving temp file {} to {}", tmpFile.getAbsolutePath(), dest.getAbsolutePath());
+			Files.move(tmpFile.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return transplanted;
+	}
+
+	// copies the mcc file of an oversized chunk next to dest, or deletes the mcc file of the chunk that was replaced
+	private void transplantMCCFile(Point2i chunk, File dest, boolean external) throws IOException {
+		File destMCC = new File(dest.getParentFile(), FileHelper.createMCCFileName(chunk));
+		if (external) {
+			File sourceMCC = new File(file.getParentFile(), FileHelper.createMCCFileName(chunk));
+			Files.copy(sourceMCC.toPath(), destMCC.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} else if (destMCC.exists() && !destMCC.delete()) {
+			LOGGER.warn("failed to delete mcc file {}", destMCC);
+		}
+	}
+
 	public int[] load() throws IOException {
 		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
 			loadHeader(raf);
@@ -240,24 +381,55 @@ public abstract class MCAFile<T extends Chunk> {
 
 		Point2i origin = location.regionToChunk();
 
-		for (short i = 0; i < 1024; i++) {
+		JobHandler.forEachChunk(i -> {
 			if (offsets[i] == 0) {
 				chunks[i] = null;
-				continue;
+				return;
 			}
-			ptr.seek(offsets[i] * 4096L);
+			ByteArrayPointer chunkPtr = ptr.duplicate();
+			chunkPtr.seek(offsets[i] * 4096L);
 
 			Point2i chunkLocation = origin.add(new Point2i(i));
 
 			try {
-				chunks[i] = chunkConstructor.apply(chunkLocation);
-				chunks[i].setTimestamp(timestamps[i]);
-				chunks[i].load(ptr);
+				T chunk = chunkConstructor.apply(chunkLocation);
+				chunk.setTimestamp(timestamps[i]);
+				chunk.load(chunkPtr);
+				chunks[i] = chunk;
 			} catch (Exception ex) {
 				chunks[i] = null;
 				LOGGER.debug("failed to load chunk at {}", chunkLocation, ex);
 			}
-		}
+		});
+		return offsets;
+	}
+
+	// like load(ByteArrayPointer), but the chunks are only decompressed and not read into tags, see Chunk.loadRaw()
+	public int[] loadRaw(ByteArrayPointer ptr) throws IOException {
+		loadHeader(ptr);
+
+		Point2i origin = location.regionToChunk();
+
+		JobHandler.forEachChunk(i -> {
+			if (offsets[i] == 0) {
+				chunks[i] = null;
+				return;
+			}
+			ByteArrayPointer chunkPtr = ptr.duplicate();
+			chunkPtr.seek(offsets[i] * 4096L);
+
+			Point2i chunkLocation = origin.add(new Point2i(i));
+
+			try {
+				T chunk = chunkConstructor.apply(chunkLocation);
+				chunk.setTimestamp(timestamps[i]);
+				chunk.loadRaw(chunkPtr);
+				chunks[i] = chunk;
+			} catch (Exception ex) {
+				chunks[i] = null;
+				LOGGER.debug("failed to load chunk at {}", chunkLocation, ex);
+			}
+		});
 		return offsets;
 	}
 
@@ -426,59 +598,61 @@ public abstract class MCAFile<T extends Chunk> {
 		int startZ = relativeOffset.getZ() > 0 ? 0 : 32 - (32 + relativeOffset.getZ());
 		int limitZ = relativeOffset.getZ() > 0 ? (32 - relativeOffset.getZ()) : 32;
 
-		for (int x = startX; x < limitX; x++) {
-			for (int z = startZ; z < limitZ; z++) {
-				int sourceIndex = z * 32 + x;
-				int destX = relativeOffset.getX() > 0 ? relativeOffset.getX() + x : x - startX;
-				int destZ = relativeOffset.getZ() > 0 ? relativeOffset.getZ() + z : z - startZ;
-				int destIndex = destZ * 32 + destX;
+		JobHandler.forEachChunk(sourceIndex -> {
+			int x = sourceIndex & 0x1F;
+			int z = sourceIndex >> 5;
+			if (x < startX || x >= limitX || z < startZ || z >= limitZ) {
+				return;
+			}
+			int destX = relativeOffset.getX() > 0 ? relativeOffset.getX() + x : x - startX;
+			int destZ = relativeOffset.getZ() > 0 ? relativeOffset.getZ() + z : z - startZ;
+			int destIndex = destZ * 32 + destX;
 
-				T sourceChunk = chunks[sourceIndex];
-				T destinationChunk = destination.chunks[destIndex];
+			T sourceChunk = chunks[sourceIndex];
+			T destinationChunk = destination.chunks[destIndex];
 
-				if (!overwrite && destinationChunk != null && !destinationChunk.isEmpty()) {
-					continue;
-				}
+			if (!overwrite && destinationChunk != null && !destinationChunk.isEmpty()) {
+				return;
+			}
 
-				if (sourceChunk == null || sourceChunk.isEmpty() || sourceChunks != null && !sourceChunks.get(sourceIndex)) {
-					continue;
+			if (sourceChunk == null || sourceChunk.isEmpty() || sourceChunks != null && !sourceChunks.get(sourceIndex)) {
+				return;
+			}
+
+			Point2i destChunk = destination.location.regionToChunk().add(destX, destZ);
+
+			if (targetChunks == null || targetChunks.get(destIndex)) {
+				if (!sourceChunk.relocate(offset.sectionToBlock())) {
+					return;
 				}
 
-				Point2i destChunk = destination.location.regionToChunk().add(destX, destZ);
+				if (ranges != null) {
+					int sourceVersion = sourceChunk.getData().getIntOrDefault("DataVersion", 0);
+					if (sourceVersion == 0) {
+						return;
+					}
 
-				if (targetChunks == null || targetChunks.get(destIndex)) {
-					if (!sourceChunk.relocate(offset.sectionToBlock())) {
-						continue;
+					int destinationVersion;
+					if (destinationChunk == null || destinationChunk.isEmpty()) {
+						destinationChunk = chunkCreator.apply(destChunk, sourceVersion);
+						destination.chunks[destIndex] = destinationChunk;
+					} else if (sourceVersion != (destinationVersion = destinationChunk.getData().getIntOrDefault("DataVersion", 0))) {
+						Point2i srcChunk = location.regionToChunk().add(x, z);
+						LOGGER.warn("failed to merge chunk at {} into chunk at {} because their DataVersion does not match ({} != {})",
+								srcChunk, destChunk, sourceVersion, destinationVersion);
 					}
 
-					if (ranges != null) {
-						int sourceVersion = sourceChunk.getData().getIntOrDefault("DataVersion", 0);
-						if (sourceVersion == 0) {
-							continue;
-						}
-
-						int destinationVersion;
-						if (destinationChunk == null || destinationChunk.isEmpty()) {
-							destinationChunk = chunkCreator.apply(destChunk, sourceVersion);
-							destination.chunks[destIndex] = destinationChunk;
-						} else if (sourceVersion != (destinationVersion = destinationChunk.getData().getIntOrDefault("DataVersion", 0))) {
-							Point2i srcChunk = location.regionToChunk().add(x, z);
-							LOGGER.warn("failed to merge chunk at {} into chunk at {} because their DataVersion does not match ({} != {})",
-									srcChunk, destChunk, sourceVersion, destinationVersion);
-						}
-
-						try {
-							sourceChunk.merge(destinationChunk.getData(), ranges, offset.getY());
-						} catch (Exception ex) {
-							Point2i srcChunk = location.regionToChunk().add(x, z);
-							LOGGER.warn("failed to merge chunk {} into {}", srcChunk, destChunk, ex);
-						}
-					} else {
-						destination.chunks[destIndex] = sourceChunk;
+					try {
+						sourceChunk.merge(destinationChunk.getData(), ranges, offset.getY());
+					} catch (Exception ex) {
+						Point2i srcChunk = location.regionToChunk().add(x, z);
+						LOGGER.warn("failed to merge chunk {} into {}", srcChunk, destChunk, ex);
 					}
+				} else {
+					destination.chunks[destIndex] = sourceChunk;
 				}
 			}
-		}
+		});
 	}
 
 // END OF DATA MANIPULATION STUFF --------------------------------------------------------------------------------------
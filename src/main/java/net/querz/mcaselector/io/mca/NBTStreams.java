@@ -0,0 +1,137 @@
+package net.querz.mcaselector.io.mca;
+
+import net.querz.io.ExposedByteArrayOutputStream;
+import net.querz.nbt.CompoundTag;
+import net.querz.nbt.Tag;
+import net.querz.nbt.io.NBTReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// copies raw nbt data tag by tag without creating any tags, so that only the parts of a chunk that are actually
+// changed have to be read into tags.
+public final class NBTStreams {
+
+	private NBTStreams() {}
+
+	public static final byte END = 0, BYTE = 1, SHORT = 2, INT = 3, LONG = 4, FLOAT = 5, DOUBLE = 6,
+		BYTE_ARRAY = 7, STRING = 8, LIST = 9, COMPOUND = 10, INT_ARRAY = 11, LONG_ARRAY = 12;
+
+	// copies the root compound of a chunk and returns its DataVersion, or 0 if it doesn't have one.
+	// the name of the root tag is not copied, the same as when the chunk is written from a CompoundTag.
+	public static int copyRoot(DataInput in, DataOutput out) throws IOException {
+		byte type = in.readByte();
+		if (type != COMPOUND) {
+			throw new IOException("unexpected chunk data tag type " + type + ", expected " + COMPOUND);
+		}
+		EntityScanner.skipBytes(in, in.readUnsignedShort());
+		out.writeByte(COMPOUND);
+		out.writeUTF("");
+
+		int dataVersion = 0;
+		while ((type = in.readByte()) != END) {
+			String name = in.readUTF();
+			out.writeByte(type);
+			out.writeUTF(name);
+			if (type == INT && name.equals("DataVersion")) {
+				dataVersion = in.readInt();
+				out.writeInt(dataVersion);
+			} else {
+				copy(in, out, type);
+			}
+		}
+		out.writeByte(END);
+		return dataVersion;
+	}
+
+	// copies the payload of a tag of the given type
+	public static void copy(DataInput in, DataOutput out, byte type) throws IOException {
+		switch (type) {
+			case BYTE -> out.writeByte(in.readByte());
+			case SHORT -> out.writeShort(in.readShort());
+			case INT, FLOAT -> out.writeInt(in.readInt());
+			case LONG, DOUBLE -> out.writeLong(in.readLong());
+			case BYTE_ARRAY -> {
+				int length = in.readInt();
+				out.writeInt(length);
+				copyBytes(in, out, length);
+			}
+			case STRING -> {
+				int length = in.readUnsignedShort();
+				out.writeShort(length);
+				copyBytes(in, out, length);
+			}
+			case LIST -> {
+				byte elementType = in.readByte();
+				int length = in.readInt();
+				out.writeByte(elementType);
+				out.writeInt(length);
+				switch (elementType) {
+					case END -> {}
+					case BYTE -> copyBytes(in, out, length);
+					case SHORT -> copyBytes(in, out, length * 2L);
+					case INT, FLOAT -> copyBytes(in, out, length * 4L);
+					case LONG, DOUBLE -> copyBytes(in, out, length * 8L);
+					default -> {
+						for (int i = 0; i < length; i++) {
+							copy(in, out, elementType);
+						}
+					}
+				}
+			}
+			case COMPOUND -> {
+				byte t;
+				while ((t = in.readByte()) != END) {
+					out.writeByte(t);
+					copy(in, out, STRING);
+					copy(in, out, t);
+				}
+				out.writeByte(END);
+			}
+			case INT_ARRAY -> {
+				int length = in.readInt();
+				out.writeInt(length);
+				copyBytes(in, out, length * 4L);
+			}
+			case LONG_ARRAY -> {
+				int length = in.readInt();
+				out.writeInt(length);
+				copyBytes(in, out, length * 8L);
+			}
+			default -> throw new IOException("invalid tag type " + type);
+		}
+	}
+
+	// skips the payload of a tag of the given type
+	public static void skip(DataInput in, byte type) throws IOException {
+		EntityScanner.skip(in, type);
+	}
+
+	// reads the payload of a compound tag, e.g. an element of a list, into a CompoundTag
+	public static CompoundTag readCompound(DataInput in) throws IOException {
+		ExposedByteArrayOutputStream baos = new ExposedByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(baos);
+		// NBTReader expects a named tag, so the payload is prefixed with the tag type and an empty name
+		out.writeByte(COMPOUND);
+		out.writeUTF("");
+		copy(in, out, COMPOUND);
+		Tag tag = new NBTReader().read(new DataInputStream(new ByteArrayInputStream(baos.getBuffer(), 0, baos.size())));
+		if (tag instanceof CompoundTag compound) {
+			return compound;
+		}
+		throw new IOException("unexpected tag type " + tag.getType() + ", expected " + Tag.Type.COMPOUND);
+	}
+
+	private static void copyBytes(DataInput in, DataOutput out, long n) throws IOException {
+		byte[] buffer = new byte[(int) Math.min(n, 8192)];
+		while (n > 0) {
+			int length = (int) Math.min(n, buffer.length);
+			in.readFully(buffer, 0, length);
+			out.write(buffer, 0, length);
+			n -= length;
+		}
+	}
+}
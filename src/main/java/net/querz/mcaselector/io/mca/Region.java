@@ -1,10 +1,14 @@
 package net.querz.mcaselector.io.mca;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import net.querz.mcaselector.changer.Field;
+import net.querz.mcaselector.changer.fields.DeleteStructureField;
 import net.querz.mcaselector.filter.Filter;
 import net.querz.mcaselector.io.ByteArrayPointer;
 import net.querz.mcaselector.io.FileHelper;
+import net.querz.mcaselector.io.JobHandler;
 import net.querz.mcaselector.io.RegionDirectories;
+import net.querz.mcaselector.io.StructureIndex;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.point.Point3i;
 import net.querz.mcaselector.progress.Timer;
@@ -16,6 +20,7 @@ import org.apache.logging.log4j.Logger;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 // holds data for chunks, poi and entities
 public class Region {
@@ -30,10 +35,23 @@ public class Region {
 
 	private Point2i location;
 
+	// if set, filters use these instead of the entities of the chunks
+	private EntityHistogram[] entityHistograms;
+
 	public static Region loadRegion(RegionDirectories dirs, byte[] regionData, byte[] poiData, byte[] entitiesData) throws IOException {
+		return loadRegion(dirs, regionData, poiData, entitiesData, false);
+	}
+
+	// if rawRegion is true, the chunks of the region file are only decompressed, see MCAFile.loadRaw()
+	public static Region loadRegion(RegionDirectories dirs, byte[] regionData, byte[] poiData, byte[] entitiesData, boolean rawRegion) throws IOException {
 		Region r = new Region();
 		if (dirs.getRegion() != null && dirs.getRegion().length() > FileHelper.HEADER_SIZE && regionData != null) {
-			r.loadRegion(dirs.getRegion(), new ByteArrayPointer(regionData));
+			if (rawRegion) {
+				r.region = new RegionMCAFile(dirs.getRegion());
+				r.region.loadRaw(new ByteArrayPointer(regionData));
+			} else {
+				r.loadRegion(dirs.getRegion(), new ByteArrayPointer(regionData));
+			}
 		}
 		if (dirs.getPoi() != null && poiData != null) {
 			r.loadPoi(dirs.getPoi(), new ByteArrayPointer(poiData));
@@ -160,6 +178,10 @@ public class Region {
 		this.entities = entities;
 	}
 
+	public void setEntityHistograms(EntityHistogram[] entityHistograms) {
+		this.entityHistograms = entityHistograms;
+	}
+
 	public boolean isEmpty() {
 		boolean empty = true;
 		if (region != null) {
@@ -324,45 +346,45 @@ public class Region {
 	}
 
 	public boolean deleteChunks(Filter<?> filter, Selection selection) {
-		boolean deleted = false;
-		for (int i = 0; i < 1024; i++) {
+		AtomicBoolean deleted = new AtomicBoolean(false);
+		JobHandler.forEachChunk(i -> {
 			RegionChunk region = this.region.getChunk(i);
 			EntitiesChunk entities = this.entities == null ? null : this.entities.getChunk(i);
 			PoiChunk poi = this.poi == null ? null : this.poi.getChunk(i);
 
 			if (region == null || region.isEmpty() || selection != null && !selection.isAnyChunkInRegionSelected(region.getAbsoluteLocation())) {
-				continue;
+				return;
 			}
 
 			Point2i location = region.getAbsoluteLocation();
 			if (location == null) {
-				continue;
+				return;
 			}
 
 			ChunkData filterData = new ChunkData(region, poi, entities, selection != null && selection.isChunkSelected(location));
 
 			if ((selection == null || selection.isChunkSelected(location)) && filter.matches(filterData)) {
 				deleteChunkIndex(i);
-				deleted = true;
+				deleted.set(true);
 			}
-		}
-		return deleted;
+		}, filter.parallel());
+		return deleted.get();
 	}
 
 	public boolean keepChunks(Filter<?> filter, Selection selection) {
-		boolean deleted = false;
-		for (int i = 0; i < 1024; i++) {
+		AtomicBoolean deleted = new AtomicBoolean(false);
+		JobHandler.forEachChunk(i -> {
 			RegionChunk region = this.region.getChunk(i);
 			EntitiesChunk entities = this.entities == null ? null : this.entities.getChunk(i);
 			PoiChunk poi = this.poi == null ? null : this.poi.getChunk(i);
 
 			if (region == null || region.isEmpty()) {
-				continue;
+				return;
 			}
 
 			Point2i location = region.getAbsoluteLocation();
 			if (location == null) {
-				continue;
+				return;
 			}
 
 			ChunkData filterData = new ChunkData(region, poi, entities, selection != null && selection.isChunkSelected(location));
@@ -371,10 +393,10 @@ public class Region {
 			// ignore selection if it's null
 			if (!filter.matches(filterData) || selection != null && !selection.isChunkSelected(location)) {
 				deleteChunkIndex(i);
-				deleted = true;
+				deleted.set(true);
 			}
-		}
-		return deleted;
+		}, filter.parallel());
+		return deleted.get();
 	}
 
 	private void deleteChunkIndex(int index) {
@@ -390,9 +412,9 @@ public class Region {
 	}
 
 	public ChunkSet getFilteredChunks(Filter<?> filter, Selection selection) {
-		ChunkSet chunks = new ChunkSet();
+		boolean[] matches = new boolean[1024];
 
-		for (int i = 0; i < 1024; i++) {
+		JobHandler.forEachChunk(i -> {
 			RegionChunk regionChunk = this.region == null ? null : this.region.getChunk(i);
 			EntitiesChunk entitiesChunk = this.entities == null ? null : this.entities.getChunk(i);
 			PoiChunk poiChunk = this.poi == null ? null : this.poi.getChunk(i);
@@ -400,13 +422,58 @@ public class Region {
 			Point2i chunkLocation = location.regionToChunk().add(new Point2i(i));
 
 			ChunkData filterData = new ChunkData(regionChunk, poiChunk, entitiesChunk, selection != null && selection.isChunkSelected(chunkLocation));
+			if (entityHistograms != null) {
+				filterData.view().setEntityHistogram(entityHistograms[i]);
+			}
 
 			try {
-				if ((selection == null || selection.isChunkSelected(chunkLocation)) && filter.matches(filterData)) {
-					chunks.set(i);
-				}
+				matches[i] = (selection == null || selection.isChunkSelected(chunkLocation)) && filter.matches(filterData);
+			} catch (Exception ex) {
+				LOGGER.warn("failed to select chunk {}: {}", chunkLocation, ex.getMessage());
+			}
+		}, filter.parallel());
+		return toChunkSet(matches);
+	}
+
+	// only evaluates the filter for the chunks in the given set, which should already be limited to the selection.
+	// chunks for which the filter threw an exception don't match and are added to failed.
+	public ChunkSet getFilteredChunks(Filter<?> filter, Selection selection, ChunkSet candidates, ChunkSet failed) {
+		boolean[] matches = new boolean[1024];
+		boolean[] failures = new boolean[1024];
+
+		JobHandler.forEachChunk(i -> {
+			if (!candidates.get(i)) {
+				return;
+			}
+
+			RegionChunk regionChunk = this.region == null ? null : this.region.getChunk(i);
+			EntitiesChunk entitiesChunk = this.entities == null ? null : this.entities.getChunk(i);
+			PoiChunk poiChunk = this.poi == null ? null : this.poi.getChunk(i);
+
+			Point2i chunkLocation = location.regionToChunk().add(new Point2i(i));
+
+			ChunkData filterData = new ChunkData(regionChunk, poiChunk, entitiesChunk, selection != null && selection.isChunkSelected(chunkLocation));
+			if (entityHistograms != null) {
+				filterData.view().setEntityHistogram(entityHistograms[i]);
+			}
+
+			try {
+				matches[i] = filter.matches(filterData);
 			} catch (Exception ex) {
 				LOGGER.warn("failed to select chunk {}: {}", chunkLocation, ex.getMessage());
+				failures[i] = true;
+			}
+		}, filter.parallel());
+		failed.or(toChunkSet(failures));
+		return toChunkSet(matches);
+	}
+
+	// ChunkSet is not thread safe, so chunks that are filtered in parallel are collected in an array first
+	private static ChunkSet toChunkSet(boolean[] matches) {
+		ChunkSet chunks = new ChunkSet();
+		for (int i = 0; i < 1024; i++) {
+			if (matches[i]) {
+				chunks.set(i);
 			}
 		}
 		return chunks;
@@ -414,23 +481,37 @@ public class Region {
 
 	public void applyFieldChanges(List<Field<?>> fields, boolean force, Selection selection) {
 		Timer t = new Timer();
-		boolean selected = false;
-		for (int x = 0; x < 32; x++) {
-			for (int z = 0; z < 32; z++) {
-				Point2i absoluteLocation = location.regionToChunk().add(x, z);
-				if (selection == null || (selected = selection.isChunkSelected(absoluteLocation))) {
-					ChunkData chunkData = getChunkDataAt(absoluteLocation, selected);
-					try {
-						chunkData.applyFieldChanges(fields, force);
-					} catch (Exception ex) {
-						LOGGER.warn("failed to apply field changes to chunk {}: {}", absoluteLocation, ex.getMessage());
-					}
+		JobHandler.forEachChunk(i -> {
+			Point2i absoluteLocation = location.regionToChunk().add(new Point2i(i));
+			boolean selected = selection != null && selection.isChunkSelected(absoluteLocation);
+			if (selection == null || selected) {
+				ChunkData chunkData = getChunkDataAt(absoluteLocation, selected);
+				try {
+					chunkData.applyFieldChanges(fields, force);
+				} catch (Exception ex) {
+					LOGGER.warn("failed to apply field changes to chunk {}: {}", absoluteLocation, ex.getMessage());
 				}
 			}
-		}
+		}, fields.stream().allMatch(Field::parallel));
 		LOGGER.debug("took {} to apply field changes to region {}", t, location);
 	}
 
+	// deletes structures from the chunks outside of the selection that belong to them
+	public void deleteStructures(Long2ObjectMap<List<StructureIndex.Structure>> chunkStructures, Selection selection) {
+		JobHandler.forEachChunk(i -> {
+			Point2i absoluteLocation = location.regionToChunk().add(new Point2i(i));
+			List<StructureIndex.Structure> structures = chunkStructures.get(absoluteLocation.asLong());
+			if (structures == null || selection.isChunkSelected(absoluteLocation)) {
+				return;
+			}
+			try {
+				DeleteStructureField.deleteStructures(getChunkDataAt(absoluteLocation, false), absoluteLocation, structures);
+			} catch (Exception ex) {
+				LOGGER.warn("failed to delete structures from chunk {}: {}", absoluteLocation, ex.getMessage());
+			}
+		});
+	}
+
 	public void mergeInto(Region region, Point3i offset, boolean overwrite, ChunkSet sourceChunks, ChunkSet targetChunks, List<Range> ranges) {
 		if (this.region != null) {
 			this.region.mergeChunksInto(region.region, offset, overwrite, sourceChunks, targetChunks, ranges);
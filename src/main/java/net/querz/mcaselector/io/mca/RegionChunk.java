@@ -4,27 +4,68 @@ import net.querz.mcaselector.io.FileHelper;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.point.Point3i;
 import net.querz.mcaselector.range.Range;
+import net.querz.mcaselector.version.ChunkFilter;
 import net.querz.mcaselector.version.ChunkMerger;
 import net.querz.mcaselector.version.ChunkRelocator;
 import net.querz.mcaselector.version.VersionController;
 import net.querz.nbt.CompoundTag;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 public class RegionChunk extends Chunk implements Cloneable {
 
+	private static final Logger LOGGER = LogManager.getLogger(RegionChunk.class);
+
 	public RegionChunk(Point2i absoluteLocation) {
 		super(absoluteLocation);
 	}
 
 	@Override
 	public boolean relocate(Point3i offset) {
+		if (rawData != null) {
+			ChunkRelocator relocator = VersionController.getChunkRelocator(rawDataVersion);
+			try {
+				byte[] relocated = relocator.relocate(rawData, rawDataVersion, offset);
+				if (relocated != null) {
+					rawData = relocated;
+					return true;
+				}
+			} catch (IOException ex) {
+				LOGGER.debug("failed to relocate raw data of chunk at {}", absoluteLocation, ex);
+			}
+		}
+		CompoundTag data = getData();
 		ChunkRelocator relocator = VersionController.getChunkRelocator(data.getIntOrDefault("DataVersion", 0));
 		return relocator.relocate(data, offset);
 	}
 
+	// deletes the blocks of all sections in ranges and recalculates the heightmaps.
+	// if this chunk was loaded with loadRaw(), it is only read into tags if its version can't delete sections from the raw data.
+	public void deleteSections(List<Range> ranges) {
+		if (rawData != null) {
+			ChunkFilter chunkFilter = VersionController.getChunkFilter(rawDataVersion);
+			try {
+				byte[] deleted = chunkFilter.deleteSections(rawData, rawDataVersion, ranges);
+				if (deleted != null) {
+					rawData = deleted;
+					return;
+				}
+			} catch (IOException ex) {
+				LOGGER.debug("failed to delete sections from raw data of chunk at {}", absoluteLocation, ex);
+			}
+		}
+		CompoundTag data = getData();
+		int dataVersion = data.getIntOrDefault("DataVersion", 0);
+		VersionController.getChunkFilter(dataVersion).deleteSections(data, ranges);
+		VersionController.getHeightmapCalculator(dataVersion).allHeightmaps(data);
+	}
+
 	@Override
 	public void merge(CompoundTag destination, List<Range> ranges, int yOffset) {
+		CompoundTag data = getData();
 		ChunkMerger merger = VersionController.getChunkMerger(data.getIntOrDefault("DataVersion", 0));
 		merger.mergeChunks(data, destination, ranges, yOffset);
 	}
@@ -66,10 +66,7 @@ public class RegionMCAFile extends MCAFile<RegionChunk> implements Cloneable {
 					}
 
 					HeightmapCalculator heightmapCalculator = VersionController.getHeightmapCalculator(destinationChunk.getData().getIntOrDefault("DataVersion", 0));
-					heightmapCalculator.worldSurface(destinationChunk.getData());
-					heightmapCalculator.oceanFloor(destinationChunk.getData());
-					heightmapCalculator.motionBlocking(destinationChunk.getData());
-					heightmapCalculator.motionBlockingNoLeaves(destinationChunk.getData());
+					heightmapCalculator.allHeightmaps(destinationChunk.getData());
 				}
 			}
 		}
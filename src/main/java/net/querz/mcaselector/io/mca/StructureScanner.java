@@ -0,0 +1,229 @@
+package net.querz.mcaselector.io.mca;
+
+import net.querz.mcaselector.io.ByteArrayPointer;
+import net.querz.mcaselector.point.Point2i;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import static net.querz.mcaselector.io.mca.EntityScanner.*;
+
+// reads the structure references and starts of all chunks of a region file in a single pass over the raw nbt data.
+// everything except "Level.Structures" (before 1.18) and "structures" (since 1.18) is skipped.
+public final class StructureScanner {
+
+	private static final Logger LOGGER = LogManager.getLogger(StructureScanner.class);
+
+	private StructureScanner() {}
+
+	// a structure this chunk belongs to. starts are the chunk coordinates of the structure starts in the format
+	// minecraft uses, the x-coordinate in the lower 32 bits and the z-coordinate in the upper 32 bits.
+	public record Reference(String name, long[] starts) {
+
+		public Point2i getStart(int i) {
+			return new Point2i((int) starts[i], (int) (starts[i] >> 32));
+		}
+	}
+
+	// a structure that starts in this chunk. the bounding box is {minX, minY, minZ, maxX, maxY, maxZ} in blocks
+	// and null if neither the start nor any of its pieces have a bounding box.
+	public record Start(String name, String id, int[] boundingBox) {}
+
+	public record Result(Reference[] references, Start[] starts) {
+
+		public static final Result EMPTY = new Result(new Reference[0], new Start[0]);
+	}
+
+	// returns the structures of all 1024 chunks of a region file, chunks that don't exist are null
+	public static Result[] scan(byte[] data, Point2i region) {
+		Result[] results = new Result[1024];
+		if (data == null) {
+			return results;
+		}
+		ByteArrayPointer ptr = new ByteArrayPointer(data);
+		int[] offsets = new int[1024];
+		try {
+			for (int i = 0; i < 1024; i++) {
+				offsets[i] = ptr.readInt() >>> 8;
+			}
+		} catch (ArrayIndexOutOfBoundsException ex) {
+			return results;
+		}
+
+		Point2i origin = region.regionToChunk();
+		for (short i = 0; i < 1024; i++) {
+			if (offsets[i] == 0) {
+				continue;
+			}
+			Point2i chunkLocation = origin.add(new Point2i(i));
+			try {
+				ptr.seek(offsets[i] * 4096L);
+				results[i] = scanChunk(new RegionChunk(chunkLocation).openNBTStream(ptr));
+			} catch (Exception ex) {
+				LOGGER.debug("failed to scan structures of chunk at {}", chunkLocation, ex);
+			}
+		}
+		return results;
+	}
+
+	private static Result scanChunk(DataInput in) throws IOException {
+		if (in.readByte() != COMPOUND) {
+			return Result.EMPTY;
+		}
+		skipBytes(in, in.readUnsignedShort());
+		List<Reference> references = new ArrayList<>();
+		List<Start> starts = new ArrayList<>();
+		byte type;
+		while ((type = in.readByte()) != END) {
+			String name = in.readUTF();
+			if (type == COMPOUND && name.equals("Level")) {
+				scanLevel(in, references, starts);
+			} else if (type == COMPOUND && name.equals("structures")) {
+				scanStructures(in, "starts", references, starts);
+			} else {
+				skip(in, type);
+			}
+		}
+		if (references.isEmpty() && starts.isEmpty()) {
+			return Result.EMPTY;
+		}
+		return new Result(references.toArray(new Reference[0]), starts.toArray(new Start[0]));
+	}
+
+	private static void scanLevel(DataInput in, List<Reference> references, List<Start> starts) throws IOException {
+		byte type;
+		while ((type = in.readByte()) != END) {
+			String name = in.readUTF();
+			if (type == COMPOUND && name.equals("Structures")) {
+				scanStructures(in, "Starts", references, starts);
+			} else {
+				skip(in, type);
+			}
+		}
+	}
+
+	private static void scanStructures(DataInput in, String startsName, List<Reference> references, List<Start> starts) throws IOException {
+		byte type;
+		while ((type = in.readByte()) != END) {
+			String name = in.readUTF();
+			if (type == COMPOUND && name.equals("References")) {
+				scanReferences(in, references);
+			} else if (type == COMPOUND && name.equals(startsName)) {
+				scanStarts(in, starts);
+			} else {
+				skip(in, type);
+			}
+		}
+	}
+
+	private static void scanReferences(DataInput in, List<Reference> references) throws IOException {
+		byte type;
+		while ((type = in.readByte()) != END) {
+			String name = in.readUTF();
+			if (type == LONG_ARRAY) {
+				long[] starts = new long[in.readInt()];
+				for (int i = 0; i < starts.length; i++) {
+					starts[i] = in.readLong();
+				}
+				// empty references are ignored, the same as by the StructureFilter
+				if (starts.length > 0) {
+					references.add(new Reference(name, starts));
+				}
+			} else {
+				skip(in, type);
+			}
+		}
+	}
+
+	private static void scanStarts(DataInput in, List<Start> starts) throws IOException {
+		byte type;
+		while ((type = in.readByte()) != END) {
+			String name = in.readUTF();
+			if (type == COMPOUND) {
+				Start start = scanStart(in, name);
+				if (start != null) {
+					starts.add(start);
+				}
+			} else {
+				skip(in, type);
+			}
+		}
+	}
+
+	// returns null for the placeholder starts with the id "INVALID" that chunks before 1.18 have for every structure
+	private static Start scanStart(DataInput in, String name) throws IOException {
+		String id = null;
+		int[] boundingBox = null;
+		int[] childrenBoundingBox = null;
+		byte type;
+		while ((type = in.readByte()) != END) {
+			String key = in.readUTF();
+			if (type == STRING && key.equals("id")) {
+				id = in.readUTF();
+			} else if (type == INT_ARRAY && key.equals("BB")) {
+				boundingBox = readBoundingBox(in);
+			} else if (type == LIST && key.equals("Children")) {
+				childrenBoundingBox = scanChildren(in);
+			} else {
+				skip(in, type);
+			}
+		}
+		if ("INVALID".equals(id)) {
+			return null;
+		}
+		// since 1.18 only the pieces of a structure have a bounding box
+		return new Start(name, id, boundingBox != null ? boundingBox : childrenBoundingBox);
+	}
+
+	// returns the union of the bounding boxes of all pieces
+	private static int[] scanChildren(DataInput in) throws IOException {
+		byte elementType = in.readByte();
+		int length = in.readInt();
+		if (elementType != COMPOUND) {
+			for (int i = 0; i < length; i++) {
+				skip(in, elementType);
+			}
+			return null;
+		}
+		int[] union = null;
+		for (int i = 0; i < length; i++) {
+			byte type;
+			while ((type = in.readByte()) != END) {
+				String key = in.readUTF();
+				if (type == INT_ARRAY && key.equals("BB")) {
+					int[] boundingBox = readBoundingBox(in);
+					if (boundingBox == null) {
+						continue;
+					}
+					if (union == null) {
+						union = boundingBox;
+					} else {
+						for (int j = 0; j < 3; j++) {
+							union[j] = Math.min(union[j], boundingBox[j]);
+							union[j + 3] = Math.max(union[j + 3], boundingBox[j + 3]);
+						}
+					}
+				} else {
+					skip(in, type);
+				}
+			}
+		}
+		return union;
+	}
+
+	// returns null if the int array doesn't have 6 elements
+	private static int[] readBoundingBox(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length != 6) {
+			skipBytes(in, length * 4L);
+			return null;
+		}
+		int[] boundingBox = new int[6];
+		for (int i = 0; i < 6; i++) {
+			boundingBox[i] = in.readInt();
+		}
+		return boundingBox;
+	}
+}
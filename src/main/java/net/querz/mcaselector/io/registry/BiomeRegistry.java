@@ -22,6 +22,8 @@ public final class BiomeRegistry {
 	private static final Map<Integer, String> idMapping = new HashMap<>();
 	private static final Map<String, Integer> nameMapping = new HashMap<>();
 	private static final Set<String> mapping = new HashSet<>();
+	// dense ids of biome names, which are unrelated to the numeric ids of old versions
+	private static final NameIndex nameIndex = new NameIndex();
 
 	static {
 		try (BufferedReader bis = new BufferedReader(
@@ -50,6 +52,7 @@ public final class BiomeRegistry {
 			String line;
 			while ((line = bis.readLine()) != null) {
 				mapping.add("minecraft:" + line);
+				nameIndex.add("minecraft:" + line);
 			}
 		} catch (IOException ex) {
 			LOGGER.error("error reading mapping/all_biome_names.txt", ex);
@@ -72,10 +75,16 @@ public final class BiomeRegistry {
 		return nameMapping.getOrDefault(name, null);
 	}
 
+	// returns the dense id of a biome name or -1 if the name is unknown
+	public static int findNameID(String name) {
+		return nameIndex.findID(name);
+	}
+
 	public static class BiomeIdentifier {
 
 		Integer id;
 		String name;
+		int nameID;
 
 		public BiomeIdentifier(String name) {
 			this(name, toID(name));
@@ -88,6 +97,7 @@ public final class BiomeRegistry {
 		public BiomeIdentifier(String name, Integer id) {
 			this.id = id;
 			this.name = name;
+			this.nameID = name == null ? -1 : BiomeRegistry.findNameID(name);
 		}
 
 		public int getID() {
@@ -98,12 +108,17 @@ public final class BiomeRegistry {
 			return name;
 		}
 
+		// the dense id of the name of this biome, or -1 if this biome only has a numeric id or an unknown name
+		public int getNameID() {
+			return nameID;
+		}
+
 		public boolean matches(String name) {
 			return this.name != null && this.name.equals(name);
 		}
 
 		public boolean matches(int id) {
-			return this.id == id;
+			return this.id != null && this.id == id;
 		}
 
 		@Override
@@ -0,0 +1,49 @@
+package net.querz.mcaselector.io.registry;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Objects;
+
+// assigns dense int ids to block names, so that palettes can be matched against sets of ids instead of strings.
+// ids are only valid for the lifetime of the process, they must never be written to disk.
+public final class BlockRegistry {
+
+	private static final Logger LOGGER = LogManager.getLogger(BlockRegistry.class);
+
+	private BlockRegistry() {}
+
+	private static final NameIndex index = new NameIndex();
+
+	static {
+		try (BufferedReader bis = new BufferedReader(
+				new InputStreamReader(Objects.requireNonNull(BlockRegistry.class.getClassLoader().getResourceAsStream("mapping/all_block_names.txt"))))) {
+			String line;
+			while ((line = bis.readLine()) != null) {
+				index.add("minecraft:" + line);
+			}
+		} catch (IOException ex) {
+			LOGGER.error("error reading mapping/all_block_names.txt", ex);
+		}
+	}
+
+	// returns the id of a block name, unknown names get a new id
+	public static int getID(String name) {
+		return index.getID(name);
+	}
+
+	// returns the id of a block name or -1 if no block with this name has been seen yet
+	public static int findID(String name) {
+		return index.findID(name);
+	}
+
+	public static String getName(int id) {
+		return index.getName(id);
+	}
+
+	public static int size() {
+		return index.size();
+	}
+}
@@ -0,0 +1,55 @@
+package net.querz.mcaselector.io.registry;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// assigns dense int ids to names. names that are not known yet (e.g. from mods) are added when they are first seen.
+// lookups of known names don't lock, so this can be used by all threads that parse chunks at the same time.
+final class NameIndex {
+
+	private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+	private volatile String[] names = new String[256];
+	private volatile int size = 0;
+
+	int getID(String name) {
+		Integer id = ids.get(name);
+		if (id != null) {
+			return id;
+		}
+		return add(name);
+	}
+
+	// returns -1 if the name is unknown
+	int findID(String name) {
+		Integer id = ids.get(name);
+		return id == null ? -1 : id;
+	}
+
+	String getName(int id) {
+		String[] names = this.names;
+		return id >= 0 && id < names.length ? names[id] : null;
+	}
+
+	int size() {
+		return size;
+	}
+
+	synchronized int add(String name) {
+		Integer id = ids.get(name);
+		if (id != null) {
+			return id;
+		}
+		int newID = size;
+		String[] names = this.names;
+		if (newID == names.length) {
+			names = Arrays.copyOf(names, names.length * 2);
+		}
+		names[newID] = name;
+		// publish the name before the id, so that getName() always works for ids returned by getID()
+		this.names = names;
+		size = newID + 1;
+		ids.put(name, newID);
+		return newID;
+	}
+}
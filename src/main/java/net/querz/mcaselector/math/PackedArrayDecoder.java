@@ -0,0 +1,176 @@
+package net.querz.mcaselector.math;
+
+import java.util.Arrays;
+
+// decodes arrays of unsigned values that are packed into longs, like block states and biomes of chunk sections.
+// since 1.16, values never span across two longs and the remaining high bits of each long are unused ("aligned").
+// before that, all values are packed back to back and a value can start in one long and end in the next ("spanning").
+public final class PackedArrayDecoder {
+
+	private PackedArrayDecoder() {}
+
+	private static final ThreadLocal<short[][]> sectionBuffers = ThreadLocal.withInitial(() -> new short[0][]);
+
+	// the amount of bits used per block state for a palette of this size
+	public static int blockBits(int paletteSize) {
+		return Math.max(4, 32 - Integer.numberOfLeadingZeros(paletteSize - 1));
+	}
+
+	// the amount of bits used per block state for a palette of this size, unless the data has a different length.
+	// then the bits are derived from the length of the data, so that data that wasn't written by the game can still be read.
+	public static int blockBits(int paletteSize, int length) {
+		int bits = blockBits(paletteSize);
+		int valuesPerLong = 64 / bits;
+		if ((4096 + valuesPerLong - 1) / valuesPerLong != length) {
+			return alignedBits(length, 4096);
+		}
+		return bits;
+	}
+
+	// the amount of bits used per biome for a palette of this size, 0 if there is only one biome
+	public static int biomeBits(int paletteSize) {
+		return 32 - Integer.numberOfLeadingZeros(Math.max(paletteSize - 1, 0));
+	}
+
+	// the amount of bits per value of an aligned array with this length and amount of values, if the palette is unknown.
+	// different bit counts can result in the same length, in that case this returns the smallest one, which is what
+	// the game would use for the smallest palette that requires this length.
+	public static int alignedBits(int length, int count) {
+		for (int bits = 1; bits <= 32; bits++) {
+			int valuesPerLong = 64 / bits;
+			if ((count + valuesPerLong - 1) / valuesPerLong == length) {
+				return bits;
+			}
+		}
+		return length * 64 / count;
+	}
+
+	// the amount of bits per value of a spanning array with this length and amount of values
+	public static int spanningBits(int length, int count) {
+		return length * 64 / count;
+	}
+
+	// returns a single value of an aligned array
+	public static int get(long[] data, int bits, int index) {
+		if (data == null || bits == 0) {
+			return 0;
+		}
+		int valuesPerLong = 64 / bits;
+		int longIndex = index / valuesPerLong;
+		int startBit = (index - longIndex * valuesPerLong) * bits;
+		return (int) (data[longIndex] >>> startBit & (1L << bits) - 1);
+	}
+
+	// returns a single value of a spanning array
+	public static int getSpanning(long[] data, int bits, int index) {
+		if (data == null || bits == 0) {
+			return 0;
+		}
+		int bitIndex = index * bits;
+		int longIndex = bitIndex >> 6;
+		int startBit = bitIndex & 63;
+		long value = data[longIndex] >>> startBit;
+		if (startBit + bits > 64) {
+			value |= data[longIndex + 1] << 64 - startBit;
+		}
+		return (int) (value & (1L << bits) - 1);
+	}
+
+	// returns count buffers of 4096 values that can be reused by the current thread
+	public static short[][] getSectionBuffers(int count) {
+		short[][] buffers = sectionBuffers.get();
+		if (buffers.length < count) {
+			int old = buffers.length;
+			buffers = Arrays.copyOf(buffers, count);
+			for (int i = old; i < count; i++) {
+				buffers[i] = new short[4096];
+			}
+			sectionBuffers.set(buffers);
+		}
+		return buffers;
+	}
+
+	// decodes out.length values of an aligned array into out and returns out.
+	// if data is null, all values are 0.
+	public static short[] decode(long[] data, int bits, short[] out) {
+		if (data == null || bits == 0) {
+			Arrays.fill(out, (short) 0);
+			return out;
+		}
+		int decoded = decodeAligned(data, bits, out);
+		// data that is too short is padded with 0 instead of leaving old values of a reused buffer
+		Arrays.fill(out, decoded, out.length, (short) 0);
+		return out;
+	}
+
+	// decodes out.length values of a spanning array into out and returns out.
+	// if data is null, all values are 0.
+	public static short[] decodeSpanning(long[] data, int bits, short[] out) {
+		if (data == null || bits == 0) {
+			Arrays.fill(out, (short) 0);
+			return out;
+		}
+		if (64 % bits == 0) {
+			// values never span across two longs if bits is a power of 2, so both layouts are the same
+			return decode(data, bits, out);
+		}
+		int count = Math.min(out.length, (int) ((long) data.length * 64 / bits));
+		decodeSpanning(data, bits, out, count);
+		Arrays.fill(out, count, out.length, (short) 0);
+		return out;
+	}
+
+	// the values of each long are decoded in an inner loop with a constant amount of iterations and a constant mask,
+	// only the values of the last long that don't fill it completely are decoded separately.
+	private static int decodeAligned(long[] data, int bits, short[] out) {
+		int valuesPerLong = 64 / bits;
+		long mask = (1L << bits) - 1;
+		int longs = Math.min(data.length, out.length / valuesPerLong);
+		int i = 0;
+		for (int l = 0; l < longs; l++) {
+			long word = data[l];
+			for (int j = 0; j < valuesPerLong; j++) {
+				out[i++] = (short) (word & mask);
+				word >>>= bits;
+			}
+		}
+		if (longs < data.length && i < out.length) {
+			long word = data[longs];
+			for (; i < out.length; i++) {
+				out[i] = (short) (word & mask);
+				word >>>= bits;
+			}
+		}
+		return i;
+	}
+
+	// reads the longs one after another and keeps the current one in a local, instead of calculating the position of
+	// every value. a value that starts in one long is completed with the low bits of the next one.
+	private static void decodeSpanning(long[] data, int bits, short[] out, int count) {
+		if (count == 0) {
+			return;
+		}
+		long mask = (1L << bits) - 1;
+		int l = 0;
+		long word = data[0];
+		int used = 0;
+		for (int i = 0; i < count; i++) {
+			int end = used + bits;
+			if (end < 64) {
+				out[i] = (short) (word >>> used & mask);
+				used = end;
+			} else if (end == 64) {
+				out[i] = (short) (word >>> used & mask);
+				used = 0;
+				if (++l < data.length) {
+					word = data[l];
+				}
+			} else {
+				long next = data[++l];
+				out[i] = (short) ((word >>> used | next << 64 - used) & mask);
+				word = next;
+				used = end - 64;
+			}
+		}
+	}
+}
@@ -3,8 +3,6 @@ package net.querz.mcaselector.overlay.overlays;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.overlay.Overlay;
 import net.querz.mcaselector.overlay.OverlayType;
-import net.querz.mcaselector.version.ChunkFilter;
-import net.querz.mcaselector.version.VersionController;
 
 public class AverageHeightOverlay extends Overlay {
 
@@ -20,8 +18,7 @@ public class AverageHeightOverlay extends Overlay {
 		if (chunkData.region() == null || chunkData.region().getData() == null) {
 			return 0;
 		}
-		ChunkFilter chunkFilter = VersionController.getChunkFilter(chunkData.region().getData().getIntOrDefault("DataVersion", 0));
-		return chunkFilter.getAverageHeight(chunkData.region().getData());
+		return chunkData.view().getAverageHeight();
 	}
 
 	@Override
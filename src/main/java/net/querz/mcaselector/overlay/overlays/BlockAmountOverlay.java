@@ -1,17 +1,22 @@
 package net.querz.mcaselector.overlay.overlays;
 
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
 import net.querz.mcaselector.io.mca.ChunkData;
+import net.querz.mcaselector.io.registry.BlockRegistry;
 import net.querz.mcaselector.overlay.Overlay;
 import net.querz.mcaselector.overlay.OverlayType;
 import net.querz.mcaselector.text.TextHelper;
 import net.querz.mcaselector.version.ChunkFilter;
 import net.querz.mcaselector.version.VersionController;
+import java.util.Arrays;
 
 public class BlockAmountOverlay extends Overlay {
 
 	private static final int MIN_VALUE = 0;
 	private static final int MAX_VALUE = 98304; // 384 * 16 * 16
 
+	private transient BlockIDs blockIDs;
+
 	public BlockAmountOverlay() {
 		super(OverlayType.BLOCK_AMOUNT);
 		setMultiValues(new String[0]);
@@ -22,10 +27,33 @@ public class BlockAmountOverlay extends Overlay {
 		if (chunkData.region() == null || chunkData.region().getData() == null) {
 			return 0;
 		}
+		Int2IntMap amounts = chunkData.view().getBlockAmounts();
+		if (amounts != null) {
+			int result = 0;
+			for (int id : getBlockIDs()) {
+				result += amounts.get(id);
+			}
+			return result;
+		}
 		ChunkFilter chunkFilter = VersionController.getChunkFilter(chunkData.region().getData().getIntOrDefault("DataVersion", 0));
 		return chunkFilter.getBlockAmount(chunkData.region().getData(), multiValues());
 	}
 
+	private int[] getBlockIDs() {
+		BlockIDs blockIDs = this.blockIDs;
+		String[] blocks = multiValues();
+		// unknown blocks are skipped, but they might have been added by chunks parsed since the last lookup
+		if (blockIDs == null || blockIDs.blocks != blocks || blockIDs.registrySize != BlockRegistry.size()) {
+			int registrySize = BlockRegistry.size();
+			blockIDs = new BlockIDs(blocks, Arrays.stream(blocks).mapToInt(BlockRegistry::findID).filter(id -> id != -1).distinct().toArray(), registrySize);
+			this.blockIDs = blockIDs;
+		}
+		return blockIDs.ids;
+	}
+
+	// the BlockRegistry ids of the blocks of this overlay
+	private record BlockIDs(String[] blocks, int[] ids, int registrySize) {}
+
 	@Override
 	public String name() {
 		return "Blocks";
@@ -3,9 +3,6 @@ package net.querz.mcaselector.overlay.overlays;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.overlay.AmountParser;
 import net.querz.mcaselector.overlay.OverlayType;
-import net.querz.mcaselector.version.EntityFilter;
-import net.querz.mcaselector.version.VersionController;
-import net.querz.nbt.ListTag;
 
 public class EntityAmountOverlay extends AmountParser {
 
@@ -18,9 +15,7 @@ public class EntityAmountOverlay extends AmountParser {
 		if (chunkData.region() == null || chunkData.region().getData() == null) {
 			return 0;
 		}
-		EntityFilter entityFilter = VersionController.getEntityFilter(chunkData.region().getData().getIntOrDefault("DataVersion", 0));
-		ListTag entities = entityFilter.getEntities(chunkData);
-		return entities == null ? 0 : entities.size();
+		return chunkData.view().getEntityAmount();
 	}
 
 	@Override
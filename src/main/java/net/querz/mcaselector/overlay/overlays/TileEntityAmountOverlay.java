@@ -3,9 +3,6 @@ package net.querz.mcaselector.overlay.overlays;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.overlay.AmountParser;
 import net.querz.mcaselector.overlay.OverlayType;
-import net.querz.mcaselector.version.ChunkFilter;
-import net.querz.mcaselector.version.VersionController;
-import net.querz.nbt.ListTag;
 
 public class TileEntityAmountOverlay extends AmountParser {
 
@@ -18,9 +15,7 @@ public class TileEntityAmountOverlay extends AmountParser {
 		if (chunkData.region() == null) {
 			return 0;
 		}
-		ChunkFilter chunkFilter = VersionController.getChunkFilter(chunkData.region().getData().getIntOrDefault("DataVersion", 0));
-		ListTag tileEntities = chunkFilter.getTileEntities(chunkData.region().getData());
-		return tileEntities == null ? 0 : tileEntities.size();
+		return chunkData.view().getTileEntityAmount();
 	}
 
 	@Override
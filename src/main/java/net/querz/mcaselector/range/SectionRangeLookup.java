@@ -0,0 +1,51 @@
+package net.querz.mcaselector.range;
+
+import java.util.List;
+
+// tells whether any of a list of ranges contains a section. each section is only checked against the ranges once,
+// which matters when merging lists with a lot of elements in few sections, like block entities or ticks.
+public final class SectionRangeLookup {
+
+	// the range of sections of the highest possible world height
+	private static final int MIN_SECTION = -128, MAX_SECTION = 127;
+
+	private static final byte UNKNOWN = 0, OUTSIDE = 1, INSIDE = 2;
+
+	private final List<Range> ranges;
+	private final byte[] sections = new byte[MAX_SECTION - MIN_SECTION + 1];
+
+	public SectionRangeLookup(List<Range> ranges) {
+		this.ranges = ranges;
+	}
+
+	public boolean contains(int section) {
+		if (section < MIN_SECTION || section > MAX_SECTION) {
+			return containsAny(section);
+		}
+		int index = section - MIN_SECTION;
+		byte state = sections[index];
+		if (state == UNKNOWN) {
+			sections[index] = state = containsAny(section) ? INSIDE : OUTSIDE;
+		}
+		return state == INSIDE;
+	}
+
+	// tells whether every section from "from" to "to" is in any of the ranges
+	public boolean containsAll(int from, int to) {
+		for (int section = from; section <= to; section++) {
+			if (!contains(section)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean containsAny(int section) {
+		for (Range range : ranges) {
+			if (range.contains(section)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -14,18 +14,33 @@ public class ChunkSet implements IntIterable, Serializable, Cloneable {
 
 	public static final ChunkSet EMPTY_SET = new ChunkSet().immutable();
 
+	public ChunkSet() {}
+
+	ChunkSet(long[] words) {
+		this.words = words;
+		int bits = 0;
+		for (int i = 0; i < 16; i++) {
+			bits += Long.bitCount(words[i]);
+		}
+		setBits = (short) bits;
+	}
+
 	public void set(int index) {
-		if (!get(index)) {
+		long word = words[index >> 6];
+		long mask = 1L << index;
+		if ((word & mask) == 0) {
+			words[index >> 6] = word | mask;
 			setBits++;
 		}
-		words[index >> 6] |= (1L << index);
 	}
 
 	public void clear(int index) {
-		if (get(index)) {
+		long word = words[index >> 6];
+		long mask = 1L << index;
+		if ((word & mask) != 0) {
+			words[index >> 6] = word & ~mask;
 			setBits--;
 		}
-		words[index >> 6] &= ~(1L << index);
 	}
 
 	public void clear() {
@@ -39,21 +54,45 @@ public class ChunkSet implements IntIterable, Serializable, Cloneable {
 		return (words[index >> 6] & (1L << index)) != 0;
 	}
 
+	// selects all chunks that are selected in this or the other ChunkSet
 	public void or(ChunkSet other) {
-		for (short i = 0; i < 1024; i++) {
-			if (other.get(i)) {
-				set(i);
-			}
+		int bits = 0;
+		for (int i = 0; i < 16; i++) {
+			bits += Long.bitCount(words[i] |= other.words[i]);
+		}
+		setBits = (short) bits;
+	}
+
+	// only keeps the chunks that are selected in this and the other ChunkSet
+	public void and(ChunkSet other) {
+		int bits = 0;
+		for (int i = 0; i < 16; i++) {
+			bits += Long.bitCount(words[i] &= other.words[i]);
+		}
+		setBits = (short) bits;
+	}
+
+	// removes all chunks from this ChunkSet that are selected in the other ChunkSet
+	public void andNot(ChunkSet other) {
+		int bits = 0;
+		for (int i = 0; i < 16; i++) {
+			bits += Long.bitCount(words[i] &= ~other.words[i]);
+		}
+		setBits = (short) bits;
+	}
+
+	// only keeps the chunks that are selected in exactly one of both ChunkSets
+	public void xor(ChunkSet other) {
+		int bits = 0;
+		for (int i = 0; i < 16; i++) {
+			bits += Long.bitCount(words[i] ^= other.words[i]);
 		}
+		setBits = (short) bits;
 	}
 
 	// turns all chunks to be selected if the chunk in this ChunkSet is selected and the one in the other ChunkSet is not.
 	public void otherNotAnd(ChunkSet other) {
-		for (short i = 0; i < 1024; i++) {
-			if (!get(i) || other.get(i)) {
-				clear(i);
-			}
-		}
+		andNot(other);
 	}
 
 	public ChunkSet flip() {
@@ -86,6 +125,10 @@ public class ChunkSet implements IntIterable, Serializable, Cloneable {
 		return setBits == 0;
 	}
 
+	public boolean isFull() {
+		return setBits == 1024;
+	}
+
 	public void fill() {
 		for (int i = 0; i < 16; i++) {
 			words[i] = 0xFFFFFFFFFFFFFFFFL;
@@ -101,49 +144,63 @@ public class ChunkSet implements IntIterable, Serializable, Cloneable {
 	@Override
 	public void forEach(IntConsumer action) {
 		for (int i = 0; i < 16; i++) {
-			if (words[i] == 0L) {
-				continue;
-			}
+			long word = words[i];
 			int c = i << 6;
-			int l = c + 64;
-			for (; c < l; c++) {
-				if (get(c)) {
-					action.accept(c);
-				}
+			while (word != 0) {
+				action.accept(c | Long.numberOfTrailingZeros(word));
+				word &= word - 1;
 			}
 		}
 	}
 
 	public void forEachFrom(short index, IntConsumer action) {
-		for (int i = index >> 6; i < 16; i++) {
-			if (words[i] == 0) {
-				continue;
-			}
+		int i = index >> 6;
+		// mask out all bits below index in the first word
+		long word = words[i] & (-1L << index);
+		for (;;) {
 			int c = i << 6;
-			int l = c + 64;
-			for (; c < l; c++) {
-				if (get(c)) {
-					action.accept(c);
-				}
+			while (word != 0) {
+				action.accept(c | Long.numberOfTrailingZeros(word));
+				word &= word - 1;
 			}
+			if (++i == 16) {
+				break;
+			}
+			word = words[i];
 		}
 	}
 
 	public void forEachFromInverse(short index, IntConsumer action) {
-		for (int i = index >> 6; i >= 0; i--) {
-			if (words[i] == 0) {
-				continue;
+		int i = index >> 6;
+		// mask out all bits above index in the first word
+		long word = words[i] & (-1L >>> (63 - (index & 0x3F)));
+		for (;;) {
+			int c = i << 6 | 63;
+			while (word != 0) {
+				int z = Long.numberOfLeadingZeros(word);
+				action.accept(c - z);
+				word &= ~(Long.MIN_VALUE >>> z);
 			}
-			int l = i << 6;
-			int c = l + 64;
-			for (; c >= l; c--) {
-				if (get(c)) {
-					action.accept(c);
-				}
+			if (--i < 0) {
+				break;
 			}
+			word = words[i];
 		}
 	}
 
+	// returns the selected chunks of row z as a bit mask of x-coordinates
+	public int getRow(int z) {
+		return (int) (words[z >> 1] >>> ((z & 1) << 5));
+	}
+
+	// selects all chunks in row z that are set in the bit mask of x-coordinates
+	public void orRow(int z, int row) {
+		long old = words[z >> 1];
+		long word = old | (row & 0xFFFFFFFFL) << ((z & 1) << 5);
+		words[z >> 1] = word;
+		setBits += (short) (Long.bitCount(word) - Long.bitCount(old));
+	}
+
 	public int getMinX(int max) {
 		for (int x = 0; x < max; x++) {
 			for (int z = 0; z < 32; z++) {
@@ -195,45 +252,47 @@ public class ChunkSet implements IntIterable, Serializable, Cloneable {
 	}
 
 	public void removeIf(ShortPredicate predicate) {
-		short c = 0, l = 64;
 		for (int i = 0; i < 16; i++) {
-			if (words[i] == 0) {
-				continue;
-			}
-			for (; c < l; c++) {
-				if (predicate.test(c)) {
-					clear(c);
+			long word = words[i];
+			int c = i << 6;
+			while (word != 0) {
+				int b = Long.numberOfTrailingZeros(word);
+				if (predicate.test((short) (c | b))) {
+					clear(c | b);
 				}
+				word &= word - 1;
 			}
-			l += 64;
 		}
 	}
 
 	private class ChunkIterator implements IntIterator {
 
-		short index = 0;
+		int wordIndex = 0;
+		long word = words[0];
+		int current = -1;
 
 		@Override
 		public int nextInt() {
-			return index - 1;
+			return current;
 		}
 
 		@Override
 		public boolean hasNext() {
-			while (index < 1024) {
-				if (get(index++)) {
-					return true;
+			while (word == 0) {
+				if (++wordIndex == 16) {
+					return false;
 				}
+				word = words[wordIndex];
 			}
-			return false;
+			current = wordIndex << 6 | Long.numberOfTrailingZeros(word);
+			word &= word - 1;
+			return true;
 		}
 
 		@Override
 		public void forEachRemaining(IntConsumer action) {
-			for (; index < 1024; index++) {
-				if (get(index)) {
-					action.accept(index);
-				}
+			while (hasNext()) {
+				action.accept(current);
 			}
 		}
 	}
@@ -273,6 +332,31 @@ public class ChunkSet implements IntIterable, Serializable, Cloneable {
 		public void or(ChunkSet other) {
 			throw new UnsupportedOperationException("cannot modify immutable ChunkSet");
 		}
+
+		@Override
+		public void and(ChunkSet other) {
+			throw new UnsupportedOperationException("cannot modify immutable ChunkSet");
+		}
+
+		@Override
+		public void andNot(ChunkSet other) {
+			throw new UnsupportedOperationException("cannot modify immutable ChunkSet");
+		}
+
+		@Override
+		public void xor(ChunkSet other) {
+			throw new UnsupportedOperationException("cannot modify immutable ChunkSet");
+		}
+
+		@Override
+		public void orRow(int z, int row) {
+			throw new UnsupportedOperationException("cannot modify immutable ChunkSet");
+		}
+
+		@Override
+		public void fill() {
+			throw new UnsupportedOperationException("cannot modify immutable ChunkSet");
+		}
 	}
 
 	@Override
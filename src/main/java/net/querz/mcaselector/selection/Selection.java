@@ -2,6 +2,7 @@ package net.querz.mcaselector.selection;
 
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrays;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import net.querz.mcaselector.io.FileHelper;
 import net.querz.mcaselector.io.WorldDirectories;
@@ -24,7 +25,26 @@ public class Selection implements Serializable, Iterable<Long2ObjectMap.Entry<Ch
 		this.inverted = inverted;
 	}
 
-	public static Selection readFromFile(File csvFile) throws IOException {
+	// reads a selection file, the format is detected automatically
+	public static Selection readFromFile(File file) throws IOException {
+		if (SelectionFormat.detect(file) == SelectionFormat.BINARY) {
+			return readFromBinaryFile(file);
+		}
+		return readFromCSVFile(file);
+	}
+
+	private static Selection readFromBinaryFile(File file) throws IOException {
+		Selection selection = new Selection();
+		try (SelectionReader reader = new SelectionReader(file)) {
+			while (reader.next()) {
+				selection.addAll(new Point2i(reader.getRegion()), reader.getChunks());
+			}
+			selection.setInverted(reader.isInverted());
+		}
+		return selection;
+	}
+
+	private static Selection readFromCSVFile(File csvFile) throws IOException {
 		Long2ObjectOpenHashMap<ChunkSet> sel = new Long2ObjectOpenHashMap<>();
 		Selection selection = new Selection(sel, false);
 		boolean inverted = false;
@@ -72,29 +92,56 @@ public class Selection implements Serializable, Iterable<Long2ObjectMap.Entry<Ch
 		return selection;
 	}
 
-	public void saveToFile(File csvFile) throws IOException {
+	// saves this selection to a file, the format is chosen based on the file ending and defaults to CSV
+	public void saveToFile(File file) throws IOException {
+		saveToFile(file, SelectionFormat.fromFileName(file.getName()));
+	}
+
+	public void saveToFile(File file, SelectionFormat format) throws IOException {
+		if (format == SelectionFormat.BINARY) {
+			saveToBinaryFile(file);
+		} else {
+			saveToCSVFile(file);
+		}
+	}
+
+	private void saveToBinaryFile(File file) throws IOException {
+		long[] regions = selection.keySet().toLongArray();
+		LongArrays.quickSort(regions, SelectionFormat::compareRegions);
+		try (SelectionWriter writer = new SelectionWriter(file, inverted)) {
+			for (long region : regions) {
+				writer.writeRegion(region, selection.get(region));
+			}
+		}
+	}
+
+	private void saveToCSVFile(File csvFile) throws IOException {
 		try (BufferedWriter bw = new BufferedWriter(new FileWriter(csvFile))) {
 			if (inverted) {
 				bw.write("inverted\n");
 			}
 			for (Long2ObjectMap.Entry<ChunkSet> entry : selection.long2ObjectEntrySet()) {
-				Point2i region = new Point2i(entry.getLongKey());
-				if (entry.getValue() == null) {
-					writePoint(bw, region);
-					bw.write('\n');
-					continue;
-				}
-				for (int i : entry.getValue()) {
-					writePoint(bw, region);
-					bw.write(';');
-					Point2i c = new Point2i(i).add(region.regionToChunk());
-					writePoint(bw, c);
-					bw.write('\n');
-				}
+				writeCSVRegion(bw, entry.getLongKey(), entry.getValue());
 			}
 		}
 	}
 
+	static void writeCSVRegion(BufferedWriter bw, long r, ChunkSet chunks) throws IOException {
+		Point2i region = new Point2i(r);
+		if (chunks == null) {
+			writePoint(bw, region);
+			bw.write('\n');
+			return;
+		}
+		for (int i : chunks) {
+			writePoint(bw, region);
+			bw.write(';');
+			Point2i c = new Point2i(i).add(region.regionToChunk());
+			writePoint(bw, c);
+			bw.write('\n');
+		}
+	}
+
 	public String saveToString() {
 		StringBuilder sb = new StringBuilder();
 		if (inverted) {
@@ -420,13 +467,7 @@ public class Selection implements Serializable, Iterable<Long2ObjectMap.Entry<Ch
 		if (chunks == null) {
 			return new ChunkSet();
 		}
-		ChunkSet result = new ChunkSet();
-		for (short i = 0; i < 1024; i++) {
-			if (!chunks.get(i)) {
-				result.set(i);
-			}
-		}
-		return result;
+		return chunks.flip();
 	}
 
 	public void merge(Selection other) {
@@ -513,16 +554,7 @@ public class Selection implements Serializable, Iterable<Long2ObjectMap.Entry<Ch
 		if (b == null) {
 			return a;
 		}
-		a.forEach(l -> {
-			if (!b.get(l)) {
-				a.clear(l);
-			}
-		});
-		b.forEach(l -> {
-			if (!a.get(l)) {
-				a.clear(l);
-			}
-		});
+		a.and(b);
 		return a;
 	}
 
@@ -533,7 +565,7 @@ public class Selection implements Serializable, Iterable<Long2ObjectMap.Entry<Ch
 		if (target == null) {
 			return new ChunkSet();
 		}
-		source.removeIf(target::get);
+		source.andNot(target);
 		return source;
 	}
 
@@ -542,7 +574,7 @@ public class Selection implements Serializable, Iterable<Long2ObjectMap.Entry<Ch
 			return null;
 		}
 		source.or(target);
-		return source.size() == 1024 ? null : source;
+		return source.isFull() ? null : source;
 	}
 
 	public void addAll(LongOpenHashSet entries) {
@@ -554,12 +586,12 @@ public class Selection implements Serializable, Iterable<Long2ObjectMap.Entry<Ch
 	public void addAll(Point2i region, ChunkSet chunks) {
 		long r = region.asLong();
 		if (inverted) {
-			if (chunks == null || chunks.size() == 1024) {
+			if (chunks == null || chunks.isFull()) {
 				selection.remove(r);
 			} else if (selection.containsKey(r)) {
 				ChunkSet existing;
 				if ((existing = selection.get(r)) != null) {
-					existing.otherNotAnd(chunks);
+					existing.andNot(chunks);
 					if (existing.isEmpty()) {
 						selection.remove(r);
 					}
@@ -571,13 +603,13 @@ public class Selection implements Serializable, Iterable<Long2ObjectMap.Entry<Ch
 				}
 			}
 		} else {
-			if (chunks == null || chunks.size() == 1024) {
+			if (chunks == null || chunks.isFull()) {
 				selection.put(r, null);
 			} else if (selection.containsKey(r)) {
 				ChunkSet existing;
 				if ((existing = selection.get(r)) != null) {
 					existing.or(chunks);
-					if (existing.size() == 1024) {
+					if (existing.isFull()) {
 						selection.put(r, null);
 					}
 				}
@@ -587,49 +619,148 @@ public class Selection implements Serializable, Iterable<Long2ObjectMap.Entry<Ch
 		}
 	}
 
+	// adds all chunks within the radius of any selected chunk that are also selected in bounds.
+	// this is a morphological dilation performed on rows of 32 chunks: every row of selected chunks in a source region
+	// is widened by the half-width of the circle at the row's z-distance and or-ed into all rows of the target regions
+	// within the radius.
 	public void addRadius(int radius, Selection bounds) {
+		if (radius <= 0) {
+			return;
+		}
+
+		int[] widths = radiusWidths(radius);
+		int reach = (radius + 31) >> 5;
+		int span = reach * 2 + 1;
+
+		// take a snapshot of all selected rows, so we don't apply a radius on chunks that were not originally selected
+		Long2ObjectOpenHashMap<int[]> sources = new Long2ObjectOpenHashMap<>(selection.size());
+		LongOpenHashSet targets = new LongOpenHashSet();
 		for (Long2ObjectMap.Entry<ChunkSet> entry : selection.long2ObjectEntrySet()) {
-			// if the entry is already fully selected we only need to loop over the edges
-			if (entry.getValue() == null) {
-				for (int x = 0; x < 32; x++) {
-					Point2i center = new Point2i(x, 0).add(new Point2i(entry.getLongKey()).regionToChunk());
-					addRadius(center, radius, bounds);
-					center = new Point2i(x, 31).add(new Point2i(entry.getLongKey()).regionToChunk());
-					addRadius(center, radius, bounds);
-				}
-				for (int z = 1; z < 31; z++) {
-					Point2i center = new Point2i(0, z).add(new Point2i(entry.getLongKey()).regionToChunk());
-					addRadius(center, radius, bounds);
-					center = new Point2i(31, z).add(new Point2i(entry.getLongKey()).regionToChunk());
-					addRadius(center, radius, bounds);
+			long r = entry.getLongKey();
+			ChunkSet chunks = entry.getValue();
+			if (inverted) {
+				// only regions that are not fully selected can change in an inverted selection
+				if (chunks != null) {
+					sources.put(r, toRows(chunks.flip()));
 				}
+				targets.add(r);
 			} else {
-				// make sure to loop over a clone of the ChunkSet, so we don't apply a radius on chunks that were not originally selected
-				for (int i : entry.getValue().clone()) {
-					// only apply radius if this chunk is adjacent to selected chunks
+				sources.put(r, chunks == null ? FULL_ROWS : toRows(chunks));
+				Point2i region = new Point2i(r);
+				for (int x = -reach; x <= reach; x++) {
+					for (int z = -reach; z <= reach; z++) {
+						targets.add(region.add(x, z).asLong());
+					}
+				}
+			}
+		}
+
+		Long2ObjectOpenHashMap<ChunkSet> results = new Long2ObjectOpenHashMap<>(targets.size());
+		int[][] grid = new int[span * span][];
+		for (long target : targets) {
+			if (!inverted && sources.get(target) == FULL_ROWS || bounds != null && !bounds.isAnyChunkInRegionSelected(target)) {
+				continue;
+			}
+
+			// collect the rows of all regions within reach of this target region
+			Point2i region = new Point2i(target);
+			boolean any = false;
+			for (int z = -reach; z <= reach; z++) {
+				for (int x = -reach; x <= reach; x++) {
+					long r = region.add(x, z).asLong();
+					int[] rows;
+					if (inverted && !selection.containsKey(r)) {
+						rows = FULL_ROWS;
+					} else {
+						rows = sources.get(r);
+					}
+					grid[(z + reach) * span + x + reach] = rows;
+					any |= rows != null;
+				}
+			}
+			if (!any) {
+				continue;
+			}
+
+			ChunkSet chunks = new ChunkSet();
+			for (int tz = 0; tz < 32; tz++) {
+				int row = 0;
+				for (int dz = -radius; dz <= radius && row != -1; dz++) {
+					int sz = tz + dz;
+					int gz = ((sz >> 5) + reach) * span + reach;
+					int width = widths[Math.abs(dz)];
+					for (int x = -reach; x <= reach; x++) {
+						int[] rows = grid[gz + x];
+						if (rows != null && rows[sz & 0x1F] != 0) {
+							row |= dilateRow(rows[sz & 0x1F], x << 5, width);
+						}
+					}
+				}
+				chunks.orRow(tz, row);
+			}
 
-					// calculate the chunk location
-					Point2i center = new Point2i(i).add(new Point2i(entry.getLongKey()).regionToChunk());
-					addRadius(center, radius, bounds);
+			if (bounds != null) {
+				ChunkSet boundsChunks = bounds.getSelectedChunks(region);
+				if (boundsChunks != null) {
+					chunks.and(boundsChunks);
 				}
 			}
+			if (!chunks.isEmpty()) {
+				results.put(target, chunks);
+			}
+		}
+
+		for (Long2ObjectMap.Entry<ChunkSet> entry : results.long2ObjectEntrySet()) {
+			addAll(new Point2i(entry.getLongKey()), entry.getValue());
+		}
+	}
+
+	private static final int[] FULL_ROWS = new int[]{
+		-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
+		-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1
+	};
+
+	private static int[] toRows(ChunkSet chunks) {
+		int[] rows = new int[32];
+		for (int z = 0; z < 32; z++) {
+			rows[z] = chunks.getRow(z);
 		}
+		return rows;
 	}
 
-	private void addRadius(Point2i center, int radius, Selection bounds) {
-		Point2i min = center.sub(radius);
-		Point2i max = center.add(radius);
+	// calculates the half-width of the circle for each z-distance from its center
+	private static int[] radiusWidths(int radius) {
 		double radiusSquared = ((double) radius + 0.3) * ((double) radius + 0.3);
-		int distX, distZ;
-		for (int x = min.getX(); x <= max.getX(); x++) {
-			for (int z = min.getZ(); z <= max.getZ(); z++) {
-				distX = x - center.getX();
-				distZ = z - center.getZ();
-				if ((bounds == null || bounds.isChunkSelected(x, z)) && distX * distX + distZ * distZ <= radiusSquared) {
-					addChunk(new Point2i(x, z));
-				}
+		int[] widths = new int[radius + 1];
+		for (int z = 0; z <= radius; z++) {
+			int w = 0;
+			while ((w + 1) * (w + 1) + z * z <= radiusSquared) {
+				w++;
 			}
+			widths[z] = w;
 		}
+		return widths;
+	}
+
+	// widens every run of set bits in row by width to both sides and returns the result relative to a region
+	// that is offset chunks to the left of the region the row belongs to.
+	private static int dilateRow(int row, int offset, int width) {
+		int result = 0;
+		while (row != 0) {
+			int start = Integer.numberOfTrailingZeros(row);
+			int end = start + Integer.numberOfTrailingZeros(~(row >>> start)) - 1;
+			int from = start + offset - width;
+			int to = end + offset + width;
+			if (from <= 31 && to >= 0) {
+				result |= rangeMask(Math.max(from, 0), Math.min(to, 31));
+			}
+			row &= ~rangeMask(start, end);
+		}
+		return result;
+	}
+
+	private static int rangeMask(int from, int to) {
+		return -1 >>> (31 - to) & -1 << from;
 	}
 
 	@Override
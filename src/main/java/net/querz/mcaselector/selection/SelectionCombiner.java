@@ -0,0 +1,243 @@
+package net.querz.mcaselector.selection;
+
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import net.querz.mcaselector.progress.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+// evaluates a SelectionExpression over selection files and writes the result to another selection file.
+// all operands are merged region by region in the order defined by SelectionFormat.compareRegions(), so only
+// one region per operand is held in memory. binary selection files are streamed, csv files are loaded and sorted.
+public final class SelectionCombiner {
+
+	private static final Logger LOGGER = LogManager.getLogger(SelectionCombiner.class);
+
+	private SelectionCombiner() {}
+
+	// returns the number of regions written to the output file
+	public static int combine(SelectionExpression expression, File[] operandFiles, File output, SelectionFormat format) throws IOException {
+		Timer t = new Timer();
+		RegionSource[] sources = new RegionSource[operandFiles.length];
+		try {
+			for (int i = 0; i < operandFiles.length; i++) {
+				sources[i] = open(operandFiles[i]);
+			}
+
+			// regions that are not contained in any operand are either fully selected or not selected at all
+			boolean[] outside = new boolean[sources.length];
+			for (int i = 0; i < sources.length; i++) {
+				outside[i] = sources[i].isInverted();
+			}
+			boolean inverted = expression.evaluate(outside);
+
+			int regions = 0;
+			try (RegionSink sink = format == SelectionFormat.BINARY ? new BinarySink(output, inverted) : new CSVSink(output, inverted)) {
+				for (RegionSource source : sources) {
+					source.next();
+				}
+
+				ChunkSet[] values = new ChunkSet[sources.length];
+				for (;;) {
+					// find the next region of all operands
+					long region = 0;
+					boolean found = false;
+					for (RegionSource source : sources) {
+						if (!source.isDone() && (!found || SelectionFormat.compareRegions(source.getRegion(), region) < 0)) {
+							region = source.getRegion();
+							found = true;
+						}
+					}
+					if (!found) {
+						break;
+					}
+
+					for (int i = 0; i < sources.length; i++) {
+						RegionSource source = sources[i];
+						ChunkSet chunks;
+						if (!source.isDone() && source.getRegion() == region) {
+							chunks = source.getChunks();
+							if (chunks == null) {
+								chunks = new ChunkSet();
+								chunks.fill();
+							}
+							source.next();
+						} else {
+							chunks = new ChunkSet();
+						}
+						values[i] = source.isInverted() ? chunks.flip() : chunks;
+					}
+
+					ChunkSet result = expression.evaluate(values);
+					if (inverted) {
+						result = result.flip();
+					}
+					if (!result.isEmpty()) {
+						sink.writeRegion(region, result.isFull() ? null : result);
+						regions++;
+					}
+				}
+			}
+			LOGGER.debug("took {} to combine {} selections into {} regions", t, sources.length, regions);
+			return regions;
+		} finally {
+			for (RegionSource source : sources) {
+				if (source != null) {
+					source.close();
+				}
+			}
+		}
+	}
+
+	private static RegionSource open(File file) throws IOException {
+		if (SelectionFormat.detect(file) == SelectionFormat.BINARY) {
+			return new BinarySource(file);
+		}
+		return new SelectionSource(Selection.readFromFile(file));
+	}
+
+	private interface RegionSource extends Closeable {
+
+		boolean isInverted();
+
+		// advances to the next region, sets this source to done if there are no more regions
+		void next() throws IOException;
+
+		boolean isDone();
+
+		long getRegion();
+
+		ChunkSet getChunks();
+	}
+
+	private static class BinarySource implements RegionSource {
+
+		private final SelectionReader reader;
+		private boolean done = false;
+
+		private BinarySource(File file) throws IOException {
+			reader = new SelectionReader(file);
+		}
+
+		@Override
+		public boolean isInverted() {
+			return reader.isInverted();
+		}
+
+		@Override
+		public void next() throws IOException {
+			done = !reader.next();
+		}
+
+		@Override
+		public boolean isDone() {
+			return done;
+		}
+
+		@Override
+		public long getRegion() {
+			return reader.getRegion();
+		}
+
+		@Override
+		public ChunkSet getChunks() {
+			return reader.getChunks();
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+
+	private static class SelectionSource implements RegionSource {
+
+		private final Selection selection;
+		private final long[] regions;
+		private int index = -1;
+
+		private SelectionSource(Selection selection) {
+			this.selection = selection;
+			regions = selection.selection.keySet().toLongArray();
+			LongArrays.quickSort(regions, SelectionFormat::compareRegions);
+		}
+
+		@Override
+		public boolean isInverted() {
+			return selection.isInverted();
+		}
+
+		@Override
+		public void next() {
+			index++;
+		}
+
+		@Override
+		public boolean isDone() {
+			return index >= regions.length;
+		}
+
+		@Override
+		public long getRegion() {
+			return regions[index];
+		}
+
+		@Override
+		public ChunkSet getChunks() {
+			return selection.selection.get(regions[index]);
+		}
+
+		@Override
+		public void close() {}
+	}
+
+	private interface RegionSink extends Closeable {
+
+		void writeRegion(long region, ChunkSet chunks) throws IOException;
+	}
+
+	private static class BinarySink implements RegionSink {
+
+		private final SelectionWriter writer;
+
+		private BinarySink(File file, boolean inverted) throws IOException {
+			writer = new SelectionWriter(file, inverted);
+		}
+
+		@Override
+		public void writeRegion(long region, ChunkSet chunks) throws IOException {
+			writer.writeRegion(region, chunks);
+		}
+
+		@Override
+		public void close() throws IOException {
+			writer.close();
+		}
+	}
+
+	private static class CSVSink implements RegionSink {
+
+		private final BufferedWriter writer;
+
+		private CSVSink(File file, boolean inverted) throws IOException {
+			writer = new BufferedWriter(new FileWriter(file));
+			if (inverted) {
+				writer.write("inverted\n");
+			}
+		}
+
+		@Override
+		public void writeRegion(long region, ChunkSet chunks) throws IOException {
+			Selection.writeCSVRegion(writer, region, chunks);
+		}
+
+		@Override
+		public void close() throws IOException {
+			writer.close();
+		}
+	}
+}
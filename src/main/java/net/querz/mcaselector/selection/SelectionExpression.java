@@ -0,0 +1,146 @@
+package net.querz.mcaselector.selection;
+
+import java.util.List;
+
+// a set expression over selections, evaluated one region at a time.
+// operands are referenced by their index, which is assigned in the order of their first appearance.
+public abstract class SelectionExpression {
+
+	// evaluates this expression on the selected chunks of all operands in a single region
+	public abstract ChunkSet evaluate(ChunkSet[] operands);
+
+	// evaluates this expression for a region that is either fully selected or not selected at all in each operand
+	public abstract boolean evaluate(boolean[] operands);
+
+	abstract void collectOperands(List<String> names);
+
+	public enum Operator {
+
+		UNION("|"),
+		XOR("^"),
+		INTERSECTION("&"),
+		DIFFERENCE("-");
+
+		private final String symbol;
+
+		Operator(String symbol) {
+			this.symbol = symbol;
+		}
+
+		@Override
+		public String toString() {
+			return symbol;
+		}
+	}
+
+	static class Operand extends SelectionExpression {
+
+		final String name;
+		int index;
+
+		Operand(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public ChunkSet evaluate(ChunkSet[] operands) {
+			return operands[index].clone();
+		}
+
+		@Override
+		public boolean evaluate(boolean[] operands) {
+			return operands[index];
+		}
+
+		@Override
+		void collectOperands(List<String> names) {
+			index = names.indexOf(name);
+			if (index == -1) {
+				index = names.size();
+				names.add(name);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	static class Complement extends SelectionExpression {
+
+		final SelectionExpression child;
+
+		Complement(SelectionExpression child) {
+			this.child = child;
+		}
+
+		@Override
+		public ChunkSet evaluate(ChunkSet[] operands) {
+			return child.evaluate(operands).flip();
+		}
+
+		@Override
+		public boolean evaluate(boolean[] operands) {
+			return !child.evaluate(operands);
+		}
+
+		@Override
+		void collectOperands(List<String> names) {
+			child.collectOperands(names);
+		}
+
+		@Override
+		public String toString() {
+			return "~" + child;
+		}
+	}
+
+	static class Binary extends SelectionExpression {
+
+		final Operator operator;
+		final SelectionExpression left, right;
+
+		Binary(Operator operator, SelectionExpression left, SelectionExpression right) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public ChunkSet evaluate(ChunkSet[] operands) {
+			ChunkSet l = left.evaluate(operands);
+			ChunkSet r = right.evaluate(operands);
+			switch (operator) {
+				case UNION -> l.or(r);
+				case XOR -> l.xor(r);
+				case INTERSECTION -> l.and(r);
+				case DIFFERENCE -> l.andNot(r);
+			}
+			return l;
+		}
+
+		@Override
+		public boolean evaluate(boolean[] operands) {
+			boolean l = left.evaluate(operands);
+			boolean r = right.evaluate(operands);
+			return switch (operator) {
+				case UNION -> l || r;
+				case XOR -> l != r;
+				case INTERSECTION -> l && r;
+				case DIFFERENCE -> l && !r;
+			};
+		}
+
+		@Override
+		void collectOperands(List<String> names) {
+			left.collectOperands(names);
+			right.collectOperands(names);
+		}
+
+		@Override
+		public String toString() {
+			return "(" + left + " " + operator + " " + right + ")";
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package net.querz.mcaselector.selection;
+
+import net.querz.mcaselector.exception.ParseException;
+import net.querz.mcaselector.io.StringPointer;
+import java.util.ArrayList;
+import java.util.List;
+
+// parses set expressions over selections such as "(a | b) - c & ~d".
+// operators in order of precedence: ~ (complement), - (difference), & (intersection), ^ (xor), | (union).
+// operands are either names or quoted strings.
+public class SelectionExpressionParser {
+
+	private final StringPointer ptr;
+	private final List<String> operands = new ArrayList<>();
+
+	public SelectionExpressionParser(String expression) {
+		ptr = new StringPointer(expression);
+	}
+
+	public SelectionExpression parse() throws ParseException {
+		ptr.skipWhitespace();
+		if (!ptr.hasNext()) {
+			throw ptr.parseException("empty expression");
+		}
+		SelectionExpression expression = parseBinary(0);
+		ptr.skipWhitespace();
+		if (ptr.hasNext()) {
+			throw ptr.parseException("unexpected '" + ptr.currentChar() + "'");
+		}
+		expression.collectOperands(operands);
+		return expression;
+	}
+
+	// returns the names of all operands in the order of their index. only valid after parse() has been called.
+	public List<String> getOperands() {
+		return operands;
+	}
+
+	private static final SelectionExpression.Operator[] precedence = {
+		SelectionExpression.Operator.UNION,
+		SelectionExpression.Operator.XOR,
+		SelectionExpression.Operator.INTERSECTION,
+		SelectionExpression.Operator.DIFFERENCE
+	};
+
+	private SelectionExpression parseBinary(int level) throws ParseException {
+		if (level == precedence.length) {
+			return parseUnary();
+		}
+		SelectionExpression.Operator operator = precedence[level];
+		SelectionExpression left = parseBinary(level + 1);
+		ptr.skipWhitespace();
+		while (ptr.hasNext() && ptr.currentChar() == operator.toString().charAt(0)) {
+			ptr.next();
+			left = new SelectionExpression.Binary(operator, left, parseBinary(level + 1));
+			ptr.skipWhitespace();
+		}
+		return left;
+	}
+
+	private SelectionExpression parseUnary() throws ParseException {
+		ptr.skipWhitespace();
+		if (!ptr.hasNext()) {
+			throw ptr.parseException("missing operand");
+		}
+		switch (ptr.currentChar()) {
+			case '~' -> {
+				ptr.next();
+				return new SelectionExpression.Complement(parseUnary());
+			}
+			case '(' -> {
+				ptr.next();
+				SelectionExpression child = parseBinary(0);
+				ptr.expectChar(')');
+				return child;
+			}
+			case '"', '\'' -> {
+				return new SelectionExpression.Operand(ptr.parseQuotedString(ptr.currentChar()));
+			}
+		}
+		String name = ptr.parseSimpleString(this::isValidCharacter);
+		if (name.isEmpty()) {
+			throw ptr.parseException("invalid operand");
+		}
+		return new SelectionExpression.Operand(name);
+	}
+
+	private boolean isValidCharacter(char c) {
+		return c >= 'a' && c <= 'z'
+			|| c >= 'A' && c <= 'Z'
+			|| c >= '0' && c <= '9'
+			|| c == '_' || c == '.';
+	}
+}
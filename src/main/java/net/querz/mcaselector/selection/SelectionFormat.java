@@ -0,0 +1,57 @@
+package net.querz.mcaselector.selection;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+public enum SelectionFormat {
+
+	CSV("csv"),
+	BINARY("sel");
+
+	// binary format header and region record types
+	static final byte[] MAGIC = {'M', 'C', 'A', 'S'};
+	static final int VERSION = 1;
+	static final byte END = 0;
+	static final byte PARTIAL = 1;
+	static final byte FULL = 2;
+
+	static final int FLAG_INVERTED = 0x1;
+
+	private final String fileEnding;
+
+	SelectionFormat(String fileEnding) {
+		this.fileEnding = fileEnding;
+	}
+
+	public String getFileEnding() {
+		return fileEnding;
+	}
+
+	// returns the format matching the file ending of the file name, or null if the file ending is unknown
+	public static SelectionFormat fromFileName(String fileName) {
+		String lower = fileName.toLowerCase();
+		for (SelectionFormat format : values()) {
+			if (lower.endsWith("." + format.fileEnding)) {
+				return format;
+			}
+		}
+		return null;
+	}
+
+	// detects the format of an existing selection file by its header, regardless of its file ending
+	public static SelectionFormat detect(File file) throws IOException {
+		try (InputStream is = new FileInputStream(file)) {
+			byte[] header = is.readNBytes(MAGIC.length);
+			return Arrays.equals(header, MAGIC) ? BINARY : CSV;
+		}
+	}
+
+	// the order of regions in binary selection files: ascending by x, then by z
+	public static int compareRegions(long a, long b) {
+		int c = Integer.compare((int) (a >> 32), (int) (b >> 32));
+		return c != 0 ? c : Integer.compare((int) a, (int) b);
+	}
+}
@@ -0,0 +1,98 @@
+package net.querz.mcaselector.selection;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+// reads a selection in the binary selection format written by SelectionWriter, one region at a time.
+// regions are returned in the order defined by SelectionFormat.compareRegions().
+public class SelectionReader implements Closeable {
+
+	private final DataInputStream in;
+	private final boolean inverted;
+
+	private long region;
+	private ChunkSet chunks;
+	private int remainingRun = 0;
+	private boolean done = false;
+
+	public SelectionReader(InputStream is) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(is));
+		byte[] magic = new byte[SelectionFormat.MAGIC.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, SelectionFormat.MAGIC)) {
+			throw new IOException("invalid selection file header");
+		}
+		int version = in.readUnsignedByte();
+		if (version > SelectionFormat.VERSION) {
+			throw new IOException(String.format("unsupported selection format version %d", version));
+		}
+		inverted = (in.readByte() & SelectionFormat.FLAG_INVERTED) != 0;
+	}
+
+	public SelectionReader(File file) throws IOException {
+		this(new FileInputStream(file));
+	}
+
+	public boolean isInverted() {
+		return inverted;
+	}
+
+	// advances to the next region. returns false if there are no more regions.
+	public boolean next() throws IOException {
+		if (done) {
+			return false;
+		}
+		if (remainingRun > 0) {
+			remainingRun--;
+			region = region & 0xFFFFFFFF00000000L | ((int) region + 1) & 0xFFFFFFFFL;
+			return true;
+		}
+		byte type = in.readByte();
+		switch (type) {
+			case SelectionFormat.END -> {
+				done = true;
+				return false;
+			}
+			case SelectionFormat.PARTIAL -> {
+				region = in.readLong();
+				long[] words = new long[16];
+				for (int i = 0; i < 16; i++) {
+					words[i] = in.readLong();
+				}
+				chunks = new ChunkSet(words);
+				return true;
+			}
+			case SelectionFormat.FULL -> {
+				region = in.readLong();
+				int length = in.readInt();
+				if (length < 1) {
+					throw new IOException(String.format("invalid run length %d", length));
+				}
+				remainingRun = length - 1;
+				chunks = null;
+				return true;
+			}
+			default -> throw new IOException(String.format("invalid region record type %d", type));
+		}
+	}
+
+	public long getRegion() {
+		return region;
+	}
+
+	// returns the selected chunks of the current region, or null if the region is fully selected
+	public ChunkSet getChunks() {
+		return chunks;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,88 @@
+package net.querz.mcaselector.selection;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// writes a selection in the binary selection format, one region at a time.
+// the format consists of a header followed by region records and an end marker:
+//   header:  "MCAS" | version (byte) | flags (byte, 0x1 = inverted)
+//   PARTIAL: 1 (byte) | region (long) | 16 longs containing the selected chunks
+//   FULL:    2 (byte) | region (long) | number of consecutive fully selected regions in z-direction (int)
+//   END:     0 (byte)
+// regions must be written in the order defined by SelectionFormat.compareRegions().
+public class SelectionWriter implements Closeable {
+
+	private final DataOutputStream out;
+
+	private boolean first = true;
+	private long last;
+
+	private long runStart;
+	private int runLength = 0;
+
+	public SelectionWriter(OutputStream os, boolean inverted) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(os));
+		out.write(SelectionFormat.MAGIC);
+		out.writeByte(SelectionFormat.VERSION);
+		out.writeByte(inverted ? SelectionFormat.FLAG_INVERTED : 0);
+	}
+
+	public SelectionWriter(File file, boolean inverted) throws IOException {
+		this(new FileOutputStream(file), inverted);
+	}
+
+	// writes the selected chunks of a region. null means that the region is fully selected.
+	public void writeRegion(long region, ChunkSet chunks) throws IOException {
+		if (chunks != null && chunks.isEmpty()) {
+			return;
+		}
+		if (!first && SelectionFormat.compareRegions(last, region) >= 0) {
+			throw new IOException(String.format("region %d|%d is out of order", (int) (region >> 32), (int) region));
+		}
+		first = false;
+		last = region;
+
+		if (chunks == null || chunks.isFull()) {
+			// consecutive full regions are run-length encoded
+			if (runLength > 0 && region >> 32 == runStart >> 32 && (int) region == (int) runStart + runLength) {
+				runLength++;
+				return;
+			}
+			flushRun();
+			runStart = region;
+			runLength = 1;
+			return;
+		}
+
+		flushRun();
+		out.writeByte(SelectionFormat.PARTIAL);
+		out.writeLong(region);
+		for (long word : chunks.words) {
+			out.writeLong(word);
+		}
+	}
+
+	private void flushRun() throws IOException {
+		if (runLength > 0) {
+			out.writeByte(SelectionFormat.FULL);
+			out.writeLong(runStart);
+			out.writeInt(runLength);
+			runLength = 0;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flushRun();
+			out.writeByte(SelectionFormat.END);
+		} finally {
+			out.close();
+		}
+	}
+}
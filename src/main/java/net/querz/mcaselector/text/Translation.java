@@ -71,7 +71,6 @@ public enum Translation {
 	DIALOG_SETTINGS_GLOBAL_LANGUAGE_LANGUAGE("dialog.settings.global.language.language"),
 	DIALOG_SETTINGS_PROCESSING_PROCESS_PROCESS_THREADS("dialog.settings.processing.process.process_threads"),
 	DIALOG_SETTINGS_PROCESSING_PROCESS("dialog.settings.processing.process"),
-	DIALOG_SETTINGS_PROCESSING_PROCESS_WRITE_THREADS("dialog.settings.processing.process.write_threads"),
 	DIALOG_SETTINGS_PROCESSING_FILES_MAX_FILES("dialog.settings.processing.files.max_files"),
 	DIALOG_SETTINGS_GLOBAL_SELECTION_REGION_COLOR("dialog.settings.global.selection.region_color"),
 	DIALOG_SETTINGS_GLOBAL_SELECTION_CHUNK_COLOR("dialog.settings.global.selection.chunk_color"),
@@ -79,14 +79,14 @@ public final class TileImage {
 			return;
 		}
 		WritableImage wImage = new WritableImage(32, 32);
-		PixelWriter writer = wImage.getPixelWriter();
+		int[] pixels = new int[Tile.SIZE_IN_CHUNKS * Tile.SIZE_IN_CHUNKS];
 
-		javafx.scene.paint.Color chunkSelectionColor = ConfigProvider.GLOBAL.getChunkSelectionColor().makeJavaFXColor();
+		int chunkSelectionColor = ConfigProvider.GLOBAL.getChunkSelectionColor().toInt();
 
-		selection.forEach(s -> {
-			Point2i regionChunk = new Point2i(s);
-			writer.setColor(regionChunk.getX(), regionChunk.getZ(), chunkSelectionColor);
-		});
+		// chunk indices map directly to pixel indices in a 32x32 image
+		selection.forEach(s -> pixels[s] = chunkSelectionColor);
+
+		wImage.getPixelWriter().setPixels(0, 0, 32, 32, PixelFormat.getIntArgbInstance(), pixels, 0, 32);
 
 		tile.markedChunksImage = wImage;
 	}
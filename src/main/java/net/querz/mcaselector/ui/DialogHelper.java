@@ -65,6 +65,7 @@ public class DialogHelper {
 					c.showProgressBar(t -> FieldChanger.changeNBTFields(
 							r.fields(),
 							r.force(),
+							false,
 							r.selectionOnly() ? tileMap.getSelection() : null,
 							t,
 							false
@@ -315,10 +316,8 @@ public class DialogHelper {
 
 		Optional<SettingsDialog.Result> result = new SettingsDialog(primaryStage, renderSettings).showAndWait();
 		result.ifPresent(r -> {
-			if (ConfigProvider.GLOBAL.getProcessThreads() != r.processThreads
-					|| ConfigProvider.GLOBAL.getWriteThreads() != r.writeThreads) {
+			if (ConfigProvider.GLOBAL.getProcessThreads() != r.processThreads) {
 				ConfigProvider.GLOBAL.setProcessThreads(r.processThreads);
-				ConfigProvider.GLOBAL.setWriteThreads(r.writeThreads);
 				JobHandler.init();
 			}
 			ConfigProvider.GLOBAL.setMaxLoadedFiles(r.maxLoadedFiles);
@@ -630,6 +629,7 @@ public class DialogHelper {
 			tileMap.disable(false);
 			tileMap.getWindow().getOptionBar().setWorldDependentMenuItemsEnabled(true, tileMap, primaryStage);
 			tileMap.getOverlayPool().switchTo(new File(ConfigProvider.WORLD.getCacheDir(), "cache.db").toString(), tileMap.getOverlays());
+			MetadataIndex.indexInBackground(ConfigProvider.WORLD.getWorldDirs(), ConfigProvider.WORLD.getCacheDir());
 			task.done(Translation.DIALOG_PROGRESS_DONE.toString());
 			Platform.runLater(() -> tileMap.getWindow().setTitleSuffix(worldDirectories.getRegion().getParent()));
 		});
@@ -637,7 +637,8 @@ public class DialogHelper {
 
 	public static void importSelection(TileMap tileMap, Stage primaryStage) {
 		File file = createFileChooser(FileHelper.getLastOpenedDirectory("selection_import_export", null),
-				new FileChooser.ExtensionFilter("*.csv Files", "*.csv")).showOpenDialog(primaryStage);
+				new FileChooser.ExtensionFilter("*.csv Files", "*.csv"),
+				new FileChooser.ExtensionFilter("*.sel Files", "*.sel")).showOpenDialog(primaryStage);
 		if (file != null) {
 			ImportSelectionDialog.Result result = ImportSelectionDialog.Result.OVERWRITE;
 			// skip dialog if we don't have a selection yet
@@ -668,7 +669,8 @@ public class DialogHelper {
 
 	public static void exportSelection(TileMap tileMap, Stage primaryStage) {
 		File file = createFileChooser(FileHelper.getLastOpenedDirectory("selection_import_export", null),
-				new FileChooser.ExtensionFilter("*.csv Files", "*.csv")).showSaveDialog(primaryStage);
+				new FileChooser.ExtensionFilter("*.csv Files", "*.csv"),
+				new FileChooser.ExtensionFilter("*.sel Files", "*.sel")).showSaveDialog(primaryStage);
 		if (file != null) {
 			try {
 				tileMap.getSelection().saveToFile(file);
@@ -708,10 +710,12 @@ public class DialogHelper {
 		return directoryChooser;
 	}
 
-	private static FileChooser createFileChooser(String initialDirectory, FileChooser.ExtensionFilter filter) {
+	private static FileChooser createFileChooser(String initialDirectory, FileChooser.ExtensionFilter... filters) {
 		FileChooser fileChooser = new FileChooser();
-		if (filter != null) {
-			fileChooser.getExtensionFilters().add(filter);
+		for (FileChooser.ExtensionFilter filter : filters) {
+			if (filter != null) {
+				fileChooser.getExtensionFilters().add(filter);
+			}
 		}
 		if (initialDirectory != null) {
 			fileChooser.setInitialDirectory(new File(initialDirectory));
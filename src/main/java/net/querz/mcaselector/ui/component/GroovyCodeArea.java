@@ -4,7 +4,7 @@ import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.beans.value.ObservableValue;
 import javafx.concurrent.Task;
-import net.querz.mcaselector.io.GroovyScriptEngine;
+import net.querz.mcaselector.io.GroovyScript;
 import org.fxmisc.richtext.CodeArea;
 import org.fxmisc.richtext.LineNumberFactory;
 import org.fxmisc.richtext.model.StyleSpans;
@@ -26,7 +26,6 @@ public class GroovyCodeArea extends CodeArea implements Closeable {
 	private final ExecutorService executor;
 	private final Subscription highlightSubscription;
 	private Subscription evalSubscription;
-	private GroovyScriptEngine engine;
 
 	private final StringProperty error = new SimpleStringProperty();
 
@@ -89,7 +88,6 @@ public class GroovyCodeArea extends CodeArea implements Closeable {
 				});
 
 		if (eval) {
-			engine = new GroovyScriptEngine();
 			evalSubscription = multiPlainChanges()
 					.successionEnds(Duration.ofMillis(500))
 					.retainLatestUntilLater(executor)
@@ -115,7 +113,7 @@ public class GroovyCodeArea extends CodeArea implements Closeable {
 			@Override
 			protected String call() {
 				try {
-					engine.eval(text);
+					GroovyScript.compile(text);
 					return "";
 				} catch (ScriptException e) {
 					return readInfo(e, text);
@@ -126,7 +124,7 @@ public class GroovyCodeArea extends CodeArea implements Closeable {
 		return task;
 	}
 
-	private final Pattern infoPattern = Pattern.compile("Script\\d+.groovy: \\d+: (.*) @ line (\\d+), column (\\d+).");
+	private final Pattern infoPattern = Pattern.compile("\\w+\\.groovy: \\d+: (.*) @ line (\\d+), column (\\d+).");
 
 	private String readInfo(ScriptException ex, String script) {
 		Matcher m = infoPattern.matcher(ex.getMessage());
@@ -40,7 +40,6 @@ public class SettingsDialog extends Dialog<SettingsDialog.Result> {
 	private final ComboBox<Locale> languages = new ComboBox<>();
 
 	private final Slider processThreadsSlider = createSlider(1, processorCount * 2, 1, ConfigProvider.GLOBAL.getProcessThreads());
-	private final Slider writeThreadsSlider = createSlider(1, processorCount, 1, ConfigProvider.GLOBAL.getWriteThreads());
 	private final Slider maxLoadedFilesSlider = createSlider(1, (int) Math.max(Math.ceil(maxMemory / 1_000_000_000D) * 6, 4), 1, ConfigProvider.GLOBAL.getMaxLoadedFiles());
 	private final HeightSlider hSlider = new HeightSlider(ConfigProvider.WORLD.getRenderHeight(), false);
 	private final CheckBox layerOnly = new CheckBox();
@@ -76,7 +75,6 @@ public class SettingsDialog extends Dialog<SettingsDialog.Result> {
 			e.consume();
 			languages.setValue(GlobalConfig.DEFAULT_LOCALE);
 			processThreadsSlider.setValue(GlobalConfig.DEFAULT_PROCESS_THREADS);
-			writeThreadsSlider.setValue(GlobalConfig.DEFAULT_WRITE_THREADS);
 			maxLoadedFilesSlider.setValue(GlobalConfig.DEFAULT_MAX_LOADED_FILES);
 			regionSelectionColor = GlobalConfig.DEFAULT_REGION_SELECTION_COLOR.makeJavaFXColor();
 			regionSelectionColorPreview.setBackground(new Background(new BackgroundFill(GlobalConfig.DEFAULT_REGION_SELECTION_COLOR.makeJavaFXColor(), CornerRadii.EMPTY, Insets.EMPTY)));
@@ -258,7 +256,6 @@ public class SettingsDialog extends Dialog<SettingsDialog.Result> {
 
 		GridPane threadGrid = createGrid();
 		addPairToGrid(threadGrid, 1, UIFactory.label(Translation.DIALOG_SETTINGS_PROCESSING_PROCESS_PROCESS_THREADS), processThreadsSlider, UIFactory.attachTextFieldToSlider(processThreadsSlider));
-		addPairToGrid(threadGrid, 2, UIFactory.label(Translation.DIALOG_SETTINGS_PROCESSING_PROCESS_WRITE_THREADS), writeThreadsSlider, UIFactory.attachTextFieldToSlider(writeThreadsSlider));
 		BorderedTitledPane threads = new BorderedTitledPane(Translation.DIALOG_SETTINGS_PROCESSING_PROCESS, threadGrid);
 
 		GridPane filesGrid = createGrid();
@@ -351,7 +348,6 @@ public class SettingsDialog extends Dialog<SettingsDialog.Result> {
 				return new Result(
 					languages.getSelectionModel().getSelectedItem(),
 					(int) processThreadsSlider.getValue(),
-					(int) writeThreadsSlider.getValue(),
 					(int) maxLoadedFilesSlider.getValue(),
 					regionSelectionColor,
 					chunkSelectionColor,
@@ -419,7 +415,7 @@ public class SettingsDialog extends Dialog<SettingsDialog.Result> {
 
 	public static class Result {
 
-		public final int processThreads, writeThreads, maxLoadedFiles;
+		public final int processThreads, maxLoadedFiles;
 		public final Color regionColor, chunkColor, pasteColor;
 		public final boolean shadeWater;
 		public final boolean shade;
@@ -433,7 +429,7 @@ public class SettingsDialog extends Dialog<SettingsDialog.Result> {
 		public final boolean layerOnly, caves;
 		public final File poi, entities;
 
-		public Result(Locale locale, int processThreads, int writeThreads, int maxLoadedFiles,
+		public Result(Locale locale, int processThreads, int maxLoadedFiles,
 		              Color regionColor, Color chunkColor, Color pasteColor, boolean shade, boolean shadeWater,
 		              boolean showNonexistentRegions, boolean smoothRendering, boolean smoothOverlays,
 		              TileMapBox.TileMapBoxBackground tileMapBackground, File mcSavesDir, boolean debug, int height,
@@ -441,7 +437,6 @@ public class SettingsDialog extends Dialog<SettingsDialog.Result> {
 
 			this.locale = locale;
 			this.processThreads = processThreads;
-			this.writeThreads = writeThreads;
 			this.maxLoadedFiles = maxLoadedFiles;
 			this.regionColor = regionColor;
 			this.chunkColor = chunkColor;
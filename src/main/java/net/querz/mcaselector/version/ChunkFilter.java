@@ -1,13 +1,17 @@
 package net.querz.mcaselector.version;
 
+import it.unimi.dsi.fastutil.ints.IntSet;
+import net.querz.mcaselector.io.mca.ChunkView;
 import net.querz.mcaselector.io.registry.BiomeRegistry;
 import net.querz.mcaselector.io.registry.StatusRegistry;
 import net.querz.mcaselector.range.Range;
 import net.querz.nbt.NBTUtil;
 import net.querz.nbt.*;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public interface ChunkFilter {
 
@@ -36,6 +40,15 @@ public interface ChunkFilter {
 
 	int getBlockAmount(CompoundTag data, String[] blocks);
 
+	// returns the block palettes of all sections, or null if this version doesn't store blocks in palettes
+	ChunkView.BlockSection[] getBlockSections(CompoundTag data);
+
+	// returns the names of all biomes, or null if this version stores biomes as ids
+	Set<String> getBiomeNames(CompoundTag data);
+
+	// returns the ids of all biomes, or null if this version stores biomes as names
+	IntSet getBiomeIDs(CompoundTag data);
+
 	ListTag getTileEntities(CompoundTag data);
 
 	CompoundTag getStructureStarts(CompoundTag data);
@@ -46,6 +59,12 @@ public interface ChunkFilter {
 
 	void deleteSections(CompoundTag data, List<Range> ranges);
 
+	// deletes the sections of the uncompressed nbt data of a chunk and recalculates its heightmaps without reading all of it into tags.
+	// returns null if this isn't supported for this data, then deleteSections(CompoundTag, List<Range>) is used instead.
+	default byte[] deleteSections(byte[] data, int dataVersion, List<Range> ranges) throws IOException {
+		return null;
+	}
+
 	LongTag getInhabitedTime(CompoundTag data);
 
 	void setInhabitedTime(CompoundTag data, long inhabitedTime);
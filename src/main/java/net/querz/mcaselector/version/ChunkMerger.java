@@ -1,12 +1,16 @@
 package net.querz.mcaselector.version;
 
+import it.unimi.dsi.fastutil.ints.Int2ObjectAVLTreeMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectSortedMap;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.range.Range;
+import net.querz.mcaselector.range.SectionRangeLookup;
 import net.querz.nbt.CompoundTag;
 import net.querz.nbt.ListTag;
 import net.querz.nbt.Tag;
 import java.util.*;
-import java.util.function.Function;
 
 public interface ChunkMerger {
 
@@ -14,28 +18,62 @@ public interface ChunkMerger {
 
 	CompoundTag newEmptyChunk(Point2i absoluteLocation, int dataVersion);
 
-	default ListTag mergeLists(ListTag source, ListTag destination, List<Range> ranges, Function<Tag, Integer> ySupplier, int yOffset) {
-		ListTag result = new ListTag();
-		for (Tag dest : destination) {
-			int y = ySupplier.apply(dest);
-			for (Range range : ranges) {
-				if (!range.contains(y)) {
-					result.add(dest);
-				}
+	// tells in which section an element of a merged list is
+	enum SectionY {
+		// sections have their own Y
+		SECTION,
+		// block entities and ticks have the y of their block
+		BLOCK,
+		// entities have a position
+		ENTITY;
+
+		public int of(CompoundTag element) {
+			return switch (this) {
+				case SECTION -> element.getInt("Y");
+				case BLOCK -> element.getInt("y") >> 4;
+				case ENTITY -> element.getList("Pos").getInt(1) >> 4;
+			};
+		}
+	}
+
+	// keeps the elements of destination whose section is in none of the ranges and adds the elements of source whose
+	// section is in any of them, ordered by section. the destination list is reused for the result.
+	// both lists are grouped by section first, so that the ranges are only checked once per section instead of once per element.
+	default ListTag mergeLists(ListTag source, ListTag destination, List<Range> ranges, SectionY sectionY, int yOffset) {
+		SectionRangeLookup sections = new SectionRangeLookup(ranges);
+
+		Int2ObjectSortedMap<List<Tag>> merged = new Int2ObjectAVLTreeMap<>();
+		for (Int2ObjectMap.Entry<List<Tag>> section : groupBySection(destination, sectionY, 0).int2ObjectEntrySet()) {
+			if (!sections.contains(section.getIntKey())) {
+				merged.put(section.getIntKey(), section.getValue());
+			}
+		}
+		for (Int2ObjectMap.Entry<List<Tag>> section : groupBySection(source, sectionY, yOffset).int2ObjectEntrySet()) {
+			if (sections.contains(section.getIntKey())) {
+				merged.put(section.getIntKey(), section.getValue());
 			}
 		}
 
-		for (Tag sourceElement : source) {
-			int y = ySupplier.apply(sourceElement);
-			for (Range range : ranges) {
-				if (range.contains(y - yOffset)) {
-					result.add(sourceElement);
-					break;
-				}
+		destination.clear();
+		for (List<Tag> elements : merged.values()) {
+			for (Tag element : elements) {
+				destination.add(element);
 			}
 		}
+		return destination;
+	}
 
-		return result;
+	private static Int2ObjectMap<List<Tag>> groupBySection(ListTag list, SectionY sectionY, int yOffset) {
+		Int2ObjectMap<List<Tag>> sections = new Int2ObjectOpenHashMap<>();
+		for (Tag element : list) {
+			int section = sectionY.of((CompoundTag) element) - yOffset;
+			List<Tag> elements = sections.get(section);
+			if (elements == null) {
+				sections.put(section, elements = new ArrayList<>());
+			}
+			elements.add(element);
+		}
+		return sections;
 	}
 
 	default void mergeListTagLists(CompoundTag source, CompoundTag destination, List<Range> ranges, int yOffset, String name) {
@@ -56,33 +94,31 @@ public interface ChunkMerger {
 		initLevel(destination).put(name, destinationList);
 	}
 
-	default void mergeCompoundTagListsFromLevel(CompoundTag source, CompoundTag destination, List<Range> ranges, int yOffset, String name, Function<Tag, Integer> ySupplier) {
+	default void mergeCompoundTagListsFromLevel(CompoundTag source, CompoundTag destination, List<Range> ranges, int yOffset, String name, SectionY sectionY) {
 		ListTag sourceElements = Helper.tagFromLevelFromRoot(source, name, new ListTag());
 		ListTag destinationElements = Helper.tagFromLevelFromRoot(destination, name, new ListTag());
 
-		initLevel(destination).put(name, mergeLists(sourceElements, destinationElements, ranges, ySupplier, yOffset));
+		initLevel(destination).put(name, mergeLists(sourceElements, destinationElements, ranges, sectionY, yOffset));
 	}
 
-	default void mergeCompoundTagLists(CompoundTag source, CompoundTag destination, List<Range> ranges, int yOffset, String name, Function<Tag, Integer> ySupplier) {
+	default void mergeCompoundTagLists(CompoundTag source, CompoundTag destination, List<Range> ranges, int yOffset, String name, SectionY sectionY) {
 		ListTag sourceElements = Helper.tagFromCompound(source, name, new ListTag());
 		ListTag destinationElements = Helper.tagFromCompound(destination, name, new ListTag());
 
-		destination.put(name, mergeLists(sourceElements, destinationElements, ranges, ySupplier, yOffset));
+		destination.put(name, mergeLists(sourceElements, destinationElements, ranges, sectionY, yOffset));
 	}
 
 	// merge based on compound tag keys, assuming compound tag keys are ints
 	default void mergeCompoundTags(CompoundTag source, CompoundTag destination, List<Range> ranges, int yOffset, String name) {
 		CompoundTag sourceElements = Helper.tagFromCompound(source, name, new CompoundTag());
 		CompoundTag destinationElements = Helper.tagFromCompound(destination, name, new CompoundTag());
+		SectionRangeLookup sections = new SectionRangeLookup(ranges);
 
 		for (Map.Entry<String, Tag> sourceElement : sourceElements) {
 			if (sourceElement.getKey().matches("^-?[0-9]{1,2}$")) {
 				int y = Integer.parseInt(sourceElement.getKey());
-				for (Range range : ranges) {
-					if (range.contains(y - yOffset)) {
-						destinationElements.put(sourceElement.getKey(), sourceElement.getValue());
-						break;
-					}
+				if (sections.contains(y - yOffset)) {
+					destinationElements.put(sourceElement.getKey(), sourceElement.getValue());
 				}
 			}
 		}
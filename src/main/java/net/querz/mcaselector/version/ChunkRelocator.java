@@ -3,11 +3,18 @@ package net.querz.mcaselector.version;
 import net.querz.mcaselector.point.Point3i;
 import net.querz.nbt.CompoundTag;
 import net.querz.nbt.NumberTag;
+import java.io.IOException;
 
 public interface ChunkRelocator {
 
 	boolean relocate(CompoundTag root, Point3i offset);
 
+	// relocates the uncompressed nbt data of a chunk without reading all of it into tags.
+	// returns null if the data can't be relocated this way and has to be relocated with relocate(CompoundTag, Point3i).
+	default byte[] relocate(byte[] data, int dataVersion, Point3i offset) throws IOException {
+		return null;
+	}
+
 	default boolean applyOffsetToSection(CompoundTag section, Point3i offset, int minY, int maxY) {
 		NumberTag value;
 		if ((value = Helper.tagFromCompound(section, "Y")) != null) {
@@ -20,6 +20,14 @@ public interface HeightmapCalculator {
 
 	void motionBlockingNoLeaves(CompoundTag root);
 
+	// calculates all heightmaps of a chunk at once, so that implementations can do it in a single pass over the blocks
+	default void allHeightmaps(CompoundTag root) {
+		worldSurface(root);
+		oceanFloor(root);
+		motionBlocking(root);
+		motionBlockingNoLeaves(root);
+	}
+
 	default boolean isNonMotionBlocking(String blockName) {
 		return Data.nonMotionBlocking.contains(blockName);
 	}
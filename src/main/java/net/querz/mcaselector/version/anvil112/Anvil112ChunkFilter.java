@@ -1,8 +1,12 @@
 package net.querz.mcaselector.version.anvil112;
 
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import net.querz.mcaselector.io.mca.ChunkView;
 import net.querz.mcaselector.io.registry.BiomeRegistry;
 import net.querz.mcaselector.io.registry.StatusRegistry;
 import net.querz.mcaselector.range.Range;
+import net.querz.mcaselector.range.SectionRangeLookup;
 import net.querz.mcaselector.tile.Tile;
 import net.querz.mcaselector.version.ChunkFilter;
 import net.querz.mcaselector.version.Helper;
@@ -286,6 +290,29 @@ public class Anvil112ChunkFilter implements ChunkFilter {
 		return false;
 	}
 
+	@Override
+	public ChunkView.BlockSection[] getBlockSections(CompoundTag data) {
+		return null;
+	}
+
+	@Override
+	public Set<String> getBiomeNames(CompoundTag data) {
+		return null;
+	}
+
+	@Override
+	public IntSet getBiomeIDs(CompoundTag data) {
+		ByteArrayTag biomesTag = Helper.tagFromLevelFromRoot(data, "Biomes", null);
+		if (biomesTag == null) {
+			return null;
+		}
+		IntSet ids = new IntOpenHashSet();
+		for (byte dataID : biomesTag.getValue()) {
+			ids.add(dataID);
+		}
+		return ids;
+	}
+
 	@Override
 	public void changeBiome(CompoundTag data, BiomeRegistry.BiomeIdentifier biome) {
 		ByteArrayTag biomesTag = Helper.tagFromLevelFromRoot(data, "Biomes", null);
@@ -507,13 +534,12 @@ public class Anvil112ChunkFilter implements ChunkFilter {
 		if (sections == null) {
 			return;
 		}
+		SectionRangeLookup lookup = new SectionRangeLookup(ranges);
 		for (int i = 0; i < sections.size(); i++) {
 			CompoundTag section = sections.getCompound(i);
-			for (Range range : ranges) {
-				if (range.contains(section.getInt("Y"))) {
-					sections.remove(i);
-					i--;
-				}
+			if (lookup.contains(section.getInt("Y"))) {
+				sections.remove(i);
+				i--;
 			}
 		}
 	}
@@ -11,11 +11,11 @@ public class Anvil112ChunkMerger implements ChunkMerger {
 
 	@Override
 	public void mergeChunks(CompoundTag source, CompoundTag destination, List<Range> ranges, int yOffset) {
-		mergeCompoundTagListsFromLevel(source, destination, ranges, yOffset, "Sections", c -> ((CompoundTag) c).getInt("Y"));
-		mergeCompoundTagListsFromLevel(source, destination, ranges, yOffset, "Entities", c -> ((CompoundTag) c).getList("Pos").getInt(1) >> 4);
-		mergeCompoundTagListsFromLevel(source, destination, ranges, yOffset, "TileEntities", c -> ((CompoundTag) c).getInt("y") >> 4);
-		mergeCompoundTagListsFromLevel(source, destination, ranges, yOffset, "TileTicks", c -> ((CompoundTag) c).getInt("y") >> 4);
-		mergeCompoundTagListsFromLevel(source, destination, ranges, yOffset, "LiquidTicks", c -> ((CompoundTag) c).getInt("y") >> 4);
+		mergeCompoundTagListsFromLevel(source, destination, ranges, yOffset, "Sections", SectionY.SECTION);
+		mergeCompoundTagListsFromLevel(source, destination, ranges, yOffset, "Entities", SectionY.ENTITY);
+		mergeCompoundTagListsFromLevel(source, destination, ranges, yOffset, "TileEntities", SectionY.BLOCK);
+		mergeCompoundTagListsFromLevel(source, destination, ranges, yOffset, "TileTicks", SectionY.BLOCK);
+		mergeCompoundTagListsFromLevel(source, destination, ranges, yOffset, "LiquidTicks", SectionY.BLOCK);
 		mergeListTagLists(source, destination, ranges, yOffset, "Lights");
 		mergeListTagLists(source, destination, ranges, yOffset, "LiquidsToBeTicked");
 		mergeListTagLists(source, destination, ranges, yOffset, "ToBeTicked");
@@ -1,16 +1,24 @@
 package net.querz.mcaselector.version.anvil113;
 
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.querz.mcaselector.io.mca.ChunkView;
 import net.querz.mcaselector.io.registry.BiomeRegistry;
+import net.querz.mcaselector.io.registry.BlockRegistry;
 import net.querz.mcaselector.io.registry.StatusRegistry;
 import net.querz.mcaselector.math.Bits;
+import net.querz.mcaselector.math.PackedArrayDecoder;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.point.Point3i;
 import net.querz.mcaselector.range.Range;
+import net.querz.mcaselector.range.SectionRangeLookup;
 import net.querz.mcaselector.tile.Tile;
 import net.querz.mcaselector.version.ChunkFilter;
 import net.querz.mcaselector.version.Helper;
 import net.querz.nbt.*;
 import java.util.*;
+import java.util.regex.Pattern;
 
 public class Anvil113ChunkFilter implements ChunkFilter {
 
@@ -133,6 +141,52 @@ public class Anvil113ChunkFilter implements ChunkFilter {
 		return false;
 	}
 
+	@Override
+	public ChunkView.BlockSection[] getBlockSections(CompoundTag data) {
+		ListTag sections = Helper.tagFromLevelFromRoot(data, "Sections", null);
+		if (sections == null) {
+			return null;
+		}
+
+		List<ChunkView.BlockSection> blockSections = new ArrayList<>(sections.size());
+		for (CompoundTag section : sections.iterateType(CompoundTag.class)) {
+			ListTag palette = Helper.tagFromCompound(section, "Palette", null);
+			if (palette == null) {
+				continue;
+			}
+			long[] blockStates = Helper.longArrayFromCompound(section, "BlockStates");
+			blockSections.add(createBlockSection(getPaletteIDs(palette), blockStates));
+		}
+		return blockSections.toArray(new ChunkView.BlockSection[0]);
+	}
+
+	protected ChunkView.BlockSection createBlockSection(int[] palette, long[] blockStates) {
+		return new ChunkView.BlockSection(palette, blockStates, true);
+	}
+
+	protected static int[] getPaletteIDs(ListTag palette) {
+		int[] ids = new int[palette.size()];
+		for (int i = 0; i < ids.length; i++) {
+			String name = Helper.stringFromCompound(palette.getCompound(i), "Name");
+			ids[i] = name == null ? -1 : BlockRegistry.getID(name);
+		}
+		return ids;
+	}
+
+	@Override
+	public Set<String> getBiomeNames(CompoundTag data) {
+		return null;
+	}
+
+	@Override
+	public IntSet getBiomeIDs(CompoundTag data) {
+		IntArrayTag biomesTag = Helper.tagFromLevelFromRoot(data, "Biomes", null);
+		if (biomesTag == null) {
+			return null;
+		}
+		return new IntOpenHashSet(biomesTag.getValue());
+	}
+
 	@Override
 	public void changeBiome(CompoundTag data, BiomeRegistry.BiomeIdentifier biome) {
 		IntArrayTag biomesTag = Helper.tagFromLevelFromRoot(data, "Biomes", null);
@@ -199,6 +253,8 @@ public class Anvil113ChunkFilter implements ChunkFilter {
 		if (tileEntities == null) {
 			tileEntities = new ListTag();
 		}
+		TileEntityIndex tileIndex = new TileEntityIndex(tileEntities);
+		List<BlockReplaceRule> rules = compileReplaceRules(replace);
 
 		for (CompoundTag section : sections.iterateType(CompoundTag.class)) {
 			ListTag palette = Helper.tagFromCompound(section, "Palette", null);
@@ -216,73 +272,194 @@ public class Anvil113ChunkFilter implements ChunkFilter {
 				continue;
 			}
 
+			long[] newBlockStates;
+			try {
+				newBlockStates = replaceBlocksInSection(blockStates, palette, rules, pos.getX(), y * 16, pos.getZ(), tileIndex);
+			} catch (Exception ex) {
+				throw new RuntimeException("failed to replace blocks in section " + y, ex);
+			}
+
+			// nothing was replaced in this section
+			if (newBlockStates == blockStates) {
+				continue;
+			}
+
 			section.remove("BlockLight");
 			section.remove("SkyLight");
+			blockStates = newBlockStates;
 
-			for (int i = 0; i < 4096; i++) {
-				CompoundTag blockState = getBlockAt(i, blockStates, palette);
+			section.putLongArray("BlockStates", blockStates);
+		}
 
-				for (Map.Entry<String, BlockReplaceData> entry : replace.entrySet()) {
-					if (!blockState.getString("Name").matches(entry.getKey())) {
-						continue;
-					}
-					BlockReplaceData replacement = entry.getValue();
+		level.put("TileEntities", tileIndex.getTileEntities());
+	}
 
-					try {
-						blockStates = setBlockAt(i, replacement.getState(), blockStates, palette);
-					} catch (Exception ex) {
-						throw new RuntimeException("failed to set block in section " + y, ex);
-					}
+	protected Point3i indexToLocation(int i) {
+		int x = i % 16;
+		int z = (i - x) / 16 % 16;
+		int y = (i - z * 16 - x) / 256;
+		return new Point3i(x, y, z);
+	}
 
-					Point3i location = indexToLocation(i).add(pos.getX(), y * 16, pos.getZ());
-
-					if (replacement.getTile() != null) {
-						CompoundTag tile = replacement.getTile().copy();
-						tile.putInt("x", location.getX());
-						tile.putInt("y", location.getY());
-						tile.putInt("z", location.getZ());
-						tileEntities.add(tile);
-					} else if (tileEntities.size() != 0) {
-						for (int t = 0; t < tileEntities.size(); t++) {
-							CompoundTag tile = tileEntities.getCompound(t);
-							if (tile.getInt("x") == location.getX()
-									&& tile.getInt("y") == location.getY()
-									&& tile.getInt("z") == location.getZ()) {
-								tileEntities.remove(t);
-								break;
-							}
-						}
+	protected record BlockReplaceRule(Pattern from, BlockReplaceData to) {}
+
+	protected static List<BlockReplaceRule> compileReplaceRules(Map<String, BlockReplaceData> replace) {
+		List<BlockReplaceRule> rules = new ArrayList<>(replace.size());
+		for (Map.Entry<String, BlockReplaceData> entry : replace.entrySet()) {
+			rules.add(new BlockReplaceRule(Pattern.compile(entry.getKey()), entry.getValue()));
+		}
+		return rules;
+	}
+
+	// replaces all blocks in a section whose name matches a rule.
+	// the rules are only matched against the palette, and all block states are rewritten at once if any palette entry matched.
+	// returns blockStates if nothing was replaced, otherwise the new block states.
+	protected long[] replaceBlocksInSection(long[] blockStates, ListTag palette, List<BlockReplaceRule> rules, int x, int y, int z, TileEntityIndex tileEntities) {
+		int paletteSize = palette.size();
+		int bits = getBlockStateBits(paletteSize, blockStates);
+		BlockReplaceData[][] matches = new BlockReplaceData[paletteSize][];
+		boolean matched = false;
+		for (int p = 0; p < paletteSize; p++) {
+			String name = palette.getCompound(p).getString("Name");
+			List<BlockReplaceData> m = null;
+			for (BlockReplaceRule rule : rules) {
+				if (rule.from().matcher(name).matches()) {
+					if (m == null) {
+						m = new ArrayList<>(1);
 					}
+					m.add(rule.to());
 				}
 			}
+			if (m != null) {
+				matches[p] = m.toArray(new BlockReplaceData[0]);
+				matched = true;
+			}
+		}
+		if (!matched) {
+			return blockStates;
+		}
 
-			try {
-				blockStates = cleanupPalette(blockStates, palette);
-			} catch (Exception ex) {
-				throw new RuntimeException("failed to cleanup section " + y, ex);
+		int[] indices = new int[4096];
+		boolean[] used = new boolean[paletteSize];
+		boolean replaced = false;
+		for (int i = 0; i < 4096; i++) {
+			int p = getPaletteIndex(i, blockStates, bits);
+			indices[i] = p;
+			used[p] = true;
+			replaced |= matches[p] != null;
+		}
+		if (!replaced) {
+			return blockStates;
+		}
+
+		// create the new palette with all used block states and all replacements
+		// and the mapping of old --> new indices
+		List<CompoundTag> newPalette = new ArrayList<>(paletteSize);
+		Map<Integer, Integer> mapping = new HashMap<>(paletteSize);
+		for (int p = 0; p < paletteSize; p++) {
+			if (!used[p]) {
+				continue;
 			}
+			CompoundTag state = matches[p] == null ? palette.getCompound(p) : matches[p][matches[p].length - 1].getState();
+			int index = newPalette.indexOf(state);
+			if (index == -1) {
+				newPalette.add(matches[p] == null ? state : state.copy());
+				index = newPalette.size() - 1;
+			}
+			mapping.put(p, index);
+		}
 
-			section.putLongArray("BlockStates", blockStates);
+		palette.clear();
+		for (CompoundTag state : newPalette) {
+			palette.add(state);
 		}
+		if (!paletteContainsAir(palette)) {
+			CompoundTag air = new CompoundTag();
+			air.putString("Name", "minecraft:air");
+			palette.add(air);
+		}
+
+		// never write into the original block states, so the caller can tell if anything was replaced
+		long[] newBlockStates = adjustBlockStateBits(palette, blockStates.clone(), bits, mapping);
 
-		level.put("TileEntities", tileEntities);
+		for (int i = 0; i < 4096; i++) {
+			BlockReplaceData[] m = matches[indices[i]];
+			if (m == null) {
+				continue;
+			}
+			int bx = x + (i & 0xF);
+			int by = y + (i >> 8);
+			int bz = z + (i >> 4 & 0xF);
+			for (BlockReplaceData replacement : m) {
+				if (replacement.getTile() != null) {
+					CompoundTag tile = replacement.getTile().copy();
+					tile.putInt("x", bx);
+					tile.putInt("y", by);
+					tile.putInt("z", bz);
+					tileEntities.add(tile);
+				} else {
+					tileEntities.remove(bx, by, bz);
+				}
+			}
+		}
+		return newBlockStates;
 	}
 
-	protected Point3i indexToLocation(int i) {
-		int x = i % 16;
-		int z = (i - x) / 16 % 16;
-		int y = (i - z * 16 - x) / 256;
-		return new Point3i(x, y, z);
+	// indexes the tile entities of a chunk by their position
+	protected static class TileEntityIndex {
+
+		private final ListTag tileEntities;
+		private final Long2ObjectOpenHashMap<CompoundTag> index;
+		private final Set<CompoundTag> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		public TileEntityIndex(ListTag tileEntities) {
+			this.tileEntities = tileEntities;
+			index = new Long2ObjectOpenHashMap<>(tileEntities.size());
+			for (CompoundTag tile : tileEntities.iterateType(CompoundTag.class)) {
+				index.putIfAbsent(key(tile.getInt("x"), tile.getInt("y"), tile.getInt("z")), tile);
+			}
+		}
+
+		private static long key(int x, int y, int z) {
+			return ((long) x & 0x3FFFFFF) << 38 | ((long) z & 0x3FFFFFF) << 12 | y & 0xFFF;
+		}
+
+		public void add(CompoundTag tile) {
+			tileEntities.add(tile);
+			index.putIfAbsent(key(tile.getInt("x"), tile.getInt("y"), tile.getInt("z")), tile);
+		}
+
+		public void remove(int x, int y, int z) {
+			CompoundTag tile = index.remove(key(x, y, z));
+			if (tile != null) {
+				removed.add(tile);
+			}
+		}
+
+		public ListTag getTileEntities() {
+			if (removed.isEmpty()) {
+				return tileEntities;
+			}
+			ListTag result = new ListTag();
+			for (CompoundTag tile : tileEntities.iterateType(CompoundTag.class)) {
+				if (!removed.contains(tile)) {
+					result.add(tile);
+				}
+			}
+			return result;
+		}
 	}
 
 	// returns the block state at the given index
 	protected CompoundTag getBlockAt(int index, long[] blockStates, ListTag palette) {
-		return palette.getCompound(getPaletteIndex(index, blockStates));
+		return palette.getCompound(getPaletteIndex(index, blockStates, getBlockStateBits(palette.size(), blockStates)));
 	}
 
 	// sets a new block state at the given index.
 	// if the length of blockStates changes, a new blockStates array is returned, otherwise blockStates is returned.
 	protected long[] setBlockAt(int index, CompoundTag blockState, long[] blockStates, ListTag palette) {
+		int bits = getBlockStateBits(palette.size(), blockStates);
+
 		// search palette for block and add it if necessary
 		int paletteIndex = -1;
 		for (int i = 0; i < palette.size(); i++) {
@@ -298,30 +475,25 @@ public class Anvil113ChunkFilter implements ChunkFilter {
 
 			// test if we wil have to increase the blockStates array
 			if ((paletteIndex & (paletteIndex - 1)) == 0) {
-				blockStates = adjustBlockStateBits(palette, blockStates, null);
+				blockStates = adjustBlockStateBits(palette, blockStates, bits, null);
+				bits = getBlockStateBits(palette.size(), blockStates);
 			}
 		}
 
-		setPaletteIndex(index, paletteIndex, blockStates);
+		setPaletteIndex(index, paletteIndex, blockStates, bits);
 		return blockStates;
 	}
 
-	protected int getPaletteIndex(int blockIndex, long[] blockStates) {
-		int bits = blockStates.length >> 6;
-		double blockStatesIndex = blockIndex / (4096D / blockStates.length);
-		int longIndex = (int) blockStatesIndex;
-		int startBit = (int) ((blockStatesIndex - Math.floor(blockStatesIndex)) * 64D);
-		if (startBit + bits > 64) {
-			long prev = Bits.bitRange(blockStates[longIndex], startBit, 64);
-			long next = Bits.bitRange(blockStates[longIndex + 1], 0, startBit + bits - 64);
-			return (int) ((next << 64 - startBit) + prev);
-		} else {
-			return (int) Bits.bitRange(blockStates[longIndex], startBit, startBit + bits);
-		}
+	// the amount of bits per block state of a section with a palette of this size
+	protected int getBlockStateBits(int paletteSize, long[] blockStates) {
+		return PackedArrayDecoder.spanningBits(blockStates.length, 4096);
+	}
+
+	protected int getPaletteIndex(int blockIndex, long[] blockStates, int bits) {
+		return PackedArrayDecoder.getSpanning(blockStates, bits, blockIndex);
 	}
 
-	protected void setPaletteIndex(int blockIndex, int paletteIndex, long[] blockStates) {
-		int bits = blockStates.length >> 6;
+	protected void setPaletteIndex(int blockIndex, int paletteIndex, long[] blockStates, int bits) {
 		double blockStatesIndex = blockIndex / (4096D / blockStates.length);
 		int longIndex = (int) blockStatesIndex;
 		int startBit = (int) ((blockStatesIndex - Math.floor(longIndex)) * 64D);
@@ -333,12 +505,14 @@ public class Anvil113ChunkFilter implements ChunkFilter {
 		}
 	}
 
-	protected long[] adjustBlockStateBits(ListTag palette, long[] blockStates, Map<Integer, Integer> oldToNewMapping) {
+	// bits is the amount of bits per block state of blockStates, which can't be derived from the palette anymore,
+	// because the palette has already been changed.
+	protected long[] adjustBlockStateBits(ListTag palette, long[] blockStates, int bits, Map<Integer, Integer> oldToNewMapping) {
 		int newBits = 32 - Integer.numberOfLeadingZeros(palette.size() - 1);
 		newBits = Math.max(newBits, 4);
 
 		long[] newBlockStates;
-		if (newBits == blockStates.length / 64) {
+		if (newBits == bits) {
 			newBlockStates = blockStates;
 		} else {
 			newBlockStates = new long[newBits * 64];
@@ -346,11 +520,11 @@ public class Anvil113ChunkFilter implements ChunkFilter {
 
 		if (oldToNewMapping != null) {
 			for (int i = 0; i < 4096; i++) {
-				setPaletteIndex(i, oldToNewMapping.get(getPaletteIndex(i, blockStates)), newBlockStates);
+				setPaletteIndex(i, oldToNewMapping.get(getPaletteIndex(i, blockStates, bits)), newBlockStates, newBits);
 			}
 		} else {
 			for (int i = 0; i < 4096; i++) {
-				setPaletteIndex(i, getPaletteIndex(i, blockStates), newBlockStates);
+				setPaletteIndex(i, getPaletteIndex(i, blockStates, bits), newBlockStates, newBits);
 			}
 		}
 
@@ -358,10 +532,12 @@ public class Anvil113ChunkFilter implements ChunkFilter {
 	}
 
 	protected long[] cleanupPalette(long[] blockStates, ListTag palette) {
+		int bits = getBlockStateBits(palette.size(), blockStates);
+
 		// create mapping of old --> new indices
 		Map<Integer, Integer> allIndices = new HashMap<>(palette.size());
 		for (int i = 0; i < 4096; i++) {
-			int paletteIndex = getPaletteIndex(i, blockStates);
+			int paletteIndex = getPaletteIndex(i, blockStates, bits);
 			allIndices.put(paletteIndex, paletteIndex);
 		}
 
@@ -384,7 +560,7 @@ public class Anvil113ChunkFilter implements ChunkFilter {
 			palette.add(air);
 		}
 
-		return adjustBlockStateBits(palette, blockStates, allIndices);
+		return adjustBlockStateBits(palette, blockStates, bits, allIndices);
 	}
 
 	protected boolean paletteContainsAir(ListTag palette) {
@@ -536,13 +712,12 @@ public class Anvil113ChunkFilter implements ChunkFilter {
 		if (sections == null) {
 			return;
 		}
+		SectionRangeLookup lookup = new SectionRangeLookup(ranges);
 		for (int i = 0; i < sections.size(); i++) {
 			CompoundTag section = sections.getCompound(i);
-			for (Range range : ranges) {
-				if (range.contains(section.getInt("Y"))) {
-					sections.remove(i);
-					i--;
-				}
+			if (lookup.contains(section.getInt("Y"))) {
+				sections.remove(i);
+				i--;
 			}
 		}
 	}
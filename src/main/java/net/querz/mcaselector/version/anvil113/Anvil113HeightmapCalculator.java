@@ -1,6 +1,6 @@
 package net.querz.mcaselector.version.anvil113;
 
-import net.querz.mcaselector.math.Bits;
+import net.querz.mcaselector.math.PackedArrayDecoder;
 import net.querz.mcaselector.tile.Tile;
 import net.querz.mcaselector.version.HeightmapCalculator;
 import net.querz.mcaselector.version.Helper;
@@ -13,7 +13,6 @@ import java.io.InputStreamReader;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
-import java.util.function.Predicate;
 
 public class Anvil113HeightmapCalculator implements HeightmapCalculator {
 
@@ -30,56 +29,136 @@ public class Anvil113HeightmapCalculator implements HeightmapCalculator {
 		}
 	}
 
+	// the bits of the heightmaps that a block state counts towards
+	private static final int WORLD_SURFACE = 1, LIGHT_BLOCKING = 2, OCEAN_FLOOR = 4, MOTION_BLOCKING = 8, MOTION_BLOCKING_NO_LEAVES = 16;
+	private static final String[] heightmapNames = {"WORLD_SURFACE", "LIGHT_BLOCKING", "OCEAN_FLOOR", "MOTION_BLOCKING", "MOTION_BLOCKING_NO_LEAVES"};
+
+	public record Sections(ListTag[] palettes, long[][] blockStates) {}
+
 	@Override
 	public void worldSurface(CompoundTag root) {
-		setHeightMap(root, "WORLD_SURFACE", getHeightMap(root, blockState -> {
-			StringTag name = blockState.getStringTag("Name");
-			if (name == null) {
-				return false;
-			}
-			return !isAir(name.getValue());
-		}));
-
-		setHeightMap(root, "LIGHT_BLOCKING", getHeightMap(root, blockState -> {
-			StringTag name = blockState.getStringTag("Name");
-			if (name == null) {
-				return false;
-			}
-			return !nonLightBlockingBlocks.contains(name.getValue());
-		}));
+		setHeightMaps(root, WORLD_SURFACE | LIGHT_BLOCKING);
 	}
 
 	@Override
 	public void oceanFloor(CompoundTag root) {
-		setHeightMap(root, "OCEAN_FLOOR", getHeightMap(root, blockState -> {
-			StringTag name = blockState.getStringTag("Name");
-			if (name == null) {
-				return false;
-			}
-			return !isAir(name.getValue()) && !isLiquid(name.getValue()) && !isNonMotionBlocking(name.getValue());
-		}));
+		setHeightMaps(root, OCEAN_FLOOR);
 	}
 
 	@Override
 	public void motionBlocking(CompoundTag root) {
-		setHeightMap(root, "MOTION_BLOCKING", getHeightMap(root, blockState -> {
-			StringTag name = blockState.getStringTag("Name");
-			if (name == null) {
-				return false;
-			}
-			return !isAir(name.getValue()) && !isNonMotionBlocking(name.getValue());
-		}));
+		setHeightMaps(root, MOTION_BLOCKING);
 	}
 
 	@Override
 	public void motionBlockingNoLeaves(CompoundTag root) {
-		setHeightMap(root, "MOTION_BLOCKING_NO_LEAVES", getHeightMap(root, blockState -> {
-			StringTag name = blockState.getStringTag("Name");
-			if (name == null) {
-				return false;
+		setHeightMaps(root, MOTION_BLOCKING_NO_LEAVES);
+	}
+
+	@Override
+	public void allHeightmaps(CompoundTag root) {
+		setHeightMaps(root, WORLD_SURFACE | LIGHT_BLOCKING | OCEAN_FLOOR | MOTION_BLOCKING | MOTION_BLOCKING_NO_LEAVES);
+	}
+
+	private void setHeightMaps(CompoundTag root, int heightmaps) {
+		short[][] rawHeightmaps = getHeightMaps(root, heightmaps);
+		if (rawHeightmaps == null) {
+			return;
+		}
+		for (int i = 0; i < heightmapNames.length; i++) {
+			if ((heightmaps & 1 << i) != 0) {
+				setHeightMap(root, heightmapNames[i], applyHeightMap(rawHeightmaps[i]));
 			}
-			return !isAir(name.getValue()) && !isNonMotionBlocking(name.getValue()) && !isFoliage(name.getValue());
-		}));
+		}
+	}
+
+	private int getHeightmapFlags(CompoundTag blockState) {
+		StringTag nameTag = blockState.getStringTag("Name");
+		if (nameTag == null) {
+			return 0;
+		}
+		String name = nameTag.getValue();
+		int flags = nonLightBlockingBlocks.contains(name) ? 0 : LIGHT_BLOCKING;
+		if (isAir(name)) {
+			return flags;
+		}
+		flags |= WORLD_SURFACE;
+		if (!isNonMotionBlocking(name)) {
+			flags |= MOTION_BLOCKING;
+			if (!isLiquid(name)) {
+				flags |= OCEAN_FLOOR;
+			}
+			if (!isFoliage(name)) {
+				flags |= MOTION_BLOCKING_NO_LEAVES;
+			}
+		}
+		return flags;
+	}
+
+	// calculates the requested heightmaps in a single pass from the top of each column down to the highest block
+	// that counts towards each of them. the names of the palette entries are only looked up once per section.
+	// returns null if the chunk can't be read.
+	private short[][] getHeightMaps(CompoundTag root, int heightmaps) {
+		Sections sections = getSections(root);
+		if (sections == null) {
+			return null;
+		}
+		ListTag[] palettes = sections.palettes();
+
+		byte[][] paletteFlags = new byte[palettes.length][];
+		int[] sectionFlags = new int[palettes.length];
+		for (int i = 0; i < palettes.length; i++) {
+			ListTag palette = palettes[i];
+			if (palette == null) {
+				continue;
+			}
+			byte[] flags = paletteFlags[i] = new byte[palette.size()];
+			for (int p = 0; p < flags.length; p++) {
+				flags[p] = (byte) (getHeightmapFlags(palette.getCompound(p)) & heightmaps);
+				sectionFlags[i] |= flags[p];
+			}
+		}
+
+		short[][] buffers = PackedArrayDecoder.getSectionBuffers(palettes.length);
+		short[][] decodedBlockStates = new short[palettes.length][];
+		short[][] rawHeightmaps = new short[heightmapNames.length][256];
+
+		// loop over x/z
+		for (int cx = 0; cx < Tile.CHUNK_SIZE; cx++) {
+			for (int cz = 0; cz < Tile.CHUNK_SIZE; cz++) {
+				int column = cz * Tile.CHUNK_SIZE + cx;
+				int missing = heightmaps;
+				for (int i = palettes.length - 1; i >= 0 && missing != 0; i--) {
+					// sections that only contain blocks that don't count towards any missing heightmap, e.g. air, are skipped without decoding them
+					if ((sectionFlags[i] & missing) == 0) {
+						continue;
+					}
+					short[] blockIndices = decodedBlockStates[i];
+					if (blockIndices == null) {
+						blockIndices = decodedBlockStates[i] = decodePaletteIndices(sections.blockStates()[i], palettes[i].size(), buffers[i]);
+					}
+					byte[] flags = paletteFlags[i];
+					for (int cy = Tile.CHUNK_SIZE - 1; cy >= 0 && missing != 0; cy--) {
+						int paletteIndex = blockIndices[cy * Tile.CHUNK_SIZE * Tile.CHUNK_SIZE + column] & 0xFFFF;
+						if (paletteIndex >= flags.length) {
+							continue;
+						}
+						int found = flags[paletteIndex] & missing;
+						if (found == 0) {
+							continue;
+						}
+						short height = (short) (i * Tile.CHUNK_SIZE + cy + 1);
+						for (int h = 0; h < heightmapNames.length; h++) {
+							if ((found & 1 << h) != 0) {
+								rawHeightmaps[h][column] = height;
+							}
+						}
+						missing &= ~found;
+					}
+				}
+			}
+		}
+		return rawHeightmaps;
 	}
 
 	protected void setHeightMap(CompoundTag root, String name, long[] heightmap) {
@@ -92,14 +171,14 @@ public class Anvil113HeightmapCalculator implements HeightmapCalculator {
 		level.put("Heightmaps", heightmaps);
 	}
 
-	protected long[] getHeightMap(CompoundTag root, Predicate<CompoundTag> matcher) {
+	// returns the palettes and block states of all sections from the bottom up, or null if the chunk can't be read
+	protected Sections getSections(CompoundTag root) {
+		ListTag[] palettes = new ListTag[16];
+		long[][] blockStatesArray = new long[16][];
 		ListTag sections = Helper.getSectionsFromLevelFromRoot(root, "Sections");
 		if (sections == null) {
-			return new long[36];
+			return new Sections(palettes, blockStatesArray);
 		}
-
-		ListTag[] palettes = new ListTag[16];
-		long[][] blockStatesArray = new long[16][];
 		sections.forEach(s -> {
 			ListTag p = Helper.tagFromCompound(s, "Palette");
 			long[] b = Helper.longArrayFromCompound(s, "BlockStates");
@@ -109,30 +188,7 @@ public class Anvil113HeightmapCalculator implements HeightmapCalculator {
 				blockStatesArray[y] = b;
 			}
 		});
-
-		short[] heightmap = new short[256];
-
-		// loop over x/z
-		for (int cx = 0; cx < Tile.CHUNK_SIZE; cx++) {
-			loop:
-			for (int cz = 0; cz < Tile.CHUNK_SIZE; cz++) {
-				for (int i = 15; i >= 0; i--) {
-					ListTag palette = palettes[i];
-					if (palette == null) {
-						continue;
-					}
-					long[] blockStates = blockStatesArray[i];
-					for (int cy = 15; cy >= 0; cy--) {
-						int blockIndex = cy * Tile.CHUNK_SIZE * Tile.CHUNK_SIZE + cz * Tile.CHUNK_SIZE + cx;
-						if (matcher.test(getBlockAt(blockIndex, blockStates, palette))) {
-							heightmap[cz * Tile.CHUNK_SIZE + cx] = (short) (i * Tile.CHUNK_SIZE + cy + 1);
-							continue loop;
-						}
-					}
-				}
-			}
-		}
-		return applyHeightMap(heightmap);
+		return new Sections(palettes, blockStatesArray);
 	}
 
 	protected long[] applyHeightMap(short[] rawHeightmap) {
@@ -160,22 +216,9 @@ public class Anvil113HeightmapCalculator implements HeightmapCalculator {
 		return data;
 	}
 
-	protected CompoundTag getBlockAt(int index, long[] blockStates, ListTag palette) {
-		return palette.getCompound(getPaletteIndex(index, blockStates));
+	// values span across longs before 1.16, so the bits per value always follow from the length of the data
+	protected short[] decodePaletteIndices(long[] blockStates, int paletteSize, short[] buffer) {
+		int bits = blockStates == null ? 0 : PackedArrayDecoder.spanningBits(blockStates.length, 4096);
+		return PackedArrayDecoder.decodeSpanning(blockStates, bits, buffer);
 	}
-
-	protected int getPaletteIndex(int blockIndex, long[] blockStates) {
-		int bits = blockStates.length >> 6;
-		double blockStatesIndex = blockIndex / (4096D / blockStates.length);
-		int longIndex = (int) blockStatesIndex;
-		int startBit = (int) ((blockStatesIndex - Math.floor(blockStatesIndex)) * 64D);
-		if (startBit + bits > 64) {
-			long prev = Bits.bitRange(blockStates[longIndex], startBit, 64);
-			long next = Bits.bitRange(blockStates[longIndex + 1], 0, startBit + bits - 64);
-			return (int) ((next << 64 - startBit) + prev);
-		} else {
-			return (int) Bits.bitRange(blockStates[longIndex], startBit, startBit + bits);
-		}
-	}
-
 }
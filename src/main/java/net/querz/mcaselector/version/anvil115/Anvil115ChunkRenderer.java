@@ -1,6 +1,7 @@
 package net.querz.mcaselector.version.anvil115;
 
 import net.querz.mcaselector.math.MathUtil;
+import net.querz.mcaselector.math.PackedArrayDecoder;
 import net.querz.mcaselector.tile.Tile;
 import net.querz.mcaselector.version.ChunkRenderer;
 import net.querz.mcaselector.version.ColorMapping;
@@ -35,6 +36,9 @@ public class Anvil115ChunkRenderer implements ChunkRenderer {
 
 		int[] biomes = Helper.intArrayFromCompound(level, "Biomes");
 
+		short[][] buffers = PackedArrayDecoder.getSectionBuffers(palettes.length);
+		short[][] decodedBlockStates = new short[palettes.length][];
+
 		for (int cx = 0; cx < Tile.CHUNK_SIZE; cx += scale) {
 			zLoop:
 			for (int cz = 0; cz < Tile.CHUNK_SIZE; cz += scale) {
@@ -51,8 +55,10 @@ public class Anvil115ChunkRenderer implements ChunkRenderer {
 
 					int sectionHeight = i * Tile.CHUNK_SIZE;
 
-					int bits = blockStates.length >> 6;
-					int clean = ((int) Math.pow(2, bits) - 1);
+					short[] blockIndices = decodedBlockStates[i];
+					if (blockIndices == null) {
+						blockIndices = decodedBlockStates[i] = decodeBlockStates(blockStates, buffers[i]);
+					}
 
 					int startHeight;
 					if (height >> 4 == i) {
@@ -62,7 +68,7 @@ public class Anvil115ChunkRenderer implements ChunkRenderer {
 					}
 
 					for (int cy = startHeight; cy >= 0; cy--) {
-						int paletteIndex = getPaletteIndex(getIndex(cx, cy, cz), blockStates, bits, clean);
+						int paletteIndex = blockIndices[getIndex(cx, cy, cz)];
 						CompoundTag blockData = palette.getCompound(paletteIndex);
 
 						if (isEmpty(blockData)) {
@@ -133,12 +139,11 @@ public class Anvil115ChunkRenderer implements ChunkRenderer {
 		int[] biomes = Helper.intArrayFromCompound(level, "Biomes");
 
 		int cy = height % 16;
-		int bits = blockStates.length >> 6;
-		int clean = ((int) Math.pow(2, bits) - 1);
+		int bits = PackedArrayDecoder.spanningBits(blockStates.length, 4096);
 
 		for (int cx = 0; cx < Tile.CHUNK_SIZE; cx += scale) {
 			for (int cz = 0; cz < Tile.CHUNK_SIZE; cz += scale) {
-				int paletteIndex = getPaletteIndex(getIndex(cx, cy, cz), blockStates, bits, clean);
+				int paletteIndex = PackedArrayDecoder.getSpanning(blockStates, bits, getIndex(cx, cy, cz));
 				CompoundTag blockData = palette.getCompound(paletteIndex);
 
 				if (isEmpty(blockData)) {
@@ -179,6 +184,9 @@ public class Anvil115ChunkRenderer implements ChunkRenderer {
 
 		int[] biomes = Helper.intArrayFromCompound(level, "Biomes");
 
+		short[][] buffers = PackedArrayDecoder.getSectionBuffers(palettes.length);
+		short[][] decodedBlockStates = new short[palettes.length][];
+
 		for (int cx = 0; cx < Tile.CHUNK_SIZE; cx += scale) {
 			zLoop:
 			for (int cz = 0; cz < Tile.CHUNK_SIZE; cz += scale) {
@@ -197,8 +205,10 @@ public class Anvil115ChunkRenderer implements ChunkRenderer {
 
 					int sectionHeight = i * Tile.CHUNK_SIZE;
 
-					int bits = blockStates.length >> 6;
-					int clean = ((int) Math.pow(2, bits) - 1);
+					short[] blockIndices = decodedBlockStates[i];
+					if (blockIndices == null) {
+						blockIndices = decodedBlockStates[i] = decodeBlockStates(blockStates, buffers[i]);
+					}
 
 					int startHeight;
 					if (height >> 4 == i) {
@@ -208,7 +218,7 @@ public class Anvil115ChunkRenderer implements ChunkRenderer {
 					}
 
 					for (int cy = startHeight; cy >= 0; cy--) {
-						int paletteIndex = getPaletteIndex(getIndex(cx, cy, cz), blockStates, bits, clean);
+						int paletteIndex = blockIndices[getIndex(cx, cy, cz)];
 						CompoundTag blockData = palette.getCompound(paletteIndex);
 
 						if (!isEmptyOrFoliage(blockData, colorMapping)) {
@@ -289,24 +299,7 @@ public class Anvil115ChunkRenderer implements ChunkRenderer {
 		return biomes[getBiomeIndex(biomeX >> 2, biomeY >> 2, biomeZ >> 2)];
 	}
 
-	private int getPaletteIndex(int index, long[] blockStates, int bits, int clean) {
-		double blockStatesIndex = index / (4096D / blockStates.length);
-
-		int longIndex = (int) blockStatesIndex;
-		int startBit = (int) ((blockStatesIndex - Math.floor(blockStatesIndex)) * 64D);
-
-		if (startBit + bits > 64) {
-			// get msb from current long, no need to cleanup manually, just fill with 0
-			int previous = (int) (blockStates[longIndex] >>> startBit);
-
-			// cleanup pattern for bits from next long
-			int remainingClean = ((int) Math.pow(2, startBit + bits - 64) - 1);
-
-			// get lsb from next long
-			int next = ((int) blockStates[longIndex + 1]) & remainingClean;
-			return (next << 64 - startBit) + previous;
-		} else {
-			return (int) (blockStates[longIndex] >> startBit) & clean;
-		}
+	private short[] decodeBlockStates(long[] blockStates, short[] buffer) {
+		return PackedArrayDecoder.decodeSpanning(blockStates, PackedArrayDecoder.spanningBits(blockStates.length, 4096), buffer);
 	}
 }
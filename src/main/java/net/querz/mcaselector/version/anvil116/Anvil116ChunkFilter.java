@@ -1,6 +1,8 @@
 package net.querz.mcaselector.version.anvil116;
 
+import net.querz.mcaselector.io.mca.ChunkView;
 import net.querz.mcaselector.math.Bits;
+import net.querz.mcaselector.math.PackedArrayDecoder;
 import net.querz.mcaselector.version.anvil115.Anvil115ChunkFilter;
 import net.querz.nbt.ListTag;
 import java.util.Map;
@@ -8,17 +10,23 @@ import java.util.Map;
 public class Anvil116ChunkFilter extends Anvil115ChunkFilter {
 
 	@Override
-	protected int getPaletteIndex(int blockIndex, long[] blockStates) {
-		int bits = blockStates.length >> 6;
-		int indicesPerLong = (int) (64D / bits);
-		int blockStatesIndex = blockIndex / indicesPerLong;
-		int startBit = (blockIndex % indicesPerLong) * bits;
-		return (int) Bits.bitRange(blockStates[blockStatesIndex], startBit, startBit + bits);
+	protected ChunkView.BlockSection createBlockSection(int[] palette, long[] blockStates) {
+		return new ChunkView.BlockSection(palette, blockStates, false);
+	}
+
+	// different amounts of bits can result in the same length of the block states, so they depend on the palette
+	@Override
+	protected int getBlockStateBits(int paletteSize, long[] blockStates) {
+		return PackedArrayDecoder.blockBits(paletteSize, blockStates.length);
+	}
+
+	@Override
+	protected int getPaletteIndex(int blockIndex, long[] blockStates, int bits) {
+		return PackedArrayDecoder.get(blockStates, bits, blockIndex);
 	}
 
 	@Override
-	protected void setPaletteIndex(int blockIndex, int paletteIndex, long[] blockStates) {
-		int bits = blockStates.length >> 6;
+	protected void setPaletteIndex(int blockIndex, int paletteIndex, long[] blockStates, int bits) {
 		int indicesPerLong = (int) (64D / bits);
 		int blockStatesIndex = blockIndex / indicesPerLong;
 		int startBit = (blockIndex % indicesPerLong) * bits;
@@ -26,12 +34,12 @@ public class Anvil116ChunkFilter extends Anvil115ChunkFilter {
 	}
 
 	@Override
-	protected long[] adjustBlockStateBits(ListTag palette, long[] blockStates, Map<Integer, Integer> oldToNewMapping) {
+	protected long[] adjustBlockStateBits(ListTag palette, long[] blockStates, int bits, Map<Integer, Integer> oldToNewMapping) {
 		int newBits = 32 - Integer.numberOfLeadingZeros(palette.size() - 1);
 		newBits = Math.max(newBits, 4);
 
 		long[] newBlockStates;
-		if (newBits == blockStates.length / 64) {
+		if (newBits == bits) {
 			newBlockStates = blockStates;
 		} else {
 			int newLength = (int) Math.ceil(4096D / (Math.floor(64D / newBits)));
@@ -40,11 +48,11 @@ public class Anvil116ChunkFilter extends Anvil115ChunkFilter {
 
 		if (oldToNewMapping != null) {
 			for (int i = 0; i < 4096; i++) {
-				setPaletteIndex(i, oldToNewMapping.get(getPaletteIndex(i, blockStates)), newBlockStates);
+				setPaletteIndex(i, oldToNewMapping.get(getPaletteIndex(i, blockStates, bits)), newBlockStates, newBits);
 			}
 		} else {
 			for (int i = 0; i < 4096; i++) {
-				setPaletteIndex(i, getPaletteIndex(i, blockStates), newBlockStates);
+				setPaletteIndex(i, getPaletteIndex(i, blockStates, bits), newBlockStates, newBits);
 			}
 		}
 
@@ -1,6 +1,7 @@
 package net.querz.mcaselector.version.anvil116;
 
 import net.querz.mcaselector.math.MathUtil;
+import net.querz.mcaselector.math.PackedArrayDecoder;
 import net.querz.mcaselector.tile.Tile;
 import net.querz.mcaselector.version.ChunkRenderer;
 import net.querz.mcaselector.version.ColorMapping;
@@ -35,6 +36,9 @@ public class Anvil116ChunkRenderer implements ChunkRenderer {
 
 		int[] biomes = Helper.intArrayFromCompound(level, "Biomes");
 
+		short[][] buffers = PackedArrayDecoder.getSectionBuffers(palettes.length);
+		short[][] decodedBlockStates = new short[palettes.length][];
+
 		for (int cx = 0; cx < Tile.CHUNK_SIZE; cx += scale) {
 			zLoop:
 			for (int cz = 0; cz < Tile.CHUNK_SIZE; cz += scale) {
@@ -51,8 +55,10 @@ public class Anvil116ChunkRenderer implements ChunkRenderer {
 
 					int sectionHeight = i * Tile.CHUNK_SIZE;
 
-					int bits = blockStates.length >> 6;
-					int clean = ((int) Math.pow(2, bits) - 1);
+					short[] blockIndices = decodedBlockStates[i];
+					if (blockIndices == null) {
+						blockIndices = decodedBlockStates[i] = decodeBlockStates(blockStates, palette, buffers[i]);
+					}
 
 					int startHeight;
 					if (height >> 4 == i) {
@@ -62,7 +68,7 @@ public class Anvil116ChunkRenderer implements ChunkRenderer {
 					}
 
 					for (int cy = startHeight; cy >= 0; cy--) {
-						int paletteIndex = getPaletteIndex(getIndex(cx, cy, cz), blockStates, bits, clean);
+						int paletteIndex = blockIndices[getIndex(cx, cy, cz)];
 						CompoundTag blockData = palette.getCompound(paletteIndex);
 
 						if (isEmpty(blockData)) {
@@ -133,12 +139,11 @@ public class Anvil116ChunkRenderer implements ChunkRenderer {
 		int[] biomes = Helper.intArrayFromCompound(level, "Biomes");
 
 		int cy = height % 16;
-		int bits = blockStates.length >> 6;
-		int clean = ((int) Math.pow(2, bits) - 1);
+		int bits = PackedArrayDecoder.blockBits(palette.size(), blockStates.length);
 
 		for (int cx = 0; cx < Tile.CHUNK_SIZE; cx += scale) {
 			for (int cz = 0; cz < Tile.CHUNK_SIZE; cz += scale) {
-				int paletteIndex = getPaletteIndex(getIndex(cx, cy, cz), blockStates, bits, clean);
+				int paletteIndex = PackedArrayDecoder.get(blockStates, bits, getIndex(cx, cy, cz));
 				CompoundTag blockData = palette.getCompound(paletteIndex);
 
 				if (isEmpty(blockData)) {
@@ -179,6 +184,9 @@ public class Anvil116ChunkRenderer implements ChunkRenderer {
 
 		int[] biomes = Helper.intArrayFromCompound(level, "Biomes");
 
+		short[][] buffers = PackedArrayDecoder.getSectionBuffers(palettes.length);
+		short[][] decodedBlockStates = new short[palettes.length][];
+
 		for (int cx = 0; cx < Tile.CHUNK_SIZE; cx += scale) {
 			zLoop:
 			for (int cz = 0; cz < Tile.CHUNK_SIZE; cz += scale) {
@@ -197,8 +205,10 @@ public class Anvil116ChunkRenderer implements ChunkRenderer {
 
 					int sectionHeight = i * Tile.CHUNK_SIZE;
 
-					int bits = blockStates.length >> 6;
-					int clean = ((int) Math.pow(2, bits) - 1);
+					short[] blockIndices = decodedBlockStates[i];
+					if (blockIndices == null) {
+						blockIndices = decodedBlockStates[i] = decodeBlockStates(blockStates, palette, buffers[i]);
+					}
 
 					int startHeight;
 					if (height >> 4 == i) {
@@ -208,7 +218,7 @@ public class Anvil116ChunkRenderer implements ChunkRenderer {
 					}
 
 					for (int cy = startHeight; cy >= 0; cy--) {
-						int paletteIndex = getPaletteIndex(getIndex(cx, cy, cz), blockStates, bits, clean);
+						int paletteIndex = blockIndices[getIndex(cx, cy, cz)];
 						CompoundTag blockData = palette.getCompound(paletteIndex);
 
 						if (!isEmptyOrFoliage(blockData, colorMapping)) {
@@ -289,10 +299,10 @@ public class Anvil116ChunkRenderer implements ChunkRenderer {
 		return biomes[getBiomeIndex(biomeX / 4, biomeY / 4, biomeZ / 4)];
 	}
 
-	private int getPaletteIndex(int index, long[] blockStates, int bits, int clean) {
-		int indicesPerLong = (int) (64D / bits);
-		int blockStatesIndex = index / indicesPerLong;
-		int startBit = (index % indicesPerLong) * bits;
-		return (int) (blockStates[blockStatesIndex] >> startBit) & clean;
+	private short[] decodeBlockStates(long[] blockStates, ListTag palette, short[] buffer) {
+		if (blockStates == null) {
+			return PackedArrayDecoder.decode(null, 0, buffer);
+		}
+		return PackedArrayDecoder.decode(blockStates, PackedArrayDecoder.blockBits(palette.size(), blockStates.length), buffer);
 	}
 }
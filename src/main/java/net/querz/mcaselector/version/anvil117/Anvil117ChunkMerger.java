@@ -2,6 +2,7 @@ package net.querz.mcaselector.version.anvil117;
 
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.range.Range;
+import net.querz.mcaselector.range.SectionRangeLookup;
 import net.querz.mcaselector.version.ChunkMerger;
 import net.querz.mcaselector.version.Helper;
 import net.querz.nbt.CompoundTag;
@@ -14,10 +15,10 @@ public class Anvil117ChunkMerger implements ChunkMerger {
 
 	@Override
 	public void mergeChunks(CompoundTag source, CompoundTag destination, List<Range> ranges, int yOffset) {
-		mergeCompoundTagListsFromLevel(source, destination, ranges, yOffset, "Sections", c -> ((CompoundTag) c).getInt("Y"));
-		mergeCompoundTagListsFromLevel(source, destination, ranges, yOffset, "TileEntities", c -> ((CompoundTag) c).getInt("y") >> 4);
-		mergeCompoundTagListsFromLevel(source, destination, ranges, yOffset, "TileTicks", c -> ((CompoundTag) c).getInt("y") >> 4);
-		mergeCompoundTagListsFromLevel(source, destination, ranges, yOffset, "LiquidTicks", c -> ((CompoundTag) c).getInt("y") >> 4);
+		mergeCompoundTagListsFromLevel(source, destination, ranges, yOffset, "Sections", SectionY.SECTION);
+		mergeCompoundTagListsFromLevel(source, destination, ranges, yOffset, "TileEntities", SectionY.BLOCK);
+		mergeCompoundTagListsFromLevel(source, destination, ranges, yOffset, "TileTicks", SectionY.BLOCK);
+		mergeCompoundTagListsFromLevel(source, destination, ranges, yOffset, "LiquidTicks", SectionY.BLOCK);
 		mergeListTagLists(source, destination, ranges, yOffset, "Lights");
 		mergeListTagLists(source, destination, ranges, yOffset, "LiquidsToBeTicked");
 		mergeListTagLists(source, destination, ranges, yOffset, "ToBeTicked");
@@ -28,22 +29,20 @@ public class Anvil117ChunkMerger implements ChunkMerger {
 	private void mergeStructures(CompoundTag source, CompoundTag destination, List<Range> ranges, int yOffset) {
 		CompoundTag sourceStarts = Helper.tagFromCompound(Helper.tagFromLevelFromRoot(source, "Structures", new CompoundTag()), "Starts", new CompoundTag());
 		CompoundTag destinationStarts = Helper.tagFromCompound(Helper.tagFromLevelFromRoot(destination, "Structures", new CompoundTag()), "Starts", new CompoundTag());
+		SectionRangeLookup sections = new SectionRangeLookup(ranges);
 
 		if (destinationStarts.size() != 0) {
 			// remove BBs from destination
 			for (Map.Entry<String, Tag> start : destinationStarts) {
 				ListTag children = Helper.tagFromCompound(start.getValue(), "Children", null);
 				if (children != null) {
-					child: for (int i = 0; i < children.size(); i++) {
+					for (int i = 0; i < children.size(); i++) {
 						CompoundTag child = children.getCompound(i);
 						int[] bb = Helper.intArrayFromCompound(child, "BB");
 						if (bb != null && bb.length == 6) {
-							for (Range range : ranges) {
-								if (range.contains(bb[1] >> 4 - yOffset) && range.contains(bb[4] >> 4 - yOffset)) {
-									children.remove(i);
-									i--;
-									continue child;
-								}
+							if (sections.containsAll(bb[1] >> 4, bb[4] >> 4)) {
+								children.remove(i);
+								i--;
 							}
 						}
 					}
@@ -53,13 +52,10 @@ public class Anvil117ChunkMerger implements ChunkMerger {
 				if (children == null || children.size() == 0) {
 					int[] bb = Helper.intArrayFromCompound(start.getValue(), "BB");
 					if (bb != null && bb.length == 6) {
-						for (Range range : ranges) {
-							if (range.contains(bb[1] >> 4 - yOffset) && range.contains(bb[4] >> 4 - yOffset)) {
-								CompoundTag emptyStart = new CompoundTag();
-								emptyStart.putString("id", "INVALID");
-								destinationStarts.put(start.getKey(), emptyStart);
-								break;
-							}
+						if (sections.containsAll(bb[1] >> 4, bb[4] >> 4)) {
+							CompoundTag emptyStart = new CompoundTag();
+							emptyStart.putString("id", "INVALID");
+							destinationStarts.put(start.getKey(), emptyStart);
 						}
 					}
 				}
@@ -71,36 +67,32 @@ public class Anvil117ChunkMerger implements ChunkMerger {
 		for (Map.Entry<String, Tag> start : sourceStarts) {
 			ListTag children = Helper.tagFromCompound(start.getValue(), "Children", null);
 			if (children != null) {
-				child:
 				for (int i = 0; i < children.size(); i++) {
 					CompoundTag child = children.getCompound(i);
 					int[] bb = Helper.intArrayFromCompound(child, "BB");
 					if (bb == null) {
 						continue;
 					}
-					for (Range range : ranges) {
-						if (range.contains(bb[1] >> 4 - yOffset) || range.contains(bb[4] >> 4 - yOffset)) {
-							CompoundTag destinationStart = Helper.tagFromCompound(destinationStarts, start.getKey(), null);
-							if (destinationStart == null || "INVALID".equals(destinationStart.getString("id"))) {
-								destinationStart = ((CompoundTag) start.getValue()).copy();
-
-								// we need to remove the children, we don't want all of them
-								ListTag clonedDestinationChildren = Helper.tagFromCompound(destinationStart, "Children", null);
-								if (clonedDestinationChildren != null) {
-									clonedDestinationChildren.clear();
-								}
-								destinationStarts.put(start.getKey(), destinationStart);
-							}
+					if (sections.contains((bb[1] >> 4) - yOffset) || sections.contains((bb[4] >> 4) - yOffset)) {
+						CompoundTag destinationStart = Helper.tagFromCompound(destinationStarts, start.getKey(), null);
+						if (destinationStart == null || "INVALID".equals(destinationStart.getString("id"))) {
+							destinationStart = ((CompoundTag) start.getValue()).copy();
 
-							ListTag destinationChildren = Helper.tagFromCompound(destinationStarts.get(start.getKey()), "Children", null);
-							if (destinationChildren == null) {
-								destinationChildren = new ListTag();
-								destinationStart.put("Children", destinationChildren);
+							// we need to remove the children, we don't want all of them
+							ListTag clonedDestinationChildren = Helper.tagFromCompound(destinationStart, "Children", null);
+							if (clonedDestinationChildren != null) {
+								clonedDestinationChildren.clear();
 							}
+							destinationStarts.put(start.getKey(), destinationStart);
+						}
 
-							destinationChildren.add(children.get(i));
-							continue child;
+						ListTag destinationChildren = Helper.tagFromCompound(destinationStarts.get(start.getKey()), "Children", null);
+						if (destinationChildren == null) {
+							destinationChildren = new ListTag();
+							destinationStart.put("Children", destinationChildren);
 						}
+
+						destinationChildren.add(children.get(i));
 					}
 				}
 			}
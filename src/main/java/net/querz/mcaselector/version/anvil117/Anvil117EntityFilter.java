@@ -2,6 +2,7 @@ package net.querz.mcaselector.version.anvil117;
 
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.range.Range;
+import net.querz.mcaselector.range.SectionRangeLookup;
 import net.querz.mcaselector.version.EntityFilter;
 import net.querz.mcaselector.version.Helper;
 import net.querz.nbt.CompoundTag;
@@ -27,15 +28,14 @@ public class Anvil117EntityFilter implements EntityFilter {
 		if (ranges == null) {
 			entities.clear();
 		} else {
+			SectionRangeLookup sections = new SectionRangeLookup(ranges);
 			for (int i = 0; i < entities.size(); i++) {
 				CompoundTag entity = entities.getCompound(i);
-				for (Range range : ranges) {
-					ListTag entityPos = Helper.tagFromCompound(entity, "Pos");
-					if (entityPos != null && entityPos.size() == 3) {
-						if (range.contains(entityPos.getInt(1) >> 4)) {
-							entities.remove(i);
-							i--;
-						}
+				ListTag entityPos = Helper.tagFromCompound(entity, "Pos");
+				if (entityPos != null && entityPos.size() == 3) {
+					if (sections.contains(entityPos.getInt(1) >> 4)) {
+						entities.remove(i);
+						i--;
 					}
 				}
 			}
@@ -12,7 +12,7 @@ public class Anvil117EntityMerger implements ChunkMerger {
 
 	@Override
 	public void mergeChunks(CompoundTag source, CompoundTag destination, List<Range> ranges, int yOffset) {
-		mergeCompoundTagLists(source, destination, ranges, yOffset, "Entities", c -> ((CompoundTag) c).getList("Pos").getInt(1) >> 4);
+		mergeCompoundTagLists(source, destination, ranges, yOffset, "Entities", SectionY.ENTITY);
 	}
 
 	@Override
@@ -1,18 +1,31 @@
 package net.querz.mcaselector.version.anvil118;
 
+import it.unimi.dsi.fastutil.ints.IntSet;
+import net.querz.mcaselector.io.mca.ChunkView;
+import net.querz.mcaselector.io.mca.NBTStreams;
 import net.querz.mcaselector.io.registry.BiomeRegistry;
 import net.querz.mcaselector.io.registry.StatusRegistry;
 import net.querz.mcaselector.point.Point2i;
-import net.querz.mcaselector.point.Point3i;
 import net.querz.mcaselector.range.Range;
+import net.querz.mcaselector.range.SectionRangeLookup;
 import net.querz.mcaselector.tile.Tile;
 import net.querz.mcaselector.version.Helper;
+import net.querz.mcaselector.version.HeightmapCalculator;
 import net.querz.mcaselector.version.anvil117.Anvil117ChunkFilter;
 import net.querz.nbt.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.*;
+import static net.querz.mcaselector.io.mca.NBTStreams.*;
 
 public class Anvil118ChunkFilter extends Anvil117ChunkFilter {
 
+	private final HeightmapCalculator heightmapCalculator = new Anvil118HeightmapCalculator();
+
 	@Override
 	public boolean matchBlockNames(CompoundTag data, Collection<String> names) {
 		Integer dataVersion = Helper.intFromCompound(data, "DataVersion");
@@ -208,6 +221,64 @@ public class Anvil118ChunkFilter extends Anvil117ChunkFilter {
 		}
 	}
 
+	@Override
+	public ChunkView.BlockSection[] getBlockSections(CompoundTag data) {
+		Integer dataVersion = Helper.intFromCompound(data, "DataVersion");
+		if (dataVersion == null) {
+			return null;
+		}
+
+		ListTag sections = LegacyHelper.getSections(data, dataVersion);
+		if (sections == null) {
+			return null;
+		}
+
+		List<ChunkView.BlockSection> blockSections = new ArrayList<>(sections.size());
+		for (CompoundTag section : sections.iterateType(CompoundTag.class)) {
+			ListTag palette = LegacyHelper.getPalette(section, dataVersion);
+			if (palette == null) {
+				continue;
+			}
+			long[] blockStates = LegacyHelper.getBlockStates(section, dataVersion);
+			blockSections.add(createBlockSection(getPaletteIDs(palette), blockStates));
+		}
+		return blockSections.toArray(new ChunkView.BlockSection[0]);
+	}
+
+	@Override
+	public Set<String> getBiomeNames(CompoundTag data) {
+		Integer dataVersion = Helper.intFromCompound(data, "DataVersion");
+		if (dataVersion == null || dataVersion < 2834) {
+			return null;
+		}
+
+		ListTag sections = LegacyHelper.getSections(data, dataVersion);
+		if (sections == null) {
+			return null;
+		}
+
+		Set<String> names = new HashSet<>();
+		for (CompoundTag section : sections.iterateType(CompoundTag.class)) {
+			ListTag biomePalette = Helper.tagFromCompound(Helper.tagFromCompound(section, "biomes"), "palette");
+			if (biomePalette == null) {
+				continue;
+			}
+			for (StringTag biomeName : biomePalette.iterateType(StringTag.class)) {
+				names.add(biomeName.getValue());
+			}
+		}
+		return names;
+	}
+
+	@Override
+	public IntSet getBiomeIDs(CompoundTag data) {
+		Integer dataVersion = Helper.intFromCompound(data, "DataVersion");
+		if (dataVersion == null || dataVersion >= 2834) {
+			return null;
+		}
+		return super.getBiomeIDs(data);
+	}
+
 	@Override
 	public void changeBiome(CompoundTag data, BiomeRegistry.BiomeIdentifier biome) {
 		Integer dataVersion = Helper.intFromCompound(data, "DataVersion");
@@ -331,6 +402,8 @@ public class Anvil118ChunkFilter extends Anvil117ChunkFilter {
 			if (tileEntities == null) {
 				tileEntities = new ListTag();
 			}
+			TileEntityIndex tileIndex = new TileEntityIndex(tileEntities);
+			List<BlockReplaceRule> rules = compileReplaceRules(replace);
 
 			for (CompoundTag section : sections.iterateType(CompoundTag.class)) {
 				CompoundTag blockStatesTag = section.getCompoundTag("block_states");
@@ -351,52 +424,22 @@ public class Anvil118ChunkFilter extends Anvil117ChunkFilter {
 					continue;
 				}
 
-				section.remove("BlockLight");
-				section.remove("SkyLight");
-
-				for (int i = 0; i < 4096; i++) {
-					CompoundTag blockState = getBlockAt(i, blockStates, palette);
-
-					for (Map.Entry<String, BlockReplaceData> entry : replace.entrySet()) {
-						if (!blockState.getString("Name").matches(entry.getKey())) {
-							continue;
-						}
-						BlockReplaceData replacement = entry.getValue();
-
-						try {
-							blockStates = setBlockAt(i, replacement.getState(), blockStates, palette);
-						} catch (Exception ex) {
-							throw new RuntimeException("failed to set block in section " + y, ex);
-						}
-
-						Point3i location = indexToLocation(i).add(pos.getX(), y * 16, pos.getZ());
-
-						if (replacement.getTile() != null) {
-							CompoundTag tile = replacement.getTile().copy();
-							tile.putInt("x", location.getX());
-							tile.putInt("y", location.getY());
-							tile.putInt("z", location.getZ());
-							tileEntities.add(tile);
-						} else if (tileEntities.size() != 0) {
-							for (int t = 0; t < tileEntities.size(); t++) {
-								CompoundTag tile = tileEntities.getCompound(t);
-								if (tile.getInt("x") == location.getX()
-									&& tile.getInt("y") == location.getY()
-									&& tile.getInt("z") == location.getZ()) {
-									tileEntities.remove(t);
-									break;
-								}
-							}
-						}
-					}
-				}
-
+				long[] newBlockStates;
 				try {
-					blockStates = cleanupPalette(blockStates, palette);
+					newBlockStates = replaceBlocksInSection(blockStates, palette, rules, pos.getX(), y * 16, pos.getZ(), tileIndex);
 				} catch (Exception ex) {
-					throw new RuntimeException("failed to cleanup section " + y, ex);
+					throw new RuntimeException("failed to replace blocks in section " + y, ex);
 				}
 
+				// nothing was replaced in this section
+				if (newBlockStates == blockStates) {
+					continue;
+				}
+
+				section.remove("BlockLight");
+				section.remove("SkyLight");
+				blockStates = newBlockStates;
+
 				if (blockStates == null) {
 					blockStatesTag.remove("data");
 				} else {
@@ -404,7 +447,7 @@ public class Anvil118ChunkFilter extends Anvil117ChunkFilter {
 				}
 			}
 
-			LegacyHelper.putTileEntities(data, tileEntities, dataVersion);
+			LegacyHelper.putTileEntities(data, tileIndex.getTileEntities(), dataVersion);
 		} else {
 			CompoundTag level = data.getCompound("Level");
 
@@ -447,6 +490,8 @@ public class Anvil118ChunkFilter extends Anvil117ChunkFilter {
 			if (tileEntities == null) {
 				tileEntities = new ListTag();
 			}
+			TileEntityIndex tileIndex = new TileEntityIndex(tileEntities);
+			List<BlockReplaceRule> rules = compileReplaceRules(replace);
 
 			for (CompoundTag section : sections.iterateType(CompoundTag.class)) {
 				ListTag palette = Helper.tagFromCompound(section, "Palette", null);
@@ -464,73 +509,51 @@ public class Anvil118ChunkFilter extends Anvil117ChunkFilter {
 					continue;
 				}
 
-				section.remove("BlockLight");
-				section.remove("SkyLight");
-
-				for (int i = 0; i < 4096; i++) {
-					CompoundTag blockState = getBlockAt(i, blockStates, palette);
-
-					for (Map.Entry<String, BlockReplaceData> entry : replace.entrySet()) {
-						if (!blockState.getString("Name").matches(entry.getKey())) {
-							continue;
-						}
-						BlockReplaceData replacement = entry.getValue();
-
-						try {
-							blockStates = setBlockAt(i, replacement.getState(), blockStates, palette);
-						} catch (Exception ex) {
-							throw new RuntimeException("failed to set block in section " + y, ex);
-						}
-
-						Point3i location = indexToLocation(i).add(pos.getX(), y * 16, pos.getZ());
-
-						if (replacement.getTile() != null) {
-							CompoundTag tile = replacement.getTile().copy();
-							tile.putInt("x", location.getX());
-							tile.putInt("y", location.getY());
-							tile.putInt("z", location.getZ());
-							tileEntities.add(tile);
-						} else if (tileEntities.size() != 0) {
-							for (int t = 0; t < tileEntities.size(); t++) {
-								CompoundTag tile = tileEntities.getCompound(t);
-								if (tile.getInt("x") == location.getX()
-									&& tile.getInt("y") == location.getY()
-									&& tile.getInt("z") == location.getZ()) {
-									tileEntities.remove(t);
-									break;
-								}
-							}
-						}
-					}
-				}
-
+				long[] newBlockStates;
 				try {
-					blockStates = cleanupPalette(blockStates, palette);
+					newBlockStates = replaceBlocksInSection(blockStates, palette, rules, pos.getX(), y * 16, pos.getZ(), tileIndex);
 				} catch (Exception ex) {
-					throw new RuntimeException("failed to cleanup section " + y, ex);
+					throw new RuntimeException("failed to replace blocks in section " + y, ex);
 				}
 
+				// nothing was replaced in this section
+				if (newBlockStates == blockStates) {
+					continue;
+				}
+
+				section.remove("BlockLight");
+				section.remove("SkyLight");
+				blockStates = newBlockStates;
+
 				section.putLongArray("BlockStates", blockStates);
 			}
 
-			level.put("TileEntities", tileEntities);
+			level.put("TileEntities", tileIndex.getTileEntities());
 		}
 	}
 
 	@Override
-	protected long[] adjustBlockStateBits(ListTag palette, long[] blockStates, Map<Integer, Integer> oldToNewMapping) {
+	protected long[] adjustBlockStateBits(ListTag palette, long[] blockStates, int bits, Map<Integer, Integer> oldToNewMapping) {
 		if (palette.size() == 1) {
 			return null;
 		}
-		return super.adjustBlockStateBits(palette, blockStates, oldToNewMapping);
+		return super.adjustBlockStateBits(palette, blockStates, bits, oldToNewMapping);
 	}
 
 	@Override
-	protected int getPaletteIndex(int blockIndex, long[] blockStates) {
+	protected int getBlockStateBits(int paletteSize, long[] blockStates) {
 		if (blockStates == null) {
 			return 0;
 		}
-		return super.getPaletteIndex(blockIndex, blockStates);
+		return super.getBlockStateBits(paletteSize, blockStates);
+	}
+
+	@Override
+	protected int getPaletteIndex(int blockIndex, long[] blockStates, int bits) {
+		if (blockStates == null) {
+			return 0;
+		}
+		return super.getPaletteIndex(blockIndex, blockStates, bits);
 	}
 
 	protected CompoundTag completeSection(CompoundTag section, int y) {
@@ -713,14 +736,263 @@ public class Anvil118ChunkFilter extends Anvil117ChunkFilter {
 		if (sections == null) {
 			return;
 		}
+		SectionRangeLookup lookup = new SectionRangeLookup(ranges);
 		for (int i = 0; i < sections.size(); i++) {
 			CompoundTag section = sections.getCompound(i);
-			for (Range range : ranges) {
-				if (range.contains(section.getInt("Y"))) {
-					deleteSection(section);
+			if (lookup.contains(section.getInt("Y"))) {
+				deleteSection(section);
+			}
+		}
+		deleteInSections(Helper.tagFromCompound(data, "block_entities"), lookup);
+		deleteInSections(Helper.tagFromCompound(data, "block_ticks"), lookup);
+		deleteInSections(Helper.tagFromCompound(data, "fluid_ticks"), lookup);
+	}
+
+	// deletes the block entities or ticks of a list that are in deleted sections, so that they don't refer to blocks that don't exist anymore
+	public static void deleteInSections(ListTag list, SectionRangeLookup sections) {
+		if (list == null) {
+			return;
+		}
+		int kept = 0;
+		for (int i = 0; i < list.size(); i++) {
+			Tag element = list.get(i);
+			Integer y = Helper.intFromCompound((CompoundTag) element, "y");
+			if (y == null || !sections.contains(y >> 4)) {
+				list.set(kept++, element);
+			}
+		}
+		for (int i = list.size() - 1; i >= kept; i--) {
+			list.remove(i);
+		}
+	}
+
+	@Override
+	public byte[] deleteSections(byte[] data, int dataVersion, List<Range> ranges) throws IOException {
+		// before 21w43a, deleteSections(CompoundTag, List<Range>) doesn't find any sections either
+		if (dataVersion < 2844) {
+			return null;
+		}
+		return deleteRawSections(data, dataVersion, ranges, heightmapCalculator);
+	}
+
+	// does the same as deleteSections(CompoundTag, List<Range>) since 21w43a followed by calculating the heightmaps,
+	// but only the deleted sections, block entities and ticks are touched, everything else is copied without reading it
+	// into tags. only the block states and the heightmaps are read into tags to calculate the heightmaps, which are
+	// written at the end of the chunk.
+	// returns data itself if the status of the chunk doesn't allow deleting sections, and null if the data can't be handled.
+	public static byte[] deleteRawSections(byte[] data, int dataVersion, List<Range> ranges, HeightmapCalculator heightmapCalculator) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(data.length);
+		DataOutputStream out = new DataOutputStream(baos);
+		SectionRangeLookup sections = new SectionRangeLookup(ranges);
+
+		if (in.readByte() != COMPOUND) {
+			return null;
+		}
+		in.skipBytes(in.readUnsignedShort());
+		out.writeByte(COMPOUND);
+		out.writeUTF("");
+
+		boolean changeStatus = false;
+		CompoundTag heightmaps = null;
+		ListTag blockSections = null;
+		byte type;
+		while ((type = in.readByte()) != END) {
+			String name = in.readUTF();
+			if (type == COMPOUND && name.equals("Heightmaps")) {
+				heightmaps = NBTStreams.readCompound(in);
+				continue;
+			}
+			out.writeByte(type);
+			out.writeUTF(name);
+			if (type == STRING && name.equals("Status")) {
+				String status = in.readUTF();
+				switch (status) {
+					case "light", "spawn", "heightmaps", "full" -> {
+						out.writeUTF("features");
+						changeStatus = true;
+					}
+					default -> out.writeUTF(status);
+				}
+			} else if (type == LIST && name.equals("sections")) {
+				if ((blockSections = deleteRawSections(in, out, sections)) == null) {
+					return null;
+				}
+			} else if (type == LIST && (name.equals("block_entities") || name.equals("block_ticks") || name.equals("fluid_ticks"))) {
+				if (!deleteRawInSections(in, out, sections)) {
+					return null;
+				}
+			} else {
+				NBTStreams.copy(in, out, type);
+			}
+		}
+
+		// the status can come after the sections, so this is only known at the end
+		if (!changeStatus) {
+			return data;
+		}
+
+		// the heightmaps are calculated from the block states that are left, the same as the heightmaps of a CompoundTag
+		CompoundTag heightmapRoot = new CompoundTag();
+		heightmapRoot.putInt("DataVersion", dataVersion);
+		if (heightmaps != null) {
+			heightmapRoot.put("Heightmaps", heightmaps);
+		}
+		if (blockSections != null) {
+			heightmapRoot.put("sections", blockSections);
+		}
+		heightmapCalculator.allHeightmaps(heightmapRoot);
+		heightmaps = Helper.tagFromCompound(heightmapRoot, "Heightmaps");
+		if (heightmaps != null) {
+			out.writeByte(COMPOUND);
+			out.writeUTF("Heightmaps");
+			heightmaps.write(out);
+		}
+		out.writeByte(END);
+		return baos.toByteArray();
+	}
+
+	// returns the Y and the block states of all sections after deleting, or null if the sections can't be handled
+	private static ListTag deleteRawSections(DataInput in, DataOutputStream out, SectionRangeLookup sections) throws IOException {
+		byte elementType = in.readByte();
+		int length = in.readInt();
+		if (elementType != COMPOUND && length > 0) {
+			return null;
+		}
+		out.writeByte(elementType);
+		out.writeInt(length);
+
+		ListTag blockSections = new ListTag();
+		// the Y of a section can come after its block states, so they are buffered until the end of the section
+		ByteArrayOutputStream blockStates = new ByteArrayOutputStream();
+		DataOutputStream blockStatesOut = new DataOutputStream(blockStates);
+		ByteArrayOutputStream deletedBlockStates = new ByteArrayOutputStream();
+		DataOutputStream deletedBlockStatesOut = new DataOutputStream(deletedBlockStates);
+		ByteArrayOutputStream blockLight = new ByteArrayOutputStream();
+		DataOutputStream blockLightOut = new DataOutputStream(blockLight);
+		for (int i = 0; i < length; i++) {
+			blockStates.reset();
+			deletedBlockStates.reset();
+			blockLight.reset();
+			boolean hasBlockStates = false, hasBlockLight = false;
+			Integer y = null;
+			byte type;
+			while ((type = in.readByte()) != END) {
+				String name = in.readUTF();
+				if (type == COMPOUND && name.equals("block_states")) {
+					NBTStreams.copy(in, blockStatesOut, type);
+					hasBlockStates = true;
+				} else if (type == BYTE_ARRAY && name.equals("BlockLight")) {
+					NBTStreams.copy(in, blockLightOut, type);
+					hasBlockLight = true;
+				} else {
+					out.writeByte(type);
+					out.writeUTF(name);
+					if (name.equals("Y")) {
+						if (type != BYTE) {
+							return null;
+						}
+						y = (int) in.readByte();
+						out.writeByte(y);
+					} else {
+						NBTStreams.copy(in, out, type);
+					}
 				}
 			}
+
+			// deleteSection(CompoundTag) needs the block states, and a section without Y is read as section 0
+			boolean delete = hasBlockStates && sections.contains(y == null ? 0 : y);
+			if (hasBlockStates) {
+				ByteArrayOutputStream finalBlockStates = blockStates;
+				if (delete) {
+					deleteRawBlockStates(new DataInputStream(new ByteArrayInputStream(blockStates.toByteArray())), deletedBlockStatesOut);
+					finalBlockStates = deletedBlockStates;
+				}
+				out.writeByte(COMPOUND);
+				out.writeUTF("block_states");
+				finalBlockStates.writeTo(out);
+
+				// sections without a Y are ignored by the heightmap calculator
+				if (y != null) {
+					CompoundTag blockSection = new CompoundTag();
+					blockSection.putByte("Y", y.byteValue());
+					blockSection.put("block_states", NBTStreams.readCompound(new DataInputStream(new ByteArrayInputStream(finalBlockStates.toByteArray()))));
+					blockSections.add(blockSection);
+				}
+			}
+			if (hasBlockLight && !delete) {
+				out.writeByte(BYTE_ARRAY);
+				out.writeUTF("BlockLight");
+				blockLight.writeTo(out);
+			}
+			out.writeByte(END);
+		}
+		return blockSections;
+	}
+
+	// replaces the palette with air and removes the data, the same as deleteSection(CompoundTag)
+	private static void deleteRawBlockStates(DataInput in, DataOutputStream out) throws IOException {
+		byte type;
+		while ((type = in.readByte()) != END) {
+			String name = in.readUTF();
+			if (name.equals("data") || name.equals("palette")) {
+				NBTStreams.skip(in, type);
+			} else {
+				out.writeByte(type);
+				out.writeUTF(name);
+				NBTStreams.copy(in, out, type);
+			}
+		}
+		out.writeByte(LIST);
+		out.writeUTF("palette");
+		out.writeByte(COMPOUND);
+		out.writeInt(1);
+		out.writeByte(STRING);
+		out.writeUTF("Name");
+		out.writeUTF("minecraft:air");
+		out.writeByte(END);
+		out.writeByte(END);
+	}
+
+	// the same as deleteInSections(ListTag, List<Range>)
+	private static boolean deleteRawInSections(DataInput in, DataOutputStream out, SectionRangeLookup sections) throws IOException {
+		byte elementType = in.readByte();
+		int length = in.readInt();
+		if (elementType != COMPOUND && length > 0) {
+			return false;
 		}
+
+		ByteArrayOutputStream elements = new ByteArrayOutputStream();
+		ByteArrayOutputStream element = new ByteArrayOutputStream();
+		DataOutputStream elementOut = new DataOutputStream(element);
+		int kept = 0;
+		for (int i = 0; i < length; i++) {
+			element.reset();
+			Integer y = null;
+			byte type;
+			while ((type = in.readByte()) != END) {
+				String name = in.readUTF();
+				elementOut.writeByte(type);
+				elementOut.writeUTF(name);
+				if (name.equals("y") && type == INT) {
+					y = in.readInt();
+					elementOut.writeInt(y);
+				} else {
+					NBTStreams.copy(in, elementOut, type);
+				}
+			}
+			elementOut.writeByte(END);
+			if (y == null || !sections.contains(y >> 4)) {
+				element.writeTo(elements);
+				kept++;
+			}
+		}
+
+		// the same as a ListTag that is written after all of its elements were removed
+		out.writeByte(kept == 0 && length > 0 ? END : elementType);
+		out.writeInt(kept);
+		elements.writeTo(out);
+		return true;
 	}
 
 	// only delete blocks, not biomes
@@ -1,11 +1,19 @@
 package net.querz.mcaselector.version.anvil118;
 
+import net.querz.mcaselector.io.mca.NBTStreams;
 import net.querz.mcaselector.point.Point3i;
 import net.querz.mcaselector.version.ChunkRelocator;
 import net.querz.mcaselector.version.Helper;
 import net.querz.mcaselector.version.anvil117.Anvil117EntityRelocator;
 import net.querz.nbt.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Map;
+import static net.querz.mcaselector.io.mca.NBTStreams.*;
 import static net.querz.mcaselector.validation.ValidationHelper.silent;
 import static net.querz.mcaselector.version.anvil117.Anvil117EntityRelocator.*;
 
@@ -81,6 +89,188 @@ public class Anvil118ChunkRelocator implements ChunkRelocator {
 		return true;
 	}
 
+	// without a vertical offset, only the chunk coordinates, tile entities, ticks and structures change.
+	// everything else, most importantly the sections, is copied without reading it into tags.
+	// the result is the same as that of relocate(CompoundTag, Point3i), which is used for data this can't handle.
+	@Override
+	public byte[] relocate(byte[] data, int dataVersion, Point3i offset) throws IOException {
+		if (offset.getY() != 0 || dataVersion == 0) {
+			return null;
+		}
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(data.length + 32);
+		DataOutputStream out = new DataOutputStream(baos);
+
+		if (in.readByte() != COMPOUND) {
+			return null;
+		}
+		in.skipBytes(in.readUnsignedShort());
+		out.writeByte(COMPOUND);
+		out.writeUTF("");
+
+		if (dataVersion < 2844) {
+			boolean relocated = false;
+			byte type;
+			while ((type = in.readByte()) != END) {
+				String name = in.readUTF();
+				out.writeByte(type);
+				out.writeUTF(name);
+				if (type == COMPOUND && name.equals("Level")) {
+					if (!relocateChunk(in, out, offset, dataVersion)) {
+						return null;
+					}
+					relocated = true;
+				} else {
+					NBTStreams.copy(in, out, type);
+				}
+			}
+			out.writeByte(END);
+			if (!relocated) {
+				return null;
+			}
+		} else if (!relocateChunk(in, out, offset, dataVersion)) {
+			return null;
+		}
+		return baos.toByteArray();
+	}
+
+	// relocates the compound that contains the chunk data, "Level" before 21w43a and the root compound since
+	private boolean relocateChunk(DataInput in, DataOutputStream out, Point3i offset, int dataVersion) throws IOException {
+		boolean legacy = dataVersion < 2844;
+		Point3i chunkOffset = offset.blockToChunk();
+		int coordinates = 0;
+		byte type;
+		while ((type = in.readByte()) != END) {
+			String name = in.readUTF();
+			out.writeByte(type);
+			out.writeUTF(name);
+			if (name.equals("xPos") || name.equals("zPos")) {
+				if (type != INT) {
+					return false;
+				}
+				out.writeInt(in.readInt() + (name.equals("xPos") ? chunkOffset.getX() : chunkOffset.getZ()));
+				coordinates++;
+			} else if (type == LIST && name.equals(legacy ? "TileEntities" : "block_entities")) {
+				if (!relocateTileEntities(in, out, offset)) {
+					return false;
+				}
+			} else if (type == LIST && (name.equals(legacy ? "TileTicks" : "block_ticks") || name.equals(legacy ? "LiquidTicks" : "fluid_ticks"))) {
+				if (!relocateTicks(in, out, offset)) {
+					return false;
+				}
+			} else if (type == COMPOUND && name.equals(legacy ? "Structures" : "structures")) {
+				// structures are rare and small compared to the rest of the chunk
+				CompoundTag structures = NBTStreams.readCompound(in);
+				applyOffsetToStructures(structures, offset, dataVersion);
+				structures.write(out);
+			} else if (type == LIST && name.equals(legacy ? "Sections" : "sections")) {
+				if (!relocateSections(in, out)) {
+					return false;
+				}
+			} else {
+				NBTStreams.copy(in, out, type);
+			}
+		}
+		out.writeByte(END);
+		// relocate(CompoundTag, Point3i) adds the chunk coordinates if they don't exist
+		return coordinates == 2;
+	}
+
+	private boolean relocateTileEntities(DataInput in, DataOutputStream out, Point3i offset) throws IOException {
+		byte elementType = in.readByte();
+		int length = in.readInt();
+		if (elementType != COMPOUND && length > 0) {
+			return false;
+		}
+		out.writeByte(elementType);
+		out.writeInt(length);
+		// which fields of a tile entity contain coordinates depends on its id, which can be anywhere in the compound
+		for (int i = 0; i < length; i++) {
+			CompoundTag tileEntity = NBTStreams.readCompound(in);
+			applyOffsetToTileEntity(tileEntity, offset);
+			tileEntity.write(out);
+		}
+		return true;
+	}
+
+	private boolean relocateTicks(DataInput in, DataOutputStream out, Point3i offset) throws IOException {
+		byte elementType = in.readByte();
+		int length = in.readInt();
+		if (elementType != COMPOUND && length > 0) {
+			return false;
+		}
+		out.writeByte(elementType);
+		out.writeInt(length);
+		for (int i = 0; i < length; i++) {
+			byte type;
+			while ((type = in.readByte()) != END) {
+				String name = in.readUTF();
+				out.writeByte(type);
+				out.writeUTF(name);
+				if (name.equals("x") || name.equals("y") || name.equals("z")) {
+					if (type != INT) {
+						return false;
+					}
+					out.writeInt(in.readInt() + (name.equals("x") ? offset.getX() : name.equals("z") ? offset.getZ() : 0));
+				} else {
+					NBTStreams.copy(in, out, type);
+				}
+			}
+			out.writeByte(END);
+		}
+		return true;
+	}
+
+	// without a vertical offset, the only sections that are removed are the ones below the lowest section
+	private boolean relocateSections(DataInput in, DataOutputStream out) throws IOException {
+		byte elementType = in.readByte();
+		int length = in.readInt();
+		if (elementType != COMPOUND && length > 0) {
+			return false;
+		}
+
+		ByteArrayOutputStream sections = new ByteArrayOutputStream();
+		ByteArrayOutputStream section = new ByteArrayOutputStream();
+		DataOutputStream sectionOut = new DataOutputStream(section);
+		int kept = 0;
+		for (int i = 0; i < length; i++) {
+			section.reset();
+			boolean hasY = false;
+			byte y = 0;
+			byte type;
+			while ((type = in.readByte()) != END) {
+				String name = in.readUTF();
+				sectionOut.writeByte(type);
+				sectionOut.writeUTF(name);
+				if (name.equals("Y")) {
+					if (type != BYTE) {
+						return false;
+					}
+					y = in.readByte();
+					hasY = true;
+					sectionOut.writeByte(y);
+				} else {
+					NBTStreams.copy(in, sectionOut, type);
+				}
+			}
+			sectionOut.writeByte(END);
+			if (!hasY) {
+				return false;
+			}
+			if (y >= -4) {
+				section.writeTo(sections);
+				kept++;
+			}
+		}
+
+		// the sections are written to a new ListTag, which doesn't have an element type when it's empty
+		out.writeByte(kept == 0 ? END : COMPOUND);
+		out.writeInt(kept);
+		sections.writeTo(out);
+		return true;
+	}
+
 	private void applyOffsetToBiomes(IntArrayTag biomes, Point3i offset) {
 		if (biomes == null || biomes.getValue() == null || biomes.getValue().length != 1536) {
 			return;
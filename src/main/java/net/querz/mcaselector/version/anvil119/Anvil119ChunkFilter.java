@@ -1,18 +1,25 @@
 package net.querz.mcaselector.version.anvil119;
 
+import it.unimi.dsi.fastutil.ints.IntSet;
+import net.querz.mcaselector.io.mca.ChunkView;
 import net.querz.mcaselector.io.registry.BiomeRegistry;
 import net.querz.mcaselector.io.registry.StatusRegistry;
 import net.querz.mcaselector.point.Point2i;
-import net.querz.mcaselector.point.Point3i;
 import net.querz.mcaselector.range.Range;
+import net.querz.mcaselector.range.SectionRangeLookup;
 import net.querz.mcaselector.tile.Tile;
 import net.querz.mcaselector.version.Helper;
+import net.querz.mcaselector.version.HeightmapCalculator;
 import net.querz.mcaselector.version.anvil117.Anvil117ChunkFilter;
+import net.querz.mcaselector.version.anvil118.Anvil118ChunkFilter;
 import net.querz.nbt.*;
+import java.io.IOException;
 import java.util.*;
 
 public class Anvil119ChunkFilter extends Anvil117ChunkFilter {
 
+	private final HeightmapCalculator heightmapCalculator = new Anvil119HeightmapCalculator();
+
 	@Override
 	public boolean matchBlockNames(CompoundTag data, Collection<String> names) {
 		ListTag sections = Helper.tagFromCompound(data, "sections");
@@ -149,6 +156,50 @@ public class Anvil119ChunkFilter extends Anvil117ChunkFilter {
 		return false;
 	}
 
+	@Override
+	public ChunkView.BlockSection[] getBlockSections(CompoundTag data) {
+		ListTag sections = Helper.tagFromCompound(data, "sections");
+		if (sections == null) {
+			return null;
+		}
+
+		List<ChunkView.BlockSection> blockSections = new ArrayList<>(sections.size());
+		for (CompoundTag section : sections.iterateType(CompoundTag.class)) {
+			ListTag palette = Helper.tagFromCompound(Helper.tagFromCompound(section, "block_states"), "palette");
+			if (palette == null) {
+				continue;
+			}
+			long[] blockStates = Helper.longArrayFromCompound(Helper.tagFromCompound(section, "block_states"), "data");
+			blockSections.add(createBlockSection(getPaletteIDs(palette), blockStates));
+		}
+		return blockSections.toArray(new ChunkView.BlockSection[0]);
+	}
+
+	@Override
+	public Set<String> getBiomeNames(CompoundTag data) {
+		ListTag sections = Helper.tagFromCompound(data, "sections");
+		if (sections == null) {
+			return null;
+		}
+
+		Set<String> names = new HashSet<>();
+		for (CompoundTag section : sections.iterateType(CompoundTag.class)) {
+			ListTag biomePalette = Helper.tagFromCompound(Helper.tagFromCompound(section, "biomes"), "palette");
+			if (biomePalette == null) {
+				continue;
+			}
+			for (StringTag biomeName : biomePalette.iterateType(StringTag.class)) {
+				names.add(biomeName.getValue());
+			}
+		}
+		return names;
+	}
+
+	@Override
+	public IntSet getBiomeIDs(CompoundTag data) {
+		return null;
+	}
+
 	@Override
 	public void changeBiome(CompoundTag data, BiomeRegistry.BiomeIdentifier biome) {
 		ListTag sections = Helper.tagFromCompound(data, "sections");
@@ -234,6 +285,8 @@ public class Anvil119ChunkFilter extends Anvil117ChunkFilter {
 		if (tileEntities == null) {
 			tileEntities = new ListTag();
 		}
+		TileEntityIndex tileIndex = new TileEntityIndex(tileEntities);
+		List<BlockReplaceRule> rules = compileReplaceRules(replace);
 
 		for (CompoundTag section : sections.iterateType(CompoundTag.class)) {
 			CompoundTag blockStatesTag = section.getCompoundTag("block_states");
@@ -254,53 +307,22 @@ public class Anvil119ChunkFilter extends Anvil117ChunkFilter {
 				continue;
 			}
 
-			section.remove("BlockLight");
-			section.remove("SkyLight");
-
-			for (int i = 0; i < 4096; i++) {
-				CompoundTag blockState = getBlockAt(i, blockStates, palette);
-
-				for (Map.Entry<String, BlockReplaceData> entry : replace.entrySet()) {
-					if (!blockState.getString("Name").matches(entry.getKey())) {
-						continue;
-					}
-					BlockReplaceData replacement = entry.getValue();
-
-					try {
-						blockStates = setBlockAt(i, replacement.getState(), blockStates, palette);
-					} catch (Exception ex) {
-						throw new RuntimeException("failed to set block in section " + y, ex);
-					}
-
-					Point3i location = indexToLocation(i).add(pos.getX(), y * 16, pos.getZ());
-
-					if (replacement.getTile() != null) {
-						CompoundTag tile = replacement.getTile().copy();
-						tile.putInt("x", location.getX());
-						tile.putInt("y", location.getY());
-						tile.putInt("z", location.getZ());
-						tileEntities.add(tile);
-					} else if (tileEntities.size() != 0) {
-						for (int t = 0; t < tileEntities.size(); t++) {
-							CompoundTag tile = tileEntities.getCompound(t);
-							if (tile.getInt("x") == location.getX()
-								&& tile.getInt("y") == location.getY()
-								&& tile.getInt("z") == location.getZ()) {
-								tileEntities.remove(t);
-								break;
-							}
-						}
-					}
-
-				}
-			}
-
+			long[] newBlockStates;
 			try {
-				blockStates = cleanupPalette(blockStates, palette);
+				newBlockStates = replaceBlocksInSection(blockStates, palette, rules, pos.getX(), y * 16, pos.getZ(), tileIndex);
 			} catch (Exception ex) {
-				throw new RuntimeException("failed to cleanup section " + y, ex);
+				throw new RuntimeException("failed to replace blocks in section " + y, ex);
 			}
 
+			// nothing was replaced in this section
+			if (newBlockStates == blockStates) {
+				continue;
+			}
+
+			section.remove("BlockLight");
+			section.remove("SkyLight");
+			blockStates = newBlockStates;
+
 			if (blockStates == null) {
 				blockStatesTag.remove("data");
 			} else {
@@ -308,23 +330,31 @@ public class Anvil119ChunkFilter extends Anvil117ChunkFilter {
 			}
 		}
 
-		data.put("block_entities", tileEntities);
+		data.put("block_entities", tileIndex.getTileEntities());
 	}
 
 	@Override
-	protected long[] adjustBlockStateBits(ListTag palette, long[] blockStates, Map<Integer, Integer> oldToNewMapping) {
+	protected long[] adjustBlockStateBits(ListTag palette, long[] blockStates, int bits, Map<Integer, Integer> oldToNewMapping) {
 		if (palette.size() == 1) {
 			return null;
 		}
-		return super.adjustBlockStateBits(palette, blockStates, oldToNewMapping);
+		return super.adjustBlockStateBits(palette, blockStates, bits, oldToNewMapping);
+	}
+
+	@Override
+	protected int getBlockStateBits(int paletteSize, long[] blockStates) {
+		if (blockStates == null) {
+			return 0;
+		}
+		return super.getBlockStateBits(paletteSize, blockStates);
 	}
 
 	@Override
-	protected int getPaletteIndex(int blockIndex, long[] blockStates) {
+	protected int getPaletteIndex(int blockIndex, long[] blockStates, int bits) {
 		if (blockStates == null) {
 			return 0;
 		}
-		return super.getPaletteIndex(blockIndex, blockStates);
+		return super.getPaletteIndex(blockIndex, blockStates, bits);
 	}
 
 	protected CompoundTag completeSection(CompoundTag section, int y) {
@@ -472,14 +502,21 @@ public class Anvil119ChunkFilter extends Anvil117ChunkFilter {
 		if (sections == null) {
 			return;
 		}
+		SectionRangeLookup lookup = new SectionRangeLookup(ranges);
 		for (int i = 0; i < sections.size(); i++) {
 			CompoundTag section = sections.getCompound(i);
-			for (Range range : ranges) {
-				if (range.contains(section.getInt("Y"))) {
-					deleteSection(section);
-				}
+			if (lookup.contains(section.getInt("Y"))) {
+				deleteSection(section);
 			}
 		}
+		Anvil118ChunkFilter.deleteInSections(Helper.tagFromCompound(data, "block_entities"), lookup);
+		Anvil118ChunkFilter.deleteInSections(Helper.tagFromCompound(data, "block_ticks"), lookup);
+		Anvil118ChunkFilter.deleteInSections(Helper.tagFromCompound(data, "fluid_ticks"), lookup);
+	}
+
+	@Override
+	public byte[] deleteSections(byte[] data, int dataVersion, List<Range> ranges) throws IOException {
+		return Anvil118ChunkFilter.deleteRawSections(data, dataVersion, ranges, heightmapCalculator);
 	}
 
 	// only delete blocks, not biomes
@@ -1,6 +1,6 @@
 package net.querz.mcaselector.version.anvil119;
 
-import net.querz.mcaselector.math.Bits;
+import net.querz.mcaselector.math.PackedArrayDecoder;
 import net.querz.mcaselector.tile.Tile;
 import net.querz.mcaselector.version.ChunkRenderer;
 import net.querz.mcaselector.version.ColorMapping;
@@ -38,6 +38,9 @@ public class Anvil119ChunkRenderer implements ChunkRenderer {
 			}
 		});
 
+		short[][] buffers = PackedArrayDecoder.getSectionBuffers(palettes.length);
+		short[][] decodedBlockStates = new short[palettes.length][];
+
 		for (int cx = 0; cx < Tile.CHUNK_SIZE; cx += scale) {
 			zLoop:
 			for (int cz = 0; cz < Tile.CHUNK_SIZE; cz += scale) {
@@ -53,16 +56,15 @@ public class Anvil119ChunkRenderer implements ChunkRenderer {
 
 					int sectionHeight = (i - 4) * Tile.CHUNK_SIZE;
 
-					int bits = blockStates == null ? 0 : blockStates.length >> 6;
-					int clean = ((int) Math.pow(2, bits) - 1);
+					short[] blockIndices = decodedBlockStates[i];
+					if (blockIndices == null) {
+						blockIndices = decodedBlockStates[i] = decodeBlockStates(blockStates, palette, buffers[i]);
+					}
 
 					long[] biomeIndices = biomesArray[i];
 					ListTag biomesPalette = biomePalettes[i];
 
-					int biomeBits = 1;
-					if (biomesPalette != null) {
-						biomeBits = 32 - Bits.fastNumberOfLeadingZeroes(Math.max(biomesPalette.size() - 1, 1));
-					}
+					int biomeBits = biomesPalette == null ? 0 : PackedArrayDecoder.biomeBits(biomesPalette.size());
 
 					int startHeight;
 					if (absHeight >> 4 == i) {
@@ -72,7 +74,7 @@ public class Anvil119ChunkRenderer implements ChunkRenderer {
 					}
 
 					for (int cy = startHeight; cy >= 0; cy--) {
-						int paletteIndex = getPaletteIndex(getIndex(cx, cy, cz), blockStates, bits, clean);
+						int paletteIndex = blockIndices[getIndex(cx, cy, cz)];
 						CompoundTag blockData = palette.getCompound(paletteIndex);
 
 						if (isEmpty(blockData)) {
@@ -142,17 +144,13 @@ public class Anvil119ChunkRenderer implements ChunkRenderer {
 		height = height + 64;
 
 		int cy = height % 16;
-		int bits = blockStates == null ? 0 : blockStates.length >> 6;
-		int clean = ((int) Math.pow(2, bits) - 1);
+		int bits = blockStates == null ? 0 : PackedArrayDecoder.blockBits(palette.size(), blockStates.length);
 
-		int biomeBits = 1;
-		if (biomesPalette != null) {
-			biomeBits = 32 - Bits.fastNumberOfLeadingZeroes(Math.max(biomesPalette.size() - 1, 1));
-		}
+		int biomeBits = biomesPalette == null ? 0 : PackedArrayDecoder.biomeBits(biomesPalette.size());
 
 		for (int cx = 0; cx < Tile.CHUNK_SIZE; cx += scale) {
 			for (int cz = 0; cz < Tile.CHUNK_SIZE; cz += scale) {
-				int paletteIndex = getPaletteIndex(getIndex(cx, cy, cz), blockStates, bits, clean);
+				int paletteIndex = PackedArrayDecoder.get(blockStates, bits, getIndex(cx, cy, cz));
 				CompoundTag blockData = palette.getCompound(paletteIndex);
 				if (isEmpty(blockData)) {
 					continue;
@@ -192,6 +190,9 @@ public class Anvil119ChunkRenderer implements ChunkRenderer {
 			}
 		});
 
+		short[][] buffers = PackedArrayDecoder.getSectionBuffers(palettes.length);
+		short[][] decodedBlockStates = new short[palettes.length][];
+
 		for (int cx = 0; cx < Tile.CHUNK_SIZE; cx += scale) {
 			zLoop:
 			for (int cz = 0; cz < Tile.CHUNK_SIZE; cz += scale) {
@@ -209,16 +210,15 @@ public class Anvil119ChunkRenderer implements ChunkRenderer {
 
 					int sectionHeight = (i - 4) * Tile.CHUNK_SIZE;
 
-					int bits = blockStates == null ? 0 : blockStates.length >> 6;
-					int clean = ((int) Math.pow(2, bits) - 1);
+					short[] blockIndices = decodedBlockStates[i];
+					if (blockIndices == null) {
+						blockIndices = decodedBlockStates[i] = decodeBlockStates(blockStates, palette, buffers[i]);
+					}
 
 					long[] biomeIndices = biomesArray[i];
 					ListTag biomesPalette = biomePalettes[i];
 
-					int biomeBits = 1;
-					if (biomesPalette != null) {
-						biomeBits = 32 - Bits.fastNumberOfLeadingZeroes(Math.max(biomesPalette.size() - 1, 1));
-					}
+					int biomeBits = biomesPalette == null ? 0 : PackedArrayDecoder.biomeBits(biomesPalette.size());
 
 					int startHeight;
 					if (absHeight >> 4 == i) {
@@ -228,7 +228,7 @@ public class Anvil119ChunkRenderer implements ChunkRenderer {
 					}
 
 					for (int cy = startHeight; cy >= 0; cy--) {
-						int paletteIndex = getPaletteIndex(getIndex(cx, cy, cz), blockStates, bits, clean);
+						int paletteIndex = blockIndices[getIndex(cx, cy, cz)];
 						CompoundTag blockData = palette.getCompound(paletteIndex);
 
 						if (!isEmptyOrFoliage(blockData, colorMapping)) {
@@ -319,21 +319,15 @@ public class Anvil119ChunkRenderer implements ChunkRenderer {
 			return palette.getString(0);
 		}
 
-		int indexesPerLong = 64 / bits;
 		int biomeIndex = getBiomeIndex(biomeX >> 2 % 4, biomeY >> 2 % 4, biomeZ >> 2 % 4);
-		int biomeLongIndex = biomeIndex / indexesPerLong;
-		int startBit = (biomeIndex % indexesPerLong) * bits;
-		return silent(() -> palette.getString((int) Bits.bitRange(biomes[biomeLongIndex], startBit, startBit + bits)), "");
+		return silent(() -> palette.getString(PackedArrayDecoder.get(biomes, bits, biomeIndex)), "");
 	}
 
-	private int getPaletteIndex(int index, long[] blockStates, int bits, int clean) {
+	private short[] decodeBlockStates(long[] blockStates, ListTag palette, short[] buffer) {
 		if (blockStates == null) {
-			return 0;
+			return PackedArrayDecoder.decode(null, 0, buffer);
 		}
-		int indicesPerLong = (int) (64D / bits);
-		int blockStatesIndex = index / indicesPerLong;
-		int startBit = (index % indicesPerLong) * bits;
-		return (int) (blockStates[blockStatesIndex] >> startBit) & clean;
+		return PackedArrayDecoder.decode(blockStates, PackedArrayDecoder.blockBits(palette.size(), blockStates.length), buffer);
 	}
 
 }
@@ -0,0 +1,95 @@
+package net.querz.mcaselector.io;
+
+import net.querz.mcaselector.filter.filters.ScriptFilter;
+import net.querz.mcaselector.io.mca.ChunkData;
+import org.junit.Test;
+import javax.script.ScriptException;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+
+public class GroovyScriptTest {
+
+	private static final ChunkData data = new ChunkData(null, null, null, true);
+
+	@Test
+	public void testUntypedFunctions() throws ScriptException {
+		GroovyScript script = GroovyScript.compile("""
+				def before() { seen = 'before' }
+				def filter(data) { data.selected() }
+				def after() { seen = 'after' }
+				""");
+		// an assignment is the return value of a function without a return type
+		assertEquals("before", script.function("before").callMain());
+		assertEquals(true, script.function("filter", ChunkData.class).call(data));
+		assertEquals("after", script.function("after").callMain());
+	}
+
+	@Test
+	public void testTypedFunctions() throws ScriptException {
+		GroovyScript script = GroovyScript.compile("""
+				import net.querz.mcaselector.io.mca.ChunkData
+				void before() {}
+				boolean filter(ChunkData data) { !data.selected() }
+				""");
+		assertNull(script.function("before").callMain());
+		assertEquals(false, script.function("filter", ChunkData.class).call(data));
+	}
+
+	@Test
+	public void testFunctionWithOtherParameterTypeIsNotUsed() throws ScriptException {
+		GroovyScript script = GroovyScript.compile("def filter(String s) { true }");
+		try {
+			script.function("filter", ChunkData.class).call(data);
+			fail("expected a MissingMethodException");
+		} catch (groovy.lang.MissingMethodException ex) {
+			assertEquals("filter", ex.getMethod());
+		}
+	}
+
+	@Test
+	public void testClosureInBinding() throws ScriptException {
+		GroovyScript script = GroovyScript.compile("filter = { d -> d.selected() }");
+		assertEquals(true, script.function("filter", ChunkData.class).call(data));
+	}
+
+	@Test
+	public void testFieldsPerThreadAndSharedBinding() throws Exception {
+		GroovyScript script = GroovyScript.compile("""
+				import groovy.transform.Field
+				@Field int calls = 0
+				total = 0
+				def filter(data) {
+					calls++
+					synchronized (binding) { total++ }
+					calls
+				}
+				def after() { total }
+				""");
+		GroovyScript.Function filter = script.function("filter", ChunkData.class);
+		assertEquals(1, filter.call(data));
+		assertEquals(2, filter.call(data));
+
+		AtomicInteger other = new AtomicInteger();
+		Thread thread = new Thread(() -> other.set((Integer) filter.call(data)));
+		thread.start();
+		thread.join();
+		// the other thread has its own instance with its own fields
+		assertEquals(1, other.get());
+		assertEquals(3, script.function("after").callMain());
+	}
+
+	@Test
+	public void testScriptFilter() {
+		ScriptFilter filter = new ScriptFilter();
+		filter.setFilterValue("def before() {}\ndef filter(data) { data.selected() }\ndef after() {}");
+		assertTrue(filter.isValid());
+		filter.before();
+		assertTrue(filter.matches(data));
+		assertTrue(filter.clone().matches(data));
+		filter.after();
+
+		filter.setFilterValue("def filter(data) {");
+		assertFalse(filter.isValid());
+		assertFalse(filter.matches(data));
+	}
+}
@@ -0,0 +1,120 @@
+package net.querz.mcaselector.math;
+
+import org.junit.Test;
+import java.util.Random;
+import static org.junit.Assert.*;
+
+public class PackedArrayDecoderTest {
+
+	@Test
+	public void testDecodeAligned() {
+		Random random = new Random(1);
+		for (int bits = 1; bits <= 16; bits++) {
+			int[] values = randomValues(random, 4096, bits);
+			long[] data = packAligned(values, bits);
+			short[] out = PackedArrayDecoder.decode(data, bits, new short[4096]);
+			for (int i = 0; i < values.length; i++) {
+				assertEquals("bits " + bits + ", index " + i, values[i], out[i] & 0xFFFF);
+				assertEquals("bits " + bits + ", index " + i, values[i], PackedArrayDecoder.get(data, bits, i));
+			}
+		}
+	}
+
+	@Test
+	public void testDecodeSpanning() {
+		Random random = new Random(2);
+		for (int bits = 1; bits <= 16; bits++) {
+			int[] values = randomValues(random, 4096, bits);
+			long[] data = packSpanning(values, bits);
+			assertEquals(bits, PackedArrayDecoder.spanningBits(data.length, 4096));
+			short[] out = PackedArrayDecoder.decodeSpanning(data, bits, new short[4096]);
+			for (int i = 0; i < values.length; i++) {
+				assertEquals("bits " + bits + ", index " + i, values[i], out[i] & 0xFFFF);
+				assertEquals("bits " + bits + ", index " + i, values[i], PackedArrayDecoder.getSpanning(data, bits, i));
+			}
+		}
+	}
+
+	@Test
+	public void testDecodeBiomes() {
+		// biomes of 1.18+ sections only have 64 values, so the last long isn't completely filled for most bit counts
+		Random random = new Random(3);
+		for (int bits = 1; bits <= 6; bits++) {
+			int[] values = randomValues(random, 64, bits);
+			short[] out = PackedArrayDecoder.decode(packAligned(values, bits), bits, new short[64]);
+			for (int i = 0; i < values.length; i++) {
+				assertEquals("bits " + bits + ", index " + i, values[i], out[i] & 0xFFFF);
+			}
+		}
+	}
+
+	@Test
+	public void testShortDataIsPadded() {
+		short[] out = new short[4096];
+		java.util.Arrays.fill(out, (short) 7);
+		PackedArrayDecoder.decode(new long[]{-1L}, 4, out);
+		for (int i = 0; i < 16; i++) {
+			assertEquals(15, out[i]);
+		}
+		for (int i = 16; i < out.length; i++) {
+			assertEquals(0, out[i]);
+		}
+
+		java.util.Arrays.fill(out, (short) 7);
+		PackedArrayDecoder.decodeSpanning(new long[]{-1L, -1L}, 5, out);
+		for (int i = 0; i < 25; i++) {
+			assertEquals(31, out[i]);
+		}
+		for (int i = 25; i < out.length; i++) {
+			assertEquals(0, out[i]);
+		}
+
+		PackedArrayDecoder.decode(null, 4, out);
+		PackedArrayDecoder.decodeSpanning(new long[0], 5, out);
+		for (short value : out) {
+			assertEquals(0, value);
+		}
+	}
+
+	@Test
+	public void testBlockBits() {
+		// 11 and 12 bits both need 820 longs, 13 to 16 bits all need 1024 longs
+		assertEquals(11, PackedArrayDecoder.blockBits(2048, 820));
+		assertEquals(12, PackedArrayDecoder.blockBits(2049, 820));
+		assertEquals(13, PackedArrayDecoder.blockBits(4096, 1024));
+		assertEquals(16, PackedArrayDecoder.blockBits(40000, 1024));
+		assertEquals(4, PackedArrayDecoder.blockBits(1, 256));
+		// data that wasn't written for this palette size is read with the bits of its length
+		assertEquals(5, PackedArrayDecoder.blockBits(2, 342));
+	}
+
+	private static int[] randomValues(Random random, int count, int bits) {
+		int[] values = new int[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = random.nextInt(1 << bits);
+		}
+		return values;
+	}
+
+	private static long[] packAligned(int[] values, int bits) {
+		int valuesPerLong = 64 / bits;
+		long[] data = new long[(values.length + valuesPerLong - 1) / valuesPerLong];
+		for (int i = 0; i < values.length; i++) {
+			data[i / valuesPerLong] |= (long) values[i] << i % valuesPerLong * bits;
+		}
+		return data;
+	}
+
+	private static long[] packSpanning(int[] values, int bits) {
+		long[] data = new long[values.length * bits / 64];
+		for (int i = 0; i < values.length; i++) {
+			for (int b = 0; b < bits; b++) {
+				if ((values[i] >> b & 1) != 0) {
+					int bit = i * bits + b;
+					data[bit >> 6] |= 1L << bit;
+				}
+			}
+		}
+		return data;
+	}
+}
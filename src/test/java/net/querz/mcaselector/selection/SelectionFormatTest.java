@@ -0,0 +1,196 @@
+package net.querz.mcaselector.selection;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.querz.mcaselector.point.Point2i;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+
+public class SelectionFormatTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		Selection selection = selection();
+		File file = folder.newFile("selection.sel");
+		selection.saveToFile(file);
+
+		assertEquals(SelectionFormat.BINARY, SelectionFormat.detect(file));
+		assertSelectionEquals(selection, Selection.readFromFile(file));
+	}
+
+	@Test
+	public void testRoundTripInverted() throws IOException {
+		Selection selection = selection();
+		selection.setInverted(true);
+		File file = folder.newFile("inverted.sel");
+		selection.saveToFile(file);
+
+		Selection read = Selection.readFromFile(file);
+		assertTrue(read.isInverted());
+		assertSelectionEquals(selection, read);
+	}
+
+	@Test
+	public void testRoundTripEmpty() throws IOException {
+		File file = folder.newFile("empty.sel");
+		new Selection().saveToFile(file);
+
+		Selection read = Selection.readFromFile(file);
+		assertTrue(read.isEmpty());
+		assertFalse(read.isInverted());
+	}
+
+	@Test
+	public void testSameAsCSV() throws IOException {
+		Selection selection = selection();
+		File csv = folder.newFile("selection.csv");
+		File binary = folder.newFile("selection.sel");
+		selection.saveToFile(csv);
+		selection.saveToFile(binary);
+
+		assertEquals(SelectionFormat.CSV, SelectionFormat.detect(csv));
+		assertSelectionEquals(Selection.readFromFile(csv), Selection.readFromFile(binary));
+	}
+
+	@Test
+	public void testFullRegionsAreRunLengthEncoded() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (SelectionWriter writer = new SelectionWriter(baos, false)) {
+			// a run from 0|-2 to 0|2, then full regions at x = 1 that are interrupted by a partial region
+			for (int z = -2; z <= 2; z++) {
+				writer.writeRegion(new Point2i(0, z).asLong(), null);
+			}
+			ChunkSet full = new ChunkSet();
+			full.fill();
+			writer.writeRegion(new Point2i(1, 0).asLong(), full);
+			writer.writeRegion(new Point2i(1, 1).asLong(), chunks(5, 1023));
+			writer.writeRegion(new Point2i(1, 2).asLong(), null);
+		}
+		byte[] data = baos.toByteArray();
+		// header, the full runs 0|-2 to 0|2, 1|0 and 1|2, the partial region 1|1 and the end marker
+		assertEquals(6 + 3 * 13 + (1 + 8 + 16 * 8) + 1, data.length);
+
+		List<Long> regions = new ArrayList<>();
+		List<ChunkSet> chunks = new ArrayList<>();
+		try (SelectionReader reader = new SelectionReader(new ByteArrayInputStream(data))) {
+			assertFalse(reader.isInverted());
+			while (reader.next()) {
+				regions.add(reader.getRegion());
+				chunks.add(reader.getChunks());
+			}
+			assertFalse(reader.next());
+		}
+		List<Long> expected = new ArrayList<>();
+		for (int z = -2; z <= 2; z++) {
+			expected.add(new Point2i(0, z).asLong());
+		}
+		expected.add(new Point2i(1, 0).asLong());
+		expected.add(new Point2i(1, 1).asLong());
+		expected.add(new Point2i(1, 2).asLong());
+		assertEquals(expected, regions);
+		assertNull(chunks.get(5));
+		assertChunkSetEquals(chunks(5, 1023), chunks.get(6));
+		assertNull(chunks.get(7));
+	}
+
+	@Test
+	public void testEmptyRegionsAreSkipped() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (SelectionWriter writer = new SelectionWriter(baos, true)) {
+			writer.writeRegion(new Point2i(3, 3).asLong(), new ChunkSet());
+		}
+		try (SelectionReader reader = new SelectionReader(new ByteArrayInputStream(baos.toByteArray()))) {
+			assertTrue(reader.isInverted());
+			assertFalse(reader.next());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testRegionsOutOfOrder() throws IOException {
+		try (SelectionWriter writer = new SelectionWriter(new ByteArrayOutputStream(), false)) {
+			writer.writeRegion(new Point2i(0, 1).asLong(), null);
+			writer.writeRegion(new Point2i(0, 0).asLong(), null);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidHeader() throws IOException {
+		new SelectionReader(new ByteArrayInputStream("0;0\n".getBytes()));
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnsupportedVersion() throws IOException {
+		new SelectionReader(new ByteArrayInputStream(new byte[]{'M', 'C', 'A', 'S', SelectionFormat.VERSION + 1, 0, SelectionFormat.END}));
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncated() throws IOException {
+		File file = folder.newFile("truncated.sel");
+		selection().saveToFile(file);
+		byte[] data = Files.readAllBytes(file.toPath());
+		Files.write(file.toPath(), Arrays.copyOf(data, data.length - 20));
+		Selection.readFromFile(file);
+	}
+
+	// partial and full regions in all quadrants, with runs of full regions that cross z = 0
+	private static Selection selection() {
+		Selection selection = new Selection();
+		for (int z = -3; z <= 2; z++) {
+			selection.addRegion(new Point2i(-1, z).asLong());
+		}
+		selection.addRegion(new Point2i(0, 5).asLong());
+		selection.addRegion(new Point2i(0, 7).asLong());
+		selection.addRegion(new Point2i(Integer.MAX_VALUE, Integer.MIN_VALUE).asLong());
+		selection.addAll(new Point2i(4, -4), chunks(0, 31, 32, 1023));
+		selection.addAll(new Point2i(-7, 9), chunks(511));
+		selection.addAll(new Point2i(0, 6), chunks(1, 2, 3, 700));
+		return selection;
+	}
+
+	private static ChunkSet chunks(int... indices) {
+		ChunkSet chunks = new ChunkSet();
+		for (int index : indices) {
+			chunks.set(index);
+		}
+		return chunks;
+	}
+
+	private static void assertSelectionEquals(Selection expected, Selection actual) {
+		assertEquals(expected.isInverted(), actual.isInverted());
+		assertEquals(regions(expected).keySet(), regions(actual).keySet());
+		for (Long2ObjectMap.Entry<ChunkSet> entry : regions(expected).long2ObjectEntrySet()) {
+			ChunkSet actualChunks = regions(actual).get(entry.getLongKey());
+			if (entry.getValue() == null) {
+				assertNull("region " + new Point2i(entry.getLongKey()), actualChunks);
+			} else {
+				assertChunkSetEquals(entry.getValue(), actualChunks);
+			}
+		}
+	}
+
+	private static Long2ObjectOpenHashMap<ChunkSet> regions(Selection selection) {
+		Long2ObjectOpenHashMap<ChunkSet> regions = new Long2ObjectOpenHashMap<>();
+		for (Long2ObjectMap.Entry<ChunkSet> entry : selection) {
+			regions.put(entry.getLongKey(), entry.getValue());
+		}
+		return regions;
+	}
+
+	private static void assertChunkSetEquals(ChunkSet expected, ChunkSet actual) {
+		assertNotNull(actual);
+		assertArrayEquals(expected.words, actual.words);
+	}
+}
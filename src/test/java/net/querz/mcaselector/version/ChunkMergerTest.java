@@ -0,0 +1,84 @@
+package net.querz.mcaselector.version;
+
+import net.querz.mcaselector.range.Range;
+import net.querz.mcaselector.version.anvil119.Anvil119ChunkMerger;
+import net.querz.nbt.CompoundTag;
+import net.querz.nbt.ListTag;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+
+public class ChunkMergerTest {
+
+	private final ChunkMerger merger = new Anvil119ChunkMerger();
+
+	@Test
+	public void testMergeSections() {
+		ListTag destination = list(ChunkMerger.SectionY.SECTION, "destination", 3, 2, 1, 0, -1, -2);
+		ListTag source = list(ChunkMerger.SectionY.SECTION, "source", -2, -1, 0, 1, 2, 3);
+
+		merger.mergeLists(source, destination, List.of(new Range(0, 1), new Range(3, 5)), ChunkMerger.SectionY.SECTION, 0);
+		assertEquals(List.of("destination-2", "destination-1", "source0", "source1", "destination2", "source3"), names(destination));
+	}
+
+	@Test
+	public void testMergeWithOffset() {
+		ListTag destination = list(ChunkMerger.SectionY.BLOCK, "destination", 0, 1, 2, 3);
+		ListTag source = list(ChunkMerger.SectionY.BLOCK, "source", 0, 1, 2, 3, 3);
+
+		// source sections 2 and 3 end up in the destination sections 1 and 2
+		merger.mergeLists(source, destination, List.of(new Range(1, 2)), ChunkMerger.SectionY.BLOCK, 1);
+		assertEquals(List.of("destination0", "source2", "source3", "source3", "destination3"), names(destination));
+	}
+
+	@Test
+	public void testMergeEntities() {
+		ListTag destination = list(ChunkMerger.SectionY.ENTITY, "destination", -4, 0, 4);
+		ListTag source = list(ChunkMerger.SectionY.ENTITY, "source", -4, 0, 4);
+
+		merger.mergeLists(source, destination, List.of(new Range(-4, -4), new Range(4, 4)), ChunkMerger.SectionY.ENTITY, 0);
+		assertEquals(List.of("source-4", "destination0", "source4"), names(destination));
+	}
+
+	@Test
+	public void testMergeEmpty() {
+		ListTag destination = new ListTag();
+		ListTag source = list(ChunkMerger.SectionY.SECTION, "source", 0, 1);
+
+		merger.mergeLists(source, destination, List.of(new Range(1, 1)), ChunkMerger.SectionY.SECTION, 0);
+		assertEquals(List.of("source1"), names(destination));
+
+		merger.mergeLists(new ListTag(), destination, List.of(new Range(1, 1)), ChunkMerger.SectionY.SECTION, 0);
+		assertEquals(List.of(), names(destination));
+	}
+
+	private static ListTag list(ChunkMerger.SectionY sectionY, String name, int... sections) {
+		ListTag list = new ListTag();
+		for (int section : sections) {
+			CompoundTag element = new CompoundTag();
+			element.putString("name", name + section);
+			switch (sectionY) {
+				case SECTION -> element.putByte("Y", (byte) section);
+				case BLOCK -> element.putInt("y", section * 16 + 7);
+				case ENTITY -> {
+					ListTag pos = new ListTag();
+					pos.addDouble(0.5);
+					pos.addDouble(section * 16 + 3.5);
+					pos.addDouble(0.5);
+					element.put("Pos", pos);
+				}
+			}
+			list.add(element);
+		}
+		return list;
+	}
+
+	private static List<String> names(ListTag list) {
+		List<String> names = new ArrayList<>();
+		for (int i = 0; i < list.size(); i++) {
+			names.add(list.getCompound(i).getString("name"));
+		}
+		return names;
+	}
+}
@@ -0,0 +1,188 @@
+package net.querz.mcaselector.version.anvil118;
+
+import net.querz.mcaselector.range.Range;
+import net.querz.mcaselector.version.ChunkFilter;
+import net.querz.mcaselector.version.HeightmapCalculator;
+import net.querz.mcaselector.version.anvil119.Anvil119ChunkFilter;
+import net.querz.mcaselector.version.anvil119.Anvil119HeightmapCalculator;
+import net.querz.nbt.CompoundTag;
+import net.querz.nbt.ListTag;
+import net.querz.nbt.Tag;
+import net.querz.nbt.io.NBTReader;
+import net.querz.nbt.io.NBTWriter;
+import org.junit.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import static org.junit.Assert.*;
+
+public class Anvil118ChunkFilterTest {
+
+	private static final List<List<Range>> ranges = List.of(
+		List.of(new Range(-4, -4)),
+		List.of(new Range(0, 2)),
+		List.of(new Range(-4, -1), new Range(2, 2)),
+		List.of(new Range(Integer.MIN_VALUE, Integer.MAX_VALUE)),
+		List.of(new Range(10, 12)));
+
+	@Test
+	public void testRawEqualsTree() throws IOException {
+		for (List<Range> range : ranges) {
+			assertEquivalent(new Anvil118ChunkFilter(), new Anvil118HeightmapCalculator(), chunk(2975, true, false), range);
+			assertEquivalent(new Anvil118ChunkFilter(), new Anvil118HeightmapCalculator(), chunk(2975, false, true), range);
+			assertEquivalent(new Anvil119ChunkFilter(), new Anvil119HeightmapCalculator(), chunk(3465, true, false), range);
+			assertEquivalent(new Anvil119ChunkFilter(), new Anvil119HeightmapCalculator(), chunk(3465, false, true), range);
+		}
+	}
+
+	@Test
+	public void testWithoutHeightmaps() throws IOException {
+		CompoundTag chunk = chunk(3465, true, false);
+		chunk.remove("Heightmaps");
+		assertEquivalent(new Anvil119ChunkFilter(), new Anvil119HeightmapCalculator(), chunk, List.of(new Range(0, 2)));
+	}
+
+	@Test
+	public void testIgnoresStatus() throws IOException {
+		CompoundTag chunk = chunk(3465, true, false);
+		chunk.putString("Status", "features");
+		byte[] data = write(chunk);
+		assertSame(data, new Anvil119ChunkFilter().deleteSections(data, 3465, List.of(new Range(0, 2))));
+	}
+
+	@Test
+	public void testFallsBack() throws IOException {
+		assertNull(new Anvil118ChunkFilter().deleteSections(write(chunk(2840, true, false)), 2840, List.of(new Range(0, 2))));
+	}
+
+	private void assertEquivalent(ChunkFilter filter, HeightmapCalculator heightmapCalculator, CompoundTag chunk, List<Range> ranges) throws IOException {
+		int dataVersion = chunk.getInt("DataVersion");
+		byte[] raw = filter.deleteSections(write(chunk), dataVersion, ranges);
+		assertNotNull("raw deletion of " + dataVersion + " in " + ranges + " fell back", raw);
+
+		// the same as RegionChunk.deleteSections(List<Range>) on a chunk that is read into tags
+		CompoundTag tree = chunk.copy();
+		filter.deleteSections(tree, ranges);
+		heightmapCalculator.allHeightmaps(tree);
+
+		assertEquals("chunk " + dataVersion + " with sections deleted in " + ranges, tree, read(raw));
+	}
+
+	private static byte[] write(Tag tag) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new NBTWriter().write(new DataOutputStream(baos), tag);
+		return baos.toByteArray();
+	}
+
+	private static Tag read(byte[] data) throws IOException {
+		return new NBTReader().read(new DataInputStream(new ByteArrayInputStream(data)));
+	}
+
+	// a chunk with stale heightmaps. the status can be written after the sections, then it is only known at the end.
+	private static CompoundTag chunk(int dataVersion, boolean statusFirst, boolean yLast) {
+		CompoundTag root = new CompoundTag();
+		root.putInt("DataVersion", dataVersion);
+		if (dataVersion < 2844) {
+			CompoundTag level = new CompoundTag();
+			level.putString("Status", "full");
+			root.put("Level", level);
+			return root;
+		}
+		if (statusFirst) {
+			root.putString("Status", "full");
+		}
+		root.putInt("xPos", 5);
+		root.putInt("zPos", -7);
+		root.putInt("yPos", -4);
+
+		CompoundTag heightmaps = new CompoundTag();
+		heightmaps.putLongArray("WORLD_SURFACE", new long[37]);
+		heightmaps.putLongArray("MOTION_BLOCKING", new long[37]);
+		heightmaps.putLongArray("WORLD_SURFACE_WG", new long[37]);
+		root.put("Heightmaps", heightmaps);
+
+		ListTag sections = new ListTag();
+		for (int y = -4; y < 4; y++) {
+			sections.add(section(y, yLast));
+		}
+		CompoundTag noY = section(0, false);
+		noY.remove("Y");
+		sections.add(noY);
+		root.put("sections", sections);
+
+		ListTag blockEntities = new ListTag();
+		ListTag blockTicks = new ListTag();
+		ListTag fluidTicks = new ListTag();
+		for (int y = -64; y < 64; y += 12) {
+			blockEntities.add(positioned("minecraft:chest", y));
+			blockTicks.add(positioned("minecraft:redstone_wire", y + 1));
+			fluidTicks.add(positioned("minecraft:water", y + 2));
+		}
+		CompoundTag noPosition = new CompoundTag();
+		noPosition.putString("id", "minecraft:sign");
+		blockEntities.add(noPosition);
+		root.put("block_entities", blockEntities);
+		root.put("block_ticks", blockTicks);
+		root.put("fluid_ticks", fluidTicks);
+
+		root.putLong("InhabitedTime", 42);
+		if (!statusFirst) {
+			root.putString("Status", "full");
+		}
+		return root;
+	}
+
+	private static CompoundTag section(int y, boolean yLast) {
+		CompoundTag section = new CompoundTag();
+		if (!yLast) {
+			section.putByte("Y", (byte) y);
+		}
+		CompoundTag blockStates = new CompoundTag();
+		ListTag palette = new ListTag();
+		palette.add(block("minecraft:air"));
+		palette.add(block("minecraft:stone"));
+		palette.add(block("minecraft:water"));
+		palette.add(block("minecraft:oak_leaves"));
+		blockStates.put("palette", palette);
+		// 4 bits per block, a different pattern in every section
+		long[] states = new long[256];
+		for (int i = 0; i < states.length; i++) {
+			long value = 0;
+			for (int b = 0; b < 16; b++) {
+				value |= (long) ((i * 7 + b * 3 + y * 5) & 3) << (b * 4);
+			}
+			states[i] = value;
+		}
+		blockStates.putLongArray("data", states);
+		section.put("block_states", blockStates);
+		CompoundTag biomes = new CompoundTag();
+		ListTag biomePalette = new ListTag();
+		biomePalette.addString("minecraft:plains");
+		biomes.put("palette", biomePalette);
+		section.put("biomes", biomes);
+		section.putByteArray("BlockLight", new byte[2048]);
+		section.putByteArray("SkyLight", new byte[2048]);
+		if (yLast) {
+			section.putByte("Y", (byte) y);
+		}
+		return section;
+	}
+
+	private static CompoundTag block(String name) {
+		CompoundTag block = new CompoundTag();
+		block.putString("Name", name);
+		return block;
+	}
+
+	private static CompoundTag positioned(String id, int y) {
+		CompoundTag tag = new CompoundTag();
+		tag.putString("id", id);
+		tag.putInt("x", 80);
+		tag.putInt("y", y);
+		tag.putInt("z", -112);
+		return tag;
+	}
+}
@@ -0,0 +1,309 @@
+package net.querz.mcaselector.version.anvil118;
+
+import net.querz.mcaselector.point.Point3i;
+import net.querz.nbt.CompoundTag;
+import net.querz.nbt.ListTag;
+import net.querz.nbt.Tag;
+import net.querz.nbt.io.NBTReader;
+import net.querz.nbt.io.NBTWriter;
+import org.junit.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import static org.junit.Assert.*;
+
+public class Anvil118ChunkRelocatorTest {
+
+	private static final List<Point3i> offsets = List.of(
+		new Point3i(0, 0, 0),
+		new Point3i(16, 0, 0),
+		new Point3i(-32, 0, 48),
+		new Point3i(512 * 7, 0, -512 * 3 - 16));
+
+	private final Anvil118ChunkRelocator relocator = new Anvil118ChunkRelocator();
+
+	@Test
+	public void testStreamingEqualsTree() throws IOException {
+		for (int dataVersion : new int[]{2825, 2840, 2860, 2975, 3065}) {
+			for (Point3i offset : offsets) {
+				assertEquivalent(chunk(dataVersion, true), offset);
+				assertEquivalent(chunk(dataVersion, false), offset);
+			}
+		}
+	}
+
+	@Test
+	public void testDropsSectionsBelowWorld() throws IOException {
+		CompoundTag chunk = chunk(2975, true);
+		ListTag sections = chunk.getList("sections");
+		sections.add(section(-5));
+		sections.add(section(-6));
+		assertEquivalent(chunk, new Point3i(16, 0, 16));
+
+		byte[] relocated = relocator.relocate(write(chunk), 2975, new Point3i(16, 0, 16));
+		// the sections -4 to 2 are kept
+		assertEquals(7, ((CompoundTag) read(relocated)).getList("sections").size());
+	}
+
+	@Test
+	public void testEmptyLists() throws IOException {
+		CompoundTag chunk = chunk(2975, false);
+		chunk.put("sections", new ListTag());
+		chunk.put("block_entities", new ListTag());
+		chunk.put("block_ticks", new ListTag());
+		chunk.put("fluid_ticks", new ListTag());
+		assertEquivalent(chunk, new Point3i(-16, 0, 32));
+	}
+
+	@Test
+	public void testFallsBack() throws IOException {
+		CompoundTag chunk = chunk(2975, true);
+		// vertical offsets are only handled by the tree
+		assertNull(relocator.relocate(write(chunk), 2975, new Point3i(16, 16, 16)));
+
+		// missing chunk coordinates are added by the tree
+		chunk.remove("zPos");
+		assertNull(relocator.relocate(write(chunk), 2975, new Point3i(16, 0, 16)));
+
+		CompoundTag legacy = chunk(2840, true);
+		legacy.getCompound("Level").remove("xPos");
+		assertNull(relocator.relocate(write(legacy), 2840, new Point3i(16, 0, 16)));
+	}
+
+	private void assertEquivalent(CompoundTag chunk, Point3i offset) throws IOException {
+		int dataVersion = chunk.getInt("DataVersion");
+		byte[] streamed = relocator.relocate(write(chunk), dataVersion, offset);
+		assertNotNull("streaming relocation of " + dataVersion + " by " + offset + " fell back", streamed);
+
+		CompoundTag tree = chunk.copy();
+		assertTrue(relocator.relocate(tree, offset));
+
+		assertEquals(read(write(tree)), read(streamed));
+		assertArrayEquals("serialized chunk " + dataVersion + " relocated by " + offset, write(tree), streamed);
+	}
+
+	private static byte[] write(Tag tag) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new NBTWriter().write(new DataOutputStream(baos), tag);
+		return baos.toByteArray();
+	}
+
+	private static Tag read(byte[] data) throws IOException {
+		return new NBTReader().read(new DataInputStream(new ByteArrayInputStream(data)));
+	}
+
+	// a chunk as it is written by 1.18 snapshots (with Level) or by 1.18+ (without Level)
+	private static CompoundTag chunk(int dataVersion, boolean full) {
+		boolean legacy = dataVersion < 2844;
+		CompoundTag root = new CompoundTag();
+		root.putInt("DataVersion", dataVersion);
+		CompoundTag data = root;
+		if (legacy) {
+			data = new CompoundTag();
+			root.put("Level", data);
+		}
+		data.putInt("xPos", -3);
+		data.putInt("zPos", 17);
+		data.putString("Status", "full");
+		data.putLong("InhabitedTime", 1234);
+		data.putLong("LastUpdate", 5678);
+
+		ListTag sections = new ListTag();
+		for (int y = -4; y < (full ? 3 : 0); y++) {
+			sections.add(section(y));
+		}
+		data.put(legacy ? "Sections" : "sections", sections);
+
+		CompoundTag heightmaps = new CompoundTag();
+		heightmaps.putLongArray("WORLD_SURFACE", new long[37]);
+		heightmaps.putLongArray("MOTION_BLOCKING", new long[37]);
+		data.put("Heightmaps", heightmaps);
+
+		ListTag postProcessing = new ListTag();
+		for (int i = 0; i < 24; i++) {
+			ListTag positions = new ListTag();
+			if (i % 5 == 0) {
+				positions.addShort((short) (i * 3));
+			}
+			postProcessing.add(positions);
+		}
+		data.put("PostProcessing", postProcessing);
+
+		ListTag tileEntities = new ListTag();
+		tileEntities.add(tileEntity("minecraft:chest", -40, 12, 280, chest -> {
+			ListTag items = new ListTag();
+			items.add(item("minecraft:compass", true));
+			items.add(item("minecraft:stone", false));
+			chest.put("Items", items);
+		}));
+		tileEntities.add(tileEntity("minecraft:beehive", -39, 70, 281, hive -> {
+			CompoundTag flowerPos = new CompoundTag();
+			flowerPos.putInt("X", -38);
+			flowerPos.putInt("Y", 69);
+			flowerPos.putInt("Z", 283);
+			hive.put("FlowerPos", flowerPos);
+			ListTag bees = new ListTag();
+			CompoundTag bee = new CompoundTag();
+			bee.put("EntityData", entity());
+			bees.add(bee);
+			hive.put("Bees", bees);
+		}));
+		tileEntities.add(tileEntity("minecraft:end_gateway", -37, -60, 284, gateway -> {
+			CompoundTag exit = new CompoundTag();
+			exit.putInt("X", 1000);
+			exit.putInt("Y", 80);
+			exit.putInt("Z", -1000);
+			gateway.put("ExitPortal", exit);
+		}));
+		tileEntities.add(tileEntity("minecraft:structure_block", -36, 5, 285, block -> {
+			block.putInt("posX", 1);
+			block.putInt("posY", 2);
+			block.putInt("posZ", 3);
+		}));
+		tileEntities.add(tileEntity("minecraft:mob_spawner", -35, 20, 286, spawner -> {
+			ListTag potentials = new ListTag();
+			CompoundTag potential = new CompoundTag();
+			potential.put("Entity", entity());
+			potentials.add(potential);
+			spawner.put("SpawnPotentials", potentials);
+		}));
+		tileEntities.add(tileEntity("minecraft:jukebox", -34, 64, 287, jukebox -> jukebox.put("RecordItem", item("minecraft:music_disc_cat", false))));
+		data.put(legacy ? "TileEntities" : "block_entities", tileEntities);
+
+		ListTag blockTicks = new ListTag();
+		ListTag fluidTicks = new ListTag();
+		for (int i = 0; i < 3; i++) {
+			blockTicks.add(tick("minecraft:redstone_wire", -48 + i, i * 10, 272 + i));
+			fluidTicks.add(tick("minecraft:water", -46 + i, -20 - i, 280 - i));
+		}
+		data.put(legacy ? "TileTicks" : "block_ticks", blockTicks);
+		data.put(legacy ? "LiquidTicks" : "fluid_ticks", fluidTicks);
+
+		if (full) {
+			data.put(legacy ? "Structures" : "structures", structures(legacy));
+		}
+		return root;
+	}
+
+	private static CompoundTag section(int y) {
+		CompoundTag section = new CompoundTag();
+		section.putByte("Y", (byte) y);
+		CompoundTag blockStates = new CompoundTag();
+		ListTag palette = new ListTag();
+		CompoundTag stone = new CompoundTag();
+		stone.putString("Name", "minecraft:stone");
+		palette.add(stone);
+		CompoundTag air = new CompoundTag();
+		air.putString("Name", "minecraft:air");
+		palette.add(air);
+		blockStates.put("palette", palette);
+		long[] states = new long[256];
+		for (int i = 0; i < states.length; i++) {
+			states[i] = 0x1111111111111111L * (i + y);
+		}
+		blockStates.putLongArray("data", states);
+		section.put("block_states", blockStates);
+		CompoundTag biomes = new CompoundTag();
+		ListTag biomePalette = new ListTag();
+		biomePalette.addString("minecraft:plains");
+		biomes.put("palette", biomePalette);
+		section.put("biomes", biomes);
+		section.putByteArray("SkyLight", new byte[2048]);
+		return section;
+	}
+
+	private static CompoundTag tileEntity(String id, int x, int y, int z, java.util.function.Consumer<CompoundTag> extra) {
+		CompoundTag tileEntity = new CompoundTag();
+		tileEntity.putString("id", id);
+		tileEntity.putInt("x", x);
+		tileEntity.putInt("y", y);
+		tileEntity.putInt("z", z);
+		tileEntity.putBoolean("keepPacked", false);
+		extra.accept(tileEntity);
+		return tileEntity;
+	}
+
+	private static CompoundTag item(String id, boolean lodestone) {
+		CompoundTag item = new CompoundTag();
+		item.putString("id", id);
+		item.putByte("Count", (byte) 1);
+		CompoundTag tag = new CompoundTag();
+		if (lodestone) {
+			CompoundTag pos = new CompoundTag();
+			pos.putInt("X", -50);
+			pos.putInt("Y", 64);
+			pos.putInt("Z", 300);
+			tag.put("LodestonePos", pos);
+		}
+		tag.putInt("Damage", 0);
+		item.put("tag", tag);
+		return item;
+	}
+
+	private static CompoundTag entity() {
+		CompoundTag entity = new CompoundTag();
+		entity.putString("id", "minecraft:bee");
+		ListTag pos = new ListTag();
+		pos.addDouble(-39.5);
+		pos.addDouble(70.0);
+		pos.addDouble(281.5);
+		entity.put("Pos", pos);
+		// no UUID, because relocated entities get a new random UUID
+		entity.putInt("Air", 300);
+		CompoundTag brain = new CompoundTag();
+		brain.put("memories", new CompoundTag());
+		entity.put("Brain", brain);
+		return entity;
+	}
+
+	private static CompoundTag tick(String id, int x, int y, int z) {
+		CompoundTag tick = new CompoundTag();
+		tick.putString("i", id);
+		tick.putInt("x", x);
+		tick.putInt("y", y);
+		tick.putInt("z", z);
+		tick.putInt("t", 4);
+		tick.putInt("p", 0);
+		return tick;
+	}
+
+	private static CompoundTag structures(boolean legacy) {
+		CompoundTag structures = new CompoundTag();
+		CompoundTag references = new CompoundTag();
+		references.putLongArray("minecraft:village", new long[]{(17L << 32) | (-3 & 0xFFFFFFFFL), (18L << 32) | (-4 & 0xFFFFFFFFL)});
+		references.putLongArray("minecraft:mineshaft", new long[]{(16L << 32) | 2});
+		structures.put("References", references);
+
+		CompoundTag starts = new CompoundTag();
+		CompoundTag village = new CompoundTag();
+		village.putString("id", "minecraft:village");
+		village.putInt("ChunkX", -3);
+		village.putInt("ChunkZ", 17);
+		ListTag children = new ListTag();
+		CompoundTag child = new CompoundTag();
+		child.putString("id", "minecraft:jigsaw");
+		child.putIntArray("BB", new int[]{-48, 60, 272, -40, 70, 280});
+		child.putInt("PosX", -48);
+		child.putInt("PosY", 60);
+		child.putInt("PosZ", 272);
+		ListTag junctions = new ListTag();
+		CompoundTag junction = new CompoundTag();
+		junction.putInt("source_x", -44);
+		junction.putInt("source_y", 64);
+		junction.putInt("source_z", 276);
+		junctions.add(junction);
+		child.put("junctions", junctions);
+		children.add(child);
+		village.put("Children", children);
+		starts.put("minecraft:village", village);
+
+		CompoundTag invalid = new CompoundTag();
+		invalid.putString("id", "INVALID");
+		starts.put("minecraft:mineshaft", invalid);
+		structures.put(legacy ? "Starts" : "starts", starts);
+		return structures;
+	}
+}